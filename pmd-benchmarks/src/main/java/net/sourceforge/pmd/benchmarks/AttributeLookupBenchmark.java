@@ -0,0 +1,102 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAccessors;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAxisIterator;
+
+/**
+ * Fetches XPath attributes of all the nodes of the ASTs of the Java files
+ * of the corpus, as the XPath engine does. {@link #mapOfAllAttributes(Blackhole)}
+ * and {@link #indexedLookup(Blackhole)} compare the lookup of a single attribute
+ * by name: by building a map of all the attributes of each node, or with the
+ * index of the {@link AttributeAccessors}. {@link #allAttributes(Blackhole)}
+ * fetches the values of all the attributes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AttributeLookupBenchmark {
+
+    @Param({"BeginLine", "Name"})
+    private String attributeName;
+
+    private LanguageProcessor processor;
+    private final List<Node> nodes = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        processor = Corpus.newJavaProcessor();
+        for (RootNode root : Corpus.parse(processor, Corpus.javaFiles())) {
+            root.descendantsOrSelf().forEach(nodes::add);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        processor.close();
+    }
+
+    @Benchmark
+    public void mapOfAllAttributes(Blackhole blackhole) {
+        for (Node node : nodes) {
+            Map<String, Attribute> attributes = new HashMap<>();
+            Iterator<Attribute> iterator = node.getXPathAttributesIterator();
+            while (iterator.hasNext()) {
+                Attribute attribute = iterator.next();
+                attributes.put(attribute.getName(), attribute);
+            }
+            Attribute attribute = attributes.get(attributeName);
+            blackhole.consume(attribute == null ? null : attribute.getValue());
+        }
+    }
+
+    @Benchmark
+    public void indexedLookup(Blackhole blackhole) {
+        for (Node node : nodes) {
+            AttributeAccessors accessors = AttributeAxisIterator.getAccessors(node);
+            int index = accessors.indexOf(attributeName);
+            blackhole.consume(index < 0 ? null : accessors.newAttribute(node, index).getValue());
+        }
+    }
+
+    @Benchmark
+    public void allAttributes(Blackhole blackhole) {
+        for (Node node : nodes) {
+            AttributeAccessors accessors = AttributeAxisIterator.getAccessors(node);
+            for (int i = 0; i < accessors.size(); i++) {
+                blackhole.consume(accessors.newAttribute(node, i).getValue());
+            }
+        }
+    }
+}
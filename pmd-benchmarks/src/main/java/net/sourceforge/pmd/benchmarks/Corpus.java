@@ -0,0 +1,121 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Parser;
+import net.sourceforge.pmd.lang.ast.Parser.ParserTask;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+
+/**
+ * The fixed corpus of source files the benchmarks run on. The files are
+ * resources of this module, so that the results of different versions
+ * of PMD can be compared.
+ */
+public final class Corpus {
+
+    private static final String JAVA_DIR = "/corpus/java/";
+    /** From the smallest to the largest. */
+    private static final String[] JAVA_FILES = {
+        "UnusedAssignmentRule.java",
+        "RuleSets.java",
+        "PmdAnalysis.java",
+        "TypeOps.java",
+    };
+
+    private Corpus() {
+        // utility class
+    }
+
+    public static LanguageVersion javaVersion() {
+        return JavaLanguageModule.getInstance().getDefaultVersion();
+    }
+
+    /**
+     * Returns the Java files of the corpus.
+     */
+    public static List<TextFile> javaFiles() {
+        List<TextFile> files = new ArrayList<>(JAVA_FILES.length);
+        for (String name : JAVA_FILES) {
+            files.add(TextFile.forCharSeq(javaSource(name), FileId.fromPathLikeString(name), javaVersion()));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the text of a Java file of the corpus.
+     */
+    public static String javaSource(String name) {
+        try (InputStream is = Corpus.class.getResourceAsStream(JAVA_DIR + name)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Not in the corpus: " + name);
+            }
+            return IOUtil.readToString(is, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads the quickstart ruleset for Java.
+     */
+    public static RuleSet quickstart() {
+        return new RuleSetLoader().loadFromResource("rulesets/java/quickstart.xml");
+    }
+
+    /**
+     * Creates the processor used to parse the Java files. It must be closed
+     * after use.
+     */
+    public static LanguageProcessor newJavaProcessor() {
+        JavaLanguageModule java = JavaLanguageModule.getInstance();
+        return java.createProcessor(java.newPropertyBundle());
+    }
+
+    /**
+     * Parses the given files with the given parser.
+     */
+    @SuppressWarnings("PMD.CloseResource") // the ASTs refer to their documents, which are in memory
+    public static List<RootNode> parse(LanguageProcessor processor, Parser parser, List<TextFile> files) {
+        LanguageProcessorRegistry registry = LanguageProcessorRegistry.singleton(processor);
+        List<RootNode> roots = new ArrayList<>(files.size());
+        for (TextFile file : files) {
+            roots.add(parser.parse(newParserTask(registry, file)));
+        }
+        return roots;
+    }
+
+    /**
+     * Parses the given files, and does the semantic analysis of the ASTs.
+     */
+    public static List<RootNode> parse(LanguageProcessor processor, List<TextFile> files) {
+        return parse(processor, processor.services().getParser(), files);
+    }
+
+    static ParserTask newParserTask(LanguageProcessorRegistry registry, TextFile file) {
+        try {
+            return new ParserTask(TextDocument.create(file), SemanticErrorReporter.noop(), registry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
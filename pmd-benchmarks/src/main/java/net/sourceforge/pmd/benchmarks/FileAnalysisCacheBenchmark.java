@@ -0,0 +1,148 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.cache.internal.FileAnalysisCache;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.InternalApiBridge;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Persists and loads a {@link FileAnalysisCache} with the results of a
+ * thousand files, with the rules of the quickstart ruleset. The files
+ * have the contents of the Java files of the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("PMD.CloseResource") // the documents are in memory, and closed by tearDown
+public class FileAnalysisCacheBenchmark {
+
+    private static final int FILES = 1000;
+    private static final int VIOLATIONS_PER_FILE = 20;
+
+    private File directory;
+    private File persistedCache;
+    private RuleSets ruleSets;
+    private List<TextFile> files;
+    private List<TextDocument> documents;
+    private List<List<RuleViolation>> violations;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("pmd-benchmark-cache").toFile();
+        persistedCache = new File(directory, "loaded.cache");
+        ruleSets = new RuleSets(Corpus.quickstart());
+        List<Rule> rules = new ArrayList<>(ruleSets.getAllRules());
+
+        List<TextFile> corpus = Corpus.javaFiles();
+        files = new ArrayList<>(FILES);
+        documents = new ArrayList<>(FILES);
+        violations = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            FileId fileId = FileId.fromPathLikeString("src/File" + i + ".java");
+            String name = corpus.get(i % corpus.size()).getFileId().getOriginalPath();
+            TextFile file = TextFile.forCharSeq(Corpus.javaSource(name), fileId, Corpus.javaVersion());
+            files.add(file);
+            documents.add(TextDocument.create(file));
+
+            List<RuleViolation> fileViolations = new ArrayList<>(VIOLATIONS_PER_FILE);
+            for (int v = 0; v < VIOLATIONS_PER_FILE; v++) {
+                Rule rule = rules.get((i + v) % rules.size());
+                FileLocation location = FileLocation.range(fileId, TextRange2d.range2d(v + 1, 1, v + 1, 20));
+                fileViolations.add(InternalApiBridge.createRuleViolation(rule, location, rule.getMessage(), Collections.emptyMap()));
+            }
+            violations.add(fileViolations);
+        }
+
+        persist(persistedCache);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (TextDocument document : documents) {
+            document.close();
+        }
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    private FileAnalysisCache newCache(File file) {
+        FileAnalysisCache cache = new FileAnalysisCache(file);
+        cache.checkValidity(ruleSets, FileAnalysisCacheBenchmark.class.getClassLoader(), files);
+        return cache;
+    }
+
+    private void persist(File file) {
+        FileAnalysisCache cache = newCache(file);
+        for (int i = 0; i < FILES; i++) {
+            TextDocument document = documents.get(i);
+            cache.isUpToDate(document);
+            try (FileAnalysisListener listener = cache.startFileAnalysis(document)) {
+                for (RuleViolation violation : violations.get(i)) {
+                    listener.onRuleViolation(violation);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        cache.persist();
+    }
+
+    /**
+     * Records the results of all files in a new cache, and writes it.
+     */
+    @Benchmark
+    public void persist() throws IOException {
+        File file = new File(directory, "persisted.cache");
+        Files.deleteIfExists(file.toPath());
+        persist(file);
+    }
+
+    /**
+     * Loads the cache, and reads the results of all files.
+     */
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        FileAnalysisCache cache = newCache(persistedCache);
+        for (TextDocument document : documents) {
+            blackhole.consume(cache.isUpToDate(document));
+            blackhole.consume(cache.getCachedViolations(document));
+        }
+    }
+}
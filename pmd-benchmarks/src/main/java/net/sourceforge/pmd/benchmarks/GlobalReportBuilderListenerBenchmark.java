@@ -0,0 +1,114 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.InternalApiBridge;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.Report.GlobalReportBuilderListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Reports ten million violations to a {@link GlobalReportBuilderListener}
+ * from several threads, and builds the report. The score is the number of
+ * violations per second, it should grow with the number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class GlobalReportBuilderListenerBenchmark {
+
+    private static final int FILES = 10_000;
+    private static final int VIOLATIONS_PER_FILE = 1_000;
+    private static final int VIOLATIONS = FILES * VIOLATIONS_PER_FILE;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private ExecutorService executor;
+    private final List<TextFile> files = new ArrayList<>();
+    private final List<List<RuleViolation>> violations = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(threads);
+        List<Rule> rules = new ArrayList<>(Corpus.quickstart().getRules());
+        for (int i = 0; i < FILES; i++) {
+            FileId fileId = FileId.fromPathLikeString("src/File" + i + ".java");
+            files.add(TextFile.forCharSeq("", fileId, Corpus.javaVersion()));
+
+            List<RuleViolation> fileViolations = new ArrayList<>(VIOLATIONS_PER_FILE);
+            // in the reverse order of the lines, as the rules report them one after the other
+            for (int v = VIOLATIONS_PER_FILE; v > 0; v--) {
+                Rule rule = rules.get(v % rules.size());
+                FileLocation location = FileLocation.range(fileId, TextRange2d.range2d(v, 1, v, 20));
+                fileViolations.add(InternalApiBridge.createRuleViolation(rule, location, rule.getMessage(), Collections.emptyMap()));
+            }
+            violations.add(fileViolations);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VIOLATIONS)
+    public Report report() throws Exception {
+        GlobalReportBuilderListener reportBuilder = new GlobalReportBuilderListener();
+        AtomicInteger nextFile = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                int file;
+                while ((file = nextFile.getAndIncrement()) < FILES) {
+                    try (FileAnalysisListener listener = reportBuilder.startFileAnalysis(files.get(file))) {
+                        for (RuleViolation violation : violations.get(file)) {
+                            listener.onRuleViolation(violation);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        reportBuilder.close();
+        return reportBuilder.getResult();
+    }
+}
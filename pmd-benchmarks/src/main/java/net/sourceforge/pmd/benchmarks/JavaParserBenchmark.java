@@ -0,0 +1,85 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.internal.JavaAstProcessor;
+import net.sourceforge.pmd.lang.java.internal.JavaLanguageProcessor;
+
+/**
+ * Parses the Java files of the corpus with the {@link net.sourceforge.pmd.lang.java.ast.JavaParser},
+ * and does the semantic analysis of their ASTs with the {@link JavaAstProcessor}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JavaParserBenchmark {
+
+    private JavaLanguageProcessor processor;
+    private List<TextFile> files;
+
+    @Setup
+    public void setup() {
+        processor = (JavaLanguageProcessor) Corpus.newJavaProcessor();
+        files = Corpus.javaFiles();
+        // parse once, so that the type system loads the classes the corpus refers to
+        Corpus.parse(processor, files);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        processor.close();
+    }
+
+    @Benchmark
+    public List<RootNode> parse() {
+        return Corpus.parse(processor, processor.getParserWithoutProcessing(), files);
+    }
+
+    @Benchmark
+    public List<RootNode> process(UnprocessedAsts asts) {
+        for (RootNode root : asts.roots) {
+            JavaAstProcessor.process(processor, SemanticErrorReporter.noop(), (ASTCompilationUnit) root);
+        }
+        return asts.roots;
+    }
+
+    /**
+     * The semantic analysis changes the ASTs, so each invocation of
+     * {@link #process(UnprocessedAsts)} needs new ones.
+     */
+    @State(Scope.Thread)
+    public static class UnprocessedAsts {
+
+        private List<RootNode> roots;
+
+        @Setup(Level.Invocation)
+        public void parse(JavaParserBenchmark benchmark) {
+            roots = Corpus.parse(benchmark.processor, benchmark.processor.getParserWithoutProcessing(), benchmark.files);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+
+/**
+ * Evaluates XPath queries on the ASTs of the Java files of the corpus with
+ * a {@link SaxonXPathRuleQuery}. The ASTs are parsed once, and the query
+ * is compiled before the first measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SaxonXPathRuleQueryBenchmark {
+
+    @Param({
+        // a simple path with a predicate on an attribute
+        "//MethodCall[@MethodName = 'equals']",
+        // a predicate with a nested path
+        "//MethodDeclaration[count(FormalParameters/FormalParameter) > 3]",
+        // a negated predicate on the children
+        "//IfStatement[not(Block)]"
+    })
+    private String xpath;
+
+    private LanguageProcessor processor;
+    private List<RootNode> roots;
+    private SaxonXPathRuleQuery query;
+
+    @Setup
+    public void setup() {
+        processor = Corpus.newJavaProcessor();
+        roots = Corpus.parse(processor, Corpus.javaFiles());
+        query = new SaxonXPathRuleQuery(xpath,
+                                        XPathVersion.DEFAULT,
+                                        Collections.emptyMap(),
+                                        processor.services().getXPathHandler(),
+                                        SaxonXPathRuleQuery.getConfiguration(processor),
+                                        DeprecatedAttrLogger.noop());
+        // compiles the query
+        query.evaluate(roots.get(0));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        processor.close();
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        for (RootNode root : roots) {
+            blackhole.consume(query.evaluate(root));
+        }
+    }
+}
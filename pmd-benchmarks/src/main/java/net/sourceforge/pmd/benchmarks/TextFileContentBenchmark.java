@@ -0,0 +1,109 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+
+/**
+ * Reads the Java files of the corpus into {@link TextFileContent}s, which
+ * normalizes their line terminators and computes their checksum, from
+ * characters and from bytes. The files are also written to a temporary
+ * directory, to compare reading them with a {@link TextFile} to reading them
+ * through an input stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TextFileContentBenchmark {
+
+    @Param({"LF", "CRLF"})
+    private String lineTerminator;
+
+    private final List<String> texts = new ArrayList<>();
+    private final List<byte[]> bytes = new ArrayList<>();
+    private final List<Path> paths = new ArrayList<>();
+    private Path tempDir;
+
+    @Setup
+    @SuppressWarnings("PMD.CloseResource") // the files are in memory
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("pmd-benchmark");
+        for (TextFile file : Corpus.javaFiles()) {
+            String text = Corpus.javaSource(file.getFileId().getOriginalPath()).replace("\r\n", "\n");
+            if ("CRLF".equals(lineTerminator)) {
+                text = text.replace("\n", "\r\n");
+            }
+            texts.add(text);
+            bytes.add(text.getBytes(StandardCharsets.UTF_8));
+            paths.add(Files.write(tempDir.resolve(paths.size() + ".java"), bytes.get(bytes.size() - 1)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+        Files.delete(tempDir);
+    }
+
+    @Benchmark
+    public void fromReader(Blackhole blackhole) throws IOException {
+        for (String text : texts) {
+            blackhole.consume(TextFileContent.fromReader(new StringReader(text)));
+        }
+    }
+
+    @Benchmark
+    public void fromInputStream(Blackhole blackhole) throws IOException {
+        for (byte[] content : bytes) {
+            blackhole.consume(TextFileContent.fromInputStream(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public void fromFile(Blackhole blackhole) throws IOException {
+        for (Path path : paths) {
+            try (TextFile file = TextFile.forPath(path, StandardCharsets.UTF_8, Corpus.javaVersion())) {
+                blackhole.consume(file.readContents());
+            }
+        }
+    }
+
+    @Benchmark
+    public void fromFileInputStream(Blackhole blackhole) throws IOException {
+        for (Path path : paths) {
+            blackhole.consume(TextFileContent.fromInputStream(Files.newInputStream(path), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+import net.sourceforge.pmd.lang.rule.xpath.internal.XPathBatch;
+
+/**
+ * Evaluates many XPath queries that look for descendants of the class
+ * declarations on the ASTs of the Java files of the corpus, like XPath
+ * rules do: one query after the other, on all the class declarations.
+ * The queries are evaluated separately, each walking the subtrees of the
+ * class declarations, or in an {@link XPathBatch}, which walks each subtree
+ * once for all the queries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class XPathBatchBenchmark {
+
+    private static final String[] DESCENDANTS = {"MethodCall", "LocalVariableDeclaration", "IfStatement", "ReturnStatement"};
+
+    @Param({"10", "80"})
+    private int numQueries;
+
+    @Param({"false", "true"})
+    private boolean batched;
+
+    private LanguageProcessor processor;
+    private final List<Node> classDeclarations = new ArrayList<>();
+    private final List<SaxonXPathRuleQuery> queries = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        processor = Corpus.newJavaProcessor();
+        for (RootNode root : Corpus.parse(processor, Corpus.javaFiles())) {
+            root.descendantsOrSelf().filter(it -> "ClassDeclaration".equals(it.getXPathNodeName()))
+                .forEach(classDeclarations::add);
+        }
+        for (int i = 0; i < numQueries; i++) {
+            String xpath = "//ClassDeclaration//" + DESCENDANTS[i % DESCENDANTS.length] + "[@BeginLine = " + i + "]";
+            queries.add(new SaxonXPathRuleQuery(xpath,
+                                                XPathVersion.DEFAULT,
+                                                Collections.emptyMap(),
+                                                processor.services().getXPathHandler(),
+                                                SaxonXPathRuleQuery.getConfiguration(processor),
+                                                DeprecatedAttrLogger.noop()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        processor.close();
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        if (batched) {
+            // a new batch doesn't reuse the walks of the previous invocation
+            XPathBatch.batch(queries);
+        }
+        for (SaxonXPathRuleQuery query : queries) {
+            for (Node node : classDeclarations) {
+                blackhole.consume(query.evaluate(node));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.benchmarks.Corpus;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/**
+ * Finds the duplicates in the tokens of the Java files of the corpus, with
+ * the {@link MatchAlgorithm} or the {@link SuffixArrayMatchAlgorithm}.
+ * Each file is in the corpus twice, so that there are duplicates to find.
+ * The files are tokenized once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchAlgorithmBenchmark {
+
+    private static final int MINIMUM_TILE_SIZE = 100;
+
+    @Param({"HASH", "SUFFIX_ARRAY"})
+    private CpdMatchAlgorithm algorithm;
+
+    private SourceManager sourceManager;
+    private Tokens tokens;
+
+    @Setup
+    @SuppressWarnings("PMD.CloseResource") // the files are in memory
+    public void setup() throws IOException {
+        List<TextFile> files = new ArrayList<>();
+        for (TextFile file : Corpus.javaFiles()) {
+            files.add(file);
+            String name = file.getFileId().getOriginalPath();
+            files.add(TextFile.forCharSeq(Corpus.javaSource(name), FileId.fromPathLikeString("copy/" + name), Corpus.javaVersion()));
+        }
+        sourceManager = new SourceManager(files);
+
+        JavaLanguageModule java = JavaLanguageModule.getInstance();
+        CpdLexer cpdLexer = java.createCpdLexer(java.newPropertyBundle());
+        tokens = new Tokens();
+        for (TextFile file : files) {
+            CpdLexer.tokenize(cpdLexer, sourceManager.get(file), tokens);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        sourceManager.close();
+    }
+
+    @Benchmark
+    public List<Match> findMatches() {
+        if (algorithm == CpdMatchAlgorithm.SUFFIX_ARRAY) {
+            return new SuffixArrayMatchAlgorithm(tokens, MINIMUM_TILE_SIZE).findMatches(new CPDNullListener(), sourceManager);
+        }
+        return new MatchAlgorithm(tokens, MINIMUM_TILE_SIZE).findMatches(new CPDNullListener(), sourceManager);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.benchmarks.Corpus;
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+/**
+ * Applies the rules of the quickstart ruleset to the ASTs of the Java files
+ * of the corpus with a {@link RuleApplicator}. The ASTs are parsed once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleApplicatorBenchmark {
+
+    @Param({"false", "true"})
+    private boolean singlePass;
+
+    private LanguageProcessor processor;
+    private List<RootNode> roots;
+    private List<Rule> rules;
+    private RuleApplicator applicator;
+
+    @Setup
+    public void setup() {
+        processor = Corpus.newJavaProcessor();
+        roots = Corpus.parse(processor, Corpus.javaFiles());
+
+        RuleSets ruleSets = new RuleSets(Corpus.quickstart());
+        ruleSets.initializeRules(LanguageProcessorRegistry.singleton(processor), PmdReporter.quiet());
+        rules = new ArrayList<>(ruleSets.getAllRules());
+        applicator = RuleApplicator.build(rules, singlePass);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        processor.close();
+    }
+
+    @Benchmark
+    @SuppressWarnings("PMD.CloseResource") // the listener has nothing to close
+    public void apply(Blackhole blackhole) {
+        FileAnalysisListener listener = new FileAnalysisListener() {
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                blackhole.consume(violation);
+            }
+        };
+        for (RootNode root : roots) {
+            applicator.index(root);
+            applicator.apply(rules, listener);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.InternalApiBridge;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+/**
+ * Grouping of Rules per Language in a RuleSet.
+ *
+ * @author pieter_van_raemdonck - Application Engineers NV/SA - www.ae.be
+ */
+public class RuleSets {
+
+    private final List<RuleSet> ruleSets;
+
+    // rules that are shared with the rulesets this was copied from, and
+    // that are already initialized
+    private final Set<Rule> sharedRules;
+
+    private RuleApplicator ruleApplicator;
+
+    /**
+     * Copy constructor. Deep copies RuleSets.
+     *
+     * @param ruleSets The RuleSets to copy.
+     */
+    public RuleSets(final RuleSets ruleSets) {
+        List<RuleSet> rsets = new ArrayList<>();
+        for (final RuleSet rs : ruleSets.ruleSets) {
+            rsets.add(new RuleSet(rs));
+        }
+        this.ruleSets = Collections.unmodifiableList(rsets);
+        this.sharedRules = Collections.emptySet();
+    }
+
+    public RuleSets(Collection<? extends RuleSet> ruleSets) {
+        this.ruleSets = Collections.unmodifiableList(new ArrayList<>(ruleSets));
+        this.sharedRules = Collections.emptySet();
+    }
+
+    private RuleSets(List<RuleSet> ruleSets, Set<Rule> sharedRules) {
+        this.ruleSets = Collections.unmodifiableList(ruleSets);
+        this.sharedRules = sharedRules;
+    }
+
+    /**
+     * Public constructor. Add the given rule set.
+     *
+     * @param ruleSet the RuleSet
+     */
+    public RuleSets(RuleSet ruleSet) {
+        this.ruleSets = Collections.singletonList(ruleSet);
+        this.sharedRules = Collections.emptySet();
+    }
+
+    /**
+     * Returns a copy of these rulesets, to be used by another thread.
+     * Rules that are {@linkplain Rule#isThreadSafe() thread-safe} are
+     * shared with these rulesets, the other rules are deep copies.
+     * These rulesets must already be {@linkplain #initializeRules(LanguageProcessorRegistry, PmdReporter) initialized},
+     * the copy must then be initialized too, which only initializes the
+     * rules that were copied.
+     *
+     * @return A copy of these rulesets
+     */
+    public RuleSets copyForThread() {
+        Set<Rule> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<RuleSet> rsets = new ArrayList<>(ruleSets.size());
+        for (final RuleSet rs : ruleSets) {
+            rsets.add(InternalApiBridge.copyRuleSet(rs, rule -> {
+                if (rule.isThreadSafe()) {
+                    shared.add(rule);
+                    return rule;
+                }
+                return rule.deepCopy();
+            }));
+        }
+        return new RuleSets(rsets, shared);
+    }
+
+    public void initializeRules(LanguageProcessorRegistry lpReg, PmdReporter reporter) {
+        // this is abusing the mutability of RuleSet, will go away eventually.
+        for (RuleSet rset : ruleSets) {
+            for (Iterator<Rule> iterator = rset.getRules().iterator(); iterator.hasNext();) {
+                Rule rule = iterator.next();
+                if (sharedRules.contains(rule)) {
+                    // already initialized, and possibly in use by another thread
+                    continue;
+                }
+                try {
+                    rule.initialize(lpReg.getProcessor(rule.getLanguage()));
+                } catch (Exception e) {
+                    reporter.errorEx(
+                        "Exception while initializing rule " + rule.getName() + ", the rule will not be run", e);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private RuleApplicator prepareApplicator() {
+        return RuleApplicator.build(ruleSets.stream().flatMap(it -> it.getRules().stream())::iterator);
+    }
+
+    /**
+     * Get all the RuleSets.
+     *
+     * @return RuleSet[]
+     */
+    public RuleSet[] getAllRuleSets() {
+        return ruleSets.toArray(new RuleSet[0]);
+    }
+
+    // internal
+    List<RuleSet> getRuleSetsInternal() {
+        return ruleSets;
+    }
+
+    public Iterator<RuleSet> getRuleSetsIterator() {
+        return ruleSets.iterator();
+    }
+
+    /**
+     * Return all rules from all rulesets.
+     *
+     * @return Set
+     */
+    public Set<Rule> getAllRules() {
+        Set<Rule> result = new HashSet<>();
+        for (RuleSet r : ruleSets) {
+            result.addAll(r.getRules());
+        }
+        return result;
+    }
+
+    /**
+     * Check if a given source file should be checked by rules in this RuleSets.
+     *
+     * @param file
+     *            the source file to check
+     * @return <code>true</code> if the file should be checked,
+     *         <code>false</code> otherwise
+     */
+    public boolean applies(TextFile file) {
+        for (RuleSet ruleSet : ruleSets) {
+            if (InternalApiBridge.ruleSetApplies(ruleSet, file.getFileId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apply all applicable rules to the compilation units. Applicable means the
+     * language of the rules must match the language of the source (@see
+     * applies).
+     *
+     * @param root     the List of compilation units; the type these must have,
+     *                 depends on the source language
+     * @param listener Listener that will handle events while analysing.
+     */
+    public void apply(RootNode root, FileAnalysisListener listener) {
+        if (ruleApplicator == null) {
+            // initialize here instead of ctor, because some rules properties
+            // are set after creating the ruleset, and jaxen xpath queries
+            // initialize their XPath expressions when calling getRuleChainVisits()... fixme
+            this.ruleApplicator = prepareApplicator();
+        }
+
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
+            ruleApplicator.index(root);
+        }
+
+        // the rules of all rulesets are applied at once, so that a single-pass
+        // applicator only visits the tree once
+        List<Rule> rules = new ArrayList<>();
+        for (RuleSet ruleSet : ruleSets) {
+            if (InternalApiBridge.ruleSetApplies(ruleSet, root.getTextDocument().getFileId())) {
+                rules.addAll(ruleSet.getRules());
+            }
+        }
+        ruleApplicator.apply(rules, listener);
+    }
+
+    /**
+     * Apply the applicable rules that match the given filter to the compilation
+     * unit. This is used to only run the rules whose results are not known yet,
+     * e.g. because they are not up to date in the analysis cache.
+     *
+     * @param root       the compilation unit
+     * @param listener   Listener that will handle events while analysing.
+     * @param ruleFilter Filter for the rules to apply
+     *
+     * @see #apply(RootNode, FileAnalysisListener)
+     */
+    public void apply(RootNode root, FileAnalysisListener listener, Predicate<? super Rule> ruleFilter) {
+        if (ruleApplicator == null) {
+            this.ruleApplicator = prepareApplicator();
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        for (RuleSet ruleSet : ruleSets) {
+            if (InternalApiBridge.ruleSetApplies(ruleSet, root.getTextDocument().getFileId())) {
+                ruleSet.getRules().stream().filter(ruleFilter).forEach(rules::add);
+            }
+        }
+        if (rules.isEmpty()) {
+            // only index the tree if there is a rule to apply
+            return;
+        }
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
+            ruleApplicator.index(root);
+        }
+        ruleApplicator.apply(rules, listener);
+    }
+
+    /**
+     * Returns the first Rule found with the given name.
+     *
+     * Note: Since we support multiple languages, rule names are not expected to
+     * be unique within any specific ruleset.
+     *
+     * @param ruleName
+     *            the exact name of the rule to find
+     * @return the rule or null if not found
+     */
+    public Rule getRuleByName(String ruleName) {
+        Rule rule = null;
+        for (Iterator<RuleSet> i = ruleSets.iterator(); i.hasNext() && rule == null;) {
+            RuleSet ruleSet = i.next();
+            rule = ruleSet.getRuleByName(ruleName);
+        }
+        return rule;
+    }
+
+    /**
+     * Determines the total count of rules that are used in all rule sets.
+     *
+     * @return the count
+     */
+    public int ruleCount() {
+        int count = 0;
+        for (RuleSet r : ruleSets) {
+            count += r.getRules().size();
+        }
+        return count;
+    }
+
+
+    /**
+     * Remove and collect any rules that report problems.
+     *
+     * @param collector
+     */
+    public void removeDysfunctionalRules(Collection<Rule> collector) {
+        for (RuleSet ruleSet : ruleSets) {
+            ruleSet.removeDysfunctionalRules(collector);
+        }
+    }
+
+    /**
+     * Retrieves a checksum of the rulesets being used. Any change to any rule
+     * of any ruleset should trigger a checksum change.
+     *
+     * @return The checksum for this ruleset collection.
+     */
+    public long getChecksum() {
+        long checksum = 1;
+        for (final RuleSet ruleSet : ruleSets) {
+            checksum = checksum * 31 + ruleSet.getChecksum();
+        }
+        return checksum;
+    }
+
+    /**
+     * Retrieves a checksum for each rule being used. The checksum of a rule
+     * changes if its class, name, language, message or any of its properties
+     * change, or if the file inclusions and exclusions of its ruleset change.
+     * Unlike {@link #getChecksum()}, the checksum of a rule doesn't depend on
+     * the other rules.
+     *
+     * @return A map of each rule to its checksum.
+     */
+    public Map<Rule, Long> getRuleChecksums() {
+        Map<Rule, Long> checksums = new LinkedHashMap<>();
+        for (final RuleSet ruleSet : ruleSets) {
+            long ruleSetChecksum = 1;
+            for (Pattern pattern : ruleSet.getFileInclusions()) {
+                ruleSetChecksum = ruleSetChecksum * 31 + pattern.pattern().hashCode();
+            }
+            for (Pattern pattern : ruleSet.getFileExclusions()) {
+                ruleSetChecksum = ruleSetChecksum * 37 + pattern.pattern().hashCode();
+            }
+            for (final Rule rule : ruleSet.getRules()) {
+                checksums.put(rule, ruleSetChecksum * 31 + getRuleChecksum(rule));
+            }
+        }
+        return checksums;
+    }
+
+    private static long getRuleChecksum(Rule rule) {
+        long checksum = rule.getRuleClass().hashCode();
+        checksum = checksum * 31 + rule.getName().hashCode();
+        checksum = checksum * 31 + rule.getLanguage().getId().hashCode();
+        checksum = checksum * 31 + versionHash(rule.getMinimumLanguageVersion());
+        checksum = checksum * 31 + versionHash(rule.getMaximumLanguageVersion());
+        checksum = checksum * 31 + Objects.hashCode(rule.getMessage());
+        for (PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            checksum = checksum * 31 + propertyToString(rule, descriptor).hashCode();
+        }
+        return checksum;
+    }
+
+    private static int versionHash(LanguageVersion version) {
+        return version == null ? 0 : version.getVersion().hashCode();
+    }
+
+    private static <T> String propertyToString(Rule rule, PropertyDescriptor<T> descriptor) {
+        T value = rule.getProperty(descriptor);
+        return descriptor.name() + '=' + (value == null ? "" : descriptor.serializer().toString(value));
+    }
+}
@@ -17,6 +17,7 @@ import net.sourceforge.pmd.cli.commands.typesupport.internal.CpdLanguageTypeSupp
 import net.sourceforge.pmd.cli.internal.CliExitCode;
 import net.sourceforge.pmd.cpd.CPDConfiguration;
 import net.sourceforge.pmd.cpd.CpdAnalysis;
+import net.sourceforge.pmd.cpd.CpdMatchAlgorithm;
 import net.sourceforge.pmd.cpd.internal.CpdLanguagePropertiesDefaults;
 import net.sourceforge.pmd.internal.LogMessages;
 import net.sourceforge.pmd.lang.Language;
@@ -91,6 +92,19 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
     @Option(names = "--non-recursive", description = "Don't scan subdirectiories.")
     private boolean nonRecursive;
 
+    @Option(names = "--match-algorithm",
+            description = "The algorithm used to find duplicates.%nValid values: ${COMPLETION-CANDIDATES}",
+            defaultValue = "HASH")
+    private CpdMatchAlgorithm matchAlgorithm;
+
+    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used to tokenize files.",
+            defaultValue = "1")
+    private int threads;
+
+    @Option(names = "--cache",
+            description = "Specify the location of the cache file for incremental tokenization. "
+                + "Files that have not changed since the previous run are not tokenized again.")
+    private Path cacheLocation;
 
     /**
      * Converts these parameters into a configuration.
@@ -126,6 +140,9 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
         configuration.setSkipDuplicates(skipDuplicates);
         configuration.setSourceEncoding(encoding.getEncoding());
         configuration.setInputUri(uri);
+        configuration.setThreads(threads);
+        configuration.setMatchAlgorithm(matchAlgorithm);
+        configuration.setCacheLocation(cacheLocation);
 
         if (skipLexicalErrors) {
             configuration.getReporter().warn("--skip-lexical-errors is deprecated. Use --no-fail-on-error instead.");
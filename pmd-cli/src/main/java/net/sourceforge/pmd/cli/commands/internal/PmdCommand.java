@@ -7,11 +7,14 @@ package net.sourceforge.pmd.cli.commands.internal;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -20,10 +23,12 @@ import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.benchmark.JsonTimingReportRenderer;
 import net.sourceforge.pmd.benchmark.TextTimingReportRenderer;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimingReport;
 import net.sourceforge.pmd.benchmark.TimingReportRenderer;
+import net.sourceforge.pmd.benchmark.TimingTraceWriter;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.PmdLanguageTypeSupport;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.PmdLanguageVersionTypeSupport;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.RulePriorityTypeSupport;
@@ -84,8 +89,14 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private int threads;
 
+    private boolean virtualThreads;
+
     private boolean benchmark;
 
+    private Path benchmarkJson;
+
+    private Path timingTrace;
+
     private boolean showSuppressed;
 
     private String suppressMarker;
@@ -104,10 +115,24 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private Path cacheLocation;
 
+    private Path sharedCacheLocation;
+
     private boolean noCache;
 
     private boolean showProgressBar;
 
+    private boolean largestFilesFirst;
+
+    private boolean pipelined;
+
+    private int pipelineParserThreads;
+
+    private boolean singlePassRuleDispatch;
+
+    private int fileTimeout;
+
+    private int ruleTimeout;
+
     @Option(names = { "--rulesets", "-R" },
                description = "Path to a ruleset xml file. "
                              + "The path may reference a resource on the classpath of the application, be a local file system path, or a URL. "
@@ -138,6 +163,20 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.benchmark = benchmark;
     }
 
+    @Option(names = "--benchmark-json",
+            description = "Path to a file to write the benchmark report to, in JSON, with the time, CPU time and "
+                          + "allocated memory of each measured operation, the most expensive first.")
+    public void setBenchmarkJson(final Path benchmarkJson) {
+        this.benchmarkJson = benchmarkJson;
+    }
+
+    @Option(names = "--timing-trace",
+            description = "Path to a file to write the start time and duration of each parse, analysis phase and rule "
+                          + "on each file to, in the Chrome trace event format, which can be loaded into Perfetto.")
+    public void setTimingTrace(final Path timingTrace) {
+        this.timingTrace = timingTrace;
+    }
+
     @Option(names = "--show-suppressed", description = "Report should show suppressed rule violations if supported by the report format.")
     public void setShowSuppressed(final boolean showSuppressed) {
         this.showSuppressed = showSuppressed;
@@ -220,19 +259,93 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.cacheLocation = cacheLocation;
     }
 
+    @Option(names = "--shared-cache",
+            description = "Specify the location of a directory in which to store a cache for incremental analysis, "
+                    + "which can be shared across checkouts in different directories, branches and machines. "
+                    + "Results are stored by file content instead of file path. The directory may be used "
+                    + "by several PMD processes at the same time. This option cannot be used together with '--cache'.")
+    public void setSharedCacheLocation(final Path sharedCacheLocation) {
+        this.sharedCacheLocation = sharedCacheLocation;
+    }
+
+    @Option(names = "--largest-files-first",
+            description = "Analyze the largest files first, on a work-stealing thread pool. "
+                    + "This avoids a few large files being analyzed by a single thread at the end of the analysis, "
+                    + "while the other threads are idle. Has no effect if '--threads' is 0.")
+    public void setLargestFilesFirst(final boolean largestFilesFirst) {
+        this.largestFilesFirst = largestFilesFirst;
+    }
+
+    @Option(names = "--pipeline",
+            description = "Analyze files in a pipeline of stages: files are read by one thread, "
+                    + "parsed and checked by rules by two pools that share the '--threads', "
+                    + "and reported by one thread. Each pool has at least one thread, so '--threads 1' "
+                    + "starts 4 threads. The stages are connected by bounded queues, "
+                    + "which limits the number of files held in memory. Has no effect if '--threads' is 0.")
+    public void setPipelined(final boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    @Option(names = "--pipeline-parser-threads",
+            description = "With '--pipeline', the number of the '--threads' that parse files, "
+                    + "the other threads apply the rules. At least one thread is left to apply the rules. "
+                    + "Defaults to 0, which means half of the threads.")
+    public void setPipelineParserThreads(final int pipelineParserThreads) {
+        this.pipelineParserThreads = pipelineParserThreads;
+    }
+
+    @Option(names = "--single-pass-rule-dispatch",
+            description = "Visit the nodes of each file once, and hand each node to all the rules that target it, "
+                    + "instead of applying the rules one after the other. The reported violations are the same. "
+                    + "This option is experimental.")
+    public void setSinglePassRuleDispatch(final boolean singlePassRuleDispatch) {
+        this.singlePassRuleDispatch = singlePassRuleDispatch;
+    }
+
+    @Option(names = "--file-timeout",
+            description = "Maximum time in seconds that the analysis of a single file may take. "
+                    + "A file that takes longer is reported as a processing error, and the analysis goes on with the other files. "
+                    + "Defaults to 0, which means no timeout.")
+    public void setFileTimeout(final int fileTimeout) {
+        this.fileTimeout = fileTimeout;
+    }
+
+    @Option(names = "--rule-timeout",
+            description = "Maximum time in seconds that a single rule may take on a file. "
+                    + "A rule that takes longer is skipped for the rest of the file and reported as a processing error. "
+                    + "Defaults to 0, which means no timeout.")
+    public void setRuleTimeout(final int ruleTimeout) {
+        this.ruleTimeout = ruleTimeout;
+    }
+
     @Option(names = "--no-cache", description = "Explicitly disable incremental analysis. The '-cache' option is ignored if this switch is present in the command line.")
     public void setNoCache(final boolean noCache) {
         this.noCache = noCache;
     }
 
-    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used by PMD.",
+    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used by PMD. "
+            + "Use 'virtual' to analyze each file on its own virtual thread (Java 21 or later), "
+            + "with as many files being parsed at the same time as there are processors.",
             defaultValue = "1")
-    public void setThreads(final int threads) {
-        if (threads < 0) {
+    public void setThreads(final String threads) {
+        if ("virtual".equalsIgnoreCase(threads)) {
+            this.virtualThreads = true;
+            this.threads = Runtime.getRuntime().availableProcessors();
+            return;
+        }
+
+        final int threadCount;
+        try {
+            threadCount = Integer.parseInt(threads);
+        } catch (NumberFormatException e) {
+            throw new ParameterException(spec.commandLine(), "Thread count should be a number or 'virtual', found " + threads + " instead.");
+        }
+        if (threadCount < 0) {
             throw new ParameterException(spec.commandLine(), "Thread count should be a positive number or zero, found " + threads + " instead.");
         }
-        
-        this.threads = threads;
+
+        this.virtualThreads = false;
+        this.threads = threadCount;
     }
 
     @Option(names = "--no-progress", negatable = true, defaultValue = "true",
@@ -269,9 +382,29 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         configuration.setShowSuppressedViolations(showSuppressed);
         configuration.setSuppressMarker(suppressMarker);
         configuration.setThreads(threads);
+        configuration.setLargestFilesFirst(largestFilesFirst);
+        configuration.setVirtualThreads(virtualThreads);
+        configuration.setPipelined(pipelined);
+        if (pipelineParserThreads < 0) {
+            throw new ParameterException(spec.commandLine(), "The number of parser threads must not be negative.");
+        }
+        configuration.setPipelineParserThreads(pipelineParserThreads);
+        configuration.setSinglePassRuleDispatch(singlePassRuleDispatch);
+        if (fileTimeout < 0 || ruleTimeout < 0) {
+            throw new ParameterException(spec.commandLine(), "The timeouts must not be negative.");
+        }
+        configuration.setFileTimeoutMillis(TimeUnit.SECONDS.toMillis(fileTimeout));
+        configuration.setRuleTimeoutMillis(TimeUnit.SECONDS.toMillis(ruleTimeout));
         configuration.setFailOnViolation(failOnViolation);
         configuration.setFailOnError(failOnError);
-        configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
+        if (cacheLocation != null && sharedCacheLocation != null) {
+            throw new ParameterException(spec.commandLine(), "The options '--cache' and '--shared-cache' cannot be used together.");
+        }
+        if (sharedCacheLocation != null) {
+            configuration.setSharedAnalysisCacheLocation(sharedCacheLocation.toString());
+        } else {
+            configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
+        }
         configuration.setIgnoreIncrementalAnalysis(noCache);
 
         if (languageVersion != null) {
@@ -299,12 +432,21 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
     @Override
     @NonNull
     protected CliExitCode doExecute(PMDConfiguration configuration) {
-        if (benchmark) {
-            TimeTracker.startGlobalTracking();
-        }
-
         final PmdReporter pmdReporter = configuration.getReporter();
 
+        TimingTraceWriter trace = null;
+        if (timingTrace != null) {
+            try {
+                trace = TimingTraceWriter.forFile(timingTrace);
+            } catch (final IOException e) {
+                pmdReporter.errorEx("Could not create the timing trace", e);
+                return CliExitCode.ERROR;
+            }
+        }
+        if (benchmark || benchmarkJson != null || trace != null) {
+            TimeTracker.startGlobalTracking(trace);
+        }
+
         try {
             PmdAnalysis pmd = null;
             try {
@@ -349,7 +491,7 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
             printErrorDetected(pmdReporter, 1);
             return CliExitCode.ERROR;
         } finally {
-            finishBenchmarker(pmdReporter);
+            finishBenchmarker(pmdReporter, trace);
         }
     }
 
@@ -360,10 +502,18 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         reporter.info(StringUtil.quoteMessageFormat(msg));
     }
 
-    private void finishBenchmarker(final PmdReporter pmdReporter) {
-        if (benchmark) {
-            final TimingReport timingReport = TimeTracker.stopGlobalTracking();
+    private void finishBenchmarker(final PmdReporter pmdReporter, final TimingTraceWriter trace) {
+        final TimingReport timingReport = TimeTracker.stopGlobalTracking();
+
+        if (trace != null) {
+            try {
+                trace.close();
+            } catch (final IOException e) {
+                pmdReporter.errorEx("Error writing timing trace", e);
+            }
+        }
 
+        if (benchmark) {
             // TODO get specified report format from config
             final TimingReportRenderer renderer = new TextTimingReportRenderer();
 
@@ -376,6 +526,14 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
                 pmdReporter.errorEx("Error producing benchmark report", e);
             }
         }
+
+        if (benchmarkJson != null) {
+            try (Writer writer = Files.newBufferedWriter(benchmarkJson, StandardCharsets.UTF_8)) {
+                new JsonTimingReportRenderer().render(timingReport, writer);
+            } catch (final IOException e) {
+                pmdReporter.errorEx("Error producing benchmark report", e);
+            }
+        }
     }
 
     /**
@@ -6,6 +6,9 @@ package net.sourceforge.pmd.cli.commands.internal;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -17,6 +20,8 @@ import net.sourceforge.pmd.lang.DummyLanguageModule;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.util.CollectionUtil;
 
+import picocli.CommandLine.ParameterException;
+
 class PmdCommandTest extends BaseCommandTest<PmdCommand> {
 
     @Test
@@ -70,6 +75,47 @@ class PmdCommandTest extends BaseCommandTest<PmdCommand> {
         assertError("-R", "-d", "something");
     }
 
+    @Test
+    void testCacheAndSharedCacheAreExclusive() {
+        final PmdCommand cmd = setupAndParse(
+            "-d", "a", "-R", "x.xml", "--cache", "pmd.cache", "--shared-cache", "cache-dir"
+        );
+        assertThrows(ParameterException.class, cmd::toConfiguration);
+    }
+
+    @Test
+    void testVirtualThreads() {
+        final PMDConfiguration config = setupAndParse(
+            "-d", "a", "-R", "x.xml", "--threads", "virtual"
+        ).toConfiguration();
+        assertTrue(config.isVirtualThreads());
+        assertEquals(Runtime.getRuntime().availableProcessors(), config.getThreads());
+
+        assertFalse(setupAndParse("-d", "a", "-R", "x.xml", "-t", "4").toConfiguration().isVirtualThreads());
+    }
+
+    @Test
+    void testPipeline() {
+        assertTrue(setupAndParse("-d", "a", "-R", "x.xml", "-t", "4", "--pipeline").toConfiguration().isPipelined());
+        assertFalse(setupAndParse("-d", "a", "-R", "x.xml", "-t", "4").toConfiguration().isPipelined());
+    }
+
+    @Test
+    void testPipelineParserThreads() {
+        assertEquals(3, setupAndParse("-d", "a", "-R", "x.xml", "-t", "4", "--pipeline", "--pipeline-parser-threads", "3")
+            .toConfiguration().getPipelineParserThreads());
+        assertEquals(0, setupAndParse("-d", "a", "-R", "x.xml", "-t", "4", "--pipeline").toConfiguration().getPipelineParserThreads());
+
+        final PmdCommand cmd = setupAndParse("-d", "a", "-R", "x.xml", "--pipeline-parser-threads", "-1");
+        assertThrows(ParameterException.class, cmd::toConfiguration);
+    }
+
+    @Test
+    void testSinglePassRuleDispatch() {
+        assertTrue(setupAndParse("-d", "a", "-R", "x.xml", "--single-pass-rule-dispatch").toConfiguration().isSinglePassRuleDispatch());
+        assertFalse(setupAndParse("-d", "a", "-R", "x.xml").toConfiguration().isSinglePassRuleDispatch());
+    }
+
     private void assertMultipleDirsAndRulesets(final PmdCommand result) {
         final PMDConfiguration config = result.toConfiguration();
         assertEquals(listOf("a", "b"), CollectionUtil.map(config.getInputPathList(), Path::toString));
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -18,6 +19,8 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.cache.internal.ContentAddressedAnalysisCache;
+import net.sourceforge.pmd.cache.internal.DirectoryAnalysisCacheStore;
 import net.sourceforge.pmd.cache.internal.FileAnalysisCache;
 import net.sourceforge.pmd.cache.internal.NoopAnalysisCache;
 import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
@@ -98,6 +101,13 @@ public class PMDConfiguration extends AbstractConfiguration {
     // General behavior options
     private String suppressMarker = DEFAULT_SUPPRESS_MARKER;
     private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean largestFilesFirst;
+    private boolean virtualThreads;
+    private boolean pipelined;
+    private int pipelineParserThreads;
+    private boolean singlePassRuleDispatch;
+    private long fileTimeoutMillis;
+    private long ruleTimeoutMillis;
     private ClassLoader classLoader = getClass().getClassLoader();
 
     // Rule and source file options
@@ -160,6 +170,188 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.threads = threads;
     }
 
+    /**
+     * Returns whether the largest files are analysed first, see
+     * {@link #setLargestFilesFirst(boolean)}.
+     *
+     * @return Whether the largest files are analysed first
+     */
+    public boolean isLargestFilesFirst() {
+        return largestFilesFirst;
+    }
+
+    /**
+     * Sets whether the largest files should be analysed first, when the
+     * analysis uses several threads. Files are then scheduled on a work-stealing
+     * thread pool in order of decreasing size, so that a few large files don't
+     * end up being analysed by a single thread at the end of the analysis,
+     * while the other threads are idle. This has no effect if
+     * {@linkplain #getThreads() threads} is 0. Defaults to false, in which
+     * case files are analysed in the order in which they were collected.
+     *
+     * @param largestFilesFirst Whether the largest files should be analysed first
+     */
+    public void setLargestFilesFirst(boolean largestFilesFirst) {
+        this.largestFilesFirst = largestFilesFirst;
+    }
+
+    /**
+     * Returns whether files are analysed on virtual threads, see
+     * {@link #setVirtualThreads(boolean)}.
+     *
+     * @return Whether files are analysed on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether files should be analysed on virtual threads, one per file.
+     * Reading files and querying the analysis cache then never block a
+     * platform thread, while at most {@linkplain #getThreads() threads} files
+     * are parsed and checked by rules at the same time. This has no effect if
+     * {@linkplain #getThreads() threads} is 0. Virtual threads require Java 21
+     * or later, on older versions platform threads are used. Defaults to false.
+     *
+     * @param virtualThreads Whether files should be analysed on virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Returns whether files are analysed in a pipeline of stages, see
+     * {@link #setPipelined(boolean)}.
+     *
+     * @return Whether files are analysed in a pipeline of stages
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Sets whether files should be analysed in a pipeline of stages, each
+     * running on its own threads: files are read by one thread, parsed and
+     * checked by rules by two pools that share the {@linkplain #getThreads() threads},
+     * and their violations are reported by one thread. The split of the threads
+     * is set with {@link #setPipelineParserThreads(int)}. Each pool has at
+     * least one thread, so a pipelined analysis with 1 thread uses 4 threads:
+     * to read, parse, apply the rules and report. The stages are connected
+     * by bounded queues, so that a slow stage slows down the stages before it,
+     * instead of letting files pile up in memory. This has no effect if
+     * {@linkplain #getThreads() threads} is 0, and takes precedence over
+     * {@link #setVirtualThreads(boolean)}. Defaults to false.
+     *
+     * @param pipelined Whether files should be analysed in a pipeline of stages
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Returns the number of threads that parse files in a pipelined
+     * analysis, see {@link #setPipelineParserThreads(int)}.
+     *
+     * @return The number of parser threads, or 0 for half of the threads
+     */
+    public int getPipelineParserThreads() {
+        return pipelineParserThreads;
+    }
+
+    /**
+     * Sets the number of {@linkplain #getThreads() threads} that parse files
+     * in a {@linkplain #setPipelined(boolean) pipelined} analysis, the other
+     * threads apply the rules. At least one thread is left to apply the rules.
+     * Languages whose parsing is slow compared to their rules, or the other way
+     * around, can use this to balance the stages, whose waiting times are
+     * reported by the benchmark. Defaults to 0, which means half of the threads.
+     *
+     * @param pipelineParserThreads The number of parser threads, or 0 for half of the threads
+     *
+     * @throws IllegalArgumentException If the number is negative
+     */
+    public void setPipelineParserThreads(int pipelineParserThreads) {
+        AssertionUtil.requireNonNegative("pipelineParserThreads", pipelineParserThreads);
+        this.pipelineParserThreads = pipelineParserThreads;
+    }
+
+    /**
+     * Returns whether the rules are dispatched in a single pass over each
+     * file, see {@link #setSinglePassRuleDispatch(boolean)}.
+     *
+     * @return Whether the rules are dispatched in a single pass
+     */
+    public boolean isSinglePassRuleDispatch() {
+        return singlePassRuleDispatch;
+    }
+
+    /**
+     * Sets whether the rules should be dispatched in a single pass over each
+     * file: the nodes of the file are visited once, in document order, and
+     * each node is handed to all the rules that target it. By default, the
+     * rules are applied one after the other, and each rule visits all the
+     * nodes it targets. The reported violations are the same in both modes.
+     * This mode is experimental. Defaults to false.
+     *
+     * @param singlePassRuleDispatch Whether the rules should be dispatched in a single pass
+     */
+    public void setSinglePassRuleDispatch(boolean singlePassRuleDispatch) {
+        this.singlePassRuleDispatch = singlePassRuleDispatch;
+    }
+
+    /**
+     * Returns the maximum time that the analysis of a single file may take,
+     * see {@link #setFileTimeoutMillis(long)}.
+     *
+     * @return The timeout in milliseconds, or 0 if there is none
+     */
+    public long getFileTimeoutMillis() {
+        return fileTimeoutMillis;
+    }
+
+    /**
+     * Sets the maximum time that the parsing and analysis of a single file
+     * may take. When a file takes longer, its analysis is stopped and reported
+     * as a processing error, and the analysis goes on with the other files.
+     * The analysis of a file is stopped the next time it checks its budget,
+     * so the timeout is only approximately enforced. Defaults to 0, which
+     * means that there is no timeout.
+     *
+     * @param fileTimeoutMillis The timeout in milliseconds, or 0 for none
+     *
+     * @throws IllegalArgumentException If the timeout is negative
+     */
+    public void setFileTimeoutMillis(long fileTimeoutMillis) {
+        AssertionUtil.requireNonNegative("fileTimeoutMillis", fileTimeoutMillis);
+        this.fileTimeoutMillis = fileTimeoutMillis;
+    }
+
+    /**
+     * Returns the maximum time that a single rule may take on a file,
+     * see {@link #setRuleTimeoutMillis(long)}.
+     *
+     * @return The timeout in milliseconds, or 0 if there is none
+     */
+    public long getRuleTimeoutMillis() {
+        return ruleTimeoutMillis;
+    }
+
+    /**
+     * Sets the maximum time that a single rule may take on a file. When a
+     * rule takes longer, it is skipped for the rest of the file, this is
+     * reported as a processing error, and the other rules are applied. Like
+     * the {@linkplain #setFileTimeoutMillis(long) file timeout}, it is only
+     * approximately enforced. Defaults to 0, which means that there is no timeout.
+     *
+     * @param ruleTimeoutMillis The timeout in milliseconds, or 0 for none
+     *
+     * @throws IllegalArgumentException If the timeout is negative
+     */
+    public void setRuleTimeoutMillis(long ruleTimeoutMillis) {
+        AssertionUtil.requireNonNegative("ruleTimeoutMillis", ruleTimeoutMillis);
+        this.ruleTimeoutMillis = ruleTimeoutMillis;
+    }
+
     /**
      * Get the ClassLoader being used by PMD when processing Rules.
      *
@@ -410,6 +602,27 @@ public class PMDConfiguration extends AbstractConfiguration {
                          : new FileAnalysisCache(new File(cacheLocation)));
     }
 
+    /**
+     * Sets the location of a directory in which to store a shared analysis
+     * cache. Unlike the cache configured with {@link #setAnalysisCacheLocation(String)},
+     * entries of this cache are keyed by the contents of the files, and not by
+     * their path, so they can be reused by analyses of checkouts in other
+     * directories, e.g. on another machine or for another branch. The directory
+     * may be used by several analyses concurrently. Setting a value of {@code null}
+     * will cause a Noop AnalysisCache to be used. This replaces the cache configured
+     * with {@link #setAnalysisCacheLocation(String)}.
+     * If incremental analysis was explicitly disabled ({@link #isIgnoreIncrementalAnalysis()}),
+     * then this method is a noop.
+     *
+     * @param cacheDirectory The directory of the shared analysis cache. Use {@code null}
+     *                       to disable the cache.
+     */
+    public void setSharedAnalysisCacheLocation(final String cacheDirectory) {
+        setAnalysisCache(cacheDirectory == null
+                         ? new NoopAnalysisCache()
+                         : new ContentAddressedAnalysisCache(new DirectoryAnalysisCacheStore(Paths.get(cacheDirectory))));
+    }
+
 
     /**
      * Sets whether the user has explicitly disabled incremental analysis or not.
@@ -382,6 +382,7 @@ public final class PmdAnalysis implements AutoCloseable {
 
     void performAnalysisImpl(List<? extends GlobalReportBuilderListener> extraListeners, List<TextFile> textFiles) {
         RuleSets rulesets = new RuleSets(this.ruleSets);
+        rulesets.setSinglePassRuleDispatch(configuration.isSinglePassRuleDispatch());
 
         GlobalAnalysisListener listener;
         try {
@@ -430,6 +431,12 @@ public final class PmdAnalysis implements AutoCloseable {
                     textFiles,
                     listener,
                     configuration.getThreads(),
+                    configuration.isLargestFilesFirst(),
+                    configuration.isVirtualThreads(),
+                    configuration.isPipelined(),
+                    configuration.getPipelineParserThreads(),
+                    configuration.getFileTimeoutMillis(),
+                    configuration.getRuleTimeoutMillis(),
                     configuration.getAnalysisCache(),
                     reporter,
                     lpRegistry
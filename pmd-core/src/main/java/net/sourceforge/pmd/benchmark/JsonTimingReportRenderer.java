@@ -0,0 +1,95 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.benchmark.TimeTracker.TimedOperationKey;
+import net.sourceforge.pmd.benchmark.TimeTracker.TimedResult;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A JSON renderer for {@link TimingReport}. The measurements of all
+ * categories are in a single array, the most expensive first, ie sorted
+ * by descending self time. Times are in nanoseconds.
+ *
+ * <pre>{@code
+ * {
+ *   "wallClockMillis": 5123,
+ *   "measurements": [
+ *     {
+ *       "category": "RULE",
+ *       "label": "CloseResource",
+ *       "totalTimeNanos": 812000000,
+ *       "selfTimeNanos": 812000000,
+ *       "selfCpuTimeNanos": 790000000,
+ *       "selfAllocatedBytes": 1503238553,
+ *       "calls": 1432,
+ *       "counter": 0
+ *     },
+ *     ...
+ *   ]
+ * }
+ * }</pre>
+ *
+ * <p>Like the self time, the CPU time and the allocated bytes of an
+ * operation exclude those of the operations nested in it, so that the
+ * measurements add up. They are 0 if the JVM doesn't measure them for
+ * each thread.
+ */
+public class JsonTimingReportRenderer implements TimingReportRenderer {
+
+    @Override
+    public void render(final TimingReport report, final Writer writer) throws IOException {
+        final List<Map.Entry<TimedOperationKey, TimedResult>> measurements = new ArrayList<>();
+        for (final TimedOperationCategory category : TimedOperationCategory.values()) {
+            for (final Map.Entry<String, TimedResult> entry : report.getLabeledMeasurements(category).entrySet()) {
+                measurements.add(new SimpleImmutableEntry<>(
+                        new TimedOperationKey(category, entry.getKey()), entry.getValue()));
+            }
+            final TimedResult unlabeled = report.getUnlabeledMeasurements(category);
+            if (unlabeled != null) {
+                measurements.add(new SimpleImmutableEntry<>(
+                        new TimedOperationKey(category, null), unlabeled));
+            }
+        }
+        measurements.sort((a, b) -> Long.compare(b.getValue().selfTimeNanos.get(), a.getValue().selfTimeNanos.get()));
+
+        // not closed, we don't own the writer
+        @SuppressWarnings("PMD.CloseResource")
+        final JsonWriter json = new JsonWriter(writer);
+        json.setIndent("  ");
+        json.beginObject();
+        json.name("wallClockMillis").value(report.getWallClockMillis());
+        json.name("measurements").beginArray();
+        for (final Map.Entry<TimedOperationKey, TimedResult> measurement : measurements) {
+            final TimedOperationKey key = measurement.getKey();
+            final TimedResult result = measurement.getValue();
+            json.beginObject();
+            json.name("category").value(key.category.name());
+            if (key.label != null) {
+                json.name("label").value(key.label);
+            }
+            json.name("totalTimeNanos").value(result.totalTimeNanos.get());
+            json.name("selfTimeNanos").value(result.selfTimeNanos.get());
+            json.name("selfCpuTimeNanos").value(result.selfCpuTimeNanos.get());
+            json.name("selfAllocatedBytes").value(result.selfAllocatedBytes.get());
+            json.name("calls").value(result.callCount.get());
+            json.name("counter").value(result.extraDataCounter.get());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+        writer.write(System.lineSeparator());
+        writer.flush();
+    }
+}
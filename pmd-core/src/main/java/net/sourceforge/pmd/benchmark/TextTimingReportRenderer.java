@@ -26,15 +26,19 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
 
     private static final String TIME_FORMAT = "{0,number,0.0000}";
     private static final String CUSTOM_COUNTER_FORMAT = "{0,number,###,###,###}";
+    private static final String MEMORY_FORMAT = "{0,number,###,###,##0.0}";
 
     private static final int LABEL_COLUMN_WIDTH = 50;
     private static final int TIME_COLUMN_WIDTH = 12;
     private static final int SELF_TIME_COLUMN_WIDTH = 17;
+    private static final int CPU_TIME_COLUMN_WIDTH = 16;
+    private static final int ALLOCATED_COLUMN_WIDTH = 18;
     private static final int CALL_COLUMN_WIDTH = 9;
     private static final int COUNTER_COLUMN_WIDTH = 12;
 
     private static final int COLUMNS = LABEL_COLUMN_WIDTH + TIME_COLUMN_WIDTH
-            + SELF_TIME_COLUMN_WIDTH + CALL_COLUMN_WIDTH + COUNTER_COLUMN_WIDTH;
+            + SELF_TIME_COLUMN_WIDTH + CPU_TIME_COLUMN_WIDTH + ALLOCATED_COLUMN_WIDTH
+            + CALL_COLUMN_WIDTH + COUNTER_COLUMN_WIDTH;
 
     @Override
     public void render(final TimingReport report, final Writer writer0) throws IOException {
@@ -76,6 +80,12 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         final String selfTime = MessageFormat.format(TIME_FORMAT, timedResult.selfTimeNanos.get() / 1000000000.0);
         writer.write(StringUtils.leftPad(selfTime, SELF_TIME_COLUMN_WIDTH));
 
+        final String cpuTime = MessageFormat.format(TIME_FORMAT, timedResult.selfCpuTimeNanos.get() / 1000000000.0);
+        writer.write(StringUtils.leftPad(cpuTime, CPU_TIME_COLUMN_WIDTH));
+
+        final String allocated = MessageFormat.format(MEMORY_FORMAT, timedResult.selfAllocatedBytes.get() / (1024.0 * 1024.0));
+        writer.write(StringUtils.leftPad(allocated, ALLOCATED_COLUMN_WIDTH));
+
         if (timedResult.callCount.get() > 0) {
             final String callCount = MessageFormat.format(CUSTOM_COUNTER_FORMAT, timedResult.callCount.get());
             writer.write(StringUtils.leftPad(callCount, CALL_COLUMN_WIDTH));
@@ -93,7 +103,9 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         renderHeader(category.displayName(), writer);
 
         final TimedResult grandTotal = new TimedResult();
-        final Set<Entry<String, TimedResult>> sortedKeySet = new TreeSet<>(Comparator.comparingLong(o -> o.getValue().selfTimeNanos.get()));
+        final Set<Entry<String, TimedResult>> sortedKeySet = new TreeSet<>(
+                Comparator.<Entry<String, TimedResult>>comparingLong(o -> o.getValue().selfTimeNanos.get())
+                        .thenComparing(Entry::getKey));
         sortedKeySet.addAll(labeledMeasurements.entrySet());
 
         for (final Map.Entry<String, TimedResult> entry : sortedKeySet) {
@@ -130,6 +142,8 @@ public class TextTimingReportRenderer implements TimingReportRenderer {
         writer.write(StringUtils.rightPad("Label", LABEL_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("Time (secs)", TIME_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("Self Time (secs)", SELF_TIME_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad("Self CPU (secs)", CPU_TIME_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad("Self Alloc (MiB)", ALLOCATED_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("# Calls", CALL_COLUMN_WIDTH));
         writer.write(StringUtils.leftPad("Counter", COUNTER_COLUMN_WIDTH));
         writer.println();
@@ -4,6 +4,8 @@
 
 package net.sourceforge.pmd.benchmark;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Objects;
@@ -14,6 +16,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.document.FileId;
+
 /**
  * A time tracker class to measure time spent on different sections of PMD analysis.
  * The class is thread-aware, allowing to differentiate CPU and wall clock time.
@@ -24,8 +30,11 @@ public final class TimeTracker {
 
     private static boolean trackTime = false;
     private static long wallClockStartMillis = -1;
+    private static long startNanos;
+    private static TimingTraceWriter trace;
     private static final ThreadLocal<Queue<TimerEntry>> TIMER_ENTRIES;
     private static final ConcurrentMap<TimedOperationKey, TimedResult> ACCUMULATED_RESULTS = new ConcurrentHashMap<>();
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
     private static final TimedOperation NOOP_TIMED_OPERATION = new TimedOperation() {
 
         @Override
@@ -52,7 +61,20 @@ public final class TimeTracker {
      * Must be called once PMD starts if tracking is desired, no tracking will be performed otherwise.
      */
     public static void startGlobalTracking() {
+        startGlobalTracking(null);
+    }
+
+    /**
+     * Starts global tracking, like {@link #startGlobalTracking()}, and
+     * writes each operation to the given trace as soon as it finishes.
+     * The trace is not closed by {@link #stopGlobalTracking()}.
+     *
+     * @param trace The trace to write the operations to, may be null
+     */
+    public static void startGlobalTracking(@Nullable TimingTraceWriter trace) {
         wallClockStartMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        TimeTracker.trace = trace;
         trackTime = true;
         ACCUMULATED_RESULTS.clear(); // just in case
         initThread(); // init main thread
@@ -69,6 +91,7 @@ public final class TimeTracker {
 
         finishThread(); // finish the main thread
         trackTime = false;
+        trace = null;
 
         // Fix UNACCOUNTED metric (total time is meaningless as is call count)
         final TimedResult unaccountedResult = ACCUMULATED_RESULTS.get(
@@ -126,7 +149,25 @@ public final class TimeTracker {
             return NOOP_TIMED_OPERATION;
         }
 
-        TIMER_ENTRIES.get().add(new TimerEntry(category, label));
+        final Queue<TimerEntry> queue = TIMER_ENTRIES.get();
+        final TimerEntry enclosing = queue.peek();
+        queue.add(new TimerEntry(category, label, enclosing == null ? null : enclosing.file));
+        return new TimedOperationImpl();
+    }
+
+    /**
+     * Starts tracking the processing of a file, under {@link TimedOperationCategory#FILE_PROCESSING}.
+     * The operations started until this one is finished are attributed
+     * to the file in the {@linkplain TimingTraceWriter trace}.
+     * @param file The file that is processed.
+     * @return The current timed operation being tracked.
+     */
+    public static TimedOperation startFileOperation(final FileId file) {
+        if (!trackTime) {
+            return NOOP_TIMED_OPERATION;
+        }
+
+        TIMER_ENTRIES.get().add(new TimerEntry(TimedOperationCategory.FILE_PROCESSING, null, file));
         return new TimedOperationImpl();
     }
 
@@ -144,20 +185,82 @@ public final class TimeTracker {
         final Queue<TimerEntry> queue = TIMER_ENTRIES.get();
         final TimerEntry timerEntry = queue.remove();
 
-        // Compute if absent
-        TimedResult result = ACCUMULATED_RESULTS.get(timerEntry.operation);
-        if (result == null) {
-            ACCUMULATED_RESULTS.putIfAbsent(timerEntry.operation, new TimedResult());
-            result = ACCUMULATED_RESULTS.get(timerEntry.operation);
-        }
+        final TimedResult result = getResult(timerEntry.operation);
 
-        // Update counters and let next element on the stack ignore the time we spent
-        final long delta = result.accumulate(timerEntry, extraDataCounter);
+        // Update counters and let next element on the stack ignore the time and resources we spent
+        final long delta = System.nanoTime() - timerEntry.start;
+        final long cpuTime = currentThreadCpuTime() - timerEntry.startCpuTime;
+        final long allocatedBytes = currentThreadAllocatedBytes() - timerEntry.startAllocatedBytes;
+        result.accumulate(timerEntry, delta, cpuTime, allocatedBytes, extraDataCounter);
         if (!queue.isEmpty()) {
-            queue.peek().inNestedOperationsNanos += delta;
+            final TimerEntry enclosing = queue.peek();
+            enclosing.inNestedOperationsNanos += delta;
+            enclosing.inNestedOperationsCpuTime += cpuTime;
+            enclosing.inNestedOperationsAllocatedBytes += allocatedBytes;
+        }
+
+        // the unaccounted time of a thread is its whole lifetime, not an operation
+        if (trace != null && timerEntry.operation.category != TimedOperationCategory.UNACCOUNTED) {
+            trace.operationFinished(timerEntry.operation.category, timerEntry.operation.label, timerEntry.file,
+                                    timerEntry.start - startNanos, delta, extraDataCounter);
+        }
+    }
+
+    /**
+     * Records an operation that the caller timed itself, because it is
+     * interleaved with other operations, eg the rules applied to the nodes
+     * of a tree in a single pass. It counts as one call, nested in the
+     * current operation. Only its wall clock time is measured, its CPU time
+     * and allocations are counted in the current operation. No other
+     * operation may be started while it runs.
+     * @param category The category under which to track the operation.
+     * @param label A label to be added to the category. Allows to differentiate measures within a single category.
+     * @param start When the operation started, as given by {@link System#nanoTime()}.
+     * @param nanos The wall clock time spent in the operation.
+     * @param extraDataCounter An optional additional data counter to track along the measurements.
+     */
+    public static void recordOperation(final TimedOperationCategory category, final String label,
+                                       final long start, final long nanos, final long extraDataCounter) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedOperationKey operation = new TimedOperationKey(category, label);
+        final TimedResult result = getResult(operation);
+        result.totalTimeNanos.getAndAdd(nanos);
+        result.selfTimeNanos.getAndAdd(nanos);
+        result.callCount.getAndIncrement();
+        result.extraDataCounter.getAndAdd(extraDataCounter);
+
+        final TimerEntry enclosing = TIMER_ENTRIES.get().peek();
+        if (enclosing != null) {
+            enclosing.inNestedOperationsNanos += nanos;
+        }
+        if (trace != null) {
+            trace.operationFinished(category, label, enclosing == null ? null : enclosing.file,
+                                    start - startNanos, nanos, extraDataCounter);
         }
     }
 
+    /**
+     * Returns true if operations are being tracked, ie between {@link #startGlobalTracking()}
+     * and {@link #stopGlobalTracking()}. Callers of {@link #recordOperation(TimedOperationCategory, String, long, long, long)}
+     * may use it to only time their operations when needed.
+     */
+    public static boolean isTracking() {
+        return trackTime;
+    }
+
+    private static TimedResult getResult(final TimedOperationKey operation) {
+        // Compute if absent
+        TimedResult result = ACCUMULATED_RESULTS.get(operation);
+        if (result == null) {
+            ACCUMULATED_RESULTS.putIfAbsent(operation, new TimedResult());
+            result = ACCUMULATED_RESULTS.get(operation);
+        }
+        return result;
+    }
+
     public static void bench(String label, Runnable runnable) {
         try (TimedOperation ignored = startOperation(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, label)) {
             runnable.run();
@@ -170,16 +273,49 @@ public final class TimeTracker {
         }
     }
 
+    /**
+     * Returns the CPU time used by the current thread so far, or 0 if the
+     * JVM doesn't measure it.
+     */
+    private static long currentThreadCpuTime() {
+        if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+            return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far,
+     * or 0 if the JVM doesn't measure it.
+     */
+    private static long currentThreadAllocatedBytes() {
+        if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
     /**
      * An entry in the open timers queue. Defines an operation that has started and hasn't finished yet.
      */
     private static class TimerEntry {
         /* package */ final TimedOperationKey operation;
         /* package */ final long start;
+        /* package */ final long startCpuTime;
+        /* package */ final long startAllocatedBytes;
+        /* package */ final FileId file;
         /* package */ long inNestedOperationsNanos = 0;
+        /* package */ long inNestedOperationsCpuTime = 0;
+        /* package */ long inNestedOperationsAllocatedBytes = 0;
 
-        /* package */ TimerEntry(final TimedOperationCategory category, final String label) {
+        /* package */ TimerEntry(final TimedOperationCategory category, final String label, final FileId file) {
             this.operation = new TimedOperationKey(category, label);
+            this.file = file;
+            this.startAllocatedBytes = currentThreadAllocatedBytes();
+            this.startCpuTime = currentThreadCpuTime();
             this.start = System.nanoTime();
         }
 
@@ -191,37 +327,44 @@ public final class TimeTracker {
 
     /**
      * Aggregate results measured so far for a given category + label.
+     * The CPU time and the allocated bytes exclude those of the nested
+     * operations, like the self time.
      */
     /* package */ static class TimedResult {
         /* package */ AtomicLong totalTimeNanos = new AtomicLong();
         /* package */ AtomicLong selfTimeNanos = new AtomicLong();
         /* package */ AtomicInteger callCount = new AtomicInteger();
         /* package */ AtomicLong extraDataCounter = new AtomicLong();
+        /* package */ AtomicLong selfCpuTimeNanos = new AtomicLong();
+        /* package */ AtomicLong selfAllocatedBytes = new AtomicLong();
 
         /**
          * Adds a new {@link TimerEntry} to the results.
          * @param timerEntry The entry to be added
+         * @param delta The wall clock time spent since the entry began, in nanos
+         * @param cpuTime The CPU time spent since the entry began, in nanos
+         * @param allocatedBytes The bytes allocated since the entry began
          * @param extraData Any extra data counter to be added
-         * @return The delta time transcurred since the {@link TimerEntry} began in nanos.
          */
-        /* package */ long accumulate(final TimerEntry timerEntry, final long extraData) {
-            final long delta = System.nanoTime() - timerEntry.start;
-
+        /* package */ void accumulate(final TimerEntry timerEntry, final long delta, final long cpuTime,
+                                      final long allocatedBytes, final long extraData) {
             totalTimeNanos.getAndAdd(delta);
             selfTimeNanos.getAndAdd(delta - timerEntry.inNestedOperationsNanos);
             callCount.getAndIncrement();
             extraDataCounter.getAndAdd(extraData);
-
-            return delta;
+            selfCpuTimeNanos.getAndAdd(cpuTime - timerEntry.inNestedOperationsCpuTime);
+            selfAllocatedBytes.getAndAdd(allocatedBytes - timerEntry.inNestedOperationsAllocatedBytes);
         }
 
         /**
-         * Merges the times (and only the times) from another {@link TimedResult} into self.
+         * Merges the times and the used resources (and only those) from another {@link TimedResult} into self.
          * @param timedResult The {@link TimedResult} to merge
          */
         /* package */ void mergeTimes(final TimedResult timedResult) {
             totalTimeNanos.getAndAdd(timedResult.totalTimeNanos.get());
             selfTimeNanos.getAndAdd(timedResult.selfTimeNanos.get());
+            selfCpuTimeNanos.getAndAdd(timedResult.selfCpuTimeNanos.get());
+            selfAllocatedBytes.getAndAdd(timedResult.selfAllocatedBytes.get());
         }
     }
 
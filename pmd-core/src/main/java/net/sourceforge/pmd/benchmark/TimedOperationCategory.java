@@ -26,6 +26,12 @@ public enum TimedOperationCategory {
     RULE_AST_INDEXATION,
     REPORTING,
     FILE_PROCESSING,
+    /**
+     * Subdivided into one label for each queue of a pipelined analysis.
+     * The time is spent waiting for room in the queue, the counter is
+     * the sum of the queue depths after each file was put into it.
+     */
+    PIPELINE_QUEUE,
     ANALYSIS_CACHE,
     UNACCOUNTED;
 
@@ -0,0 +1,153 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.document.FileId;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes each operation tracked by the {@link TimeTracker} as soon as it
+ * finishes, instead of only aggregating it in the {@link TimingReport}.
+ * The output uses the JSON array flavor of the
+ * <a href="https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">Chrome
+ * trace event format</a>, which can be loaded into Perfetto or
+ * {@code chrome://tracing}. There is one event per line, so that the
+ * file can also be read line by line, after removing the trailing comma.
+ *
+ * <p>Each operation is a complete event ({@code "ph": "X"}) whose name is
+ * the label of the operation (eg the name of a rule) or the name of its
+ * category, with the start time and duration in microseconds, the thread
+ * that executed it, and in the {@code args}, the file that was processed
+ * and the extra data counter, if any. The names of the threads are written
+ * as metadata events.
+ *
+ * @see TimeTracker#startGlobalTracking(TimingTraceWriter)
+ */
+public final class TimingTraceWriter implements AutoCloseable {
+
+    private static final int PID = 1;
+
+    private final Writer writer;
+    private final Set<Long> knownThreads = new HashSet<>();
+    private boolean firstEvent = true;
+    private IOException error;
+
+    /**
+     * Creates a trace writer that writes to the given writer, and closes
+     * it when it is closed.
+     *
+     * @param writer Writer for the trace
+     */
+    public TimingTraceWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates a trace writer that writes to the given file, in UTF-8.
+     *
+     * @param file File to create or overwrite
+     *
+     * @throws IOException If the file cannot be opened
+     */
+    public static TimingTraceWriter forFile(Path file) throws IOException {
+        return new TimingTraceWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+    }
+
+    /* package */ synchronized void operationFinished(final TimedOperationCategory category,
+                                                      final @Nullable String label,
+                                                      final @Nullable FileId file,
+                                                      final long startNanos,
+                                                      final long durationNanos,
+                                                      final long extraDataCounter) {
+        if (error != null) {
+            return;
+        }
+        final Thread thread = Thread.currentThread();
+        try {
+            if (knownThreads.add(thread.getId())) {
+                writeEvent(threadName(thread));
+            }
+            writeEvent(completeEvent(category, label, file, startNanos, durationNanos, extraDataCounter, thread.getId()));
+        } catch (IOException e) {
+            // reported when the trace is closed, the analysis goes on
+            error = e;
+        }
+    }
+
+    private void writeEvent(String event) throws IOException {
+        writer.write(firstEvent ? "[\n" : ",\n");
+        writer.write(event);
+        firstEvent = false;
+    }
+
+    private static String threadName(Thread thread) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            json.name("name").value("thread_name");
+            json.name("ph").value("M");
+            json.name("pid").value(PID);
+            json.name("tid").value(thread.getId());
+            json.name("args").beginObject().name("name").value(thread.getName()).endObject();
+            json.endObject();
+        }
+        return out.toString();
+    }
+
+    private static String completeEvent(TimedOperationCategory category, @Nullable String label, @Nullable FileId file,
+                                        long startNanos, long durationNanos, long extraDataCounter, long threadId) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            json.name("name").value(label != null ? label : category.displayName());
+            json.name("cat").value(category.displayName());
+            json.name("ph").value("X");
+            json.name("ts").value(TimeUnit.NANOSECONDS.toMicros(startNanos));
+            json.name("dur").value(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            json.name("pid").value(PID);
+            json.name("tid").value(threadId);
+            if (file != null || extraDataCounter != 0) {
+                json.name("args").beginObject();
+                if (file != null) {
+                    json.name("file").value(file.getAbsolutePath());
+                }
+                if (extraDataCounter != 0) {
+                    json.name("count").value(extraDataCounter);
+                }
+                json.endObject();
+            }
+            json.endObject();
+        }
+        return out.toString();
+    }
+
+    /**
+     * Ends the trace and closes the underlying writer.
+     *
+     * @throws IOException If the trace could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try (Writer ignored = writer) {
+            if (error != null) {
+                throw error;
+            }
+            writer.write(firstEvent ? "[\n]\n" : "\n]\n");
+        }
+    }
+}
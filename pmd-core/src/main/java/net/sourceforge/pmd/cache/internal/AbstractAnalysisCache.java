@@ -18,10 +18,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +39,7 @@ import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.Report.ProcessingError;
@@ -46,13 +53,20 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     protected static final Logger LOG = LoggerFactory.getLogger(AbstractAnalysisCache.class);
     protected static final ClasspathFingerprinter FINGERPRINTER = new ClasspathFingerprinter();
     protected final String pmdVersion;
-    protected final ConcurrentMap<FileId, AnalysisResult> fileResultsCache = new ConcurrentHashMap<>();
     protected final ConcurrentMap<FileId, AnalysisResult> updatedResultsCache = new ConcurrentHashMap<>();
     protected final CachedRuleMapper ruleMapper = new CachedRuleMapper();
-    protected long rulesetChecksum;
+    /** Checksum of each rule, by {@linkplain CachedRuleMapper#getRuleKey(Rule) rule key}. */
+    protected Map<String, Long> ruleChecksums = new HashMap<>();
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
 
+    // Keys of the rules whose cached results are still valid
+    private Set<String> upToDateRules = Collections.emptySet();
+    // Whether some rules have been added or changed since the cache was written
+    private boolean rulesChanged;
+    // Whether some rules have been removed since the cache was written
+    private boolean rulesRemoved;
+
     /**
      * Creates a new empty cache
      */
@@ -63,21 +77,25 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     @Override
     public boolean isUpToDate(final TextDocument document) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "up-to-date check")) {
-            final AnalysisResult cachedResult = fileResultsCache.get(document.getFileId());
+            final AnalysisResult cachedResult = getCachedResult(document);
             final AnalysisResult updatedResult;
 
-            // is this a known file? has it changed?
+            // is this a known file? has it changed? have rules changed?
             final boolean upToDate = cachedResult != null
-                && cachedResult.getFileChecksum() == document.getCheckSum();
+                && cachedResult.getFileChecksum() == document.getCheckSum()
+                && !rulesChanged;
 
             if (upToDate) {
                 LOG.trace("Incremental Analysis cache HIT");
                 
-                // copy results over
-                updatedResult = cachedResult;
+                // copy results over, without the violations of removed rules
+                updatedResult = rulesRemoved
+                                ? new AnalysisResult(cachedResult.getFileChecksum(), getUpToDateViolations(cachedResult))
+                                : cachedResult;
             } else {
                 LOG.trace("Incremental Analysis cache MISS - {}",
-                          cachedResult != null ? "file changed" : "no previous result found");
+                          cachedResult == null ? "no previous result found"
+                                               : rulesChanged ? "rules changed" : "file changed");
                 
                 // New file being analyzed, create new empty entry
                 updatedResult = new AnalysisResult(document.getCheckSum(), new ArrayList<>());
@@ -91,14 +109,37 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
 
     @Override
     public List<RuleViolation> getCachedViolations(final TextDocument sourceFile) {
-        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getFileId());
+        final AnalysisResult analysisResult = getCachedResult(sourceFile);
 
-        if (analysisResult == null) {
-            // new file, avoid nulls
+        if (analysisResult == null || analysisResult.getFileChecksum() != sourceFile.getCheckSum()) {
+            // new or changed file, avoid nulls
             return Collections.emptyList();
         }
 
-        return analysisResult.getViolations();
+        return rulesChanged || rulesRemoved ? getUpToDateViolations(analysisResult) : analysisResult.getViolations();
+    }
+
+    @Override
+    public Predicate<Rule> getRulesToRun(TextDocument document) {
+        if (!rulesChanged) {
+            return rule -> true;
+        }
+        final AnalysisResult analysisResult = getCachedResult(document);
+        if (analysisResult == null || analysisResult.getFileChecksum() != document.getCheckSum()) {
+            return rule -> true;
+        }
+        // the results of the other rules are in the cache
+        return rule -> !upToDateRules.contains(CachedRuleMapper.getRuleKey(rule));
+    }
+
+    private List<RuleViolation> getUpToDateViolations(AnalysisResult analysisResult) {
+        final List<RuleViolation> violations = new ArrayList<>();
+        for (RuleViolation violation : analysisResult.getViolations()) {
+            if (upToDateRules.contains(CachedRuleMapper.getRuleKey(violation))) {
+                violations.add(violation);
+            }
+        }
+        return violations;
     }
 
     @Override
@@ -107,6 +148,27 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     }
 
 
+    /**
+     * Returns the result of the previous analysis of the given file, or
+     * null if there is none. This may be called concurrently.
+     */
+    protected abstract @Nullable AnalysisResult getCachedResult(TextDocument document);
+
+    /**
+     * Discards the results of the previous analysis, when the cache
+     * has been found to be invalid.
+     */
+    protected abstract void clearCachedResults();
+
+    /**
+     * Called when the analysis of the given file is finished, and its
+     * cached result will not be looked up again. Implementations may
+     * release what they kept about the file in the meantime.
+     */
+    protected void fileAnalysisFinished(FileId fileId) {
+        // nothing to release by default
+    }
+
     /**
      * Returns true if the cache exists. If so, normal cache validity checks
      * will be performed. Otherwise, the cache is necessarily invalid (e.g. on a first run).
@@ -119,27 +181,14 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "validity check")) {
             boolean cacheIsValid = cacheExists();
 
-            if (cacheIsValid && ruleSets.getChecksum() != rulesetChecksum) {
-                LOG.debug("Analysis cache invalidated, rulesets changed.");
+            final long currentAuxClassPathChecksum = computeAuxClassPathChecksum(auxclassPathClassLoader);
+            if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
+                // TODO some rules don't need that (in fact, some languages)
+                LOG.debug("Analysis cache invalidated, auxclasspath changed.");
                 cacheIsValid = false;
             }
 
-            final long currentAuxClassPathChecksum;
-            if (auxclassPathClassLoader instanceof URLClassLoader) {
-                // we don't want to close our aux classpath loader - we still need it...
-                @SuppressWarnings("PMD.CloseResource") final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
-                currentAuxClassPathChecksum = FINGERPRINTER.fingerprint(urlClassLoader.getURLs());
-
-                if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
-                    // TODO some rules don't need that (in fact, some languages)
-                    LOG.debug("Analysis cache invalidated, auxclasspath changed.");
-                    cacheIsValid = false;
-                }
-            } else {
-                currentAuxClassPathChecksum = 0;
-            }
-
-            final long currentExecutionClassPathChecksum = FINGERPRINTER.fingerprint(getClassPathEntries());
+            final long currentExecutionClassPathChecksum = computeExecutionClassPathChecksum();
             if (cacheIsValid && currentExecutionClassPathChecksum != executionClassPathChecksum) {
                 LOG.debug("Analysis cache invalidated, execution classpath changed.");
                 cacheIsValid = false;
@@ -147,22 +196,63 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
 
             if (!cacheIsValid) {
                 // Clear the cache
-                fileResultsCache.clear();
+                clearCachedResults();
+                ruleChecksums = Collections.emptyMap();
+            }
+
+            // Rules that were added or changed need to be run again on every file,
+            // but the cached results of the other rules are still valid.
+            final Map<String, Long> currentRuleChecksums = new HashMap<>();
+            ruleSets.getRuleChecksums().forEach(
+                (rule, checksum) -> currentRuleChecksums.merge(CachedRuleMapper.getRuleKey(rule), checksum, (a, b) -> a * 31 + b));
+            final Set<String> unchangedRules = new HashSet<>();
+            currentRuleChecksums.forEach((key, checksum) -> {
+                if (checksum.equals(ruleChecksums.get(key))) {
+                    unchangedRules.add(key);
+                }
+            });
+            upToDateRules = unchangedRules;
+            rulesChanged = unchangedRules.size() < currentRuleChecksums.size();
+            rulesRemoved = unchangedRules.size() < ruleChecksums.size();
+            if (cacheIsValid && (rulesChanged || rulesRemoved)) {
+                LOG.debug("Analysis cache partially invalidated, {} rules added or changed, {} rules removed.",
+                          currentRuleChecksums.size() - unchangedRules.size(), ruleChecksums.size() - unchangedRules.size());
             }
 
             // Update the local checksums
-            rulesetChecksum = ruleSets.getChecksum();
+            ruleChecksums = currentRuleChecksums;
             auxClassPathChecksum = currentAuxClassPathChecksum;
             executionClassPathChecksum = currentExecutionClassPathChecksum;
             ruleMapper.initialize(ruleSets);
         }
     }
 
+    /**
+     * Returns a fingerprint of the contents of the auxclasspath, or 0 if
+     * the class loader is not a {@link URLClassLoader}.
+     */
+    static long computeAuxClassPathChecksum(ClassLoader auxclassPathClassLoader) {
+        if (auxclassPathClassLoader instanceof URLClassLoader) {
+            // we don't want to close our aux classpath loader - we still need it...
+            @SuppressWarnings("PMD.CloseResource") final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
+            return FINGERPRINTER.fingerprint(urlClassLoader.getURLs());
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a fingerprint of the contents of the execution classpath,
+     * which contains PMD and the implementation of custom rules.
+     */
+    static long computeExecutionClassPathChecksum() {
+        return FINGERPRINTER.fingerprint(getClassPathEntries());
+    }
+
     private static boolean isClassPathWildcard(String entry) {
         return entry.endsWith("/*") || entry.endsWith("\\*");
     }
 
-    private URL[] getClassPathEntries() {
+    private static URL[] getClassPathEntries() {
         final String classpath = System.getProperty("java.class.path");
         final String[] classpathEntries = classpath.split(File.pathSeparator);
         final List<URL> entries = new ArrayList<>();
@@ -229,6 +319,11 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
                 failed = true;
                 analysisFailed(file);
             }
+
+            @Override
+            public void close() {
+                fileAnalysisFinished(fileName);
+            }
         };
     }
 }
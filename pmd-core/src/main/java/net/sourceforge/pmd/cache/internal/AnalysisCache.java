@@ -7,9 +7,11 @@ package net.sourceforge.pmd.cache.internal;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
@@ -45,6 +47,19 @@ public interface AnalysisCache {
      */
     List<RuleViolation> getCachedViolations(TextDocument sourceFile);
 
+    /**
+     * Returns the rules that need to be run on the given file, which is not
+     * {@linkplain #isUpToDate(TextDocument) up to date}. The results of the
+     * other rules are part of the {@linkplain #getCachedViolations(TextDocument) cached violations}.
+     * By default, all rules need to be run.
+     *
+     * @param document The file to analyse
+     * @return A filter for the rules to run
+     */
+    default Predicate<Rule> getRulesToRun(TextDocument document) {
+        return rule -> true;
+    }
+
     /**
      * Notifies the cache that analysis of the given file has failed and should not be cached.
      * @param sourceFile The file whose analysis failed
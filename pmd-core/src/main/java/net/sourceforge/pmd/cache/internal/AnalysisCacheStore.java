@@ -0,0 +1,40 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.IOException;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Storage backend of a {@link ContentAddressedAnalysisCache}. The key of
+ * an entry is derived from everything its data depends on, so the data
+ * stored for a key never changes. Implementations may thus keep any of the
+ * values stored concurrently for the same key, and don't need any locking.
+ * Implementations must be thread-safe.
+ */
+public interface AnalysisCacheStore {
+
+    /**
+     * Returns the data stored for the given key, or null if there is none.
+     *
+     * @param key The key, a string of lowercase hexadecimal digits
+     *
+     * @throws IOException If the data cannot be read
+     */
+    byte @Nullable [] load(String key) throws IOException;
+
+    /**
+     * Stores the data for the given key. Concurrent readers must either
+     * see the whole data, or none of it.
+     *
+     * @param key  The key, a string of lowercase hexadecimal digits
+     * @param data The data to store
+     *
+     * @throws IOException If the data cannot be written
+     */
+    void store(String key, byte[] data) throws IOException;
+
+}
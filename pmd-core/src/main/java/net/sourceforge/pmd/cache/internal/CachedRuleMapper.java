@@ -9,6 +9,7 @@ import java.util.Map;
 
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.RuleViolation;
 
 /**
  * A mapper from rule class names to rule instances for cached rules.
@@ -34,11 +35,33 @@ class CachedRuleMapper {
      */
     public void initialize(final RuleSets rs) {
         for (final Rule r : rs.getAllRules()) {
-            cachedRulesInstances.put(getRuleKey(r.getRuleClass(), r.getName(), r.getLanguage().getId()), r);
+            cachedRulesInstances.put(getRuleKey(r), r);
         }
     }
 
-    private String getRuleKey(final String className, final String ruleName, final String languageName) {
+    /**
+     * Returns the key that identifies the given rule across runs.
+     * @param rule The rule
+     * @return The key of the rule
+     */
+    static String getRuleKey(final Rule rule) {
+        return getRuleKey(rule.getRuleClass(), rule.getName(), rule.getLanguage().getId());
+    }
+
+    /**
+     * Returns the key of the rule that reported the given violation. This
+     * works even if the rule is not part of the current analysis anymore.
+     * @param violation The violation
+     * @return The key of the rule
+     */
+    static String getRuleKey(final RuleViolation violation) {
+        if (violation instanceof CachedRuleViolation) {
+            return ((CachedRuleViolation) violation).getRuleKey();
+        }
+        return getRuleKey(violation.getRule());
+    }
+
+    static String getRuleKey(final String className, final String ruleName, final String languageName) {
         return className + "$$" + ruleName + "$$" + languageName;
     }
 }
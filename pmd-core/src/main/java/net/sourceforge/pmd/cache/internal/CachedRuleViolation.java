@@ -56,6 +56,11 @@ final class CachedRuleViolation implements RuleViolation {
         return mapper.getRuleForClass(ruleClassName, ruleName, ruleTargetLanguage);
     }
 
+    /** Returns the key of the rule, see {@link CachedRuleMapper#getRuleKey(String, String, String)}. */
+    String getRuleKey() {
+        return CachedRuleMapper.getRuleKey(ruleClassName, ruleName, ruleTargetLanguage);
+    }
+
     @Override
     public String getDescription() {
         return description;
@@ -0,0 +1,238 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.InternalApiBridge;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * An analysis cache whose entries are keyed by the contents of the files,
+ * instead of their path. The key of an entry is a SHA-256 digest of
+ * <ul>
+ *     <li>the PMD version and the execution classpath,
+ *     <li>the auxclasspath,
+ *     <li>the language version of the file,
+ *     <li>the checksums of the rules that apply to the file,
+ *     <li>the name (without directory) and the text of the file.
+ * </ul>
+ * The directory of a file is not part of the key, so entries can be shared
+ * across checkouts in different directories, branches, and machines.
+ * Entries are persisted to an {@link AnalysisCacheStore} as soon as the
+ * analysis of their file is done.
+ */
+public class ContentAddressedAnalysisCache implements AnalysisCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContentAddressedAnalysisCache.class);
+
+    /** Version of the format of entries, which is part of their key. */
+    private static final int FORMAT_VERSION = 1;
+
+    private final AnalysisCacheStore store;
+    private final CachedRuleMapper ruleMapper = new CachedRuleMapper();
+
+    // Set by checkValidity
+    private String analysisFingerprint = "";
+    private RuleSets ruleSets = new RuleSets(Collections.emptyList());
+    private Map<Rule, Long> ruleChecksums = Collections.emptyMap();
+
+    private final ConcurrentMap<FileId, List<RuleViolation>> cachedViolations = new ConcurrentHashMap<>();
+    // Keys of the files that were not found in the store, and whose results are not stored yet
+    private final ConcurrentMap<FileId, String> pendingKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Creates a new cache backed by the given store.
+     * @param store The store in which to look up and store entries
+     */
+    public ContentAddressedAnalysisCache(AnalysisCacheStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "validity check")) {
+            // Nothing is invalidated: anything that may change the results is part of the keys
+            this.analysisFingerprint = FORMAT_VERSION + "\n"
+                + PMDVersion.VERSION + "\n"
+                + AbstractAnalysisCache.computeExecutionClassPathChecksum() + "\n"
+                + AbstractAnalysisCache.computeAuxClassPathChecksum(auxclassPathClassLoader) + "\n";
+            this.ruleSets = ruleSets;
+            this.ruleChecksums = ruleSets.getRuleChecksums();
+            ruleMapper.initialize(ruleSets);
+        }
+    }
+
+    @Override
+    public boolean isUpToDate(TextDocument document) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "up-to-date check")) {
+            final String key = computeKey(document);
+            final List<RuleViolation> violations = loadEntry(key, document.getFileId());
+            if (violations != null) {
+                LOG.trace("Shared analysis cache HIT");
+                hits.incrementAndGet();
+                cachedViolations.put(document.getFileId(), violations);
+                return true;
+            }
+            LOG.trace("Shared analysis cache MISS");
+            misses.incrementAndGet();
+            pendingKeys.put(document.getFileId(), key);
+            return false;
+        }
+    }
+
+    private String computeKey(TextDocument document) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every implementation of the Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder header = new StringBuilder(analysisFingerprint);
+        header.append(document.getLanguageVersion().getTerseName()).append('\n');
+        header.append(computeRulesChecksum(document)).append('\n');
+        header.append(document.getFileId().getFileName()).append('\n');
+        digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(document.getText().toString().getBytes(StandardCharsets.UTF_8));
+
+        final StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Combines the checksums of the rules that apply to the file. The file
+     * inclusions and exclusions of rulesets are matched against the full
+     * path of the file, so this may depend on the location of the file.
+     */
+    private long computeRulesChecksum(TextDocument document) {
+        long checksum = 1;
+        for (RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            if (InternalApiBridge.ruleSetApplies(ruleSet, document.getFileId())) {
+                for (Rule rule : ruleSet.getRules()) {
+                    if (InternalApiBridge.ruleSetApplies(rule, document.getLanguageVersion())) {
+                        checksum = checksum * 31 + ruleChecksums.getOrDefault(rule, 0L);
+                    }
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private List<RuleViolation> loadEntry(String key, FileId fileId) {
+        try {
+            final byte[] data = store.load(key);
+            if (data == null) {
+                return null;
+            }
+            final DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(data));
+            final int count = inputStream.readInt();
+            final List<RuleViolation> violations = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
+            }
+            return violations;
+        } catch (IOException e) {
+            LOG.warn("Could not load entry {} of the shared analysis cache: {}", key, e.toString());
+            return null;
+        }
+    }
+
+    private void storeEntry(String key, List<RuleViolation> violations) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+                outputStream.writeInt(violations.size());
+                for (RuleViolation violation : violations) {
+                    CachedRuleViolation.storeToStream(outputStream, violation);
+                }
+            }
+            store.store(key, bytes.toByteArray());
+        } catch (IOException e) {
+            LOG.warn("Could not store entry {} of the shared analysis cache: {}", key, e.toString());
+        }
+    }
+
+    @Override
+    public List<RuleViolation> getCachedViolations(TextDocument sourceFile) {
+        return cachedViolations.getOrDefault(sourceFile.getFileId(), Collections.emptyList());
+    }
+
+    @Override
+    public void analysisFailed(TextDocument sourceFile) {
+        pendingKeys.remove(sourceFile.getFileId());
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextDocument file) {
+        return new FileAnalysisListener() {
+            private final List<RuleViolation> violations = new ArrayList<>();
+            private boolean failed = false;
+
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                if (!failed) {
+                    violations.add(violation);
+                }
+            }
+
+            @Override
+            public void onError(ProcessingError error) {
+                failed = true;
+                analysisFailed(file);
+            }
+
+            @Override
+            public void close() {
+                // files that were found in the store have no pending key
+                final String key = pendingKeys.remove(file.getFileId());
+                if (key != null && !failed) {
+                    storeEntry(key, violations);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void persist() {
+        // entries are stored as soon as their file has been analysed
+        LOG.debug("Shared analysis cache: {} hits, {} misses", hits.get(), misses.get());
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A store that keeps each entry in its own file, in a local directory.
+ * The directory can be shared by several PMD processes running at the same
+ * time, without any locking: entries are written to a temporary file, which
+ * is then atomically renamed to its final name. Entries are spread over 256
+ * subdirectories, named after the first two digits of their key.
+ *
+ * <p>Entries are never deleted by PMD. Any entry, or the whole directory,
+ * may be deleted at any time to reclaim space, e.g. based on the last
+ * modification time of the files.
+ */
+public class DirectoryAnalysisCacheStore implements AnalysisCacheStore {
+
+    private final Path directory;
+
+    /**
+     * Creates a new store in the given directory. The directory is created
+     * when the first entry is stored, if it does not exist.
+     *
+     * @param directory The directory in which to store entries
+     */
+    public DirectoryAnalysisCacheStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public byte @Nullable [] load(String key) throws IOException {
+        try {
+            return Files.readAllBytes(getEntryPath(key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void store(String key, byte[] data) throws IOException {
+        final Path entry = getEntryPath(key);
+        if (Files.exists(entry)) {
+            // another run already stored the same data
+            return;
+        }
+        Files.createDirectories(entry.getParent());
+
+        // the name of the temporary file is unique across processes
+        final Path tempFile = entry.resolveSibling(entry.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.write(tempFile, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            moveIntoPlace(tempFile, entry);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            try {
+                Files.move(source, target);
+            } catch (FileAlreadyExistsException ignored) {
+                // another process won the race, its data is the same
+            }
+        } catch (FileSystemException e) {
+            // On Windows, the target cannot be replaced while it is being read.
+            // That's only a problem if it doesn't exist.
+            if (!Files.exists(target)) {
+                throw e;
+            }
+        }
+    }
+
+    private Path getEntryPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+}
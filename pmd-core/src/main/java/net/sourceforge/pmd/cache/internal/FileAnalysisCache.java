@@ -4,36 +4,90 @@
 
 package net.sourceforge.pmd.cache.internal;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.RuleViolation;
 
 /**
  * An analysis cache backed by a regular file.
+ *
+ * <p>The file starts with a header and an index of all records, sorted
+ * by the hash of their file URI. The file is memory-mapped when it is
+ * loaded, and records are looked up in the index when they are needed,
+ * so loading the cache does not depend on its size. The violations of a
+ * record are only decoded if they are requested. When the cache is
+ * persisted, records of files that are up to date are copied to the new
+ * file as is.
+ *
+ * <p>Layout of the file:
+ * <pre>
+ * header:  int magic, int format version, UTF PMD version,
+ *          int rule count, per rule: UTF rule key, long rule checksum,
+ *          long auxclasspath checksum, long execution classpath checksum,
+ *          int record count
+ * index:   per record: long URI hash, int record offset, int record length
+ * records: per record: UTF URI, long file checksum, int violation count,
+ *          violations (see {@link CachedRuleViolation#storeToStream(DataOutputStream, RuleViolation)})
+ * </pre>
  */
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
+    private static final int MAGIC = 0x504D4443; // "PMDC"
+    private static final int FORMAT_VERSION = 2;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * On Windows, a file cannot be replaced while it is mapped, and Java
+     * offers no way to unmap it. There, the file is read into memory instead.
+     */
+    private static final boolean CAN_REPLACE_MAPPED_FILE = File.separatorChar == '/';
+
     private final File cacheFile;
 
+    // Contents of the cache file, null if it has not been loaded or is invalid
+    private @Nullable ByteBuffer contents;
+    private int indexOffset;
+    private int recordCount;
+    // Results that have been looked up, which are looked up again for the same file
+    // by isUpToDate, getCachedViolations and getRulesToRun, until its analysis is finished
+    private final ConcurrentMap<FileId, MappedAnalysisResult> lookedUpResults = new ConcurrentHashMap<>();
+
     /**
      * Creates a new cache backed by the given file.
      * @param cache The file on which to store analysis cache
@@ -46,55 +100,52 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
     @Override
     public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
         // load cached data before checking for validity
-        loadFromFile(cacheFile, files);
+        loadFromFile(cacheFile);
         super.checkValidity(ruleSets, auxclassPathClassLoader, files);
     }
 
     /**
-     * Loads cache data from the given file.
+     * Maps the given file and reads its header. Records are only read
+     * when they are looked up.
      *
      * @param cacheFile The file which backs the file analysis cache.
      */
-    private void loadFromFile(final File cacheFile, Collection<? extends TextFile> files) {
-        Map<String, FileId> idMap =
-            files.stream().map(TextFile::getFileId)
-                 .collect(Collectors.toMap(FileId::getUriString, id -> id));
-
+    private void loadFromFile(final File cacheFile) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "load")) {
             if (cacheExists()) {
-                try (
-                    DataInputStream inputStream = new DataInputStream(
-                        new BufferedInputStream(Files.newInputStream(cacheFile.toPath())));
-                ) {
+                try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+                    final ByteBuffer buffer = mapOrRead(channel);
+                    final DataInputStream inputStream = new DataInputStream(new ByteBufferInputStream(buffer));
+
+                    if (inputStream.readInt() != MAGIC || inputStream.readInt() != FORMAT_VERSION) {
+                        LOG.debug("Analysis cache invalidated, unknown cache format.");
+                        return;
+                    }
+
                     final String cacheVersion = inputStream.readUTF();
 
                     if (PMDVersion.VERSION.equals(cacheVersion)) {
                         // Cache seems valid, load the rest
 
                         // Get checksums
-                        rulesetChecksum = inputStream.readLong();
+                        final int ruleCount = inputStream.readInt();
+                        final Map<String, Long> cachedRuleChecksums = new HashMap<>();
+                        for (int i = 0; i < ruleCount; i++) {
+                            final String ruleKey = inputStream.readUTF();
+                            cachedRuleChecksums.put(ruleKey, inputStream.readLong());
+                        }
+                        ruleChecksums = cachedRuleChecksums;
                         auxClassPathChecksum = inputStream.readLong();
                         executionClassPathChecksum = inputStream.readLong();
 
-                        // Cached results
-                        while (inputStream.available() > 0) {
-                            final String filePathId = inputStream.readUTF();
-                            FileId fileId = idMap.get(filePathId);
-                            if (fileId == null) {
-                                LOG.debug("File {} is in the cache but is not part of the analysis",
-                                          filePathId);
-                                fileId = FileId.fromURI(filePathId);
-                            }
-                            final long checksum = inputStream.readLong();
-
-                            final int countViolations = inputStream.readInt();
-                            final List<RuleViolation> violations = new ArrayList<>(countViolations);
-                            for (int i = 0; i < countViolations; i++) {
-                                violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
-                            }
-
-                            fileResultsCache.put(fileId, new AnalysisResult(checksum, violations));
+                        final int count = inputStream.readInt();
+                        final int index = buffer.position();
+                        if (count < 0 || (long) count * INDEX_ENTRY_SIZE > buffer.remaining()) {
+                            throw new EOFException();
                         }
+                        recordCount = count;
+                        indexOffset = index;
+                        contents = buffer;
 
                         LOG.debug("Analysis cache loaded from {}", cacheFile);
                     } else {
@@ -111,6 +162,84 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
         }
     }
 
+    private static ByteBuffer mapOrRead(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Cache file is too large: " + size + " bytes");
+        }
+        if (CAN_REPLACE_MAPPED_FILE) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // read the whole file
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    protected @Nullable AnalysisResult getCachedResult(TextDocument document) {
+        final ByteBuffer buffer = contents;
+        if (buffer == null) {
+            return null;
+        }
+        return lookedUpResults.computeIfAbsent(document.getFileId(), fileId -> lookUpResult(buffer, fileId));
+    }
+
+    private @Nullable MappedAnalysisResult lookUpResult(ByteBuffer buffer, FileId fileId) {
+        final String uri = fileId.getUriString();
+        final long hash = uriHash(uri);
+
+        // binary search for the first index entry with this hash
+        int lo = 0;
+        int hi = recordCount;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (buffer.getLong(indexOffset + mid * INDEX_ENTRY_SIZE) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        // the URI of the record is compared too, in case of a hash collision
+        for (int i = lo; i < recordCount && buffer.getLong(indexOffset + i * INDEX_ENTRY_SIZE) == hash; i++) {
+            final int entry = indexOffset + i * INDEX_ENTRY_SIZE;
+            final int recordOffset = buffer.getInt(entry + Long.BYTES);
+            final int recordLength = buffer.getInt(entry + Long.BYTES + Integer.BYTES);
+            try {
+                final DataInputStream record = openRecord(buffer, recordOffset, recordLength);
+                if (uri.equals(record.readUTF())) {
+                    final long checksum = record.readLong();
+                    final int violationsOffset = recordOffset + recordLength - record.available();
+                    return new MappedAnalysisResult(checksum, fileId, recordOffset, recordLength, violationsOffset);
+                }
+            } catch (final IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                LOG.warn("Cache file {} is malformed, the record for {} will not be used", cacheFile.getPath(), uri);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected void fileAnalysisFinished(FileId fileId) {
+        final MappedAnalysisResult result = lookedUpResults.remove(fileId);
+        if (result != null) {
+            // the result may still be part of the updated results, but its
+            // record is copied as is when the cache is persisted
+            result.releaseViolations();
+        }
+    }
+
+    @Override
+    protected void clearCachedResults() {
+        contents = null;
+        recordCount = 0;
+        lookedUpResults.clear();
+    }
+
     @Override
     public void persist() {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
@@ -129,27 +258,15 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                 }
             }
 
-            try (
-                DataOutputStream outputStream = new DataOutputStream(
-                    new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
-            ) {
-                outputStream.writeUTF(pmdVersion);
+            // The current file may be mapped, and unchanged records are copied
+            // from it, so the new cache is written to a temporary file first.
+            Path tempFile = null;
+            try {
+                tempFile = cacheFile.toPath().resolveSibling(cacheFile.getName() + ".tmp");
+                writeTo(tempFile);
+                moveIntoPlace(tempFile, cacheFile.toPath());
+                tempFile = null;
 
-                outputStream.writeLong(rulesetChecksum);
-                outputStream.writeLong(auxClassPathChecksum);
-                outputStream.writeLong(executionClassPathChecksum);
-
-                for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
-                    final List<RuleViolation> violations = resultEntry.getValue().getViolations();
-
-                    outputStream.writeUTF(resultEntry.getKey().getUriString()); // the path id
-                    outputStream.writeLong(resultEntry.getValue().getFileChecksum());
-
-                    outputStream.writeInt(violations.size());
-                    for (final RuleViolation rv : violations) {
-                        CachedRuleViolation.storeToStream(outputStream, rv);
-                    }
-                }
                 if (cacheFileShouldBeCreated) {
                     LOG.debug("Analysis cache created");
                 } else {
@@ -157,12 +274,231 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                 }
             } catch (final IOException e) {
                 LOG.error("Could not persist analysis cache to file: {}", e.getMessage());
+            } finally {
+                if (tempFile != null) {
+                    try {
+                        Files.deleteIfExists(tempFile);
+                    } catch (final IOException e) {
+                        LOG.debug("Could not delete temporary cache file {}", tempFile);
+                    }
+                }
             }
         }
     }
 
+    private void writeTo(Path file) throws IOException {
+        final List<Map.Entry<FileId, AnalysisResult>> records = new ArrayList<>(updatedResultsCache.entrySet());
+        records.sort(Comparator.comparingLong(e -> uriHash(e.getKey().getUriString())));
+
+        final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream headerStream = new DataOutputStream(headerBytes)) {
+            headerStream.writeInt(MAGIC);
+            headerStream.writeInt(FORMAT_VERSION);
+            headerStream.writeUTF(pmdVersion);
+            headerStream.writeInt(ruleChecksums.size());
+            for (Map.Entry<String, Long> rule : ruleChecksums.entrySet()) {
+                headerStream.writeUTF(rule.getKey());
+                headerStream.writeLong(rule.getValue());
+            }
+            headerStream.writeLong(auxClassPathChecksum);
+            headerStream.writeLong(executionClassPathChecksum);
+            headerStream.writeInt(records.size());
+        }
+        final int headerSize = headerBytes.size();
+        final ByteBuffer header = ByteBuffer.allocate(headerSize + records.size() * INDEX_ENTRY_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // records are written after the header and the index
+            channel.position(header.capacity());
+            final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            final DataOutputStream recordStream = new DataOutputStream(recordBytes);
+
+            header.position(headerSize);
+            int offset = header.capacity();
+            for (int i = 0; i < records.size(); i++) {
+                final FileId fileId = records.get(i).getKey();
+                final AnalysisResult result = records.get(i).getValue();
+
+                final int length;
+                if (result instanceof MappedAnalysisResult && ((MappedAnalysisResult) result).isUnchanged()) {
+                    length = ((MappedAnalysisResult) result).copyRecordTo(outputStream);
+                } else {
+                    recordBytes.reset();
+                    recordStream.writeUTF(fileId.getUriString()); // the path id
+                    recordStream.writeLong(result.getFileChecksum());
+                    final List<RuleViolation> violations = result.getViolations();
+                    recordStream.writeInt(violations.size());
+                    for (final RuleViolation rv : violations) {
+                        CachedRuleViolation.storeToStream(recordStream, rv);
+                    }
+                    recordStream.flush();
+                    length = recordBytes.size();
+                    recordBytes.writeTo(outputStream);
+                }
+
+                header.putLong(uriHash(fileId.getUriString())).putInt(offset).putInt(length);
+                offset += length;
+            }
+            outputStream.flush();
+
+            header.position(0);
+            header.put(headerBytes.toByteArray());
+            header.position(0);
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     @Override
     protected boolean cacheExists() {
         return cacheFile.exists() && cacheFile.isFile() && cacheFile.length() > 0;
     }
+
+    /**
+     * A 64-bit FNV-1a hash of the URI, to key the index of the cache file.
+     */
+    private static long uriHash(String uri) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < uri.length(); i++) {
+            hash ^= uri.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static DataInputStream openRecord(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer record = buffer.duplicate();
+        record.limit(offset + length).position(offset);
+        return new DataInputStream(new ByteBufferInputStream(record));
+    }
+
+    /**
+     * The result of a file that is recorded in the cache file. Violations
+     * are decoded from the file when they are first requested.
+     */
+    private final class MappedAnalysisResult extends AnalysisResult {
+
+        private final FileId fileId;
+        private final int recordOffset;
+        private final int recordLength;
+        private final int violationsOffset;
+        private @Nullable List<RuleViolation> violations;
+        private boolean changed;
+
+        MappedAnalysisResult(long fileChecksum, FileId fileId, int recordOffset, int recordLength, int violationsOffset) {
+            super(fileChecksum, Collections.emptyList());
+            this.fileId = fileId;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.violationsOffset = violationsOffset;
+        }
+
+        @Override
+        public synchronized List<RuleViolation> getViolations() {
+            if (violations == null) {
+                violations = decodeViolations();
+            }
+            return violations;
+        }
+
+        private List<RuleViolation> decodeViolations() {
+            final ByteBuffer buffer = contents;
+            if (buffer == null) {
+                throw new IllegalStateException("The cache file has been discarded");
+            }
+            try {
+                final DataInputStream record = openRecord(buffer, violationsOffset, recordOffset + recordLength - violationsOffset);
+                final int countViolations = record.readInt();
+                final List<RuleViolation> result = new ArrayList<>(countViolations);
+                for (int i = 0; i < countViolations; i++) {
+                    result.add(CachedRuleViolation.loadFromStream(record, fileId, ruleMapper));
+                }
+                return result;
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Malformed record in cache file " + cacheFile.getPath(), e);
+            }
+        }
+
+        @Override
+        public synchronized void addViolations(List<RuleViolation> violations) {
+            changed = true;
+            getViolations().addAll(violations);
+        }
+
+        @Override
+        public synchronized void addViolation(RuleViolation ruleViolation) {
+            changed = true;
+            getViolations().add(ruleViolation);
+        }
+
+        /**
+         * Drops the decoded violations if they have not been changed, as
+         * they can be decoded again from the cache file.
+         */
+        synchronized void releaseViolations() {
+            if (!changed) {
+                violations = null;
+            }
+        }
+
+        synchronized boolean isUnchanged() {
+            return !changed && contents != null;
+        }
+
+        /** Copies the encoded record to the stream, and returns its length. */
+        int copyRecordTo(DataOutputStream outputStream) throws IOException {
+            final ByteBuffer record = contents.duplicate();
+            record.limit(recordOffset + recordLength).position(recordOffset);
+            final byte[] bytes = new byte[recordLength];
+            record.get(bytes);
+            outputStream.write(bytes);
+            return recordLength;
+        }
+    }
+
+    /**
+     * An input stream that reads the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -8,10 +8,12 @@ import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -74,6 +76,12 @@ public class CPDConfiguration extends AbstractConfiguration {
 
     private String skipBlocksPattern = CpdLanguagePropertiesDefaults.DEFAULT_SKIP_BLOCKS_PATTERN;
 
+    private int threads = 1;
+
+    private CpdMatchAlgorithm matchAlgorithm = CpdMatchAlgorithm.HASH;
+
+    private @Nullable Path cacheLocation;
+
     private boolean help;
 
 
@@ -271,6 +279,68 @@ public class CPDConfiguration extends AbstractConfiguration {
         this.skipBlocksPattern = skipBlocksPattern;
     }
 
+    /**
+     * Get the number of threads used to tokenize the files.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads used to tokenize the files. A value of
+     * {@code 0} or {@code 1} tokenizes the files on the calling thread.
+     * The report is the same regardless of the number of threads.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Get the algorithm used to find duplicates.
+     *
+     * @return The match algorithm
+     */
+    public CpdMatchAlgorithm getMatchAlgorithm() {
+        return matchAlgorithm;
+    }
+
+    /**
+     * Set the algorithm used to find duplicates. The default is
+     * {@link CpdMatchAlgorithm#HASH}.
+     *
+     * @param matchAlgorithm The match algorithm
+     */
+    public void setMatchAlgorithm(CpdMatchAlgorithm matchAlgorithm) {
+        this.matchAlgorithm = Objects.requireNonNull(matchAlgorithm);
+    }
+
+    /**
+     * Get the location of the token cache file, or null if there is none.
+     *
+     * @return The location of the token cache
+     */
+    public @Nullable Path getCacheLocation() {
+        return cacheLocation;
+    }
+
+    /**
+     * Set the location of the token cache file. The cache stores the
+     * tokens of each file, so that files that have not changed since
+     * the previous run are not lexed again. The cache is invalidated
+     * when the PMD version, the source encoding, or any language property
+     * (e.g. {@link #setIgnoreLiterals(boolean)}) changes.
+     *
+     * @param cacheLocation The location of the token cache, or null
+     *                      to disable the cache
+     */
+    public void setCacheLocation(@Nullable Path cacheLocation) {
+        this.cacheLocation = cacheLocation;
+    }
+
     @Override
     protected void checkLanguageIsAcceptable(Language lang) throws UnsupportedOperationException {
         if (!(lang instanceof CpdCapableLanguage)) {
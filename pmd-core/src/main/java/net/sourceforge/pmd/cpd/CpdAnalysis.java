@@ -11,6 +11,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -147,6 +152,116 @@ public final class CpdAnalysis implements AutoCloseable {
         return tokens.size() - lastTokenSize - 1; /* EOF */
     }
 
+    private CpdLexer createCpdLexer(Language language) {
+        return ((CpdCapableLanguage) language).createCpdLexer(configuration.getLanguageProperties(language));
+    }
+
+    private Tokens tokenize(SourceManager sourceManager, @Nullable CpdTokenCache cache, Map<FileId, Integer> numberOfTokensPerFile, List<Report.ProcessingError> processingErrors) {
+        Map<Language, CpdLexer> tokenizers =
+            sourceManager.getTextFiles().stream()
+                         .map(it -> it.getLanguageVersion().getLanguage())
+                         .distinct()
+                         .filter(it -> it instanceof CpdCapableLanguage)
+                         .collect(Collectors.toMap(lang -> lang, this::createCpdLexer));
+
+        Tokens tokens = new Tokens();
+        for (TextFile textFile : sourceManager.getTextFiles()) {
+            TextDocument textDocument = sourceManager.get(textFile);
+            Tokens.State savedState = tokens.savePoint();
+            try {
+                int newTokens = cache != null && cache.isUpToDate(textDocument)
+                                ? cache.appendCachedTokens(textDocument.getFileId(), tokens)
+                                : doTokenize(textDocument, tokenizers.get(textFile.getLanguageVersion().getLanguage()), tokens);
+                numberOfTokensPerFile.put(textDocument.getFileId(), newTokens);
+                listener.addedFile(1);
+            } catch (IOException | FileAnalysisException e) {
+                reportTokenizationError(textFile, e, processingErrors);
+                savedState.restore(tokens);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Lexes each file into its own token buffer on a thread pool, then
+     * appends the buffers to the global token list in the order of the
+     * files. The resulting tokens, image ids, and reported errors are
+     * the same as with {@link #tokenize(SourceManager, CpdTokenCache, Map, List)}.
+     * Files that are up to date in the cache are not lexed, their tokens
+     * are appended from the cache instead.
+     */
+    private Tokens tokenizeInParallel(SourceManager sourceManager, @Nullable CpdTokenCache cache, Map<FileId, Integer> numberOfTokensPerFile, List<Report.ProcessingError> processingErrors) throws InterruptedException {
+        // CPD lexers are not required to be thread-safe, so each thread gets its own
+        final ThreadLocal<Map<Language, CpdLexer>> tokenizers = ThreadLocal.withInitial(HashMap::new);
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(
+            configuration.getThreads(),
+            r -> new Thread(r, "CpdThread " + threadCounter.incrementAndGet())
+        );
+
+        try {
+            List<TextFile> textFiles = sourceManager.getTextFiles();
+            List<Future<Tokens>> futures = new ArrayList<>(textFiles.size());
+            for (TextFile textFile : textFiles) {
+                futures.add(executor.submit(() -> {
+                    TextDocument textDocument = sourceManager.get(textFile);
+                    if (cache != null && cache.isUpToDate(textDocument)) {
+                        return null; // appended from the cache below
+                    }
+                    Language language = textFile.getLanguageVersion().getLanguage();
+                    CpdLexer cpdLexer = tokenizers.get().computeIfAbsent(language, this::createCpdLexer);
+                    Tokens fileTokens = new Tokens();
+                    doTokenize(textDocument, cpdLexer, fileTokens);
+                    return fileTokens;
+                }));
+            }
+
+            Tokens tokens = new Tokens();
+            for (int i = 0; i < textFiles.size(); i++) {
+                TextFile textFile = textFiles.get(i);
+                try {
+                    Tokens fileTokens = futures.get(i).get();
+                    futures.set(i, null); // let the buffer be collected
+                    if (fileTokens == null) {
+                        numberOfTokensPerFile.put(textFile.getFileId(), cache.appendCachedTokens(textFile.getFileId(), tokens));
+                    } else {
+                        numberOfTokensPerFile.put(textFile.getFileId(), fileTokens.size() - 1); /* EOF */
+                        tokens.appendFile(fileTokens);
+                    }
+                    listener.addedFile(1);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException || cause instanceof FileAnalysisException) {
+                        reportTokenizationError(textFile, (Exception) cause, processingErrors);
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new IllegalStateException("Unexpected error while tokenizing " + textFile.getFileId().getAbsolutePath(), cause);
+                    }
+                }
+            }
+            return tokens;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void reportTokenizationError(TextFile textFile, Exception e, List<Report.ProcessingError> processingErrors) {
+        if (e instanceof FileAnalysisException) { // NOPMD
+            ((FileAnalysisException) e).setFileId(textFile.getFileId());
+        }
+        String message = configuration.isSkipLexicalErrors() ? "Skipping file" : "Error while tokenizing";
+        reporter.errorEx(message, e);
+        processingErrors.add(new Report.ProcessingError(e, textFile.getFileId()));
+    }
+
+    private List<Match> findMatches(Tokens tokens, SourceManager sourceManager) {
+        if (configuration.getMatchAlgorithm() == CpdMatchAlgorithm.SUFFIX_ARRAY) {
+            return new SuffixArrayMatchAlgorithm(tokens, configuration.getMinimumTileSize()).findMatches(listener, sourceManager);
+        }
+        return new MatchAlgorithm(tokens, configuration.getMinimumTileSize()).findMatches(listener, sourceManager);
+    }
+
     public void performAnalysis() {
         performAnalysis(r -> { });
     }
@@ -154,33 +269,17 @@ public final class CpdAnalysis implements AutoCloseable {
     @SuppressWarnings("PMD.CloseResource")
     public void performAnalysis(Consumer<CPDReport> consumer) {
         try (SourceManager sourceManager = new SourceManager(files.getCollectedFiles())) {
-            Map<Language, CpdLexer> tokenizers =
-                sourceManager.getTextFiles().stream()
-                             .map(it -> it.getLanguageVersion().getLanguage())
-                             .distinct()
-                             .filter(it -> it instanceof CpdCapableLanguage)
-                             .collect(Collectors.toMap(lang -> lang, lang -> ((CpdCapableLanguage) lang).createCpdLexer(configuration.getLanguageProperties(lang))));
-
             Map<FileId, Integer> numberOfTokensPerFile = new HashMap<>();
 
             List<Report.ProcessingError> processingErrors = new ArrayList<>();
-            Tokens tokens = new Tokens();
-            for (TextFile textFile : sourceManager.getTextFiles()) {
-                TextDocument textDocument = sourceManager.get(textFile);
-                Tokens.State savedState = tokens.savePoint();
-                try {
-                    int newTokens = doTokenize(textDocument, tokenizers.get(textFile.getLanguageVersion().getLanguage()), tokens);
-                    numberOfTokensPerFile.put(textDocument.getFileId(), newTokens);
-                    listener.addedFile(1);
-                } catch (IOException | FileAnalysisException e) {
-                    if (e instanceof FileAnalysisException) { // NOPMD
-                        ((FileAnalysisException) e).setFileId(textFile.getFileId());
-                    }
-                    String message = configuration.isSkipLexicalErrors() ? "Skipping file" : "Error while tokenizing";
-                    reporter.errorEx(message, e);
-                    processingErrors.add(new Report.ProcessingError(e, textFile.getFileId()));
-                    savedState.restore(tokens);
-                }
+            CpdTokenCache cache = configuration.getCacheLocation() == null
+                                  ? null
+                                  : new CpdTokenCache(configuration.getCacheLocation(), configuration);
+            Tokens tokens = configuration.getThreads() > 1
+                            ? tokenizeInParallel(sourceManager, cache, numberOfTokensPerFile, processingErrors)
+                            : tokenize(sourceManager, cache, numberOfTokensPerFile, processingErrors);
+            if (cache != null) {
+                cache.persist(tokens);
             }
             if (!processingErrors.isEmpty() && !configuration.isSkipLexicalErrors()) {
                 // will be caught by CPD command
@@ -188,8 +287,7 @@ public final class CpdAnalysis implements AutoCloseable {
             }
 
             LOGGER.debug("Running match algorithm on {} files...", sourceManager.size());
-            MatchAlgorithm matchAlgorithm = new MatchAlgorithm(tokens, configuration.getMinimumTileSize());
-            List<Match> matches = matchAlgorithm.findMatches(listener, sourceManager);
+            List<Match> matches = findMatches(tokens, sourceManager);
             tokens = null; // NOPMD null it out before rendering
             LOGGER.debug("Finished: {} duplicates found", matches.size());
 
@@ -202,6 +300,9 @@ public final class CpdAnalysis implements AutoCloseable {
             }
 
             consumer.accept(cpdReport);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reporter.errorEx("Interrupted while running CPD", e);
         } catch (Exception e) {
             reporter.errorEx("Exception while running CPD", e);
         }
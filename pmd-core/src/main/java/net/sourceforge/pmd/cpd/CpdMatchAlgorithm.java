@@ -0,0 +1,26 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+/**
+ * The algorithm used by CPD to find duplicates among the tokens.
+ *
+ * @see CPDConfiguration#setMatchAlgorithm(CpdMatchAlgorithm)
+ */
+public enum CpdMatchAlgorithm {
+    /**
+     * Hashes every tile of {@linkplain CPDConfiguration#getMinimumTileSize() minimum size}
+     * with a rolling hash, then compares the tiles that have the same
+     * hash pairwise. This is the default.
+     */
+    HASH,
+    /**
+     * Finds the same matches as {@link #HASH}, but builds a suffix array
+     * over the tokens first, to skip the tiles that cannot start a duplicate.
+     * This makes it faster on code that is duplicated many times, e.g.
+     * generated code, but it needs about twice as much memory: up to 16 bytes per token.
+     */
+    SUFFIX_ARRAY
+}
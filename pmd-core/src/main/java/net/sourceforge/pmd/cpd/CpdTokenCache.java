@@ -0,0 +1,373 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguagePropertyBundle;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * A cache of the tokens of each file, backed by a regular file. Files
+ * whose checksum has not changed since the previous run are not lexed
+ * again: their tokens are appended to the {@link Tokens} from the cache.
+ *
+ * <p>Each file is stored as its {@link FileVersion} and its sequence of
+ * tokens. The version of a file changes with its contents, its language
+ * version, and the properties of its language. Token images are stored once,
+ * in a dictionary that is shared by all files. The whole cache is invalidated
+ * when the PMD version or the checksum of the configuration changes, see
+ * {@link #computeChecksum(CPDConfiguration)}.
+ */
+final class CpdTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CpdTokenCache.class);
+
+    /** Number of ints stored per token: image id, begin line, begin column, end line, end column. */
+    private static final int INTS_PER_TOKEN = 5;
+
+    private final Path cacheFile;
+    private final CPDConfiguration configuration;
+    private final long configChecksum;
+
+    // Loaded from the cache file
+    private String[] imagesById = new String[1];
+    private final Map<String, CachedFile> cachedFiles = new HashMap<>();
+
+    // Versions of the files of the current analysis, which may be updated from worker threads
+    private final ConcurrentMap<FileId, FileVersion> currentVersions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Language, Long> propertiesChecksums = new ConcurrentHashMap<>();
+
+    // Maps ids of the cache dictionary to ids of the Tokens instance, 0 if not mapped yet
+    private int[] remap = new int[0];
+
+    /**
+     * Creates a new cache backed by the given file. The file is loaded
+     * immediately, if it exists.
+     */
+    CpdTokenCache(Path cacheFile, CPDConfiguration configuration) {
+        this.cacheFile = cacheFile;
+        this.configuration = configuration;
+        this.configChecksum = computeChecksum(configuration);
+        loadFromFile();
+    }
+
+    /**
+     * Computes a checksum of the configuration that may change the tokens
+     * of any file, apart from its contents: the source encoding. The
+     * configuration of each language is part of the {@link FileVersion}
+     * of its files.
+     */
+    static long computeChecksum(CPDConfiguration configuration) {
+        return configuration.getSourceEncoding().name().hashCode();
+    }
+
+    /**
+     * Computes a checksum of the properties of the given language, which
+     * include the CPD options like {@link CpdLanguageProperties#CPD_ANONYMIZE_LITERALS}.
+     */
+    private long computePropertiesChecksum(Language language) {
+        LanguagePropertyBundle properties = configuration.getLanguageProperties(language);
+        long checksum = language.getId().hashCode();
+        for (PropertyDescriptor<?> descriptor : properties.getPropertyDescriptors()) {
+            checksum = checksum * 31 + propertyToString(properties, descriptor).hashCode();
+        }
+        return checksum;
+    }
+
+    private static <T> String propertyToString(LanguagePropertyBundle properties, PropertyDescriptor<T> descriptor) {
+        T value = properties.getProperty(descriptor);
+        return descriptor.name() + '=' + (value == null ? "" : descriptor.serializer().toString(value));
+    }
+
+    private void loadFromFile() {
+        if (!Files.isRegularFile(cacheFile)) {
+            if (Files.isDirectory(cacheFile)) {
+                LOG.error("The configured cache location must be the path to a file, but is a directory.");
+            }
+            return;
+        }
+
+        // The file is read into memory at once, so that the lengths it contains
+        // can be checked against the number of bytes that remain.
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(cacheFile)))) {
+            final String cacheVersion = inputStream.readUTF();
+            if (!PMDVersion.VERSION.equals(cacheVersion)) {
+                LOG.debug("Token cache invalidated, PMD version changed.");
+                return;
+            }
+            if (inputStream.readLong() != configChecksum) {
+                LOG.debug("Token cache invalidated, configuration changed.");
+                return;
+            }
+
+            final String[] images = new String[readLength(inputStream, Integer.BYTES)];
+            for (int i = 1; i < images.length; i++) {
+                images[i] = readString(inputStream);
+            }
+
+            final int countFiles = readLength(inputStream, 1);
+            for (int i = 0; i < countFiles; i++) {
+                final String filePathId = inputStream.readUTF();
+                final FileVersion version = new FileVersion(inputStream.readUTF(), inputStream.readLong(), inputStream.readLong());
+                final int[] data = readInts(inputStream, readLength(inputStream, INTS_PER_TOKEN * Integer.BYTES) * INTS_PER_TOKEN);
+                for (int t = 0; t < data.length; t += INTS_PER_TOKEN) {
+                    if (data[t] < 0 || data[t] >= images.length) {
+                        throw new IOException("Invalid image id " + data[t]);
+                    }
+                }
+                cachedFiles.put(filePathId, new CachedFile(version, data));
+            }
+            imagesById = images;
+            LOG.debug("Token cache loaded from {}", cacheFile);
+        } catch (final EOFException e) {
+            LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile);
+            cachedFiles.clear();
+        } catch (final IOException | RuntimeException e) {
+            LOG.error("Could not load token cache from file: {}", e.getMessage());
+            cachedFiles.clear();
+        }
+    }
+
+    /**
+     * Reads a length, and checks that it is not negative and that the
+     * stream has enough bytes left for that many elements of the given size.
+     * The stream must know exactly how many bytes it has left.
+     */
+    private static int readLength(DataInputStream inputStream, int elementSize) throws IOException {
+        final int length = inputStream.readInt();
+        if (length < 0 || (long) length * elementSize > inputStream.available()) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Returns true if the tokens of the given document are in the cache,
+     * and neither the document nor its language version and properties
+     * have changed since. This method may be called from several threads.
+     */
+    boolean isUpToDate(TextDocument document) {
+        final LanguageVersion languageVersion = document.getLanguageVersion();
+        final long propertiesChecksum = propertiesChecksums.computeIfAbsent(languageVersion.getLanguage(), this::computePropertiesChecksum);
+        final FileVersion version = new FileVersion(languageVersion.getTerseName(), propertiesChecksum, document.getCheckSum());
+        currentVersions.put(document.getFileId(), version);
+        final CachedFile cached = cachedFiles.get(document.getFileId().getUriString());
+        return cached != null && cached.version.equals(version);
+    }
+
+    /**
+     * Appends the cached tokens of the given file to the tokens. The file
+     * must be {@linkplain #isUpToDate(TextDocument) up to date}.
+     *
+     * @return The number of tokens of the file, excluding the EOF token
+     */
+    int appendCachedTokens(FileId fileId, Tokens tokens) {
+        final CachedFile cached = cachedFiles.get(fileId.getUriString());
+        assert cached != null : "File is not in the cache: " + fileId;
+        if (remap.length < imagesById.length) {
+            remap = new int[imagesById.length];
+        }
+
+        final int[] data = cached.data;
+        for (int i = 0; i < data.length; i += INTS_PER_TOKEN) {
+            final int cacheId = data[i];
+            int imageId = TokenEntry.EOF;
+            if (cacheId != TokenEntry.EOF) {
+                imageId = remap[cacheId];
+                if (imageId == 0) {
+                    // images get an id in the order in which they are first seen, like when lexing
+                    imageId = tokens.getImageId(imagesById[cacheId]);
+                    remap[cacheId] = imageId;
+                }
+            }
+            tokens.add(imageId, fileId, data[i + 1], data[i + 2], data[i + 3], data[i + 4]);
+        }
+        return data.length / INTS_PER_TOKEN - 1; /* EOF */
+    }
+
+    /**
+     * Writes the tokens of all the files of the current analysis to the
+     * cache file. Files that could not be lexed are not part of the tokens,
+     * and are dropped from the cache.
+     */
+    void persist(Tokens tokens) {
+        if (Files.isDirectory(cacheFile)) {
+            LOG.error("Cannot persist the cache, the given path points to a directory.");
+            return;
+        }
+
+        Path tempFile = null;
+        try {
+            // Create directories missing along the way
+            final Path parent = cacheFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            // The cache is written to a temporary file first, so that a crash
+            // or a concurrent run never leaves a partially written cache behind.
+            tempFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                outputStream.writeUTF(PMDVersion.VERSION);
+                outputStream.writeLong(configChecksum);
+
+                // the dictionary of the cache is the one of the tokens
+                final String[] images = tokens.getImagesById();
+                outputStream.writeInt(images.length);
+                for (int i = 1; i < images.length; i++) {
+                    writeString(outputStream, images[i] == null ? "" : images[i]);
+                }
+
+                int countFiles = 0;
+                for (int f = 0; f < tokens.getFileCount(); f++) {
+                    if (currentVersions.containsKey(tokens.getFile(f))) {
+                        countFiles++;
+                    }
+                }
+                outputStream.writeInt(countFiles);
+                for (int f = 0; f < tokens.getFileCount(); f++) {
+                    final FileId fileId = tokens.getFile(f);
+                    final FileVersion version = currentVersions.get(fileId);
+                    if (version != null) {
+                        outputStream.writeUTF(fileId.getUriString());
+                        outputStream.writeUTF(version.languageVersion);
+                        outputStream.writeLong(version.propertiesChecksum);
+                        outputStream.writeLong(version.checksum);
+                        writeTokens(outputStream, tokens, tokens.getFileStart(f), tokens.getFileEnd(f));
+                    }
+                }
+            }
+            moveIntoPlace(tempFile, cacheFile);
+            tempFile = null;
+            LOG.debug("Token cache written to {}", cacheFile);
+        } catch (final IOException e) {
+            LOG.error("Could not persist token cache to file: {}", e.getMessage());
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (final IOException e) {
+                    LOG.debug("Could not delete temporary cache file {}", tempFile);
+                }
+            }
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeTokens(DataOutputStream outputStream, Tokens tokens, int start, int end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((end - start) * INTS_PER_TOKEN * Integer.BYTES);
+        for (int i = start; i < end; i++) {
+            final TokenEntry token = tokens.getToken(i);
+            buffer.putInt(token.getIdentifier())
+                  .putInt(token.getBeginLine())
+                  .putInt(token.getBeginColumn())
+                  .putInt(token.getEndLine())
+                  .putInt(token.getEndColumn());
+        }
+        outputStream.writeInt(end - start);
+        outputStream.write(buffer.array());
+    }
+
+    private static int[] readInts(DataInputStream inputStream, int count) throws IOException {
+        final byte[] bytes = new byte[count * Integer.BYTES];
+        inputStream.readFully(bytes);
+        final int[] ints = new int[count];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(ints);
+        return ints;
+    }
+
+    // Token images may be longer than what DataOutput#writeUTF supports
+    private static void writeString(DataOutputStream outputStream, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static String readString(DataInputStream inputStream) throws IOException {
+        final byte[] bytes = new byte[readLength(inputStream, 1)];
+        inputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class CachedFile {
+
+        private final FileVersion version;
+        private final int[] data;
+
+        CachedFile(FileVersion version, int[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Everything the tokens of a file depend on, apart from the global
+     * configuration: the terse name of its language version, the checksum
+     * of the properties of its language, and the checksum of its contents.
+     */
+    private static final class FileVersion {
+
+        private final String languageVersion;
+        private final long propertiesChecksum;
+        private final long checksum;
+
+        FileVersion(String languageVersion, long propertiesChecksum, long checksum) {
+            this.languageVersion = languageVersion;
+            this.propertiesChecksum = propertiesChecksum;
+            this.checksum = checksum;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileVersion that = (FileVersion) o;
+            return propertiesChecksum == that.propertiesChecksum
+                && checksum == that.checksum
+                && languageVersion.equals(that.languageVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(languageVersion, propertiesChecksum, checksum);
+        }
+    }
+}
@@ -4,12 +4,10 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.IntPredicate;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -19,12 +17,10 @@ class MatchAlgorithm {
     private int lastMod = 1;
 
     private final Tokens tokens;
-    private final List<TokenEntry> code;
     private final int minTileSize;
 
     MatchAlgorithm(Tokens tokens, int minTileSize) {
         this.tokens = tokens;
-        this.code = tokens.getTokens();
         this.minTileSize = minTileSize;
         for (int i = 0; i < minTileSize; i++) {
             lastMod *= MOD;
@@ -32,8 +28,16 @@ class MatchAlgorithm {
     }
 
 
-    public TokenEntry tokenAt(int offset, TokenEntry m) {
-        return code.get(offset + m.getIndex());
+    Tokens getTokens() {
+        return tokens;
+    }
+
+    int imageIdAt(int index) {
+        return tokens.getImageIdAt(index);
+    }
+
+    TokenEntry tokenEntry(int index) {
+        return tokens.getToken(index);
     }
 
     public int getMinimumTileSize() {
@@ -44,23 +48,69 @@ class MatchAlgorithm {
         MatchCollector matchCollector = new MatchCollector(this);
         {
             cpdListener.phaseUpdate(CPDListener.HASH);
-            Map<TokenEntry, Object> markGroups = hash();
+            Marks marks = computeMarks();
 
             cpdListener.phaseUpdate(CPDListener.MATCH);
-            markGroups.values()
-                      .stream()
-                      .filter(it -> it instanceof List)
-                      .forEach(it -> {
-                          @SuppressWarnings("unchecked")
-                          List<TokenEntry> l = (List<TokenEntry>) it;
-                          Collections.reverse(l);
-                          matchCollector.collect(l);
-                      });
-            // put markGroups out of scope
+            // marks are sorted by hash, then by index: collect groups of marks with the same hash
+            int groupStart = 0;
+            for (int i = 1; i <= marks.size; i++) {
+                if (i == marks.size || hashOf(marks.array[i]) != hashOf(marks.array[groupStart])) {
+                    if (i - groupStart > 1) {
+                        int[] group = new int[i - groupStart];
+                        for (int j = 0; j < group.length; j++) {
+                            group[j] = indexOf(marks.array[groupStart + j]);
+                        }
+                        matchCollector.collect(group);
+                    }
+                    groupStart = i;
+                }
+            }
+            // put marks out of scope
         }
 
         cpdListener.phaseUpdate(CPDListener.GROUPING);
         List<Match> matches = matchCollector.getMatches();
+        sortAndSetEndTokens(tokens, matches);
+        cpdListener.phaseUpdate(CPDListener.DONE);
+        return matches;
+    }
+
+    /**
+     * Returns the marks whose groups are passed to the {@link MatchCollector},
+     * sorted. This records the tile of every token.
+     */
+    Marks computeMarks() {
+        Marks marks = new Marks(tokens.size());
+        hash(marks, hash -> true);
+        marks.sort();
+        return marks;
+    }
+
+    /**
+     * Returns the number of tokens shared by the sequences starting at
+     * the given indices, stopping at EOF tokens.
+     */
+    int countDuplicateTokens(int mark1, int mark2) {
+        int index = 0;
+        while (sameToken(mark1 + index, mark2 + index)) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns true if both tokens have the same image and are not EOF.
+     */
+    boolean sameToken(int token1, int token2) {
+        int id1 = imageIdAt(token1);
+        return id1 != TokenEntry.EOF && id1 == imageIdAt(token2);
+    }
+
+    /**
+     * Sorts the matches and sets the end token of their marks. This is
+     * the last step of every match algorithm.
+     */
+    static void sortAndSetEndTokens(Tokens tokens, List<Match> matches) {
         matches.sort(Comparator.naturalOrder());
 
         for (Match match : matches) {
@@ -71,48 +121,84 @@ class MatchAlgorithm {
                 mark.setEndToken(endToken);
             }
         }
-        cpdListener.phaseUpdate(CPDListener.DONE);
-        return matches;
     }
 
+    private static int hashOf(long mark) {
+        return (int) (mark >>> 32);
+    }
+
+    private static int indexOf(long mark) {
+        return (int) mark;
+    }
+
+    /**
+     * Computes the hash of the tile starting at each token, and records
+     * the tokens whose hash is accepted by the filter. The hash of the tile
+     * starting at token {@code i} is the sum of {@code imageIdAt(i + k) * 37^k}
+     * for {@code k < minTileSize}. Tiles that contain an EOF token are not
+     * recorded.
+     */
     @SuppressWarnings("PMD.JumbledIncrementer")
-    private Map<TokenEntry, Object> hash() {
+    final void hash(Marks marks, IntPredicate filter) {
         int lastHash = 0;
-        Map<TokenEntry, Object> markGroups = new HashMap<>(tokens.size());
-        for (int i = code.size() - 1; i >= 0; i--) {
-            TokenEntry token = code.get(i);
-            if (!token.isEof()) {
-                int last = tokenAt(minTileSize, token).getIdentifier();
-                lastHash = MOD * lastHash + token.getIdentifier() - lastMod * last;
-                token.setHashCode(lastHash);
-                Object o = markGroups.get(token);
-
-                // Note that this insertion method is worthwhile since the vast
-                // majority
-                // markGroup keys will have only one value.
-                if (o == null) {
-                    markGroups.put(token, token);
-                } else if (o instanceof TokenEntry) {
-                    List<TokenEntry> l = new ArrayList<>();
-                    l.add((TokenEntry) o);
-                    l.add(token);
-                    markGroups.put(token, l);
-                } else {
-                    @SuppressWarnings("unchecked")
-                    List<TokenEntry> l = (List<TokenEntry>) o;
-                    l.add(token);
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+            int identifier = imageIdAt(i);
+            if (identifier != TokenEntry.EOF) {
+                int last = imageIdAt(i + minTileSize);
+                lastHash = MOD * lastHash + identifier - lastMod * last;
+                if (filter.test(lastHash)) {
+                    marks.add(lastHash, i);
                 }
             } else {
                 lastHash = 0;
                 for (int end = Math.max(0, i - minTileSize + 1); i > end; i--) {
-                    token = code.get(i - 1);
-                    lastHash = MOD * lastHash + token.getIdentifier();
-                    if (token.isEof()) {
+                    identifier = imageIdAt(i - 1);
+                    lastHash = MOD * lastHash + identifier;
+                    if (identifier == TokenEntry.EOF) {
                         break;
                     }
                 }
             }
         }
-        return markGroups;
+    }
+
+    /**
+     * Returns the hash of the tile starting at the given token, as
+     * computed by {@link #hash(Marks, IntPredicate)}. The tile must not
+     * contain an EOF token.
+     */
+    final int hashAt(int index) {
+        int hash = 0;
+        for (int k = minTileSize - 1; k >= 0; k--) {
+            hash = MOD * hash + imageIdAt(index + k);
+        }
+        return hash;
+    }
+
+    /**
+     * Tokens packed with the hash of their tile into longs (hash in the
+     * high bits, token index in the low bits). Once sorted, tokens with the
+     * same hash are adjacent, in ascending index order.
+     */
+    static final class Marks {
+
+        private long[] array;
+        private int size;
+
+        Marks(int capacity) {
+            array = new long[capacity];
+        }
+
+        void add(int hash, int index) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, Math.max(16, size * 2));
+            }
+            array[size++] = (long) hash << 32 | index;
+        }
+
+        void sort() {
+            // a parallel sort would need a working array as large as the marks
+            Arrays.sort(array, 0, size);
+        }
     }
 }
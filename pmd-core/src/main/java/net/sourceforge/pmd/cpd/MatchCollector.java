@@ -25,15 +25,19 @@ class MatchCollector {
         this.ma = ma;
     }
 
-    public void collect(List<TokenEntry> marks) {
+    /**
+     * Collects the matches among the given marks, which are token indices
+     * of tiles with the same hash, in ascending order.
+     */
+    public void collect(int[] marks) {
         // first get a pairwise collection of all maximal matches
         int skipped;
-        for (int i = 0; i < marks.size() - 1; i += skipped + 1) {
+        for (int i = 0; i < marks.length - 1; i += skipped + 1) {
             skipped = 0;
-            TokenEntry mark1 = marks.get(i);
-            for (int j = i + 1; j < marks.size(); j++) {
-                TokenEntry mark2 = marks.get(j);
-                int diff = mark1.getIndex() - mark2.getIndex();
+            int mark1 = marks[i];
+            for (int j = i + 1; j < marks.length; j++) {
+                int mark2 = marks[j];
+                int diff = mark1 - mark2;
                 if (-diff < ma.getMinimumTileSize()) {
                     // self-repeating sequence such as ABBABBABB with min 6,
                     // will match 2 against any other occurrence of ABBABB
@@ -46,7 +50,7 @@ class MatchCollector {
                 }
 
                 // "match too small" check
-                int dupes = countDuplicateTokens(mark1, mark2);
+                int dupes = ma.countDuplicateTokens(mark1, mark2);
                 if (dupes < ma.getMinimumTileSize()) {
                     continue;
                 }
@@ -59,7 +63,7 @@ class MatchCollector {
         }
     }
 
-    private void reportMatch(TokenEntry mark1, TokenEntry mark2, int dupes) {
+    private void reportMatch(int mark1, int mark2, int dupes) {
         /*
          * Check if the match is previously know. This can happen when a snippet is duplicated more than once.
          * If A, B and C are identical snippets, MatchAlgorithm will find the matching pairs:
@@ -68,13 +72,13 @@ class MatchCollector {
          *  - BC
          * It should be reduced to a single match with 3 marks
          */
-        if (tokenMatchSets.computeIfAbsent(mark1.getIndex(), (i) -> new HashSet<>()).contains(mark2.getIndex())) {
+        if (tokenMatchSets.computeIfAbsent(mark1, (i) -> new HashSet<>()).contains(mark2)) {
             return;
         }
 
         // This may not be a "new match", but actually a sub-match of a larger one.
         // always rely on the lowest mark index, as that's the order in which process them
-        final int lowestKey = tokenMatchSets.get(mark1.getIndex()).stream().reduce(mark1.getIndex(), Math::min);
+        final int lowestKey = tokenMatchSets.get(mark1).stream().reduce(mark1, Math::min);
 
         List<Match> matches = matchTree.computeIfAbsent(lowestKey, (i) -> new ArrayList<>());
         Iterator<Match> matchIterator = matches.iterator();
@@ -83,16 +87,16 @@ class MatchCollector {
 
             // Check all other marks
             for (Mark otherMark : m.getMarkSet()) {
-                TokenEntry otherEnd = otherMark.getToken();
-                if (otherEnd.getIndex() == mark1.getIndex()) {
+                int otherEnd = otherMark.getBeginTokenIndex();
+                if (otherEnd == mark1) {
                     continue;
                 }
 
                 // does the new match supersedes this one?
-                if (otherEnd.getIndex() < mark2.getIndex() && otherEnd.getIndex() + m.getTokenCount() >= mark2.getIndex() + dupes) {
+                if (otherEnd < mark2 && otherEnd + m.getTokenCount() >= mark2 + dupes) {
                     // this match is embedded in the previous one… ignore it.
                     return;
-                } else if (mark2.getIndex() < otherEnd.getIndex() && mark2.getIndex() + dupes >= otherEnd.getIndex() + m.getTokenCount()) {
+                } else if (mark2 < otherEnd && mark2 + dupes >= otherEnd + m.getTokenCount()) {
                     // the new match is longer and overlaps with the old one - replace it
                     matchIterator.remove();
                     break;
@@ -100,24 +104,24 @@ class MatchCollector {
                     // we found yet another exact match of the same snippet. Roll it together
 
                     // Add this adjacency to all combinations
-                    m.iterator().forEachRemaining(other -> registerTokenMatch(other.getToken(), mark2));
+                    m.iterator().forEachRemaining(other -> registerTokenMatch(other.getBeginTokenIndex(), mark2));
 
-                    m.addMark(mark2);
+                    m.addMark(ma.tokenEntry(mark2));
                     return;
                 }
             }
         }
 
         // this is a new match, add it
-        matches.add(new Match(dupes, mark1, mark2));
+        matches.add(new Match(dupes, ma.tokenEntry(mark1), ma.tokenEntry(mark2)));
 
         // add matches in both directions
         registerTokenMatch(mark1, mark2);
     }
 
-    private void registerTokenMatch(TokenEntry mark1, TokenEntry mark2) {
-        tokenMatchSets.computeIfAbsent(mark1.getIndex(), (i) -> new HashSet<>()).add(mark2.getIndex());
-        tokenMatchSets.computeIfAbsent(mark2.getIndex(), (i) -> new HashSet<>()).add(mark1.getIndex());
+    private void registerTokenMatch(int mark1, int mark2) {
+        tokenMatchSets.computeIfAbsent(mark1, (i) -> new HashSet<>()).add(mark2);
+        tokenMatchSets.computeIfAbsent(mark2, (i) -> new HashSet<>()).add(mark1);
     }
 
     List<Match> getMatches() {
@@ -127,21 +131,7 @@ class MatchCollector {
         });
     }
 
-    private boolean hasPreviousDupe(TokenEntry mark1, TokenEntry mark2) {
-        return mark1.getIndex() != 0 && !matchEnded(ma.tokenAt(-1, mark1), ma.tokenAt(-1, mark2));
-    }
-
-    private int countDuplicateTokens(TokenEntry mark1, TokenEntry mark2) {
-        int index = 0;
-        while (!matchEnded(ma.tokenAt(index, mark1), ma.tokenAt(index, mark2))) {
-            index++;
-        }
-        return index;
-    }
-
-    private boolean matchEnded(TokenEntry token1, TokenEntry token2) {
-        return token1.getIdentifier() != token2.getIdentifier()
-                || token1.isEof()
-                || token2.isEof();
+    private boolean hasPreviousDupe(int mark1, int mark2) {
+        return mark1 != 0 && ma.sameToken(mark1 - 1, mark2 - 1);
     }
 }
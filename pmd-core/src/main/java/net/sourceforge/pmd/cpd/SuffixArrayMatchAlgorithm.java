@@ -0,0 +1,270 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.Arrays;
+
+/**
+ * Finds the same matches as {@link MatchAlgorithm}, using a suffix array
+ * and its LCP array, built over the image ids of the tokens.
+ *
+ * <p>The hash algorithm compares all the pairs of tokens whose tiles have
+ * the same hash, but only pairs of tiles that are preceded by different
+ * tokens can start a duplicate. A piece of code of t tokens that is
+ * duplicated n times yields about t groups of n equal tiles, of which only
+ * the first one is preceded by different tokens. The suffix array sorts
+ * equal tiles next to each other, so that the groups whose tiles are all
+ * preceded by the same token are dropped before the marks are sorted and
+ * compared. The remaining groups, including the tiles whose hash collides
+ * with theirs, are passed to the same {@link MatchCollector} in the same
+ * order, and the length of the duplicates is read from the LCP array
+ * instead of comparing the tokens again.
+ *
+ * @see MatchAlgorithm
+ */
+class SuffixArrayMatchAlgorithm extends MatchAlgorithm {
+
+    /** Marker for tiles that are preceded by the start of a file. */
+    private static final int DIVERSE = -1;
+
+    private int[] suffixArray;
+    private int[] rank;
+    private int[] lcp;
+
+    // number of shared tokens between the last compared mark and the other tiles of its interval
+    private int cachedMark = -1;
+    private int cachedStart;
+    private int cachedSize;
+    private int[] cachedLcps = new int[16];
+
+    SuffixArrayMatchAlgorithm(Tokens tokens, int minTileSize) {
+        super(tokens, minTileSize);
+    }
+
+    @Override
+    Marks computeMarks() {
+        final int n = getTokens().size();
+        Marks marks = new Marks(16);
+        if (n == 0) {
+            return marks;
+        }
+        suffixArray = new int[n];
+        rank = new int[n];
+        buildSuffixArray(suffixArray, rank);
+        lcp = new int[n];
+        buildLcpArray(suffixArray, rank, lcp);
+
+        int[] hashes = hashesOfLeftDiverseTiles();
+        hash(marks, hash -> Arrays.binarySearch(hashes, hash) >= 0);
+        marks.sort();
+        return marks;
+    }
+
+    /**
+     * Sorts all suffixes by prefix doubling, using radix sort on pairs of
+     * ranks. On return, {@code sa} is the suffix array, and {@code rank}
+     * is its inverse.
+     */
+    private void buildSuffixArray(int[] sa, int[] rank) {
+        final int n = sa.length;
+        int[] tmp = new int[n];
+
+        // initial ranks are the image ids
+        int numClasses = 0;
+        for (int i = 0; i < n; i++) {
+            rank[i] = imageIdAt(i);
+            numClasses = Math.max(numClasses, rank[i] + 1);
+        }
+        int[] count = new int[Math.max(numClasses, n)];
+        for (int i = 0; i < n; i++) {
+            count[rank[i]]++;
+        }
+        for (int c = 1; c < numClasses; c++) {
+            count[c] += count[c - 1];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            sa[--count[rank[i]]] = i;
+        }
+        numClasses = renumber(sa, rank, tmp, 0);
+
+        for (int k = 1; numClasses < n; k <<= 1) {
+            // order by the second half: suffixes shorter than k come first
+            int p = 0;
+            for (int i = n - k; i < n; i++) {
+                tmp[p++] = i;
+            }
+            for (int j = 0; j < n; j++) {
+                if (sa[j] >= k) {
+                    tmp[p++] = sa[j] - k;
+                }
+            }
+            // then stable sort by the first half
+            Arrays.fill(count, 0, numClasses, 0);
+            for (int i = 0; i < n; i++) {
+                count[rank[i]]++;
+            }
+            for (int c = 1; c < numClasses; c++) {
+                count[c] += count[c - 1];
+            }
+            for (int j = n - 1; j >= 0; j--) {
+                sa[--count[rank[tmp[j]]]] = tmp[j];
+            }
+            numClasses = renumber(sa, rank, tmp, k);
+        }
+    }
+
+    /**
+     * Assigns new ranks to the sorted suffixes, comparing their first
+     * 2k tokens, and returns the number of distinct ranks.
+     */
+    private static int renumber(int[] sa, int[] rank, int[] tmp, int k) {
+        final int n = sa.length;
+        int numClasses = 1;
+        tmp[sa[0]] = 0;
+        for (int j = 1; j < n; j++) {
+            int prev = sa[j - 1];
+            int cur = sa[j];
+            if (rank[prev] != rank[cur] || k > 0 && secondKey(rank, prev, k) != secondKey(rank, cur, k)) {
+                numClasses++;
+            }
+            tmp[cur] = numClasses - 1;
+        }
+        System.arraycopy(tmp, 0, rank, 0, n);
+        return numClasses;
+    }
+
+    private static int secondKey(int[] rank, int i, int k) {
+        return i + k < rank.length ? rank[i + k] : -1;
+    }
+
+    /**
+     * Computes the LCP array with Kasai's algorithm: {@code lcp[i]}
+     * is the number of tokens shared by the suffixes {@code sa[i - 1]} and
+     * {@code sa[i]}. Common prefixes stop at EOF tokens.
+     */
+    private void buildLcpArray(int[] sa, int[] rank, int[] lcp) {
+        final int n = sa.length;
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            int r = rank[i];
+            if (r > 0) {
+                int j = sa[r - 1];
+                while (i + h < n && j + h < n && sameToken(i + h, j + h)) {
+                    h++;
+                }
+                lcp[r] = h;
+                if (h > 0) {
+                    h--;
+                }
+            } else {
+                lcp[r] = 0;
+                h = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the sorted hashes of the tiles that occur several times,
+     * and whose occurrences are not all preceded by the same token. The
+     * occurrences of a tile are an interval of the suffix array, in which
+     * consecutive suffixes share at least {@link #getMinimumTileSize()} tokens.
+     * The other tiles cannot start a duplicate, as every pair of their
+     * occurrences is part of a longer duplicate.
+     */
+    private int[] hashesOfLeftDiverseTiles() {
+        final int n = suffixArray.length;
+        int[] hashes = new int[16];
+        int numHashes = 0;
+        int start = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || lcp[i] < getMinimumTileSize()) {
+                if (i - start > 1 && isLeftDiverse(start, i)) {
+                    if (numHashes == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, numHashes * 2);
+                    }
+                    hashes[numHashes++] = hashAt(suffixArray[start]);
+                }
+                start = i;
+            }
+        }
+        hashes = Arrays.copyOf(hashes, numHashes);
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    private boolean isLeftDiverse(int start, int end) {
+        int preceding = precedingToken(suffixArray[start]);
+        if (preceding == DIVERSE) {
+            return true;
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (precedingToken(suffixArray[i]) != preceding) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the image id of the token preceding the given suffix, or
+     * {@link #DIVERSE} if the suffix starts a file.
+     */
+    private int precedingToken(int suffix) {
+        if (suffix == 0) {
+            return DIVERSE;
+        }
+        int id = imageIdAt(suffix - 1);
+        return id == TokenEntry.EOF ? DIVERSE : id;
+    }
+
+    @Override
+    int countDuplicateTokens(int mark1, int mark2) {
+        if (mark1 != cachedMark) {
+            cacheLcps(mark1);
+        }
+        int i = rank[mark2] - cachedStart;
+        if (i >= 0 && i < cachedSize) {
+            return cachedLcps[i];
+        }
+        // the tiles are different, this is less than the minimum tile size
+        return super.countDuplicateTokens(mark1, mark2);
+    }
+
+    /**
+     * Computes the number of tokens shared by the given mark and each
+     * suffix of the interval of its tile, as the minimum of the LCP values
+     * between them. The marks of a group are compared with all the following
+     * marks, so this is linear in the size of the group.
+     */
+    private void cacheLcps(int mark) {
+        final int n = suffixArray.length;
+        final int r = rank[mark];
+        int start = r;
+        while (start > 0 && lcp[start] >= getMinimumTileSize()) {
+            start--;
+        }
+        int end = r + 1;
+        while (end < n && lcp[end] >= getMinimumTileSize()) {
+            end++;
+        }
+        if (end - start > cachedLcps.length) {
+            cachedLcps = new int[Math.max(end - start, cachedLcps.length * 2)];
+        }
+        int shared = Integer.MAX_VALUE;
+        for (int i = r + 1; i < end; i++) {
+            shared = Math.min(shared, lcp[i]);
+            cachedLcps[i - start] = shared;
+        }
+        shared = Integer.MAX_VALUE;
+        for (int i = r; i > start; i--) {
+            shared = Math.min(shared, lcp[i]);
+            cachedLcps[i - 1 - start] = shared;
+        }
+        cachedLcps[r - start] = n - mark;
+        cachedMark = mark;
+        cachedStart = start;
+        cachedSize = end - start;
+    }
+}
@@ -6,33 +6,24 @@ package net.sourceforge.pmd.cpd;
 
 import net.sourceforge.pmd.lang.document.FileId;
 
+/**
+ * A token recorded by CPD. Tokens are stored compactly in {@link Tokens},
+ * instances of this class are views of a single token, created on demand.
+ */
 public class TokenEntry implements Comparable<TokenEntry> {
 
-    private static final int EOF = 0;
+    static final int EOF = 0;
 
     private final FileId fileId;
     private final int beginLine;
     private final int beginColumn;
     private final int endColumn;
     private final int endLine;
-    private int index;
+    private final int index;
     private int identifier;
-    private int hashCode;
-
-    /** constructor for EOF entries. */
-    TokenEntry(FileId fileId, int line, int column) {
-        assert isOk(line) && isOk(column) : "Coordinates are 1-based";
-        this.identifier = EOF;
-        this.fileId = fileId;
-        this.beginLine = line;
-        this.beginColumn = column;
-        this.endLine = line;
-        this.endColumn = column;
-    }
 
     TokenEntry(int imageId, FileId fileId, int beginLine, int beginColumn, int endLine, int endColumn, int index) {
         assert isOk(beginLine) && isOk(beginColumn) && isOk(endLine) && isOk(endColumn) : "Coordinates are 1-based";
-        assert imageId != EOF;
         this.fileId = fileId;
         this.beginLine = beginLine;
         this.beginColumn = beginColumn;
@@ -84,16 +75,27 @@ public class TokenEntry implements Comparable<TokenEntry> {
         return this.index;
     }
 
+    /**
+     * Returns a hash code consistent with {@link #equals(Object)}.
+     *
+     * <p>Before 7.8.0, this was the hash of the tile of tokens starting at
+     * this token, as computed by the match algorithm.
+     */
     @Override
     public int hashCode() {
-        return hashCode;
-    }
-
-    void setHashCode(int hashCode) {
-        this.hashCode = hashCode;
-    }
-
-    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+        return index;
+    }
+
+    /**
+     * Two entries are equal if they are the same token of the same file,
+     * that is, if they have the same index in the {@link Tokens} and the
+     * same file id.
+     *
+     * <p>Before 7.8.0, entries were equal if they started tiles with the
+     * same hash, as computed by the match algorithm, and EOF entries were
+     * equal if they were in the same file. Entries are now views created on
+     * demand from the {@link Tokens}, which do not record these hashes.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -102,12 +104,7 @@ public class TokenEntry implements Comparable<TokenEntry> {
             return false;
         }
         TokenEntry other = (TokenEntry) o;
-        if (other.isEof() != this.isEof()) {
-            return false;
-        } else if (this.isEof()) {
-            return other.getFileId().equals(this.getFileId());
-        }
-        return other.hashCode == hashCode;
+        return other.index == index && other.fileId.equals(fileId);
     }
 
     @Override
@@ -4,7 +4,9 @@
 
 package net.sourceforge.pmd.cpd;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,11 +22,28 @@ import net.sourceforge.pmd.lang.document.TextDocument;
 /**
  * Global token collector for CPD. This is populated by lexing all files,
  * after which the match algorithm proceeds.
+ *
+ * <p>Tokens are stored column-wise in primitive arrays, as there may be
+ * hundreds of millions of them. {@link TokenEntry} instances are only
+ * created on demand, as views of a single token.
  */
 public class Tokens {
 
-    // This stores all the token entries recorded during the run.
-    private final List<TokenEntry> tokens = new ArrayList<>();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // These store all the token entries recorded during the run, one column per field.
+    private int size;
+    private int[] imageIds = new int[INITIAL_CAPACITY];
+    private int[] beginLines = new int[INITIAL_CAPACITY];
+    private int[] beginColumns = new int[INITIAL_CAPACITY];
+    private int[] endLines = new int[INITIAL_CAPACITY];
+    private int[] endColumns = new int[INITIAL_CAPACITY];
+
+    // The tokens of a file are recorded contiguously. The i-th file in this
+    // list starts at the token index fileStarts[i].
+    private final List<FileId> files = new ArrayList<>();
+    private int[] fileStarts = new int[16];
+
     private final Map<String, Integer> images = new HashMap<>();
     // the first ID is 1, 0 is the ID of the EOF token.
     private int curImageId = 1;
@@ -38,20 +57,43 @@ public class Tokens {
         // constructor is package private
     }
 
-    private void add(TokenEntry tokenEntry) {
-        this.tokens.add(tokenEntry);
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    int add(int imageId, FileId fileId, int beginLine, int beginColumn, int endLine, int endColumn) {
+        if (size == imageIds.length) {
+            int newCapacity = size + (size >> 1);
+            imageIds = Arrays.copyOf(imageIds, newCapacity);
+            beginLines = Arrays.copyOf(beginLines, newCapacity);
+            beginColumns = Arrays.copyOf(beginColumns, newCapacity);
+            endLines = Arrays.copyOf(endLines, newCapacity);
+            endColumns = Arrays.copyOf(endColumns, newCapacity);
+        }
+        int numFiles = files.size();
+        if (numFiles == 0 || files.get(numFiles - 1) != fileId && !files.get(numFiles - 1).equals(fileId)) {
+            if (numFiles == fileStarts.length) {
+                fileStarts = Arrays.copyOf(fileStarts, numFiles * 2);
+            }
+            fileStarts[numFiles] = size;
+            files.add(fileId);
+        }
+        imageIds[size] = imageId;
+        beginLines[size] = beginLine;
+        beginColumns[size] = beginColumn;
+        endLines[size] = endLine;
+        endColumns[size] = endColumn;
+        return size++;
     }
 
-    private void addEof(FileId filePathId, int line, int column) {
-        add(new TokenEntry(filePathId, line, column));
+    void addEof(FileId filePathId, int line, int column) {
+        add(TokenEntry.EOF, filePathId, line, column, line, column);
     }
 
     private void setImage(TokenEntry entry, String newImage) {
         int i = getImageId(newImage);
+        imageIds[entry.getIndex()] = i;
         entry.setImageIdentifier(i);
     }
 
-    private int getImageId(String newImage) {
+    int getImageId(String newImage) {
         return images.computeIfAbsent(newImage, k -> curImageId++);
     }
 
@@ -59,30 +101,136 @@ public class Tokens {
         return images.entrySet().stream().filter(it -> it.getValue() == i).findFirst().map(Entry::getKey).orElse(null);
     }
 
+    /**
+     * Returns an array containing the image of each id, at the index of
+     * the id. The EOF id is mapped to null.
+     */
+    String[] getImagesById() {
+        String[] imagesById = new String[curImageId];
+        images.forEach((image, id) -> imagesById[id] = image);
+        return imagesById;
+    }
+
     private TokenEntry peekLastToken() {
-        return tokens.isEmpty() ? null : getToken(size() - 1);
+        return size == 0 ? null : getToken(size - 1);
     }
 
-    private TokenEntry getToken(int index) {
-        return tokens.get(index);
+    /**
+     * Returns the image id of the token at the given index. This is
+     * {@link TokenEntry#EOF} for the EOF token of a file.
+     */
+    int getImageIdAt(int index) {
+        assert index < size : "Index out of bounds: " + index;
+        return imageIds[index];
+    }
+
+    /**
+     * Returns the file of the token at the given index.
+     */
+    FileId getFileIdAt(int index) {
+        assert index < size : "Index out of bounds: " + index;
+        int fileIdx = Arrays.binarySearch(fileStarts, 0, files.size(), index);
+        // if not found, binarySearch returns (-insertionPoint - 1)
+        return files.get(fileIdx >= 0 ? fileIdx : -fileIdx - 2);
+    }
+
+    /**
+     * Returns a new token entry for the token at the given index.
+     */
+    TokenEntry getToken(int index) {
+        return new TokenEntry(getImageIdAt(index), getFileIdAt(index),
+                              beginLines[index], beginColumns[index],
+                              endLines[index], endColumns[index],
+                              index);
     }
 
     public int size() {
-        return tokens.size();
+        return size;
+    }
+
+    /**
+     * Returns the number of files whose tokens have been recorded.
+     */
+    int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Returns the i-th file whose tokens have been recorded.
+     */
+    FileId getFile(int fileIdx) {
+        return files.get(fileIdx);
+    }
+
+    /**
+     * Returns the index of the first token of the i-th file.
+     */
+    int getFileStart(int fileIdx) {
+        return fileStarts[fileIdx];
+    }
+
+    /**
+     * Returns the index after the last token (the EOF) of the i-th file.
+     */
+    int getFileEnd(int fileIdx) {
+        return fileIdx + 1 < files.size() ? fileStarts[fileIdx + 1] : size;
     }
 
     TokenEntry getEndToken(TokenEntry mark, Match match) {
         return getToken(mark.getIndex() + match.getTokenCount() - 1);
     }
 
+    /**
+     * Returns a list view of the tokens. Elements of the list are
+     * created on each access.
+     */
     public List<TokenEntry> getTokens() {
-        return tokens;
+        return new AbstractList<TokenEntry>() {
+            @Override
+            public TokenEntry get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+                }
+                return getToken(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
     TokenEntry addToken(String image, FileId fileName, int startLine, int startCol, int endLine, int endCol) {
-        TokenEntry newToken = new TokenEntry(getImageId(image), fileName, startLine, startCol, endLine, endCol, tokens.size());
-        add(newToken);
-        return newToken;
+        assert startLine >= 1 && startCol >= 1 && endLine >= 1 && endCol >= 1 : "Coordinates are 1-based";
+        int index = add(getImageId(image), fileName, startLine, startCol, endLine, endCol);
+        return getToken(index);
+    }
+
+    /**
+     * Appends all the tokens of the given buffer to this instance. The
+     * buffer must be a fresh instance into which a single file has been
+     * lexed. Image ids of the buffer are remapped into the dictionary of
+     * this instance in the order in which the buffer allocated them, so
+     * the result is the same as if the file had been lexed into this
+     * instance directly. The buffer must not be used afterwards.
+     *
+     * @param fileTokens Tokens of a single file
+     */
+    void appendFile(Tokens fileTokens) {
+        String[] imagesById = fileTokens.getImagesById();
+        int[] remap = new int[imagesById.length];
+        for (int i = 1; i < imagesById.length; i++) {
+            if (imagesById[i] != null) {
+                remap[i] = getImageId(imagesById[i]);
+            }
+        }
+
+        for (int i = 0; i < fileTokens.size; i++) {
+            add(remap[fileTokens.imageIds[i]], fileTokens.getFileIdAt(i),
+                fileTokens.beginLines[i], fileTokens.beginColumns[i],
+                fileTokens.endLines[i], fileTokens.endColumns[i]);
+        }
     }
 
     State savePoint() {
@@ -146,10 +294,12 @@ public class Tokens {
     static final class State {
 
         private final int tokenCount;
+        private final int fileCount;
         private final int curImageId;
 
         State(Tokens tokens) {
-            this.tokenCount = tokens.tokens.size();
+            this.tokenCount = tokens.size;
+            this.fileCount = tokens.files.size();
             this.curImageId = tokens.curImageId;
         }
 
@@ -157,8 +307,8 @@ public class Tokens {
             tokens.images.entrySet().removeIf(e -> e.getValue() >= curImageId);
             tokens.curImageId = this.curImageId;
 
-            final List<TokenEntry> entries = tokens.getTokens();
-            entries.subList(tokenCount, entries.size()).clear();
+            tokens.size = tokenCount;
+            tokens.files.subList(fileCount, tokens.files.size()).clear();
         }
     }
 
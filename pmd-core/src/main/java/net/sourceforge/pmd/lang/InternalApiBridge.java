@@ -32,10 +32,17 @@ public final class InternalApiBridge {
                                                                     List<TextFile> files,
                                                                     GlobalAnalysisListener listener,
                                                                     int threadCount,
+                                                                    boolean largestFilesFirst,
+                                                                    boolean virtualThreads,
+                                                                    boolean pipelined,
+                                                                    int pipelineParserThreads,
+                                                                    long fileTimeoutMillis,
+                                                                    long ruleTimeoutMillis,
                                                                     AnalysisCache analysisCache,
                                                                     PmdReporter messageReporter,
                                                                     LanguageProcessorRegistry lpRegistry) {
-        return new LanguageProcessor.AnalysisTask(rulesets, files, listener, threadCount, analysisCache, messageReporter, lpRegistry);
+        return new LanguageProcessor.AnalysisTask(rulesets, files, listener, threadCount, largestFilesFirst, virtualThreads, pipelined,
+                                                pipelineParserThreads, fileTimeoutMillis, ruleTimeoutMillis, analysisCache, messageReporter, lpRegistry);
     }
 
     public static LanguageProcessor.AnalysisTask taskWithFiles(LanguageProcessor.AnalysisTask originalTask, List<TextFile> newFiles) {
@@ -63,6 +63,12 @@ public interface LanguageProcessor extends AutoCloseable {
         private final List<TextFile> files;
         private final GlobalAnalysisListener listener;
         private final int threadCount;
+        private final boolean largestFilesFirst;
+        private final boolean virtualThreads;
+        private final boolean pipelined;
+        private final int pipelineParserThreads;
+        private final long fileTimeoutMillis;
+        private final long ruleTimeoutMillis;
         private final AnalysisCache analysisCache;
         private final PmdReporter messageReporter;
         private final LanguageProcessorRegistry lpRegistry;
@@ -78,6 +84,12 @@ public interface LanguageProcessor extends AutoCloseable {
                             List<TextFile> files,
                             GlobalAnalysisListener listener,
                             int threadCount,
+                            boolean largestFilesFirst,
+                            boolean virtualThreads,
+                            boolean pipelined,
+                            int pipelineParserThreads,
+                            long fileTimeoutMillis,
+                            long ruleTimeoutMillis,
                             AnalysisCache analysisCache,
                             PmdReporter messageReporter,
                             LanguageProcessorRegistry lpRegistry) {
@@ -85,6 +97,12 @@ public interface LanguageProcessor extends AutoCloseable {
             this.files = files;
             this.listener = listener;
             this.threadCount = threadCount;
+            this.largestFilesFirst = largestFilesFirst;
+            this.virtualThreads = virtualThreads;
+            this.pipelined = pipelined;
+            this.pipelineParserThreads = pipelineParserThreads;
+            this.fileTimeoutMillis = fileTimeoutMillis;
+            this.ruleTimeoutMillis = ruleTimeoutMillis;
             this.analysisCache = analysisCache;
             this.messageReporter = messageReporter;
             this.lpRegistry = lpRegistry;
@@ -106,6 +124,56 @@ public interface LanguageProcessor extends AutoCloseable {
             return threadCount;
         }
 
+        /**
+         * Whether files should be scheduled in order of decreasing size
+         * when using several threads.
+         */
+        public boolean isLargestFilesFirst() {
+            return largestFilesFirst;
+        }
+
+        /**
+         * Whether files should be analysed on virtual threads, at most
+         * {@link #getThreadCount()} of them being parsed and checked
+         * at the same time.
+         */
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * Whether files should be analysed in a pipeline of stages
+         * connected by bounded queues, when using several threads.
+         */
+        public boolean isPipelined() {
+            return pipelined;
+        }
+
+        /**
+         * The number of threads that parse files in a pipelined analysis,
+         * the other threads apply the rules. 0 means half of the
+         * {@linkplain #getThreadCount() threads}.
+         */
+        public int getPipelineParserThreads() {
+            return pipelineParserThreads;
+        }
+
+        /**
+         * The maximum time in milliseconds that the analysis of a single
+         * file may take, or 0 if there is no limit.
+         */
+        public long getFileTimeoutMillis() {
+            return fileTimeoutMillis;
+        }
+
+        /**
+         * The maximum time in milliseconds that a single rule may take
+         * on a file, or 0 if there is no limit.
+         */
+        public long getRuleTimeoutMillis() {
+            return ruleTimeoutMillis;
+        }
+
         public AnalysisCache getAnalysisCache() {
             return analysisCache;
         }
@@ -129,6 +197,12 @@ public interface LanguageProcessor extends AutoCloseable {
                 newFiles,
                 listener,
                 threadCount,
+                largestFilesFirst,
+                virtualThreads,
+                pipelined,
+                pipelineParserThreads,
+                fileTimeoutMillis,
+                ruleTimeoutMillis,
                 analysisCache,
                 messageReporter,
                 lpRegistry
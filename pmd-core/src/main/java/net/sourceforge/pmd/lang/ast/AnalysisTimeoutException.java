@@ -0,0 +1,61 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.ast;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.document.FileId;
+
+/**
+ * Thrown when the analysis of a file, or a rule on a file, has taken
+ * longer than its time budget. The analysis is cancelled cooperatively:
+ * this is thrown by the next checkpoint that the analysis reaches after
+ * the budget ran out, see {@link net.sourceforge.pmd.lang.impl.Watchdog#checkpoint()}.
+ *
+ * <p>If a rule timed out, the rule is skipped for the rest of the file.
+ * If the file timed out, the analysis of the file is stopped, and this
+ * is reported as a processing error.
+ */
+public class AnalysisTimeoutException extends FileAnalysisException {
+
+    private final @Nullable String ruleName;
+    private final long timeoutMillis;
+
+    public AnalysisTimeoutException(FileId fileId, @Nullable String ruleName, long timeoutMillis) {
+        super(ruleName == null
+              ? "Analysis of the file timed out after " + timeoutMillis + " ms"
+              : "Rule " + ruleName + " timed out after " + timeoutMillis + " ms");
+        this.ruleName = ruleName;
+        this.timeoutMillis = timeoutMillis;
+        setFileId(fileId);
+    }
+
+    @Override
+    protected String errorKind() {
+        return "Timeout";
+    }
+
+    /**
+     * The name of the rule that timed out, or null if the analysis of the
+     * whole file timed out.
+     */
+    public @Nullable String getRuleName() {
+        return ruleName;
+    }
+
+    /**
+     * Whether only a rule timed out, and not the analysis of the whole file.
+     */
+    public boolean isRuleTimeout() {
+        return ruleName != null;
+    }
+
+    /**
+     * The time budget that ran out, in milliseconds.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
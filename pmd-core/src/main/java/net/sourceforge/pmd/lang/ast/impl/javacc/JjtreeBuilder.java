@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.lang.ast.impl.javacc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,7 +16,9 @@ import java.util.List;
 public final class JjtreeBuilder<N extends AbstractJjtreeNode<N, ?>> {
 
     private final List<N> nodes = new ArrayList<>();
-    private final List<Integer> marks = new ArrayList<>();
+    // stack of the marks of the enclosing node scopes, not boxed
+    private int[] marks = new int[32];
+    private int numMarks = 0;
 
     private int sp = 0;        // number of nodes on stack
     private int mk = 0;        // current mark
@@ -44,7 +47,7 @@ public final class JjtreeBuilder<N extends AbstractJjtreeNode<N, ?>> {
      */
     public void reset() {
         nodes.clear();
-        marks.clear();
+        numMarks = 0;
         sp = 0;
         mk = 0;
     }
@@ -87,7 +90,7 @@ public final class JjtreeBuilder<N extends AbstractJjtreeNode<N, ?>> {
     public N popNode() {
         --sp;
         if (sp < mk) {
-            mk = marks.remove(marks.size() - 1);
+            mk = popMark();
         }
         return nodes.remove(nodes.size() - 1);
     }
@@ -110,12 +113,12 @@ public final class JjtreeBuilder<N extends AbstractJjtreeNode<N, ?>> {
         while (sp > mk) {
             popNode();
         }
-        mk = marks.remove(marks.size() - 1);
+        mk = popMark();
     }
 
 
     public void openNodeScope(N n, JavaccToken firstToken) {
-        marks.add(mk);
+        pushMark(mk);
         mk = sp;
 
         if (isInjectionPending()) {
@@ -137,7 +140,7 @@ public final class JjtreeBuilder<N extends AbstractJjtreeNode<N, ?>> {
      */
     public void closeNodeScope(N n, final int num, JavaccToken lastToken) {
         int a = nodeArity();
-        mk = marks.remove(marks.size() - 1);
+        mk = popMark();
         N child = null;
         int i = num;
         while (i-- > 0) {
@@ -169,17 +172,28 @@ public final class JjtreeBuilder<N extends AbstractJjtreeNode<N, ?>> {
     public void closeNodeScope(N n, boolean condition, JavaccToken lastToken) {
         if (condition) {
             int a = nodeArity();
-            mk = marks.remove(marks.size() - 1);
+            mk = popMark();
             while (a-- > 0) {
                 n.addChild(popNode(), a);
             }
             closeImpl(n, lastToken);
         } else {
-            mk = marks.remove(marks.size() - 1);
+            mk = popMark();
             nodeCreated = false;
         }
     }
 
+    private void pushMark(int mark) {
+        if (numMarks == marks.length) {
+            marks = Arrays.copyOf(marks, marks.length * 2);
+        }
+        marks[numMarks++] = mark;
+    }
+
+    private int popMark() {
+        return marks[--numMarks];
+    }
+
 
     private void closeImpl(N n, JavaccToken lastToken) {
         if (lastToken.getNext() == n.getFirstToken()) { // NOPMD CompareObjectsWithEquals
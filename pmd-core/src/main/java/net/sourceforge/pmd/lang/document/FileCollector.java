@@ -151,6 +151,7 @@ public final class FileCollector implements AutoCloseable {
         return languageVersion != null
             && addFileImpl(TextFile.builderForPath(file, charset, languageVersion)
                                    .setParentFsPath(outerFsPath)
+                                   .asReadOnly()
                                    .build());
     }
 
@@ -174,6 +175,7 @@ public final class FileCollector implements AutoCloseable {
         Objects.requireNonNull(lv);
         return addFileImpl(TextFile.builderForPath(file, charset, lv)
                                    .setParentFsPath(outerFsPath)
+                                   .asReadOnly()
                                    .build());
     }
 
@@ -30,4 +30,17 @@ public final class InternalApiBridge {
     public static FileCollector newCollector(FileCollector collector, PmdReporter reporter) {
         return collector.newCollector(reporter);
     }
+
+    /**
+     * Returns an estimate of the size of the file, without reading it.
+     * This is 0 if the size cannot be determined cheaply.
+     */
+    public static long estimateSize(TextFile textFile) {
+        if (textFile instanceof NioTextFile) {
+            return ((NioTextFile) textFile).estimateSize();
+        } else if (textFile instanceof StringTextFile) {
+            return ((StringTextFile) textFile).estimateSize();
+        }
+        return 0;
+    }
 }
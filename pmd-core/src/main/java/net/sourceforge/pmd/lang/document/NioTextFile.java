@@ -6,8 +6,14 @@ package net.sourceforge.pmd.lang.document;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -15,6 +21,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.internal.util.BaseCloseable;
+import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.util.AssertionUtil;
 
@@ -23,6 +30,11 @@ import net.sourceforge.pmd.util.AssertionUtil;
  */
 class NioTextFile extends BaseCloseable implements TextFile {
 
+    /** Files built read-only and at least this large are read through a memory mapping. */
+    private static final long MAPPING_THRESHOLD = 256 * 1024;
+    /** Files larger than this are too large for a char array. */
+    private static final long MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
     private final Path path;
     private final Charset charset;
     private final LanguageVersion languageVersion;
@@ -55,6 +67,18 @@ class NioTextFile extends BaseCloseable implements TextFile {
         return fileId;
     }
 
+    /**
+     * Returns the size of the file in bytes, or 0 if it cannot be determined.
+     * This does not read the file.
+     */
+    long estimateSize() {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
     @Override
     public boolean isReadOnly() {
         return readOnly || !Files.isWritable(path);
@@ -86,9 +110,61 @@ class NioTextFile extends BaseCloseable implements TextFile {
             throw new IOException("Not a regular file: " + path);
         }
 
+        if (TextFileContent.canDecodeBytes(charset)) {
+            TextFileContent content = readBytes();
+            if (content != null) {
+                return content;
+            }
+            // malformed input, let the JDK decoder replace it
+        }
         return TextFileContent.fromInputStream(Files.newInputStream(path), charset);
     }
 
+    /**
+     * Reads the file with {@link TextFileContent#fromBytes(ByteBuffer, Charset)}.
+     * Large files of the default file system that were built read-only, like
+     * the files collected for an analysis, are mapped into memory, so their
+     * bytes are never copied. Other files are read in a single buffer
+     * of the size of the file, as mapping them costs more than copying them,
+     * or as the mapping would prevent writing them back. Returns null if the
+     * bytes are not well-formed, or if the file is too large for a buffer.
+     */
+    private @Nullable TextFileContent readBytes() throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            long size = channel.size();
+            if (size > MAX_BUFFER_SIZE) {
+                return null;
+            }
+            if (size >= MAPPING_THRESHOLD && channel instanceof FileChannel
+                && path.getFileSystem() == FileSystems.getDefault() && readOnly) {
+                return readMapped((FileChannel) channel, size);
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            int n = 0;
+            while (n != IOUtil.EOF && bytes.hasRemaining()) {
+                n = channel.read(bytes);
+            }
+            bytes.flip();
+            return TextFileContent.fromBytes(bytes, charset);
+        }
+    }
+
+    /**
+     * Decodes the file through a memory mapping. The mapping is only released
+     * when it is garbage collected, and until then the file cannot be written
+     * on some platforms (eg Windows), so this is only used for read-only files.
+     */
+    private @Nullable TextFileContent readMapped(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer bytes = channel.map(MapMode.READ_ONLY, 0, size);
+        try {
+            return TextFileContent.fromBytes(bytes, charset);
+        } catch (InternalError e) {
+            // the JVM reports an access to a page that is no longer in the
+            // file, if it was truncated while it was mapped
+            throw new IOException("File was truncated while being read: " + path, e);
+        }
+    }
+
 
     @Override
     protected void doClose() throws IOException {
@@ -29,6 +29,10 @@ class StringTextFile implements TextFile {
         this.fileId = fileId;
     }
 
+    long estimateSize() {
+        return content.getNormalizedText().length();
+    }
+
     @Override
     public @NonNull LanguageVersion getLanguageVersion() {
         return languageVersion;
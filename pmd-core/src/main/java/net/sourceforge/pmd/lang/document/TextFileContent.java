@@ -213,6 +213,8 @@ public final class TextFileContent {
         int n = input.read(cbuf);
         if (n > 0 && cbuf[0] == IOUtil.UTF_BOM) {
             nextCharToCopy = 1;
+            // the BOM is not part of the normalized text, so the offsets start one char later
+            bufOffset = -1;
         }
 
         while (n != IOUtil.EOF) {
@@ -294,6 +296,136 @@ public final class TextFileContent {
         return new TextFileContent(Chars.wrap(result), detectedLineTerm, checksum.getValue(), positionerBuilder.build(bufOffset));
     }
 
+    /**
+     * Whether {@link #fromBytes(ByteBuffer, Charset)} can decode text
+     * in the given charset.
+     */
+    static boolean canDecodeBytes(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer into a {@link TextFileContent},
+     * without going through a {@link Reader}. The charset must be one of those
+     * accepted by {@link #canDecodeBytes(Charset)}. The characters are decoded
+     * into a single array that is large enough for the whole text, and the
+     * line terminators are normalized and the lines are recorded in the same
+     * pass. The checksum is computed on the bytes before, which is cheaper than
+     * updating it for each byte in that pass. The position of the buffer is
+     * not changed.
+     *
+     * <p>Returns null if the bytes are not well-formed in the charset. The
+     * caller should use {@link #fromInputStream(InputStream, Charset)} then,
+     * which replaces malformed input like the JDK decoder does.
+     *
+     * @param bytes   Bytes of the file
+     * @param charset Encoding of the bytes
+     */
+    static @Nullable TextFileContent fromBytes(ByteBuffer bytes, Charset charset) {
+        return fromBytes(bytes, charset, FALLBACK_LINESEP);
+    }
+
+    // test only
+    static @Nullable TextFileContent fromBytes(ByteBuffer bytes, Charset charset, String fallbackLineSep) {
+        assert canDecodeBytes(charset) : "Unsupported charset " + charset;
+        final boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        final int start = bytes.position();
+        final int end = bytes.limit();
+
+        // there is never more chars than bytes in those charsets
+        char[] cbuf = new char[end - start];
+        int len = 0;
+        String detectedLineTerm = null;
+        SourceCodePositioner.Builder positionerBuilder = new SourceCodePositioner.Builder();
+
+        // the checksum is computed on the original bytes, including the BOM
+        Adler32 checksum = new Adler32();
+        checksum.update(bytes.duplicate());
+
+        int i = start;
+        if (utf8 && end - start >= 3
+            && bytes.get(start) == (byte) 0xef && bytes.get(start + 1) == (byte) 0xbb && bytes.get(start + 2) == (byte) 0xbf) {
+            i += 3; // skip the BOM
+        }
+
+        while (i < end) {
+            final byte b = bytes.get(i++);
+
+            if (b > '\r') {
+                // most chars are printable ASCII
+                cbuf[len++] = (char) b;
+            } else if (b == '\n') {
+                cbuf[len++] = NORMALIZED_LINE_TERM_CHAR;
+                positionerBuilder.addLineEndAtOffset(len);
+                detectedLineTerm = detectLineTerm(detectedLineTerm, LF, fallbackLineSep);
+            } else if (b == '\r') {
+                cbuf[len++] = NORMALIZED_LINE_TERM_CHAR;
+                positionerBuilder.addLineEndAtOffset(len);
+                if (i < end && bytes.get(i) == '\n') {
+                    i++;
+                    detectedLineTerm = detectLineTerm(detectedLineTerm, CRLF, fallbackLineSep);
+                } else {
+                    detectedLineTerm = detectLineTerm(detectedLineTerm, CR, fallbackLineSep);
+                }
+            } else if (b >= 0) {
+                cbuf[len++] = (char) b;
+            } else if (!utf8) {
+                cbuf[len++] = (char) (b & 0xff);
+            } else {
+                // a multibyte UTF-8 sequence
+                final int numTrailing;
+                final int minCodePoint;
+                int codePoint;
+                if ((b & 0xe0) == 0xc0) {
+                    numTrailing = 1;
+                    minCodePoint = 0x80;
+                    codePoint = b & 0x1f;
+                } else if ((b & 0xf0) == 0xe0) {
+                    numTrailing = 2;
+                    minCodePoint = 0x800;
+                    codePoint = b & 0x0f;
+                } else if ((b & 0xf8) == 0xf0) {
+                    numTrailing = 3;
+                    minCodePoint = 0x10000;
+                    codePoint = b & 0x07;
+                } else {
+                    return null;
+                }
+                if (end - i < numTrailing) {
+                    return null;
+                }
+                for (int k = 0; k < numTrailing; k++) {
+                    int trailing = bytes.get(i++);
+                    if ((trailing & 0xc0) != 0x80) {
+                        return null;
+                    }
+                    codePoint = codePoint << 6 | trailing & 0x3f;
+                }
+                if (codePoint < minCodePoint
+                    || codePoint > Character.MAX_CODE_POINT
+                    || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                    // overlong encoding, or not a unicode scalar value
+                    return null;
+                }
+                if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    cbuf[len++] = (char) codePoint;
+                } else {
+                    cbuf[len++] = Character.highSurrogate(codePoint);
+                    cbuf[len++] = Character.lowSurrogate(codePoint);
+                }
+            }
+        }
+
+        if (detectedLineTerm == null) {
+            // no line terminator in text
+            detectedLineTerm = fallbackLineSep;
+        }
+
+        // Chars wraps a string, so the chars are copied once more into it
+        Chars text = Chars.wrap(new String(cbuf, 0, len));
+        return new TextFileContent(text, detectedLineTerm, checksum.getValue(), positionerBuilder.build(len));
+    }
+
     private static String detectLineTerm(@Nullable String curLineTerm, String newLineTerm, String fallback) {
         if (curLineTerm == null) {
             return newLineTerm;
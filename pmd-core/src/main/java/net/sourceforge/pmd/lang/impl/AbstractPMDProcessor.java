@@ -4,7 +4,16 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.InternalApiBridge;
 import net.sourceforge.pmd.lang.document.TextFile;
 
 /**
@@ -15,9 +24,12 @@ import net.sourceforge.pmd.lang.document.TextFile;
 abstract class AbstractPMDProcessor implements AutoCloseable {
 
     protected final AnalysisTask task;
+    /** Enforces the timeouts of the task, null if it has none. */
+    protected final @Nullable Watchdog watchdog;
 
     AbstractPMDProcessor(AnalysisTask task) {
         this.task = task;
+        this.watchdog = Watchdog.create(task);
     }
 
     /**
@@ -32,16 +44,50 @@ abstract class AbstractPMDProcessor implements AutoCloseable {
     @Override
     public abstract void close();
 
+    /**
+     * Stops the watchdog, if any. Called by {@link #close()} after all
+     * files have been analysed.
+     */
+    void closeWatchdog() {
+        if (watchdog != null) {
+            watchdog.close();
+        }
+    }
+
+    /**
+     * Returns the files in the order in which they should be analysed.
+     * If {@link AnalysisTask#isLargestFilesFirst()} is set, this is the order
+     * of decreasing size: large files take the longest to analyse, when they
+     * are started first, the smaller files fill the gaps at the end of the analysis.
+     * Otherwise, this is the order in which they were collected.
+     */
+    List<TextFile> getFilesInProcessingOrder() {
+        if (!task.isLargestFilesFirst()) {
+            return task.getFiles();
+        }
+        final Map<TextFile, Long> sizes = new IdentityHashMap<>();
+        for (TextFile file : task.getFiles()) {
+            sizes.put(file, InternalApiBridge.estimateSize(file));
+        }
+        final List<TextFile> files = new ArrayList<>(task.getFiles());
+        files.sort(Comparator.comparing(sizes::get, Comparator.reverseOrder()));
+        return files;
+    }
+
     /**
      * Returns a new file processor. The strategy used for threading is
-     * determined by {@link AnalysisTask#getThreadCount()}.
+     * determined by {@link AnalysisTask#getThreadCount()} and
+     * {@link AnalysisTask#isPipelined()}.
      * <p>Note: Only {@code 0} threads disables multi-thread processing. See the CLI documentation
      * for parameter {@code --threads}.</p>
      */
     public static AbstractPMDProcessor newFileProcessor(AnalysisTask analysisTask) {
-        return analysisTask.getThreadCount() > 0
-               ? new MultiThreadProcessor(analysisTask)
-               : new MonoThreadProcessor(analysisTask);
+        if (analysisTask.getThreadCount() <= 0) {
+            return new MonoThreadProcessor(analysisTask);
+        }
+        return analysisTask.isPipelined()
+               ? new PipelinedProcessor(analysisTask)
+               : new MultiThreadProcessor(analysisTask);
     }
 
 }
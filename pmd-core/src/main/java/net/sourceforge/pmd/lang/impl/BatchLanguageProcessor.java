@@ -9,12 +9,16 @@ import java.util.List;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.InternalApiBridge;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.LanguagePropertyBundle;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.PmdCapableLanguage;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+
+import net.sf.saxon.Configuration;
 
 /**
  * A base class for language processors. It processes all files of the
@@ -30,6 +34,7 @@ public abstract class BatchLanguageProcessor<P extends LanguagePropertyBundle> i
     private final PmdCapableLanguage language;
     private final P bundle;
     private final LanguageVersion version;
+    private Configuration xpathConfiguration;
 
     protected BatchLanguageProcessor(P bundle) {
         if (!(bundle.getLanguage() instanceof PmdCapableLanguage)) {
@@ -56,6 +61,22 @@ public abstract class BatchLanguageProcessor<P extends LanguagePropertyBundle> i
         return language;
     }
 
+    /**
+     * Returns the Saxon configuration shared by the XPath queries of this
+     * processor. It is created on first use, with the extension functions
+     * of the {@linkplain net.sourceforge.pmd.lang.LanguageVersionHandler#getXPathHandler() XPath handler}
+     * of this processor.
+     *
+     * @apiNote Internal API
+     */
+    @InternalApi
+    public synchronized Configuration getXPathConfiguration() {
+        if (xpathConfiguration == null) {
+            xpathConfiguration = SaxonXPathRuleQuery.newConfiguration(services().getXPathHandler());
+        }
+        return xpathConfiguration;
+    }
+
     @Override
     public @NonNull AutoCloseable launchAnalysis(@NonNull AnalysisTask task) {
         // The given analysis task has all files to analyse, not only the ones for this language.
@@ -21,21 +21,21 @@ final class MonoThreadProcessor extends AbstractPMDProcessor {
     @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
     public void processFiles() {
         for (TextFile file : task.getFiles()) {
-            new MonothreadRunnable(file, task).run();
+            new MonothreadRunnable(file, task, watchdog).run();
         }
     }
 
     @Override
     public void close() {
-        // nothing to do
+        closeWatchdog();
     }
 
     static final class MonothreadRunnable extends PmdRunnable {
 
         private final RuleSets ruleSets;
 
-        MonothreadRunnable(TextFile textFile, AnalysisTask task) {
-            super(textFile, task);
+        MonothreadRunnable(TextFile textFile, AnalysisTask task, Watchdog watchdog) {
+            super(textFile, task, watchdog);
             this.ruleSets = task.getRulesets();
         }
 
@@ -9,19 +9,48 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
-import net.sourceforge.pmd.util.log.PmdReporter;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
 
 
 /**
+ * Analyses files on a pool of threads. By default, files are submitted to
+ * a fixed thread pool in the order in which they were collected. If
+ * {@link AnalysisTask#isLargestFilesFirst()} is set, they are submitted
+ * in order of decreasing size to a work-stealing {@link ForkJoinPool}.
+ * If {@link AnalysisTask#isVirtualThreads()} is set, each file is analysed
+ * on its own virtual thread, and a semaphore limits the number of files
+ * being parsed and checked at the same time to the thread count. Another
+ * semaphore limits the number of files in process, whose text is in memory,
+ * to {@value #FILES_IN_PROCESS_PER_THREAD} times the thread count.
+ * Rules are not thread-safe in general, so each file is checked with
+ * a copy of the rulesets leased from a {@link RuleSetsPool}.
+ *
  * @author Romain Pelisse &lt;belaran@gmail.com&gt;
  */
 final class MultiThreadProcessor extends AbstractPMDProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiThreadProcessor.class);
+
+    /**
+     * With virtual threads, the number of files in process per thread. Files
+     * beyond those being parsed and checked are read, or wait to be parsed.
+     */
+    static final int FILES_IN_PROCESS_PER_THREAD = 2;
+
     private final ExecutorService executor;
 
     private final List<Future<?>> futureList;
@@ -29,31 +58,89 @@ final class MultiThreadProcessor extends AbstractPMDProcessor {
     MultiThreadProcessor(final AnalysisTask task) {
         super(task);
 
-        executor = Executors.newFixedThreadPool(task.getThreadCount(), new PmdThreadFactory());
+        if (task.isVirtualThreads() && VirtualThreads.isSupported()) {
+            executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        } else {
+            if (task.isVirtualThreads()) {
+                LOG.warn("Virtual threads require Java 21 or later, using {} platform threads instead", task.getThreadCount());
+            }
+            executor = task.isLargestFilesFirst()
+                       ? newWorkStealingPool(task.getThreadCount())
+                       : Executors.newFixedThreadPool(task.getThreadCount(), new PmdThreadFactory());
+        }
         futureList = new LinkedList<>();
     }
 
+    private static ForkJoinPool newWorkStealingPool(int threadCount) {
+        // Threads of the default factory use the system class loader as context
+        // class loader, which is not the one that loaded PMD in build tools.
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger counter = new AtomicInteger();
+        return new ForkJoinPool(threadCount, pool -> {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) { };
+            thread.setName("PmdThread " + counter.incrementAndGet());
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        }, null, true);
+    }
+
     @Override
     @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
     public void processFiles() {
-        // The thread-local is not static, but analysis-global
+        // The pool is not static, but analysis-global
         // This means we don't have to reset it manually, every analysis is isolated.
-        // The initial value makes a copy of the rulesets
-        final ThreadLocal<RuleSets> ruleSetCopy = ThreadLocal.withInitial(() -> {
-            RuleSets copy = new RuleSets(task.getRulesets());
-            // use a noop reporter because the copy should only contain rules that
-            // initialized properly
-            copy.initializeRules(task.getLpRegistry(), PmdReporter.quiet());
-            return copy;
-        });
-
-        for (final TextFile textFile : task.getFiles()) {
-            futureList.add(executor.submit(new PmdRunnable(textFile, task) {
+        // There are at most as many copies of the rulesets as files analysed at the same time.
+        final RuleSetsPool ruleSetsPool = new RuleSetsPool(task);
+        // With virtual threads, there is one thread per file. The permits limit
+        // the number of files that are parsed and checked at the same time.
+        // Fair, so that files are processed in the order they were submitted
+        final Semaphore cpuPermits = task.isVirtualThreads() ? new Semaphore(task.getThreadCount(), true) : null;
+        // The file permits limit the number of files that are in process, so that
+        // the text of every file is not read before the files can be parsed.
+        final Semaphore filePermits = task.isVirtualThreads()
+                                      ? new Semaphore(FILES_IN_PROCESS_PER_THREAD * task.getThreadCount(), true)
+                                      : null;
+
+        final List<TextFile> files = getFilesInProcessingOrder();
+        for (final TextFile textFile : files) {
+            // Unlike ForkJoinPool#submit, a FutureTask rethrows the original error
+            FutureTask<?> future = new FutureTask<>(new PmdRunnable(textFile, task, watchdog) {
+                @Override
+                public void run() {
+                    if (filePermits != null) {
+                        filePermits.acquireUninterruptibly();
+                    }
+                    try {
+                        super.run();
+                    } finally {
+                        if (filePermits != null) {
+                            filePermits.release();
+                        }
+                    }
+                }
+
                 @Override
                 protected RuleSets getRulesets() {
-                    return ruleSetCopy.get();
+                    // only used to check whether the file must be processed
+                    return task.getRulesets();
+                }
+
+                @Override
+                protected void processSource(FileAnalysisListener listener, TextDocument textDocument, RuleSets ruleSets) {
+                    if (cpuPermits != null) {
+                        cpuPermits.acquireUninterruptibly();
+                    }
+                    try (RuleSetsPool.Lease lease = ruleSetsPool.lease()) {
+                        super.processSource(listener, textDocument, lease.getRuleSets());
+                    } finally {
+                        if (cpuPermits != null) {
+                            cpuPermits.release();
+                        }
+                    }
                 }
-            }));
+            }, null);
+            executor.execute(future);
+            futureList.add(future);
         }
     }
 
@@ -81,6 +168,7 @@ final class MultiThreadProcessor extends AbstractPMDProcessor {
             Thread.currentThread().interrupt();
         } finally {
             executor.shutdownNow();
+            closeWatchdog();
         }
     }
 }
@@ -0,0 +1,368 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.internal.SystemProps;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.ast.FileAnalysisException;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Analyses files in a pipeline of stages, each running on its own threads:
+ * <ol>
+ * <li>files are read and looked up in the analysis cache by one thread,
+ * <li>they are parsed by a pool of threads,
+ * <li>the rules are applied to them by another pool of threads, with
+ * copies of the rulesets leased from a {@link RuleSetsPool},
+ * <li>their violations are sent to the {@linkplain AnalysisTask#getListener() listener}
+ * by one thread.
+ * </ol>
+ * The parser and rule threads share the {@linkplain AnalysisTask#getThreadCount() thread count},
+ * split as given by {@link AnalysisTask#getPipelineParserThreads()}. Each
+ * stage has at least one thread, so there are at least 4 threads.
+ * The stages are connected by bounded queues: when a stage is slower than
+ * the one before it, its queue fills up, and the stage before it waits.
+ * This limits the number of documents and ASTs held in memory at any time.
+ * The time spent waiting for room in the queues and their depths are
+ * tracked under {@link TimedOperationCategory#PIPELINE_QUEUE}.
+ */
+final class PipelinedProcessor extends AbstractPMDProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(PipelinedProcessor.class);
+
+    /** Marks the end of the files in a queue. */
+    private static final FileInProcess END = new FileInProcess(null);
+
+    private final List<Stage> stages = new ArrayList<>();
+    // The first failure of a file, reported when the processor is closed,
+    // like the first failed task of a MultiThreadProcessor
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+    PipelinedProcessor(final AnalysisTask task) {
+        super(task);
+    }
+
+    @Override
+    public void processFiles() {
+        final RuleSetsPool ruleSetsPool = new RuleSetsPool(task);
+        final int parserThreads = parserThreads(task.getThreadCount(), task.getPipelineParserThreads());
+        final int ruleThreads = Math.max(1, task.getThreadCount() - parserThreads);
+
+        // there are at most 2 files waiting in front of each thread
+        final Stage report = new Stage("report", 1, new ArrayBlockingQueue<>(2), this::report, null);
+        final Stage rules = new Stage("rules", ruleThreads, new ArrayBlockingQueue<>(2 * ruleThreads),
+            file -> applyRules(file, ruleSetsPool), report);
+        final Stage parse = new Stage("parse", parserThreads, new ArrayBlockingQueue<>(2 * parserThreads),
+            this::parse, rules);
+        // the files to read are only references, this queue is not bounded
+        final Stage read = new Stage("read", 1, new LinkedBlockingQueue<>(), this::read, parse);
+
+        for (TextFile textFile : getFilesInProcessingOrder()) {
+            read.queue.add(new FileInProcess(textFile));
+        }
+        read.queue.add(END);
+
+        stages.add(read);
+        stages.add(parse);
+        stages.add(rules);
+        stages.add(report);
+        for (Stage stage : stages) {
+            stage.start();
+        }
+    }
+
+    /**
+     * Returns the number of parser threads, out of the given thread count.
+     * Half of the threads parse by default, and at least one thread is left
+     * to apply the rules, unless there is a single thread.
+     */
+    static int parserThreads(int threadCount, int configuredParserThreads) {
+        if (configuredParserThreads == 0) {
+            return Math.max(1, threadCount / 2);
+        }
+        return Math.max(1, Math.min(configuredParserThreads, threadCount - 1));
+    }
+
+    private void read(FileInProcess file) {
+        final TextFile textFile = file.textFile;
+        // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
+        if (!task.getRulesets().applies(textFile)) {
+            LOG.trace("Skipping file (lang: {}) because no rule applies: {}", textFile.getLanguageVersion(), textFile.getFileId());
+            file.done = true;
+            return;
+        }
+
+        final AnalysisCache analysisCache = task.getAnalysisCache();
+        try {
+            file.textDocument = TextDocument.create(textFile);
+        } catch (IOException e) {
+            throw wrap(file, e);
+        }
+        file.cacheListener = analysisCache.startFileAnalysis(file.textDocument);
+        if (analysisCache.isUpToDate(file.textDocument)) {
+            LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+            // note: not reported to the cache listener
+            PmdRunnable.reportCachedRuleViolations(task, file.results, file.textDocument);
+            file.done = true;
+        } else {
+            LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+        }
+    }
+
+    private void parse(FileInProcess file) {
+        final long start = System.nanoTime();
+        try (Watchdog.Watch ignored = watchFile(file, start)) {
+            file.rootNode = PmdRunnable.parse(task, file.textDocument);
+        } catch (Exception | StackOverflowError | AssertionError e) {
+            onProcessingError(file, e);
+        }
+        file.parseNanos = System.nanoTime() - start;
+    }
+
+    private void applyRules(FileInProcess file, RuleSetsPool ruleSetsPool) {
+        // the file timeout covers the parsing and the rules, not the time spent waiting between them
+        try (RuleSetsPool.Lease lease = ruleSetsPool.lease();
+             Watchdog.Watch ignored = watchFile(file, System.nanoTime() - file.parseNanos)) {
+            PmdRunnable.applyRules(task, file.completeListener(), file.textDocument, file.rootNode, lease.getRuleSets());
+        } catch (Exception | StackOverflowError | AssertionError e) {
+            onProcessingError(file, e);
+        } finally {
+            // the AST is not needed anymore
+            file.rootNode = null;
+        }
+    }
+
+    private Watchdog.Watch watchFile(FileInProcess file, long startNanos) {
+        return watchdog == null ? null : watchdog.watchFile(file.textFile.getFileId(), startNanos);
+    }
+
+    private void onProcessingError(FileInProcess file, Throwable e) {
+        if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
+            throw (Error) e;
+        }
+        // The listener handles logging if needed,
+        // it may also rethrow the error, as a FileAnalysisException (which is reported when closing)
+        file.completeListener().onError(new ProcessingError(e, file.textFile.getFileId()));
+        file.done = true;
+    }
+
+    /**
+     * Reports the results of a file to the listener of the analysis,
+     * and closes the file. This runs even if the file failed in an
+     * earlier stage.
+     */
+    private void report(FileInProcess file) {
+        try (FileAnalysisListener listener = task.getListener().startFileAnalysis(file.textFile)) {
+            try (TextDocument ignored = file.textDocument;
+                 FileAnalysisListener ignored2 = file.cacheListener) {
+                file.results.replay(listener);
+            }
+        } catch (Exception e) {
+            onFailure(wrap(file, e));
+        }
+        if (file.failure != null) {
+            onFailure(file.failure instanceof Exception ? wrap(file, file.failure) : file.failure);
+        }
+    }
+
+    private static FileAnalysisException wrap(FileInProcess file, Throwable e) {
+        // managed exceptions are let through, they were already reported
+        return FileAnalysisException.wrap(file.textFile.getFileId(), "An unknown exception occurred", e);
+    }
+
+    private void onFailure(Throwable failure) {
+        firstFailure.compareAndSet(null, failure);
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (Stage stage : stages) {
+                stage.executor.shutdown();
+                while (!stage.executor.awaitTermination(10, TimeUnit.HOURS)) {
+                    // still waiting
+                    Thread.yield();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Stage stage : stages) {
+                stage.executor.shutdownNow();
+            }
+            closeWatchdog();
+        }
+
+        Throwable failure = firstFailure.get();
+        if (failure != null) {
+            task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
+                    failure.toString(), failure);
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+    }
+
+    /**
+     * A stage of the pipeline: a pool of threads that take files from
+     * a queue, process them, and put them into the queue of the next stage.
+     */
+    private final class Stage {
+
+        private final String name;
+        private final int threadCount;
+        private final BlockingQueue<FileInProcess> queue;
+        private final Consumer<FileInProcess> action;
+        private final Stage next;
+        private final ExecutorService executor;
+        private final AtomicInteger runningThreads = new AtomicInteger();
+
+        Stage(String name, int threadCount, BlockingQueue<FileInProcess> queue, Consumer<FileInProcess> action, Stage next) {
+            this.name = name;
+            this.threadCount = threadCount;
+            this.queue = queue;
+            this.action = action;
+            this.next = next;
+            this.executor = Executors.newFixedThreadPool(threadCount, new PmdThreadFactory("PmdThread " + name + " "));
+        }
+
+        void start() {
+            runningThreads.set(threadCount);
+            for (int i = 0; i < threadCount; i++) {
+                executor.execute(this::work);
+            }
+        }
+
+        @SuppressWarnings("PMD.AvoidCatchingThrowable")
+        private void work() {
+            TimeTracker.initThread();
+            try {
+                FileInProcess file;
+                while ((file = queue.take()) != END) {
+                    // the last stage also handles the files that are done
+                    if (!file.done || next == null) {
+                        try (TimedOperation ignored = TimeTracker.startFileOperation(file.textFile.getFileId())) {
+                            action.accept(file);
+                        } catch (Throwable e) {
+                            if (next == null) {
+                                onFailure(e);
+                            } else {
+                                // the file goes on to the last stage, which reports the failure
+                                file.failure = e;
+                                file.done = true;
+                            }
+                        }
+                    }
+                    if (next != null) {
+                        next.put(file);
+                    }
+                }
+                if (next != null && runningThreads.decrementAndGet() == 0) {
+                    for (int i = 0; i < next.threadCount; i++) {
+                        next.queue.put(END);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the processor is being shut down
+                Thread.currentThread().interrupt();
+            } finally {
+                TimeTracker.finishThread();
+            }
+        }
+
+        private void put(FileInProcess file) throws InterruptedException {
+            try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.PIPELINE_QUEUE, name)) {
+                queue.put(file);
+                op.close(queue.size());
+            }
+        }
+    }
+
+    /**
+     * The state of a file that goes through the stages. Each file is
+     * processed by one stage at a time, the queues make the changes of
+     * a stage visible to the next one.
+     */
+    private static final class FileInProcess {
+
+        private final TextFile textFile;
+        private final BufferedListener results = new BufferedListener();
+        private TextDocument textDocument;
+        private FileAnalysisListener cacheListener;
+        private RootNode rootNode;
+        // time spent parsing, counted in the file timeout
+        private long parseNanos;
+        // whether the next stages have nothing to do
+        private boolean done;
+        private Throwable failure;
+
+        FileInProcess(TextFile textFile) {
+            this.textFile = textFile;
+        }
+
+        @SuppressWarnings("PMD.CloseResource")
+        FileAnalysisListener completeListener() {
+            return FileAnalysisListener.tee(listOf(results, cacheListener));
+        }
+    }
+
+    /**
+     * Records the events of a file, to send them to the listener of the
+     * analysis from the report stage.
+     */
+    private static final class BufferedListener implements FileAnalysisListener {
+
+        private final List<Consumer<FileAnalysisListener>> events = new ArrayList<>();
+
+        @Override
+        public void onRuleViolation(RuleViolation violation) {
+            events.add(listener -> listener.onRuleViolation(violation));
+        }
+
+        @Override
+        public void onSuppressedRuleViolation(SuppressedViolation violation) {
+            events.add(listener -> listener.onSuppressedRuleViolation(violation));
+        }
+
+        @Override
+        public void onError(ProcessingError error) {
+            events.add(listener -> listener.onError(error));
+        }
+
+        void replay(FileAnalysisListener listener) {
+            for (Consumer<FileAnalysisListener> event : events) {
+                event.accept(listener);
+            }
+            events.clear();
+        }
+    }
+}
@@ -6,6 +6,7 @@ package net.sourceforge.pmd.lang.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,10 +39,12 @@ abstract class PmdRunnable implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(PmdRunnable.class);
     private final TextFile textFile;
     private final AnalysisTask task;
+    private final @Nullable Watchdog watchdog;
 
-    PmdRunnable(TextFile textFile, AnalysisTask task) {
+    PmdRunnable(TextFile textFile, AnalysisTask task, @Nullable Watchdog watchdog) {
         this.textFile = textFile;
         this.task = task;
+        this.watchdog = watchdog;
     }
 
     /**
@@ -55,7 +58,7 @@ abstract class PmdRunnable implements Runnable {
     public void run() throws FileAnalysisException {
         TimeTracker.initThread();
 
-        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING);
+        try (TimedOperation ignored = TimeTracker.startFileOperation(textFile.getFileId());
              FileAnalysisListener listener = task.getListener().startFileAnalysis(textFile)) {
 
             RuleSets ruleSets = getRulesets();
@@ -73,7 +76,7 @@ abstract class PmdRunnable implements Runnable {
                         LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
                         // note: no cache listener here
                         //                         vvvvvvvv
-                        reportCachedRuleViolations(listener, textDocument);
+                        reportCachedRuleViolations(task, listener, textDocument);
                     } else {
                         LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
                         try {
@@ -101,23 +104,41 @@ abstract class PmdRunnable implements Runnable {
         TimeTracker.finishThread();
     }
 
-    private void reportCachedRuleViolations(final FileAnalysisListener ctx, TextDocument file) {
+    static void reportCachedRuleViolations(AnalysisTask task, final FileAnalysisListener ctx, TextDocument file) {
         for (final RuleViolation rv : task.getAnalysisCache().getCachedViolations(file)) {
             ctx.onRuleViolation(rv);
         }
     }
 
-    private RootNode parse(Parser parser, ParserTask task) {
+    private static RootNode parse(Parser parser, ParserTask task) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.PARSER)) {
             return parser.parse(task);
         }
     }
 
+    /**
+     * Parses the document and applies the rules to it. This is the CPU-bound
+     * part of the analysis of a file, while the rest is mostly I/O. Subclasses
+     * may override this to limit how many files are processed at the same time.
+     * The {@linkplain AnalysisTask#getFileTimeoutMillis() file timeout} only
+     * covers this method.
+     *
+     * @param ruleSets The rulesets returned by {@link #getRulesets()}
+     */
+    protected void processSource(FileAnalysisListener listener,
+                                 TextDocument textDocument,
+                                 RuleSets ruleSets) throws FileAnalysisException {
+        try (Watchdog.Watch ignored = watchdog == null ? null : watchdog.watchFile(textFile.getFileId(), System.nanoTime())) {
+            RootNode rootNode = parse(task, textDocument);
+            applyRules(task, listener, textDocument, rootNode, ruleSets);
+        }
+    }
 
-    private void processSource(FileAnalysisListener listener,
-                               TextDocument textDocument,
-                               RuleSets ruleSets) throws FileAnalysisException {
-
+    /**
+     * Parses the document. Semantic errors are thrown, so that they are
+     * reported as processing errors and the rules are not applied.
+     */
+    static RootNode parse(AnalysisTask task, TextDocument textDocument) {
         SemanticErrorReporter reporter = SemanticErrorReporter.reportToLogger(task.getMessageReporter());
         @SuppressWarnings("PMD.CloseResource")
         LanguageProcessor processor = task.getLpRegistry().getProcessor(textDocument.getLanguageVersion().getLanguage());
@@ -136,8 +157,18 @@ abstract class PmdRunnable implements Runnable {
             // cause a processing error to be reported and rule analysis to be skipped
             throw semanticError;
         }
+        return rootNode;
+    }
 
-        ruleSets.apply(rootNode, listener);
+    static void applyRules(AnalysisTask task,
+                           FileAnalysisListener listener,
+                           TextDocument textDocument,
+                           RootNode rootNode,
+                           RuleSets ruleSets) {
+        // the results of the rules that have not changed since the cache was
+        // written are reported from the cache, the other rules are run
+        reportCachedRuleViolations(task, listener, textDocument);
+        ruleSets.apply(rootNode, listener, task.getAnalysisCache().getRulesToRun(textDocument));
     }
 
 }
@@ -10,10 +10,19 @@ import java.util.concurrent.atomic.AtomicInteger;
 class PmdThreadFactory implements ThreadFactory {
 
     private final AtomicInteger counter = new AtomicInteger();
+    private final String namePrefix;
+
+    PmdThreadFactory() {
+        this("PmdThread ");
+    }
+
+    PmdThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
 
     @Override
     public Thread newThread(Runnable r) {
-        return new Thread(r, "PmdThread " + counter.incrementAndGet());
+        return new Thread(r, namePrefix + counter.incrementAndGet());
     }
 
 }
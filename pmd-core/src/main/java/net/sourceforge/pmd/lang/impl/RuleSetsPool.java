@@ -0,0 +1,82 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+/**
+ * A pool of copies of the rulesets of an analysis. Most rules are not
+ * thread-safe, so a copy may only be used by one file at a time. A copy is
+ * leased for the duration of the analysis of a file, and then returned to
+ * the pool for another file. Unlike a thread-local, this doesn't create one
+ * copy per thread, but as many copies as there are files being analysed at
+ * the same time. Rules that are {@linkplain Rule#isThreadSafe() thread-safe}
+ * are shared by all copies.
+ */
+final class RuleSetsPool {
+
+    private final AnalysisTask task;
+    private final Queue<RuleSets> idleCopies = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a pool for the rulesets of the task, which must be initialized.
+     * The pool must be created before the files are submitted for analysis.
+     */
+    RuleSetsPool(AnalysisTask task) {
+        this.task = task;
+        // Target selectors are computed lazily. Those of the shared rules are
+        // computed here, before the rules are used by several threads.
+        for (Rule rule : task.getRulesets().getAllRules()) {
+            if (rule.isThreadSafe()) {
+                rule.getTargetSelector();
+            }
+        }
+    }
+
+    /**
+     * Leases a copy of the rulesets. The copy must be returned to the
+     * pool by closing the lease.
+     */
+    Lease lease() {
+        RuleSets copy = idleCopies.poll();
+        return new Lease(copy != null ? copy : newCopy());
+    }
+
+    private RuleSets newCopy() {
+        // thread-safe rules are not copied, but shared with the other copies
+        RuleSets copy = task.getRulesets().copyForThread();
+        // use a noop reporter because the copy should only contain rules that
+        // initialized properly
+        copy.initializeRules(task.getLpRegistry(), PmdReporter.quiet());
+        return copy;
+    }
+
+    /**
+     * A copy of the rulesets that is reserved for the current file.
+     */
+    final class Lease implements AutoCloseable {
+
+        private final RuleSets ruleSets;
+
+        private Lease(RuleSets ruleSets) {
+            this.ruleSets = ruleSets;
+        }
+
+        RuleSets getRuleSets() {
+            return ruleSets;
+        }
+
+        @Override
+        public void close() {
+            idleCopies.add(ruleSets);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.ast.AnalysisTimeoutException;
+import net.sourceforge.pmd.lang.document.FileId;
+
+/**
+ * Enforces the {@linkplain AnalysisTask#getFileTimeoutMillis() file} and
+ * {@linkplain AnalysisTask#getRuleTimeoutMillis() rule} timeouts of an analysis.
+ * A thread of the watchdog periodically checks the files and rules that
+ * are being processed, and flags those that ran out of time. The analysis
+ * is cancelled cooperatively: the next {@linkplain #checkpoint() checkpoint}
+ * that the thread processing a flagged file reaches throws an {@link AnalysisTimeoutException}.
+ * The rules are checkpointed before each node they visit, and XPath rules
+ * while they iterate over the tree. Language implementations should call
+ * {@link #checkpoint()} in their long running processing stages, eg in
+ * fixpoint loops.
+ *
+ * <p>Timeouts are only approximately enforced, a file or rule may run
+ * a bit longer than its budget, depending on how often the watchdog checks
+ * and how often checkpoints are reached.
+ */
+public final class Watchdog implements AutoCloseable {
+
+    private static final ThreadLocal<Watch> CURRENT = new ThreadLocal<>();
+
+    private static final long MIN_CHECK_INTERVAL_MILLIS = 10;
+    private static final long MAX_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final long fileTimeoutMillis;
+    private final long ruleTimeoutMillis;
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService executor;
+
+    private Watchdog(long fileTimeoutMillis, long ruleTimeoutMillis) {
+        this.fileTimeoutMillis = fileTimeoutMillis;
+        this.ruleTimeoutMillis = ruleTimeoutMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "PmdWatchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long shortestTimeout = fileTimeoutMillis > 0 && ruleTimeoutMillis > 0
+                               ? Math.min(fileTimeoutMillis, ruleTimeoutMillis)
+                               : Math.max(fileTimeoutMillis, ruleTimeoutMillis);
+        long interval = Math.max(MIN_CHECK_INTERVAL_MILLIS, Math.min(MAX_CHECK_INTERVAL_MILLIS, shortestTimeout / 4));
+        executor.scheduleWithFixedDelay(this::checkAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a watchdog for the timeouts of the task, or null if it has none.
+     */
+    static @Nullable Watchdog create(AnalysisTask task) {
+        if (task.getFileTimeoutMillis() <= 0 && task.getRuleTimeoutMillis() <= 0) {
+            return null;
+        }
+        return new Watchdog(task.getFileTimeoutMillis(), task.getRuleTimeoutMillis());
+    }
+
+    /**
+     * Starts watching the analysis of a file by the current thread. The
+     * watch must be closed by the same thread when the file is processed.
+     *
+     * @param startNanos When the analysis of the file started, as given
+     *                   by {@link System#nanoTime()}
+     */
+    Watch watchFile(FileId fileId, long startNanos) {
+        Watch watch = new Watch(fileId, startNanos);
+        watches.add(watch);
+        CURRENT.set(watch);
+        return watch;
+    }
+
+    private void checkAll() {
+        long now = System.nanoTime();
+        for (Watch watch : watches) {
+            watch.check(now);
+        }
+    }
+
+    /**
+     * Throws an {@link AnalysisTimeoutException} if the file or rule that
+     * the current thread is processing ran out of time. Does nothing if
+     * there is no timeout, this is cheap enough to be called often.
+     *
+     * @throws AnalysisTimeoutException If the file or rule timed out
+     */
+    public static void checkpoint() {
+        Watch watch = CURRENT.get();
+        if (watch != null && watch.alarm.get()) {
+            watch.onAlarm();
+        }
+    }
+
+    /**
+     * Starts the time budget of a rule on the file that the current thread
+     * is processing.
+     */
+    @InternalApi
+    public static void startRule(String ruleName) {
+        Watch watch = CURRENT.get();
+        if (watch != null) {
+            watch.startRule(ruleName);
+        }
+    }
+
+    /**
+     * Ends the time budget of the rule started last by {@link #startRule(String)}.
+     */
+    @InternalApi
+    public static void finishRule() {
+        Watch watch = CURRENT.get();
+        if (watch != null) {
+            watch.rule.set(null);
+        }
+    }
+
+    /**
+     * Returns the time budget of a rule on the file that the current thread
+     * is processing, or null if there is no rule timeout. Unlike with
+     * {@link #startRule(String)}, the budget is only spent while the rule
+     * is {@linkplain #resumeRule(RuleBudget) resumed}, so that the rules
+     * applied to a file can be interleaved.
+     */
+    @InternalApi
+    public static @Nullable RuleBudget newRuleBudget(String ruleName) {
+        Watch watch = CURRENT.get();
+        if (watch == null || watch.ruleTimeoutNanos() <= 0) {
+            return null;
+        }
+        return new RuleBudget(watch, ruleName, watch.ruleTimeoutNanos());
+    }
+
+    /**
+     * Starts spending the given budget, until {@link #pauseRule(RuleBudget)}
+     * is called. If the budget is exhausted, the next checkpoint throws.
+     */
+    @InternalApi
+    public static void resumeRule(RuleBudget budget) {
+        budget.watch.resume(budget);
+    }
+
+    /**
+     * Stops spending the given budget, which must have been resumed last.
+     */
+    @InternalApi
+    public static void pauseRule(RuleBudget budget) {
+        budget.watch.pause(budget);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The time budget of a rule on a file.
+     */
+    @InternalApi
+    public static final class RuleBudget {
+
+        private final Watch watch;
+        private final String ruleName;
+        // only used by the thread that processes the file
+        private long remainingNanos;
+        // read by the thread of the watchdog while the budget is spent
+        private volatile long deadlineNanos;
+        private final AtomicBoolean expired = new AtomicBoolean();
+
+        private RuleBudget(Watch watch, String ruleName, long remainingNanos) {
+            this.watch = watch;
+            this.ruleName = ruleName;
+            this.remainingNanos = remainingNanos;
+        }
+    }
+
+    /**
+     * The budgets of a file that is being processed, and of the rule
+     * that is currently applied to it.
+     */
+    final class Watch implements AutoCloseable {
+
+        private final FileId fileId;
+        private final long fileDeadlineNanos;
+        private final AtomicBoolean fileExpired = new AtomicBoolean();
+        private final AtomicReference<RuleBudget> rule = new AtomicReference<>();
+        // set when a budget expired, so that checkpoints only read this flag
+        private final AtomicBoolean alarm = new AtomicBoolean();
+
+        Watch(FileId fileId, long startNanos) {
+            this.fileId = fileId;
+            this.fileDeadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(fileTimeoutMillis);
+        }
+
+        private long ruleTimeoutNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(ruleTimeoutMillis);
+        }
+
+        private void startRule(String ruleName) {
+            if (ruleTimeoutMillis > 0) {
+                resume(new RuleBudget(this, ruleName, ruleTimeoutNanos()));
+            }
+        }
+
+        private void resume(RuleBudget budget) {
+            budget.deadlineNanos = System.nanoTime() + budget.remainingNanos;
+            rule.set(budget);
+            // the watchdog may not have noticed that the budget was exhausted while it was paused
+            if (budget.remainingNanos <= 0) {
+                budget.expired.set(true);
+            }
+            if (budget.expired.get()) {
+                alarm.set(true);
+            }
+        }
+
+        private void pause(RuleBudget budget) {
+            budget.remainingNanos = budget.deadlineNanos - System.nanoTime();
+            rule.compareAndSet(budget, null);
+        }
+
+        /** Called by the thread of the watchdog. */
+        private void check(long now) {
+            if (fileTimeoutMillis > 0 && now - fileDeadlineNanos > 0 && fileExpired.compareAndSet(false, true)) {
+                alarm.set(true);
+            }
+            RuleBudget budget = rule.get();
+            if (budget != null && now - budget.deadlineNanos > 0 && budget.expired.compareAndSet(false, true)) {
+                alarm.set(true);
+            }
+        }
+
+        /** Called by the thread that processes the file. */
+        private void onAlarm() {
+            // The alarm may be for a rule that has already finished. It is
+            // turned off before the budgets are checked, so that a budget
+            // that expires meanwhile turns it on again.
+            alarm.set(false);
+            if (fileExpired.get()) {
+                // the next checkpoints throw too, until the file is done
+                alarm.set(true);
+                throw new AnalysisTimeoutException(fileId, null, fileTimeoutMillis);
+            }
+            RuleBudget budget = rule.get();
+            if (budget != null && budget.expired.get()) {
+                // the next checkpoints throw too, until the rule is finished
+                alarm.set(true);
+                throw new AnalysisTimeoutException(fileId, budget.ruleName, ruleTimeoutMillis);
+            }
+        }
+
+        @Override
+        public void close() {
+            CURRENT.remove();
+            watches.remove(this);
+        }
+    }
+}
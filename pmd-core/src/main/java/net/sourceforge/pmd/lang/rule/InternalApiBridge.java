@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.lang.rule;
 
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -36,6 +37,10 @@ public final class InternalApiBridge {
         return ruleSet.applies(fileId);
     }
 
+    public static RuleSet copyRuleSet(RuleSet ruleSet, UnaryOperator<Rule> ruleCopier) {
+        return new RuleSet(ruleSet, ruleCopier);
+    }
+
     public static List<RuleSet> loadRuleSetsWithoutException(RuleSetLoader ruleSetLoader, List<String> rulesetPaths) {
         return ruleSetLoader.loadRuleSetsWithoutException(rulesetPaths);
     }
@@ -307,5 +307,22 @@ public interface Rule extends PropertySource {
      */
     Rule deepCopy();
 
+    /**
+     * Returns whether a single instance of this rule may analyse several
+     * files at the same time, on different threads. This is the case if the
+     * rule doesn't change any of its fields after {@link #initialize(LanguageProcessor)},
+     * e.g. when it keeps all the state of the analysis of a file in local
+     * variables or in the {@link RuleContext}. When analysing files on
+     * several threads, such a rule is shared by all threads, while the
+     * other rules are {@linkplain #deepCopy() copied} for each thread.
+     *
+     * <p>Returns false by default.
+     *
+     * @return Whether this rule is thread-safe
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
 
 }
@@ -403,6 +403,11 @@ public class RuleReference implements Rule {
         rule.initialize(languageProcessor);
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return rule.isThreadSafe();
+    }
+
     @Override
     public void start(RuleContext ctx) {
         rule.start(ctx);
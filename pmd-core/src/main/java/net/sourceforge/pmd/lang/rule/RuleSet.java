@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
@@ -77,6 +78,13 @@ public class RuleSet implements ChecksumAware {
     }
 
     public RuleSet(final RuleSet rs) {
+        this(rs, Rule::deepCopy);
+    }
+
+    /**
+     * Copies the ruleset, using the given function to copy its rules.
+     */
+    RuleSet(final RuleSet rs, final UnaryOperator<Rule> ruleCopier) {
         checksum = rs.checksum;
         fileName = rs.fileName;
         name = rs.name;
@@ -84,7 +92,7 @@ public class RuleSet implements ChecksumAware {
 
         rules = new ArrayList<>(rs.rules.size());
         for (final Rule rule : rs.rules) {
-            rules.add(rule.deepCopy());
+            rules.add(ruleCopier.apply(rule));
         }
 
         excludePatterns = rs.excludePatterns; // we can share immutable lists of immutable elements
@@ -102,6 +102,11 @@ public abstract class RuleTargetSelector extends TargetSelectorInternal {
             return index.getByName(visits);
         }
 
+        @Override
+        protected boolean isVisited(Node node) {
+            return visits.contains(node.getXPathNodeName());
+        }
+
         @Override
         public String toString() {
             return "XPathNameVisits" + visits;
@@ -131,6 +136,16 @@ public abstract class RuleTargetSelector extends TargetSelectorInternal {
             return index.getByClass(visits);
         }
 
+        @Override
+        protected boolean isVisited(Node node) {
+            for (Class<? extends Node> visit : visits) {
+                if (visit.isInstance(node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         @Override
         public String toString() {
             return "ClassVisits" + visits;
@@ -6,8 +6,15 @@ package net.sourceforge.pmd.lang.rule.internal;
 
 import static net.sourceforge.pmd.lang.rule.InternalApiBridge.ruleSetApplies;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.exception.ExceptionContext;
 import org.slf4j.Logger;
@@ -18,8 +25,11 @@ import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.internal.SystemProps;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.AnalysisTimeoutException;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.impl.Watchdog;
+import net.sourceforge.pmd.lang.impl.Watchdog.RuleBudget;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.InternalApiBridge;
@@ -28,7 +38,12 @@ import net.sourceforge.pmd.reporting.RuleContext;
 import net.sourceforge.pmd.util.AssertionUtil;
 import net.sourceforge.pmd.util.StringUtil;
 
-/** Applies a set of rules to a set of ASTs. */
+/**
+ * Applies a set of rules to a set of ASTs. By default, the rules are applied
+ * one after the other, each rule visiting the nodes it targets. In
+ * {@linkplain net.sourceforge.pmd.PMDConfiguration#setSinglePassRuleDispatch(boolean) single-pass mode},
+ * the nodes are visited once, and each node is handed to all the rules that target it.
+ */
 public class RuleApplicator {
 
     private static final Logger LOG = LoggerFactory.getLogger(RuleApplicator.class);
@@ -41,20 +56,55 @@ public class RuleApplicator {
 
     private final TreeIndex idx;
     private LanguageVersion currentLangVer;
+    private RootNode currentRoot;
+
+    // For the single-pass dispatch: the rules this applicator was built for,
+    // whose ids are their index in this list
+    private final List<Rule> knownRules;
+    private final Map<Rule, Integer> ruleIds = new IdentityHashMap<>();
+    private final boolean singlePass;
+    // Dispatch table, gives the ids of the known rules that target a node,
+    // by node class and XPath name. Like the index, it is reused from run to run.
+    private final Map<Class<?>, Map<String, int[]>> ruleIdsByNodeType = new HashMap<>();
 
     public RuleApplicator(TreeIndex index) {
+        this(index, Collections.emptyList(), false);
+    }
+
+    RuleApplicator(TreeIndex index, List<? extends Rule> knownRules, boolean singlePass) {
         this.idx = index;
+        this.knownRules = new ArrayList<>(knownRules.size());
+        this.singlePass = singlePass;
+        for (Rule rule : knownRules) {
+            if (!ruleIds.containsKey(rule)) {
+                ruleIds.put(rule, this.knownRules.size());
+                this.knownRules.add(rule);
+            }
+        }
     }
 
 
     public void index(RootNode root) {
-        idx.reset();
-        indexTree(root, idx);
         currentLangVer = root.getLanguageVersion();
+        currentRoot = root;
+        if (!singlePass) {
+            indexCurrentRoot();
+        }
+        // in single-pass mode, the tree is only indexed if
+        // some of the rules are not known, see applySinglePass
+    }
+
+    private void indexCurrentRoot() {
+        idx.reset();
+        indexTree(currentRoot, idx);
     }
 
     public void apply(Collection<? extends Rule> rules, FileAnalysisListener listener) {
-        applyOnIndex(idx, rules, listener);
+        if (singlePass) {
+            applySinglePass(rules, listener);
+        } else {
+            applyOnIndex(idx, rules, listener);
+        }
     }
 
     private void applyOnIndex(TreeIndex idx, Collection<? extends Rule> rules, FileAnalysisListener listener) {
@@ -65,6 +115,7 @@ public class RuleApplicator {
             
             RuleContext ctx = InternalApiBridge.createRuleContext(listener, rule);
             rule.start(ctx);
+            Watchdog.startRule(rule.getName());
             try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULE, rule.getName())) {
 
                 int nodeCounter = 0;
@@ -74,7 +125,10 @@ public class RuleApplicator {
 
                     try {
                         nodeCounter++;
+                        Watchdog.checkpoint();
                         rule.apply(node, ctx);
+                    } catch (AnalysisTimeoutException e) {
+                        throw e;
                     } catch (RuntimeException e) {
                         reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), true);
                     } catch (StackOverflowError e) {
@@ -85,13 +139,159 @@ public class RuleApplicator {
                 }
                 
                 rcto.close(nodeCounter);
+            } catch (AnalysisTimeoutException e) {
+                reportTimeoutOrRethrow(listener, e);
             } finally {
+                Watchdog.finishRule();
                 rule.end(ctx);
             }
         }
     }
 
 
+    /**
+     * Visits the nodes of the tree once, in document order, and hands each
+     * node to the rules that target it. Rules that this applicator was not
+     * built for are applied one after the other, after that. Like in the
+     * default mode, each rule has one {@linkplain Watchdog timeout} budget
+     * for the file, which is only spent while the rule is applied. A rule
+     * that times out is not applied to the next nodes. The time spent
+     * in each rule is summed over the walk, and recorded as one operation
+     * per rule.
+     */
+    private void applySinglePass(Collection<? extends Rule> rules, FileAnalysisListener listener) {
+        // contexts of the rules to apply, by rule id, null for the other rules
+        RuleContext[] contexts = new RuleContext[ruleIds.size()];
+        List<Rule> startedRules = new ArrayList<>();
+        List<Rule> unknownRules = new ArrayList<>(0);
+        for (Rule rule : rules) {
+            if (!ruleSetApplies(rule, currentLangVer)) {
+                continue; // No point in even trying to apply the rule
+            }
+            Integer id = ruleIds.get(rule);
+            if (id == null || contexts[id] != null) {
+                unknownRules.add(rule);
+                continue;
+            }
+            contexts[id] = InternalApiBridge.createRuleContext(listener, rule);
+            startedRules.add(rule);
+        }
+
+        if (!startedRules.isEmpty()) {
+            int started = 0;
+            try {
+                for (Rule rule : startedRules) {
+                    rule.start(contexts[ruleIds.get(rule)]);
+                    started++;
+                }
+                SinglePass pass = new SinglePass(contexts.clone(), TimeTracker.isTracking());
+                for (Rule rule : startedRules) {
+                    pass.budgets[ruleIds.get(rule)] = Watchdog.newRuleBudget(rule.getName());
+                }
+                long start = System.nanoTime();
+                try {
+                    dispatchTree(currentRoot, pass, listener);
+                } finally {
+                    if (pass.timed) {
+                        for (Rule rule : startedRules) {
+                            int id = ruleIds.get(rule);
+                            TimeTracker.recordOperation(TimedOperationCategory.RULE, rule.getName(),
+                                                        start, pass.nanos[id], pass.visits[id]);
+                        }
+                    }
+                }
+            } finally {
+                for (int i = 0; i < started; i++) {
+                    Rule rule = startedRules.get(i);
+                    rule.end(contexts[ruleIds.get(rule)]);
+                }
+            }
+        }
+
+        if (!unknownRules.isEmpty()) {
+            try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
+                indexCurrentRoot();
+            }
+            applyOnIndex(idx, unknownRules, listener);
+        }
+    }
+
+    private void dispatchTree(Node top, SinglePass pass, FileAnalysisListener listener) {
+        for (int id : getRuleIdsForNode(top)) {
+            RuleContext ctx = pass.contexts[id];
+            if (ctx != null) {
+                dispatch(id, top, ctx, pass, listener);
+            }
+        }
+        for (int i = 0, numChildren = top.getNumChildren(); i < numChildren; i++) {
+            dispatchTree(top.getChild(i), pass, listener);
+        }
+    }
+
+    private int[] getRuleIdsForNode(Node node) {
+        Map<String, int[]> byName = ruleIdsByNodeType.computeIfAbsent(node.getClass(), k -> new HashMap<>());
+        int[] ids = byName.get(node.getXPathNodeName());
+        if (ids == null) {
+            ids = computeRuleIds(node);
+            byName.put(node.getXPathNodeName(), ids);
+        }
+        return ids;
+    }
+
+    private int[] computeRuleIds(Node node) {
+        return IntStream.range(0, knownRules.size())
+                        .filter(id -> knownRules.get(id).getTargetSelector().isVisited(node))
+                        .toArray();
+    }
+
+    /**
+     * Applies the rule to the node. If the rule times out, it is removed
+     * from the rules of the pass.
+     */
+    private void dispatch(int id, Node node, RuleContext ctx, SinglePass pass, FileAnalysisListener listener) {
+        Rule rule = knownRules.get(id);
+        RuleBudget budget = pass.budgets[id];
+        long start = pass.timed ? System.nanoTime() : 0;
+        if (budget != null) {
+            Watchdog.resumeRule(budget);
+        }
+        try {
+            Watchdog.checkpoint();
+            rule.apply(node, ctx);
+        } catch (AnalysisTimeoutException e) {
+            pass.contexts[id] = null;
+            reportTimeoutOrRethrow(listener, e);
+        } catch (RuntimeException e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), true);
+        } catch (StackOverflowError e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        } catch (AssertionError e) {
+            reportOrRethrow(listener, rule, node, AssertionUtil.contexted(e), SystemProps.isErrorRecoveryMode());
+        } finally {
+            if (budget != null) {
+                Watchdog.pauseRule(budget);
+            }
+            if (pass.timed) {
+                pass.nanos[id] += System.nanoTime() - start;
+                pass.visits[id]++;
+            }
+        }
+    }
+
+    /**
+     * Reports that a rule timed out, the caller skips the rule for the rest
+     * of the file. If the whole file timed out, rethrows, to stop its analysis.
+     */
+    private void reportTimeoutOrRethrow(FileAnalysisListener listener, AnalysisTimeoutException e) {
+        if (!e.isRuleTimeout()) {
+            throw e;
+        }
+        // The listener handles logging if needed,
+        // it may also rethrow the error.
+        listener.onError(new ProcessingError(e, e.getFileId()));
+    }
+
+
     private <E extends Throwable> void reportOrRethrow(FileAnalysisListener listener, Rule rule, Node node, E e, boolean reportAndDontThrow) throws E {
         if (e instanceof ExceptionContext) {
             ((ExceptionContext) e).addContextValue("Rule applied on node", node);
@@ -117,19 +317,49 @@ public class RuleApplicator {
     }
 
 
+    /**
+     * The state of a single pass over a tree, indexed by rule id.
+     */
+    private static final class SinglePass {
+
+        // contexts of the rules to apply, null for the other rules, and for the rules that timed out
+        private final RuleContext[] contexts;
+        // timeout budgets of the rules on the file, null if there is no rule timeout
+        private final RuleBudget[] budgets;
+        // whether the time spent in each rule is measured
+        private final boolean timed;
+        private final long[] nanos;
+        private final int[] visits;
+
+        SinglePass(RuleContext[] contexts, boolean timed) {
+            this.contexts = contexts;
+            this.budgets = new RuleBudget[contexts.length];
+            this.timed = timed;
+            this.nanos = new long[timed ? contexts.length : 0];
+            this.visits = new int[timed ? contexts.length : 0];
+        }
+    }
+
     private void indexTree(Node top, TreeIndex idx) {
         idx.indexNode(top);
-        for (Node child : top.children()) {
-            indexTree(child, idx);
+        // don't use children(), which allocates a stream for each node
+        for (int i = 0, numChildren = top.getNumChildren(); i < numChildren; i++) {
+            indexTree(top.getChild(i), idx);
         }
     }
 
     public static RuleApplicator build(Iterable<? extends Rule> rules) {
+        return build(rules, false);
+    }
+
+    static RuleApplicator build(Iterable<? extends Rule> rules, boolean singlePass) {
         TargetSelectorInternal.ApplicatorBuilder builder = new TargetSelectorInternal.ApplicatorBuilder();
+        List<Rule> knownRules = new ArrayList<>();
         for (Rule it : rules) {
             it.getTargetSelector().prepare(builder);
+            knownRules.add(it);
         }
-        return builder.build();
+        return new RuleApplicator(builder.buildIndex(), knownRules, singlePass);
     }
 
 }
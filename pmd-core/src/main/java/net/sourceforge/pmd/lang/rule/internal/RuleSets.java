@@ -8,19 +8,28 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.InternalApiBridge;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.xpath.internal.XPathBatch;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.util.log.PmdReporter;
 
@@ -33,6 +42,12 @@ public class RuleSets {
 
     private final List<RuleSet> ruleSets;
 
+    // rules that are shared with the rulesets this was copied from, and
+    // that are already initialized
+    private final Set<Rule> sharedRules;
+
+    private boolean singlePassRuleDispatch;
+
     private RuleApplicator ruleApplicator;
 
     /**
@@ -46,10 +61,18 @@ public class RuleSets {
             rsets.add(new RuleSet(rs));
         }
         this.ruleSets = Collections.unmodifiableList(rsets);
+        this.sharedRules = Collections.emptySet();
+        this.singlePassRuleDispatch = ruleSets.singlePassRuleDispatch;
     }
 
     public RuleSets(Collection<? extends RuleSet> ruleSets) {
         this.ruleSets = Collections.unmodifiableList(new ArrayList<>(ruleSets));
+        this.sharedRules = Collections.emptySet();
+    }
+
+    private RuleSets(List<RuleSet> ruleSets, Set<Rule> sharedRules) {
+        this.ruleSets = Collections.unmodifiableList(ruleSets);
+        this.sharedRules = sharedRules;
     }
 
     /**
@@ -59,15 +82,61 @@ public class RuleSets {
      */
     public RuleSets(RuleSet ruleSet) {
         this.ruleSets = Collections.singletonList(ruleSet);
+        this.sharedRules = Collections.emptySet();
+    }
+
+    /**
+     * Returns a copy of these rulesets, to be used by another thread.
+     * Rules that are {@linkplain Rule#isThreadSafe() thread-safe} are
+     * shared with these rulesets, the other rules are deep copies.
+     * These rulesets must already be {@linkplain #initializeRules(LanguageProcessorRegistry, PmdReporter) initialized},
+     * the copy must then be initialized too, which only initializes the
+     * rules that were copied.
+     *
+     * @return A copy of these rulesets
+     */
+    public RuleSets copyForThread() {
+        Set<Rule> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<RuleSet> rsets = new ArrayList<>(ruleSets.size());
+        for (final RuleSet rs : ruleSets) {
+            rsets.add(InternalApiBridge.copyRuleSet(rs, rule -> {
+                if (rule.isThreadSafe()) {
+                    shared.add(rule);
+                    return rule;
+                }
+                return rule.deepCopy();
+            }));
+        }
+        RuleSets copy = new RuleSets(rsets, shared);
+        copy.singlePassRuleDispatch = singlePassRuleDispatch;
+        return copy;
+    }
+
+    /**
+     * Sets whether the rules are dispatched in a single pass over each file,
+     * see {@link net.sourceforge.pmd.PMDConfiguration#setSinglePassRuleDispatch(boolean)}.
+     * This must be set before the rules are applied for the first time.
+     * Copies of these rulesets use the same mode.
+     *
+     * @param singlePassRuleDispatch Whether the rules are dispatched in a single pass
+     */
+    public void setSinglePassRuleDispatch(boolean singlePassRuleDispatch) {
+        this.singlePassRuleDispatch = singlePassRuleDispatch;
     }
 
     public void initializeRules(LanguageProcessorRegistry lpReg, PmdReporter reporter) {
+        List<Rule> initialized = new ArrayList<>();
         // this is abusing the mutability of RuleSet, will go away eventually.
         for (RuleSet rset : ruleSets) {
             for (Iterator<Rule> iterator = rset.getRules().iterator(); iterator.hasNext();) {
                 Rule rule = iterator.next();
+                if (sharedRules.contains(rule)) {
+                    // already initialized, and possibly in use by another thread
+                    continue;
+                }
                 try {
                     rule.initialize(lpReg.getProcessor(rule.getLanguage()));
+                    initialized.add(rule);
                 } catch (Exception e) {
                     reporter.errorEx(
                         "Exception while initializing rule " + rule.getName() + ", the rule will not be run", e);
@@ -75,10 +144,12 @@ public class RuleSets {
                 }
             }
         }
+        // the XPath rules share the walks of the subtrees they look into
+        XPathBatch.batchXPathRules(initialized);
     }
 
     private RuleApplicator prepareApplicator() {
-        return RuleApplicator.build(ruleSets.stream().flatMap(it -> it.getRules().stream())::iterator);
+        return RuleApplicator.build(ruleSets.stream().flatMap(it -> it.getRules().stream())::iterator, singlePassRuleDispatch);
     }
 
     /**
@@ -139,6 +210,21 @@ public class RuleSets {
      * @param listener Listener that will handle events while analysing.
      */
     public void apply(RootNode root, FileAnalysisListener listener) {
+        apply(root, listener, rule -> true);
+    }
+
+    /**
+     * Apply the applicable rules that match the given filter to the compilation
+     * unit. This is used to only run the rules whose results are not known yet,
+     * e.g. because they are not up to date in the analysis cache.
+     *
+     * @param root       the compilation unit
+     * @param listener   Listener that will handle events while analysing.
+     * @param ruleFilter Filter for the rules to apply
+     *
+     * @see #apply(RootNode, FileAnalysisListener)
+     */
+    public void apply(RootNode root, FileAnalysisListener listener, Predicate<? super Rule> ruleFilter) {
         if (ruleApplicator == null) {
             // initialize here instead of ctor, because some rules properties
             // are set after creating the ruleset, and jaxen xpath queries
@@ -146,15 +232,22 @@ public class RuleSets {
             this.ruleApplicator = prepareApplicator();
         }
 
-        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
-            ruleApplicator.index(root);
-        }
-
+        // the rules of all rulesets are applied at once, so that a single-pass
+        // applicator only visits the tree once
+        List<Rule> rules = new ArrayList<>();
         for (RuleSet ruleSet : ruleSets) {
             if (InternalApiBridge.ruleSetApplies(ruleSet, root.getTextDocument().getFileId())) {
-                ruleApplicator.apply(ruleSet.getRules(), listener);
+                ruleSet.getRules().stream().filter(ruleFilter).forEach(rules::add);
             }
         }
+        if (rules.isEmpty()) {
+            // only index the tree if there is a rule to apply
+            return;
+        }
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE_AST_INDEXATION)) {
+            ruleApplicator.index(root);
+        }
+        ruleApplicator.apply(rules, listener);
     }
 
     /**
@@ -214,4 +307,52 @@ public class RuleSets {
         }
         return checksum;
     }
+
+    /**
+     * Retrieves a checksum for each rule being used. The checksum of a rule
+     * changes if its class, name, language, message or any of its properties
+     * change, or if the file inclusions and exclusions of its ruleset change.
+     * Unlike {@link #getChecksum()}, the checksum of a rule doesn't depend on
+     * the other rules.
+     *
+     * @return A map of each rule to its checksum.
+     */
+    public Map<Rule, Long> getRuleChecksums() {
+        Map<Rule, Long> checksums = new LinkedHashMap<>();
+        for (final RuleSet ruleSet : ruleSets) {
+            long ruleSetChecksum = 1;
+            for (Pattern pattern : ruleSet.getFileInclusions()) {
+                ruleSetChecksum = ruleSetChecksum * 31 + pattern.pattern().hashCode();
+            }
+            for (Pattern pattern : ruleSet.getFileExclusions()) {
+                ruleSetChecksum = ruleSetChecksum * 37 + pattern.pattern().hashCode();
+            }
+            for (final Rule rule : ruleSet.getRules()) {
+                checksums.put(rule, ruleSetChecksum * 31 + getRuleChecksum(rule));
+            }
+        }
+        return checksums;
+    }
+
+    private static long getRuleChecksum(Rule rule) {
+        long checksum = rule.getRuleClass().hashCode();
+        checksum = checksum * 31 + rule.getName().hashCode();
+        checksum = checksum * 31 + rule.getLanguage().getId().hashCode();
+        checksum = checksum * 31 + versionHash(rule.getMinimumLanguageVersion());
+        checksum = checksum * 31 + versionHash(rule.getMaximumLanguageVersion());
+        checksum = checksum * 31 + Objects.hashCode(rule.getMessage());
+        for (PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            checksum = checksum * 31 + propertyToString(rule, descriptor).hashCode();
+        }
+        return checksum;
+    }
+
+    private static int versionHash(LanguageVersion version) {
+        return version == null ? 0 : version.getVersion().hashCode();
+    }
+
+    private static <T> String propertyToString(Rule rule, PropertyDescriptor<T> descriptor) {
+        T value = rule.getProperty(descriptor);
+        return descriptor.name() + '=' + (value == null ? "" : descriptor.serializer().toString(value));
+    }
 }
@@ -26,6 +26,13 @@ public abstract class TargetSelectorInternal {
     protected abstract Iterator<? extends Node> getVisitedNodes(TreeIndex index);
 
 
+    /**
+     * Returns true if the node is one of the nodes returned by
+     * {@link #getVisitedNodes(TreeIndex)}.
+     */
+    protected abstract boolean isVisited(Node node);
+
+
     protected static final class ApplicatorBuilder {
 
         private final Set<String> namesToIndex = new HashSet<>();
@@ -43,8 +50,8 @@ public abstract class TargetSelectorInternal {
             classesToIndex.addAll(names);
         }
 
-        RuleApplicator build() {
-            return new RuleApplicator(new TreeIndex(namesToIndex, classesToIndex));
+        TreeIndex buildIndex() {
+            return new TreeIndex(namesToIndex, classesToIndex);
         }
     }
 }
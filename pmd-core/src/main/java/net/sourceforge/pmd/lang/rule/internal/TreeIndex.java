@@ -5,67 +5,164 @@
 package net.sourceforge.pmd.lang.rule.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import net.sourceforge.pmd.lang.ast.Node;
-import net.sourceforge.pmd.util.IteratorUtil;
 
 /**
  * Index of an AST, for use by the {@link RuleApplicator}.
+ *
+ * <p>Each indexed XPath name and node class is assigned a dense integer id
+ * when the index is created. The nodes of each id are stored in an array,
+ * in document order. The arrays are reused from file to file, so indexing
+ * a tree only allocates when a file has more nodes of some kind than all
+ * the files before it.
  */
 public class TreeIndex {
 
-    private final LatticeRelation<Class<?>, Node, Iterable<Node>> byClass;
-    private final Set<String> interestingNames;
-    private final Map<String, List<Node>> byName;
+    private static final Node[] EMPTY_BUCKET = new Node[0];
+    private static final int[] NO_IDS = new int[0];
+
+    // ids of names are in [0, classIdOffset), ids of classes are in [classIdOffset, buckets.length)
+    private final Map<String, Integer> nameIds;
+    private final Map<Class<?>, Integer> classIds;
+    private final int classIdOffset;
+
+    // For each node class encountered, the ids of the indexed classes it is a subtype of.
+    // This is reused from run to run, eventually it converges towards all the node
+    // classes of the language.
+    private final Map<Class<?>, int[]> classIdsByNodeClass = new HashMap<>();
+
+    private final Node[][] buckets;
+    private final int[] sizes;
 
 
     public TreeIndex(Set<String> namesToIndex,
                      Set<Class<? extends Node>> classesToIndex) {
 
-        byClass = new LatticeRelation<>(
-            TopoOrder.TYPE_HIERARCHY_ORDERING,
-            classesToIndex,
-            Class::getSimpleName,
-            Collectors.toSet()
-        );
-        this.interestingNames = namesToIndex;
-        byName = new HashMap<>();
+        nameIds = new HashMap<>();
+        for (String name : namesToIndex) {
+            nameIds.put(name, nameIds.size());
+        }
+        classIdOffset = nameIds.size();
+        classIds = new HashMap<>();
+        for (Class<? extends Node> klass : classesToIndex) {
+            classIds.put(klass, classIdOffset + classIds.size());
+        }
+
+        buckets = new Node[classIdOffset + classIds.size()][];
+        Arrays.fill(buckets, EMPTY_BUCKET);
+        sizes = new int[buckets.length];
     }
 
     void indexNode(Node n) {
-        if (interestingNames.contains(n.getXPathNodeName())) {
-            byName.computeIfAbsent(n.getXPathNodeName(), k -> new ArrayList<>()).add(n);
+        if (!nameIds.isEmpty()) {
+            Integer nameId = nameIds.get(n.getXPathNodeName());
+            if (nameId != null) {
+                add(nameId, n);
+            }
+        }
+        for (int classId : classIdsByNodeClass.computeIfAbsent(n.getClass(), this::computeClassIds)) {
+            add(classId, n);
+        }
+    }
+
+    private int[] computeClassIds(Class<?> nodeClass) {
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Class<?>, Integer> entry : classIds.entrySet()) {
+            if (entry.getKey().isAssignableFrom(nodeClass)) {
+                ids.add(entry.getValue());
+            }
+        }
+        return ids.isEmpty() ? NO_IDS : ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void add(int id, Node n) {
+        Node[] bucket = buckets[id];
+        int size = sizes[id];
+        if (size == bucket.length) {
+            bucket = Arrays.copyOf(bucket, Math.max(16, size * 2));
+            buckets[id] = bucket;
         }
-        byClass.put(n.getClass(), n);
+        bucket[size] = n;
+        sizes[id] = size + 1;
     }
 
     void reset() {
-        byClass.clearValues();
-        byName.clear();
+        for (int id = 0; id < buckets.length; id++) {
+            // don't retain the nodes of the previous tree
+            Arrays.fill(buckets[id], 0, sizes[id], null);
+            sizes[id] = 0;
+        }
     }
 
     Iterator<Node> getByName(String n) {
-        return byName.getOrDefault(n, Collections.emptyList()).iterator();
+        Integer id = nameIds.get(n);
+        return new Cursor(id == null ? NO_IDS : new int[] {id});
     }
 
     Iterator<Node> getByClass(Class<? extends Node> n) {
-        return byClass.get(n).iterator();
+        Integer id = classIds.get(n);
+        return new Cursor(id == null ? NO_IDS : new int[] {id});
     }
 
 
     public Iterator<Node> getByName(Collection<String> n) {
-        return IteratorUtil.flatMap(n.iterator(), this::getByName);
+        return new Cursor(getIds(nameIds, n));
     }
 
     public Iterator<Node> getByClass(Collection<? extends Class<? extends Node>> n) {
-        return IteratorUtil.flatMap(n.iterator(), this::getByClass);
+        return new Cursor(getIds(classIds, n));
+    }
+
+    private static int[] getIds(Map<?, Integer> idMap, Collection<?> keys) {
+        int[] ids = new int[keys.size()];
+        int count = 0;
+        for (Object key : keys) {
+            Integer id = idMap.get(key);
+            if (id != null) {
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Iterates over the nodes of some ids, one after the other, directly on
+     * the arrays of the index.
+     */
+    private final class Cursor implements Iterator<Node> {
+
+        private final int[] ids;
+        private int idIndex;
+        private int nodeIndex;
+
+        Cursor(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (idIndex < ids.length && nodeIndex >= sizes[ids[idIndex]]) {
+                idIndex++;
+                nodeIndex = 0;
+            }
+            return idIndex < ids.length;
+        }
+
+        @Override
+        public Node next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buckets[ids[idIndex]][nodeIndex++];
+        }
     }
 }
@@ -4,7 +4,12 @@
 
 package net.sourceforge.pmd.lang.rule.xpath;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 
 /**
  * Internal API.
@@ -28,4 +33,16 @@ public final class InternalApiBridge {
     public static XPathRule newXPathRule() {
         return new XPathRule();
     }
+
+    /**
+     * Returns the query of the rule if it is an initialized XPath rule,
+     * or a reference to one, else null.
+     */
+    public static @Nullable SaxonXPathRuleQuery getXPathRuleQuery(Rule rule) {
+        Rule target = rule;
+        while (target instanceof RuleReference) {
+            target = ((RuleReference) target).getRule();
+        }
+        return target instanceof XPathRule ? ((XPathRule) target).getXPathRuleQuery() : null;
+    }
 }
@@ -11,6 +11,7 @@ import java.util.Objects;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ContextedRuntimeException;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -128,6 +129,15 @@ public final class XPathRule extends AbstractRule {
         return e.addRuleName(getName());
     }
 
+    /**
+     * XPath rules are thread-safe: the compiled query is only read once
+     * the rule has been initialized.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public void initialize(LanguageProcessor languageProcessor) {
         String xpath = getXPathExpression();
@@ -138,12 +148,17 @@ public final class XPathRule extends AbstractRule {
                                                      version,
                                                      getPropertiesByPropertyDescriptor(),
                                                      languageProcessor.services().getXPathHandler(),
+                                                     SaxonXPathRuleQuery.getConfiguration(languageProcessor),
                                                      attrLogger);
         } catch (PmdXPathException e) {
             throw addExceptionContext(e);
         }
     }
 
+    @Nullable SaxonXPathRuleQuery getXPathRuleQuery() {
+        return xpathRuleQuery;
+    }
+
     private SaxonXPathRuleQuery getQueryMaybeInitialize() throws PmdXPathException {
         if (xpathRuleQuery == null) {
             throw new IllegalStateException("Not initialized");
@@ -0,0 +1,117 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+
+/**
+ * The XPath attributes of a class of nodes, as found by the {@link AttributeAxisIterator}.
+ * The attributes are indexed, so that a single attribute of a node can
+ * be looked up by name and materialized, without creating all the
+ * others. The index of an attribute is also its position in the iteration
+ * order of the {@link AttributeAxisIterator}.
+ */
+@InternalApi
+public final class AttributeAccessors {
+
+    private static final Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Node.class);
+
+    private final boolean defaultAttributes;
+    private final String[] names;
+    private final Method[] methods;
+    private final MethodHandle[] handles;
+    private final Map<String, Integer> indicesByName;
+
+    AttributeAccessors(Class<?> nodeClass, List<Method> accessors) throws ReflectiveOperationException {
+        this.defaultAttributes = nodeClass.getMethod("getXPathAttributesIterator").getDeclaringClass() == Node.class;
+        this.names = new String[accessors.size()];
+        this.methods = accessors.toArray(new Method[0]);
+        this.handles = new MethodHandle[accessors.size()];
+        this.indicesByName = new HashMap<>();
+        for (int i = 0; i < methods.length; i++) {
+            names[i] = truncateMethodName(methods[i].getName());
+            // Note: We only support public methods on public types. If the method being called is implemented
+            // in a package-private class, this won't work.
+            // See git history here and https://github.com/pmd/pmd/issues/4885
+            handles[i] = LOOKUP.unreflect(methods[i]).asType(GETTER_TYPE);
+            indicesByName.put(names[i], i);
+        }
+    }
+
+    /**
+     * Returns whether the nodes of the class use the {@link AttributeAxisIterator}
+     * to enumerate their attributes, ie whether these are all their attributes.
+     */
+    boolean isDefaultAttributes() {
+        return defaultAttributes;
+    }
+
+    /** Returns the number of attributes. */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the index of the attribute with the given name, or -1 if
+     * there is no such attribute.
+     */
+    public int indexOf(String name) {
+        Integer index = indicesByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /** Returns the name of the attribute at the given index. */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Creates the attribute at the given index for a node of the class.
+     * Its value is only fetched when it is requested.
+     */
+    public Attribute newAttribute(Node node, int index) {
+        return new Attribute(node, names[index], handles[index], methods[index]);
+    }
+
+    /**
+     * This method produces the actual XPath name of an attribute
+     * from the name of its accessor.
+     */
+    private static String truncateMethodName(String n) {
+        // about 70% of the methods start with 'get', so this case goes
+        // first
+        if (n.startsWith("get")) {
+            return n.substring("get".length());
+        }
+        if (n.startsWith("is")) {
+            return n.substring("is".length());
+        }
+        if (n.startsWith("has")) {
+            return n.substring("has".length());
+        }
+        if (n.startsWith("uses")) {
+            return n.substring("uses".length());
+        }
+        if ("size".equals(n)) {
+            return "Size";
+        } else if ("length".equals(n)) {
+            return "Length";
+        }
+
+        return n;
+    }
+}
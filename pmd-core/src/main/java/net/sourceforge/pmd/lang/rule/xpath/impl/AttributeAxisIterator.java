@@ -6,10 +6,6 @@ package net.sourceforge.pmd.lang.rule.xpath.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
@@ -19,13 +15,16 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
+import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.impl.AbstractNode;
 import net.sourceforge.pmd.lang.document.Chars;
@@ -46,7 +45,7 @@ import net.sourceforge.pmd.util.AssertionUtil;
 public class AttributeAxisIterator implements Iterator<Attribute> {
 
     /** Caches the precomputed attribute accessors of a given class. */
-    private static final ConcurrentMap<Class<?>, List<MethodWrapper>> METHOD_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, AttributeAccessors> ACCESSOR_CACHE = new ConcurrentHashMap<>();
 
     /* Constants used to determine which methods are accessors */
     private static final Set<Class<?>> CONSIDERED_RETURN_TYPES
@@ -71,8 +70,9 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
                 "getScope");
 
     /* Iteration variables */
-    private final Iterator<MethodWrapper> iterator;
+    private final AttributeAccessors accessors;
     private final Node node;
+    private int index;
 
 
     /**
@@ -82,20 +82,34 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
      */
     public AttributeAxisIterator(@NonNull Node contextNode) {
         this.node = contextNode;
-        this.iterator = METHOD_CACHE.computeIfAbsent(contextNode.getClass(), this::getWrappersForClass).iterator();
+        this.accessors = ACCESSOR_CACHE.computeIfAbsent(contextNode.getClass(), this::getAccessorsForClass);
     }
 
-    private List<MethodWrapper> getWrappersForClass(Class<?> nodeClass) {
-        return Arrays.stream(nodeClass.getMethods())
-                     .filter(m -> isAttributeAccessor(nodeClass, m))
-                     .map(m -> {
-                         try {
-                             return new MethodWrapper(m);
-                         } catch (ReflectiveOperationException e) {
-                             throw AssertionUtil.shouldNotReachHere("Method '" + m + "' should be accessible, but: " + e, e);
-                         }
-                     })
-                     .collect(Collectors.toList());
+    /**
+     * Returns the attributes of the class of the given node, indexed
+     * by name, if the node uses this iterator for its attributes, ie
+     * it doesn't override {@link Node#getXPathAttributesIterator()}.
+     * Otherwise returns null, the attributes must then be fetched with
+     * {@link Node#getXPathAttributesIterator()}.
+     */
+    @InternalApi
+    public static @Nullable AttributeAccessors getAccessors(@NonNull Node node) {
+        AttributeAccessors accessors = ACCESSOR_CACHE.get(node.getClass());
+        if (accessors == null) {
+            accessors = new AttributeAxisIterator(node).accessors;
+        }
+        return accessors.isDefaultAttributes() ? accessors : null;
+    }
+
+    private AttributeAccessors getAccessorsForClass(Class<?> nodeClass) {
+        List<Method> methods = Arrays.stream(nodeClass.getMethods())
+                                     .filter(m -> isAttributeAccessor(nodeClass, m))
+                                     .collect(Collectors.toList());
+        try {
+            return new AttributeAccessors(nodeClass, methods);
+        } catch (ReflectiveOperationException e) {
+            throw AssertionUtil.shouldNotReachHere("Attribute accessors of '" + nodeClass + "' should be accessible, but: " + e, e);
+        }
     }
 
     /**
@@ -184,67 +198,15 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
 
     @Override
     public Attribute next() {
-        MethodWrapper m = iterator.next();
-        return new Attribute(node, m.name, m.methodHandle, m.method);
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return accessors.newAttribute(node, index++);
     }
 
 
     @Override
     public boolean hasNext() {
-        return iterator.hasNext();
-    }
-
-
-    /**
-     * Associates an attribute accessor with the XPath-accessible
-     * name of the attribute. This is used to avoid recomputing
-     * the name of the attribute for each attribute (it's only done
-     * once and put inside the {@link #METHOD_CACHE}).
-     */
-    private static class MethodWrapper {
-        static final Lookup LOOKUP = MethodHandles.publicLookup();
-        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Node.class);
-        public final MethodHandle methodHandle;
-        public final Method method;
-        public final String name;
-
-
-        MethodWrapper(Method m) throws IllegalAccessException {
-            this.method = m;
-            this.name = truncateMethodName(m.getName());
-            // Note: We only support public methods on public types. If the method being called is implemented
-            // in a package-private class, this won't work.
-            // See git history here and https://github.com/pmd/pmd/issues/4885
-            this.methodHandle = LOOKUP.unreflect(m).asType(GETTER_TYPE);
-        }
-
-
-        /**
-         * This method produces the actual XPath name of an attribute
-         * from the name of its accessor.
-         */
-        private String truncateMethodName(String n) {
-            // about 70% of the methods start with 'get', so this case goes
-            // first
-            if (n.startsWith("get")) {
-                return n.substring("get".length());
-            }
-            if (n.startsWith("is")) {
-                return n.substring("is".length());
-            }
-            if (n.startsWith("has")) {
-                return n.substring("has".length());
-            }
-            if (n.startsWith("uses")) {
-                return n.substring("uses".length());
-            }
-            if ("size".equals(n)) {
-                return "Size";
-            } else if ("length".equals(n)) {
-                return "Length";
-            }
-
-            return n;
-        }
+        return index < accessors.size();
     }
 }
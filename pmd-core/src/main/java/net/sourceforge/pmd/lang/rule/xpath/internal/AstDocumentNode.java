@@ -7,12 +7,9 @@ package net.sourceforge.pmd.lang.rule.xpath.internal;
 import java.util.Collections;
 import java.util.List;
 
-import org.apache.commons.lang3.mutable.MutableInt;
-
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 
-import net.sf.saxon.Configuration;
 import net.sf.saxon.om.NodeInfo;
 import net.sf.saxon.pattern.NodeTest;
 import net.sf.saxon.tree.iter.AxisIterator;
@@ -27,12 +24,9 @@ class AstDocumentNode extends BaseNodeInfo implements AstNodeOwner {
     private final AstElementNode rootElement;
     private final List<AstElementNode> children;
 
-    AstDocumentNode(AstTreeInfo document,
-                    MutableInt idGenerator,
-                    RootNode wrappedNode,
-                    Configuration configuration) {
-        super(Type.DOCUMENT, configuration.getNamePool(), "", null);
-        this.rootElement = new AstElementNode(document, idGenerator, this, wrappedNode, configuration);
+    AstDocumentNode(AstTreeInfo document, RootNode wrappedNode) {
+        super(Type.DOCUMENT, document.getConfiguration().getNamePool(), "", null);
+        this.rootElement = new AstElementNode(document, this, wrappedNode);
         this.children = Collections.singletonList(rootElement);
     }
 
@@ -11,7 +11,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.lang.ast.Node;
@@ -19,9 +18,10 @@ import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
 import net.sourceforge.pmd.lang.rule.xpath.CommentNode;
 import net.sourceforge.pmd.lang.rule.xpath.TextNode;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAccessors;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAxisIterator;
 import net.sourceforge.pmd.util.CollectionUtil;
 
-import net.sf.saxon.Configuration;
 import net.sf.saxon.om.NamespaceUri;
 import net.sf.saxon.om.NodeInfo;
 import net.sf.saxon.pattern.NameTest;
@@ -38,34 +38,36 @@ import net.sf.saxon.type.Type;
 /**
  * A wrapper for Saxon around a Node. Note: the {@link RootNode} of a tree
  * corresponds to both a document node and an element node that is its child.
+ * The wrappers of the children of a node are only created when Saxon
+ * navigates into them.
  */
 public final class AstElementNode extends BaseNodeInfo implements SiblingCountingNode, AstNodeOwner {
 
     private final Node wrappedNode;
-    /** The index of the node in the tree according to document order */
+    /** The index of the node in the tree, in the order the wrappers were created. */
     private final int id;
-
-    private final List<AstElementNode> children;
-    private @Nullable Map<String, AstAttributeNode> attributes;
+    /** The number of ancestors of the node, the root element has depth 0. */
+    private final int depth;
+
+    private @Nullable List<AstElementNode> children;
+    // The attributes of nodes that use the default attributes, by index
+    // in the AttributeAccessors of their class. Created on demand.
+    private Attribute @Nullable [] attributes;
+    private AstAttributeNode @Nullable [] attributeNodes;
+    // The attributes of the other nodes, by name
+    private @Nullable Map<String, AstAttributeNode> attributeMap;
     private @Nullable Map<String, Attribute> lightAttributes;
 
 
     AstElementNode(AstTreeInfo document,
-                   MutableInt idGenerator,
                    BaseNodeInfo parent,
-                   Node wrappedNode,
-                   Configuration configuration) {
-        super(determineType(wrappedNode), configuration.getNamePool(), wrappedNode.getXPathNodeName(), parent);
+                   Node wrappedNode) {
+        super(determineType(wrappedNode), document.getConfiguration().getNamePool(), wrappedNode.getXPathNodeName(), parent);
 
         this.treeInfo = document;
         this.wrappedNode = wrappedNode;
-        this.id = idGenerator.getAndIncrement();
-
-        this.children = new ArrayList<>(wrappedNode.getNumChildren());
-
-        for (int i = 0; i < wrappedNode.getNumChildren(); i++) {
-            children.add(new AstElementNode(document, idGenerator, this, wrappedNode.getChild(i), configuration));
-        }
+        this.id = document.nextNodeId();
+        this.depth = parent instanceof AstElementNode ? ((AstElementNode) parent).depth + 1 : 0;
     }
 
     private static int determineType(Node node) {
@@ -78,7 +80,15 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
         return Type.ELEMENT;
     }
 
-    public Map<String, AstAttributeNode> makeAttributes(Node wrappedNode) {
+    /**
+     * Returns true if the node is wrapped as an element, ie it is neither
+     * a {@link TextNode} nor a {@link CommentNode}.
+     */
+    static boolean isElement(Node node) {
+        return determineType(node) == Type.ELEMENT;
+    }
+
+    private Map<String, AstAttributeNode> makeAttributes(Node wrappedNode) {
         Map<String, AstAttributeNode> atts = new HashMap<>();
         Iterator<Attribute> it = wrappedNode.getXPathAttributesIterator();
 
@@ -91,14 +101,14 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
         return atts;
     }
 
-    public Map<String, AstAttributeNode> getAttributes() {
-        if (attributes == null) {
-            attributes = makeAttributes(getUnderlyingNode());
+    private Map<String, AstAttributeNode> getAttributeMap() {
+        if (attributeMap == null) {
+            attributeMap = makeAttributes(getUnderlyingNode());
         }
-        return attributes;
+        return attributeMap;
     }
 
-    public Map<String, Attribute> getLightAttributes() {
+    private Map<String, Attribute> getLightAttributes() {
         if (lightAttributes == null) {
             lightAttributes = new HashMap<>();
             getUnderlyingNode().getXPathAttributesIterator()
@@ -107,13 +117,45 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
         return lightAttributes;
     }
 
+    private Attribute getAttribute(AttributeAccessors accessors, int index) {
+        if (attributes == null) {
+            attributes = new Attribute[accessors.size()];
+        }
+        Attribute attribute = attributes[index];
+        if (attribute == null) {
+            attribute = accessors.newAttribute(wrappedNode, index);
+            attributes[index] = attribute;
+        }
+        return attribute;
+    }
+
+    private AstAttributeNode getAttributeNode(AttributeAccessors accessors, int index) {
+        if (attributeNodes == null) {
+            attributeNodes = new AstAttributeNode[accessors.size()];
+        }
+        AstAttributeNode node = attributeNodes[index];
+        if (node == null) {
+            node = new AstAttributeNode(this, getAttribute(accessors, index), index);
+            attributeNodes[index] = node;
+        }
+        return node;
+    }
+
     @Override
     public boolean hasChildNodes() {
-        return !children.isEmpty();
+        return wrappedNode.getNumChildren() > 0;
     }
 
     @Override
     List<AstElementNode> getChildren() {
+        if (children == null) {
+            int numChildren = wrappedNode.getNumChildren();
+            List<AstElementNode> wrappers = new ArrayList<>(numChildren);
+            for (int i = 0; i < numChildren; i++) {
+                wrappers.add(new AstElementNode(getTreeInfo(), this, wrappedNode.getChild(i)));
+            }
+            children = wrappers;
+        }
         return children;
     }
 
@@ -131,32 +173,74 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
     public int getSiblingPosition() {
         BaseNodeInfo parent = getParent();
         return !(parent instanceof AstElementNode) ? 0
-                                                   : id - ((AstElementNode) parent).id;
+                                                   : wrappedNode.getIndexInParent();
     }
 
     @Override
     public int compareOrder(NodeInfo other) {
         if (other instanceof AstElementNode) {
-            return Integer.compare(this.id, ((AstElementNode) other).id);
+            return compareOrder(this, (AstElementNode) other);
         } else if (other instanceof SiblingCountingNode) {
             return Navigator.compareOrder(this, (SiblingCountingNode) other);
         }
         throw new UnsupportedOperationException();
     }
 
+    // The wrappers are not created in document order, so this compares
+    // the children of the closest common ancestor that contain the nodes.
+    private static int compareOrder(AstElementNode a, AstElementNode b) {
+        if (a == b) { // NOPMD CompareObjectsWithEquals
+            return 0;
+        }
+        AstElementNode x = a;
+        AstElementNode y = b;
+        while (x.depth > y.depth) {
+            x = (AstElementNode) x.parent;
+        }
+        while (y.depth > x.depth) {
+            y = (AstElementNode) y.parent;
+        }
+        if (x == y) { // NOPMD CompareObjectsWithEquals
+            // one node is an ancestor of the other
+            return a.depth < b.depth ? -1 : 1;
+        }
+        while (x.parent != y.parent) { // NOPMD CompareObjectsWithEquals
+            if (x.depth == 0) {
+                // different trees
+                return Long.compare(x.getTreeInfo().getDocumentNumber(), y.getTreeInfo().getDocumentNumber());
+            }
+            x = (AstElementNode) x.parent;
+            y = (AstElementNode) y.parent;
+        }
+        return Integer.compare(x.wrappedNode.getIndexInParent(), y.wrappedNode.getIndexInParent());
+    }
+
     @Override
     protected AxisIterator iterateAttributes(NodeTest predicate) {
-        if (predicate instanceof NameTest) {
-            String local = ((NameTest) predicate).getLocalPart();
-            return SingleNodeIterator.makeIterator(getAttributes().get(local));
+        AttributeAccessors accessors = AttributeAxisIterator.getAccessors(wrappedNode);
+        if (accessors == null) {
+            if (predicate instanceof NameTest) {
+                String local = ((NameTest) predicate).getLocalPart();
+                return SingleNodeIterator.makeIterator(getAttributeMap().get(local));
+            }
+            return filter(predicate, new IteratorAdapter(getAttributeMap().values().iterator()));
         }
 
-        return filter(predicate, new IteratorAdapter(getAttributes().values().iterator()));
+        if (predicate instanceof NameTest) {
+            int index = accessors.indexOf(((NameTest) predicate).getLocalPart());
+            return index < 0 ? EmptyIterator.ofNodes()
+                             : SingleNodeIterator.makeIterator(getAttributeNode(accessors, index));
+        }
+        List<AstAttributeNode> all = new ArrayList<>(accessors.size());
+        for (int i = 0; i < accessors.size(); i++) {
+            all.add(getAttributeNode(accessors, i));
+        }
+        return filter(predicate, iterateList(all));
     }
 
     @Override
     protected AxisIterator iterateChildren(NodeTest nodeTest) {
-        return filter(nodeTest, iterateList(children));
+        return filter(nodeTest, iterateList(getChildren()));
     }
 
     @Override // this excludes self
@@ -174,7 +258,14 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     @Override
     public String getAttributeValue(NamespaceUri uri, String local) {
-        Attribute attribute = getLightAttributes().get(local);
+        AttributeAccessors accessors = AttributeAxisIterator.getAccessors(wrappedNode);
+        Attribute attribute;
+        if (accessors == null) {
+            attribute = getLightAttributes().get(local);
+        } else {
+            int index = accessors.indexOf(local);
+            attribute = index < 0 ? null : getAttribute(accessors, index);
+        }
         if (attribute != null) {
             getTreeInfo().getLogger().recordUsageOf(attribute);
             return attribute.getStringValue();
@@ -10,8 +10,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.lang3.mutable.MutableInt;
-
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 
@@ -21,10 +19,13 @@ import net.sf.saxon.om.GenericTreeInfo;
 
 /**
  * A wrapper around the root node of an AST, implementing {@link net.sf.saxon.om.TreeInfo}.
+ * It is shared by all the XPath rules that run on the file. The nodes
+ * of the tree are wrapped lazily, when Saxon navigates to them.
  */
 public final class AstTreeInfo extends GenericTreeInfo {
 
     private DeprecatedAttrLogger logger;
+    private int nextNodeId = 1; // 0 is taken by the document node
     private final Map<Node, AstElementNode> wrapperCache = new LinkedHashMap<Node, AstElementNode>() {
         @Override
         protected boolean removeEldestEntry(Entry eldest) {
@@ -49,8 +50,15 @@ public final class AstTreeInfo extends GenericTreeInfo {
      */
     public AstTreeInfo(RootNode node, Configuration configuration) {
         super(configuration);
-        MutableInt idGenerator = new MutableInt(1); // 0 is taken by the document node
-        setRootNode(new AstDocumentNode(this, idGenerator, node, configuration));
+        setRootNode(new AstDocumentNode(this, node));
+    }
+
+    /**
+     * Returns a new id for a node of the tree, used to generate
+     * unique ids. These are not in document order.
+     */
+    int nextNodeId() {
+        return nextNodeId++;
     }
 
     public AstElementNode findWrapperFor(Node node) {
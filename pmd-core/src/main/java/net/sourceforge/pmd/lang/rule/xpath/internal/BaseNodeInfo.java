@@ -9,10 +9,13 @@ import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 
+import net.sourceforge.pmd.lang.impl.Watchdog;
+
 import net.sf.saxon.om.NamePool;
 import net.sf.saxon.om.NamespaceUri;
 import net.sf.saxon.om.NodeInfo;
 import net.sf.saxon.pattern.AnyNodeTest;
+import net.sf.saxon.pattern.NodePredicate;
 import net.sf.saxon.pattern.NodeTest;
 import net.sf.saxon.str.StringView;
 import net.sf.saxon.str.UnicodeString;
@@ -42,6 +45,14 @@ abstract class BaseNodeInfo extends AbstractNodeWrapper implements SiblingCounti
 
     abstract List<AstElementNode> getChildren();
 
+    @Override
+    public AxisIterator iterateAxis(int axisNumber, NodePredicate nodeTest) {
+        // every step of a path goes through here, this lets an expression
+        // that keeps walking the tree time out
+        Watchdog.checkpoint();
+        return super.iterateAxis(axisNumber, nodeTest);
+    }
+
     @Override
     public AstTreeInfo getTreeInfo() {
         return (AstTreeInfo) treeInfo;
@@ -0,0 +1,716 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.NodeStream;
+import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAccessors;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAxisIterator;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionDefinition;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionException;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+
+import net.sf.saxon.expr.AndExpression;
+import net.sf.saxon.expr.AtomicSequenceConverter;
+import net.sf.saxon.expr.Atomizer;
+import net.sf.saxon.expr.AxisExpression;
+import net.sf.saxon.expr.BinaryExpression;
+import net.sf.saxon.expr.Binding;
+import net.sf.saxon.expr.BooleanExpression;
+import net.sf.saxon.expr.CardinalityChecker;
+import net.sf.saxon.expr.Expression;
+import net.sf.saxon.expr.FilterExpression;
+import net.sf.saxon.expr.GeneralComparison;
+import net.sf.saxon.expr.LetExpression;
+import net.sf.saxon.expr.Literal;
+import net.sf.saxon.expr.LocalVariableReference;
+import net.sf.saxon.expr.SlashExpression;
+import net.sf.saxon.expr.StaticProperty;
+import net.sf.saxon.expr.StringLiteral;
+import net.sf.saxon.expr.SystemFunctionCall;
+import net.sf.saxon.expr.ValueComparison;
+import net.sf.saxon.expr.parser.Token;
+import net.sf.saxon.expr.sort.DocumentSorter;
+import net.sf.saxon.functions.IntegratedFunctionCall;
+import net.sf.saxon.om.AxisInfo;
+import net.sf.saxon.om.GroundedValue;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.NamespaceUri;
+import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.pattern.AnyNodeTest;
+import net.sf.saxon.pattern.NameTest;
+import net.sf.saxon.pattern.NodeKindTest;
+import net.sf.saxon.pattern.NodeTest;
+import net.sf.saxon.type.BuiltInAtomicType;
+import net.sf.saxon.type.Type;
+import net.sf.saxon.value.BooleanValue;
+import net.sf.saxon.value.Int64Value;
+import net.sf.saxon.value.StringValue;
+
+/**
+ * Compiles the expressions of a simple subset of XPath into {@link NodeStream}
+ * pipelines, that run directly on the AST. These don't need the Saxon
+ * wrappers of the tree, nor a dynamic context.
+ *
+ * <p>The subset contains:
+ * <ul>
+ * <li>paths along the self, child, descendant, parent and ancestor axes,
+ * with name tests or {@code element()} tests;
+ * <li>filters that are {@code and}/{@code or} combinations of
+ * paths, {@code not}, {@code exists}, {@code empty}, {@code true()}
+ * and {@code false()};
+ * <li>comparisons of an attribute with a string, boolean or integer literal,
+ * and of the {@code count} of a path with an integer literal;
+ * <li>calls to extension functions, like {@code pmd-java:typeIs}, that return
+ * a boolean and whose arguments are string literals.
+ * </ul>
+ *
+ * <p>Anything else is not compiled, and is evaluated by Saxon. A compiled
+ * query may also meet a value that it can't handle the way Saxon does,
+ * eg an attribute of a type that doesn't match the literal it is compared
+ * with, which is an error in Saxon. It then throws {@link FallbackException},
+ * and the expression must be evaluated by Saxon instead for that context node.
+ *
+ * <p>The descendants with a given name of the context node, eg the
+ * {@code MethodCall} nodes in {@code //ClassDeclaration//MethodCall}, are
+ * looked up with a function given to the compiler. This lets the queries of an
+ * {@link XPathBatch} share the walk of the subtree of the context node.
+ */
+final class NodeStreamCompiler {
+
+    private static final Object NO_ATTRIBUTE = new Object();
+
+    private final Map<StructuredQName, XPathFunctionDefinition> functions = new HashMap<>();
+    private final DeprecatedAttrLogger attrLogger;
+    // the values of the let variables bound to a boolean constant, eg a property
+    private final Map<Binding, Boolean> constants = new IdentityHashMap<>();
+    private final BiFunction<Node, String, NodeStream<? extends Node>> contextDescendants;
+    // the names of the descendants of the context node that the last
+    // compiled expression looks up
+    private final Set<String> contextDescendantNames = new HashSet<>();
+    // whether the expression being compiled is evaluated on the context node
+    private boolean onContextNode;
+
+    NodeStreamCompiler(XPathHandler xPathHandler,
+                       DeprecatedAttrLogger attrLogger,
+                       BiFunction<Node, String, NodeStream<? extends Node>> contextDescendants) {
+        this.attrLogger = attrLogger;
+        this.contextDescendants = contextDescendants;
+        for (XPathFunctionDefinition fun : xPathHandler.getRegisteredExtensionFunctions()) {
+            functions.put(new StructuredQName("", NamespaceUri.of(fun.getQName().getNamespaceURI()), fun.getQName().getLocalPart()), fun);
+        }
+    }
+
+    /**
+     * Returns a function that evaluates the expression on a context node,
+     * or null if the expression is not in the supported subset.
+     */
+    @Nullable Function<Node, NodeStream<? extends Node>> compile(Expression expr) {
+        contextDescendantNames.clear();
+        onContextNode = true;
+        Path path = compilePath(expr);
+        return path == null ? null : path.nodes;
+    }
+
+    /**
+     * Returns the names of the descendants of the context node that the
+     * last compiled expression looks up with the function given to the compiler.
+     */
+    Set<String> getContextDescendantNames() {
+        return contextDescendantNames;
+    }
+
+    private @Nullable Path compilePath(Expression expr) {
+        if (expr instanceof AxisExpression) {
+            return compileAxis((AxisExpression) expr);
+        } else if (expr instanceof SlashExpression) {
+            Expression startExpr = ((SlashExpression) expr).getStart();
+            Path start = compilePath(startExpr);
+            Path step = compileOnNodesOf(startExpr, () -> compilePath(((SlashExpression) expr).getStep()));
+            if (start == null || step == null) {
+                return null;
+            }
+            return new Path(node -> start.nodes.apply(node).flatMap(step.nodes), false);
+        } else if (expr instanceof FilterExpression) {
+            Expression baseExpr = ((FilterExpression) expr).getBase();
+            Path base = compilePath(baseExpr);
+            Predicate<Node> filter = compileOnNodesOf(baseExpr, () -> compilePredicate(((FilterExpression) expr).getFilter()));
+            if (base == null || filter == null) {
+                return null;
+            }
+            return new Path(node -> base.nodes.apply(node).filter(filter), base.singleStep);
+        } else if (expr instanceof LetExpression) {
+            return bindConstant((LetExpression) expr) ? compilePath(((LetExpression) expr).getAction()) : null;
+        } else if (expr instanceof DocumentSorter) {
+            // the nodes are only used as a set, their order doesn't matter
+            Path base = compilePath(((DocumentSorter) expr).getBaseExpression());
+            return base == null ? null : new Path(base.nodes, false);
+        }
+        return null;
+    }
+
+    /**
+     * Compiles an expression that is evaluated on the nodes of another
+     * expression, which are only the context node if that is a self step.
+     */
+    private <T> @Nullable T compileOnNodesOf(Expression nodes, Supplier<@Nullable T> compiler) {
+        boolean wasOnContextNode = onContextNode;
+        onContextNode = wasOnContextNode && isSelfStep(nodes);
+        try {
+            return compiler.get();
+        } finally {
+            onContextNode = wasOnContextNode;
+        }
+    }
+
+    private static boolean isSelfStep(Expression expr) {
+        if (expr instanceof FilterExpression) {
+            return isSelfStep(((FilterExpression) expr).getBase());
+        }
+        return expr instanceof AxisExpression && ((AxisExpression) expr).getAxis() == AxisInfo.SELF;
+    }
+
+    private @Nullable Path compileAxis(AxisExpression expr) {
+        NodeTest test = expr.getNodeTest();
+        String name;
+        // the rule chain analyzer creates axis expressions without a node test
+        boolean anyNode = test == null || test instanceof AnyNodeTest;
+        if (anyNode || test instanceof NodeKindTest && ((NodeKindTest) test).getNodeKind() == Type.ELEMENT) {
+            name = null;
+        } else if (test instanceof NameTest
+            && ((NameTest) test).getNodeKind() == Type.ELEMENT
+            && ((NameTest) test).getNamespaceURI().isEmpty()) {
+            name = ((NameTest) test).getLocalPart();
+        } else {
+            return null;
+        }
+
+        Function<Node, NodeStream<? extends Node>> axis;
+        switch (expr.getAxis()) {
+        case AxisInfo.SELF:
+            axis = NodeStream::of;
+            break;
+        case AxisInfo.CHILD:
+            axis = Node::children;
+            break;
+        case AxisInfo.DESCENDANT:
+            axis = node -> node.descendants().crossFindBoundaries();
+            break;
+        case AxisInfo.DESCENDANT_OR_SELF:
+            axis = node -> node.descendantsOrSelf().crossFindBoundaries();
+            break;
+        case AxisInfo.PARENT:
+            if (anyNode) {
+                // the parent of the root is the document node
+                return null;
+            }
+            axis = node -> NodeStream.of(node.getParent());
+            break;
+        case AxisInfo.ANCESTOR:
+            if (anyNode) {
+                return null;
+            }
+            axis = Node::ancestors;
+            break;
+        case AxisInfo.ANCESTOR_OR_SELF:
+            if (anyNode) {
+                return null;
+            }
+            axis = Node::ancestorsOrSelf;
+            break;
+        default:
+            return null;
+        }
+
+        if (anyNode) {
+            return new Path(axis, true);
+        } else if (name == null) {
+            // element() and * don't match the text and comment nodes
+            return new Path(node -> axis.apply(node).filter(AstElementNode::isElement), true);
+        } else if (expr.getAxis() == AxisInfo.DESCENDANT && onContextNode) {
+            contextDescendantNames.add(name);
+            return new Path(node -> contextDescendants.apply(node, name), true);
+        }
+        return new Path(node -> axis.apply(node).filter(it -> name.equals(it.getXPathNodeName())), true);
+    }
+
+    /**
+     * Compiles an expression whose effective boolean value is a predicate
+     * on the context node.
+     */
+    private @Nullable Predicate<Node> compilePredicate(Expression expr) {
+        if (expr instanceof BooleanExpression) {
+            Predicate<Node> lhs = compilePredicate(((BooleanExpression) expr).getLhsExpression());
+            Predicate<Node> rhs = compilePredicate(((BooleanExpression) expr).getRhsExpression());
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            return expr instanceof AndExpression ? lhs.and(rhs) : lhs.or(rhs);
+        } else if (expr instanceof Literal) {
+            Boolean constant = evaluateConstant(expr);
+            return constant == null ? null : node -> constant;
+        } else if (expr instanceof SystemFunctionCall) {
+            return compileSystemFunctionPredicate((SystemFunctionCall) expr);
+        } else if (expr instanceof GeneralComparison || expr instanceof ValueComparison) {
+            return compileComparison((BinaryExpression) expr);
+        } else if (expr instanceof IntegratedFunctionCall) {
+            return compileExtensionFunction((IntegratedFunctionCall) expr);
+        } else if (expr instanceof LetExpression) {
+            return bindConstant((LetExpression) expr) ? compilePredicate(((LetExpression) expr).getAction()) : null;
+        } else if (expr instanceof LocalVariableReference) {
+            Boolean constant = constants.get(((LocalVariableReference) expr).getBinding());
+            return constant == null ? null : node -> constant;
+        }
+
+        // the effective boolean value of a sequence of nodes
+        Path path = compilePath(expr);
+        return path == null ? null : node -> path.nodes.apply(node).nonEmpty();
+    }
+
+    private boolean bindConstant(LetExpression let) {
+        Boolean value = evaluateConstant(let.getSequence());
+        if (value != null) {
+            constants.put(let, value);
+        }
+        return value != null;
+    }
+
+    /**
+     * Returns the value of an expression that is a boolean constant, eg
+     * {@code not($property)} once the value of the property is inlined,
+     * or null if it is not a constant.
+     */
+    private @Nullable Boolean evaluateConstant(Expression expr) {
+        if (expr instanceof Literal) {
+            GroundedValue value = ((Literal) expr).getGroundedValue();
+            return value instanceof BooleanValue ? ((BooleanValue) value).getBooleanValue() : null;
+        } else if (expr instanceof LocalVariableReference) {
+            return constants.get(((LocalVariableReference) expr).getBinding());
+        } else if (expr instanceof BooleanExpression) {
+            Boolean lhs = evaluateConstant(((BooleanExpression) expr).getLhsExpression());
+            Boolean rhs = evaluateConstant(((BooleanExpression) expr).getRhsExpression());
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            return expr instanceof AndExpression ? lhs && rhs : lhs || rhs;
+        } else if (expr instanceof SystemFunctionCall
+            && ((SystemFunctionCall) expr).getArity() == 1
+            && ((SystemFunctionCall) expr).getFunctionName().getNamespaceUri().equals(NamespaceUri.FN)) {
+            Boolean arg = evaluateConstant(((SystemFunctionCall) expr).getArg(0));
+            switch (((SystemFunctionCall) expr).getFunctionName().getLocalPart()) {
+            case "not":
+                return arg == null ? null : !arg;
+            case "boolean":
+                return arg;
+            default:
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private @Nullable Predicate<Node> compileSystemFunctionPredicate(SystemFunctionCall call) {
+        if (!call.getFunctionName().getNamespaceUri().equals(NamespaceUri.FN)) {
+            return null;
+        } else if (call.getArity() == 2) {
+            switch (call.getFunctionName().getLocalPart()) {
+            case "starts-with":
+                return compileStringFunction(call, String::startsWith);
+            case "ends-with":
+                return compileStringFunction(call, String::endsWith);
+            case "contains":
+                return compileStringFunction(call, String::contains);
+            default:
+                return null;
+            }
+        } else if (call.getArity() != 1) {
+            return null;
+        }
+        switch (call.getFunctionName().getLocalPart()) {
+        case "not": {
+            Predicate<Node> arg = compilePredicate(call.getArg(0));
+            return arg == null ? null : arg.negate();
+        }
+        case "boolean":
+            return compilePredicate(call.getArg(0));
+        case "exists": {
+            Path arg = compilePath(call.getArg(0));
+            return arg == null ? null : node -> arg.nodes.apply(node).nonEmpty();
+        }
+        case "empty": {
+            Path arg = compilePath(call.getArg(0));
+            return arg == null ? null : node -> arg.nodes.apply(node).isEmpty();
+        }
+        default:
+            return null;
+        }
+    }
+
+    private @Nullable Predicate<Node> compileComparison(BinaryExpression expr) {
+        int op = normalizeOperator(expr.getOperator());
+        Expression lhs = expr.getLhsExpression();
+        Expression rhs = expr.getRhsExpression();
+        if (op < 0) {
+            return null;
+        } else if (lhs instanceof Literal && !(rhs instanceof Literal)) {
+            Expression tmp = lhs;
+            lhs = rhs;
+            rhs = tmp;
+            op = Token.inverse(op);
+        }
+        if (!(rhs instanceof Literal)) {
+            return null;
+        }
+        GroundedValue literal = ((Literal) rhs).getGroundedValue();
+
+        String attrName = getAtomizedAttributeName(lhs);
+        if (attrName != null) {
+            return compileAttributeComparison(attrName, op, literal);
+        }
+
+        ToIntFunction<Node> count = compileCount(lhs);
+        if (count != null && literal instanceof Int64Value) {
+            long comparand = ((Int64Value) literal).longValue();
+            int finalOp = op;
+            return node -> compare(count.applyAsInt(node), comparand, finalOp);
+        }
+
+        Set<String> strings = getStrings(literal);
+        if (lhs instanceof IntegratedFunctionCall && strings != null && (op == Token.EQUALS || op == Token.NE)) {
+            return compileStringSequenceFunctionComparison((IntegratedFunctionCall) lhs, op == Token.EQUALS, strings);
+        }
+        return null;
+    }
+
+    private @Nullable Predicate<Node> compileAttributeComparison(String attrName, int op, GroundedValue literal) {
+        Set<String> strings = getStrings(literal);
+        if (strings != null) {
+            if (op != Token.EQUALS && op != Token.NE) {
+                return null;
+            }
+            boolean equals = op == Token.EQUALS;
+            return node -> {
+                Object value = getAttributeValue(node, attrName);
+                return value != NO_ATTRIBUTE && compareStrings(toStringValue(value), equals, strings);
+            };
+        } else if (literal instanceof BooleanValue) {
+            if (op != Token.EQUALS && op != Token.NE) {
+                return null;
+            }
+            boolean comparand = ((BooleanValue) literal).getBooleanValue();
+            boolean equals = op == Token.EQUALS;
+            return node -> {
+                Object value = getAttributeValue(node, attrName);
+                if (value == NO_ATTRIBUTE) {
+                    return false;
+                } else if (value instanceof Boolean) {
+                    return equals == (comparand == (Boolean) value);
+                }
+                throw FallbackException.INSTANCE;
+            };
+        } else if (literal instanceof Int64Value) {
+            long comparand = ((Int64Value) literal).longValue();
+            return node -> {
+                Object value = getAttributeValue(node, attrName);
+                if (value == NO_ATTRIBUTE) {
+                    return false;
+                } else if (value instanceof Integer || value instanceof Long) {
+                    return compare(((Number) value).longValue(), comparand, op);
+                }
+                throw FallbackException.INSTANCE;
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Compiles a call to a function like {@code starts-with}, whose first
+     * argument is the value of an attribute, and whose second is a string
+     * literal.
+     */
+    private @Nullable Predicate<Node> compileStringFunction(SystemFunctionCall call, BiPredicate<String, String> function) {
+        String attrName = getStringArgumentAttributeName(call.getArg(0));
+        if (attrName == null || !(call.getArg(1) instanceof StringLiteral)) {
+            return null;
+        }
+        String comparand = ((StringLiteral) call.getArg(1)).getString().toString();
+        return node -> {
+            Object value = getAttributeValue(node, attrName);
+            // the empty sequence is converted to the empty string
+            String string = value == NO_ATTRIBUTE ? "" : toStringValue(value);
+            return function.test(string, comparand);
+        };
+    }
+
+    /**
+     * Compiles the comparison of the result of an extension function that
+     * returns a sequence of strings, like {@code pmd-java:modifiers()}.
+     */
+    private @Nullable Predicate<Node> compileStringSequenceFunctionComparison(IntegratedFunctionCall call, boolean equals, Set<String> strings) {
+        Function<Node, Object> function = compileExtensionFunctionCall(call, XPathFunctionDefinition.Type.STRING_SEQUENCE);
+        if (function == null) {
+            return null;
+        }
+        return node -> {
+            Object result = function.apply(node);
+            if (result instanceof List) {
+                for (Object item : (List<?>) result) {
+                    if (compareStrings((String) item, equals, strings)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        };
+    }
+
+    private @Nullable ToIntFunction<Node> compileCount(Expression expr) {
+        if (expr instanceof SystemFunctionCall
+            && ((SystemFunctionCall) expr).getArity() == 1
+            && ((SystemFunctionCall) expr).getFunctionName().getNamespaceUri().equals(NamespaceUri.FN)
+            && "count".equals(((SystemFunctionCall) expr).getFunctionName().getLocalPart())) {
+            Path path = compilePath(((SystemFunctionCall) expr).getArg(0));
+            if (path == null) {
+                return null;
+            } else if (path.singleStep) {
+                return node -> path.nodes.apply(node).count();
+            }
+            // the same node may be reached through several paths
+            return node -> path.nodes.apply(node).distinct().count();
+        }
+        return null;
+    }
+
+    private @Nullable Predicate<Node> compileExtensionFunction(IntegratedFunctionCall call) {
+        Function<Node, Object> function = compileExtensionFunctionCall(call, XPathFunctionDefinition.Type.SINGLE_BOOLEAN);
+        return function == null ? null : node -> (Boolean) function.apply(node);
+    }
+
+    private @Nullable Function<Node, Object> compileExtensionFunctionCall(IntegratedFunctionCall call, XPathFunctionDefinition.Type resultType) {
+        XPathFunctionDefinition definition = functions.get(call.getFunctionName());
+        if (definition == null || definition.getResultType() != resultType
+            || definition.getArgumentTypes().length != call.getArity()) {
+            return null;
+        }
+        Object[] arguments = new Object[call.getArity()];
+        for (int i = 0; i < arguments.length; i++) {
+            if (definition.getArgumentTypes()[i] != XPathFunctionDefinition.Type.SINGLE_STRING || !(call.getArg(i) instanceof StringLiteral)) {
+                return null;
+            }
+            arguments[i] = ((StringLiteral) call.getArg(i)).getString().toString();
+        }
+
+        XPathFunctionDefinition.FunctionCall function = definition.makeCallExpression();
+        try {
+            function.staticInit(arguments);
+        } catch (XPathFunctionException e) {
+            // let Saxon report the error
+            return null;
+        }
+        boolean dependsOnContext = definition.dependsOnContext();
+        return node -> {
+            try {
+                return function.call(dependsOnContext ? node : null, arguments);
+            } catch (XPathFunctionException e) {
+                throw FallbackException.INSTANCE;
+            }
+        };
+    }
+
+    /**
+     * Returns the name of the attribute if the expression is {@code @Name},
+     * as an argument that is converted to an optional string, like the
+     * first argument of {@code starts-with}.
+     */
+    private static @Nullable String getStringArgumentAttributeName(Expression expr) {
+        if (expr instanceof CardinalityChecker
+            && ((CardinalityChecker) expr).getRequiredCardinality() == StaticProperty.ALLOWS_ZERO_OR_ONE) {
+            expr = ((CardinalityChecker) expr).getBaseExpression();
+        }
+        if (expr instanceof AtomicSequenceConverter
+            && ((AtomicSequenceConverter) expr).getRequiredItemType() == BuiltInAtomicType.STRING) {
+            return getAtomizedAttributeName(((AtomicSequenceConverter) expr).getBaseExpression());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of the attribute if the expression is the atomized
+     * value of an attribute, like in {@code @Name = 'foo'}.
+     */
+    private static @Nullable String getAtomizedAttributeName(Expression expr) {
+        if (!(expr instanceof Atomizer) || !(((Atomizer) expr).getBaseExpression() instanceof AxisExpression)) {
+            return null;
+        }
+        AxisExpression axis = (AxisExpression) ((Atomizer) expr).getBaseExpression();
+        NodeTest test = axis.getNodeTest();
+        if (axis.getAxis() == AxisInfo.ATTRIBUTE
+            && test instanceof NameTest
+            && ((NameTest) test).getNamespaceURI().isEmpty()) {
+            return ((NameTest) test).getLocalPart();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the attribute of the node as it is given to
+     * Saxon, or {@link #NO_ATTRIBUTE} if the node has no such attribute.
+     */
+    private @Nullable Object getAttributeValue(Node node, String name) {
+        AttributeAccessors accessors = AttributeAxisIterator.getAccessors(node);
+        if (accessors == null) {
+            // the node has custom attributes
+            throw FallbackException.INSTANCE;
+        }
+        int index = accessors.indexOf(name);
+        if (index < 0) {
+            return NO_ATTRIBUTE;
+        }
+        Attribute attribute = accessors.newAttribute(node, index);
+        attrLogger.recordUsageOf(attribute);
+        Object value = attribute.getValue();
+        if (value instanceof Collection) {
+            throw FallbackException.INSTANCE;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the string the value of an attribute is converted to, when
+     * it is compared with a string.
+     */
+    private static String toStringValue(@Nullable Object value) {
+        if (value == null) {
+            // converted to an empty untyped atomic value
+            return "";
+        } else if (value instanceof String || value instanceof Character
+            || value instanceof Enum || value instanceof Pattern) {
+            return String.valueOf(value);
+        }
+        // a type error, or a comparison of numbers
+        throw FallbackException.INSTANCE;
+    }
+
+    /**
+     * Returns the strings of the literal, if it is a string or a sequence
+     * of strings, otherwise null.
+     */
+    private static @Nullable Set<String> getStrings(GroundedValue literal) {
+        if (literal.getLength() == 0) {
+            return null;
+        }
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < literal.getLength(); i++) {
+            Item item = literal.itemAt(i);
+            if (!(item instanceof StringValue) || ((StringValue) item).getPrimitiveType() != BuiltInAtomicType.STRING) {
+                return null;
+            }
+            strings.add(item.getStringValue());
+        }
+        return strings;
+    }
+
+    /**
+     * A general comparison of a string with a sequence of strings: it is
+     * true if the string is equal (or not equal) to any of them.
+     */
+    private static boolean compareStrings(String value, boolean equals, Set<String> strings) {
+        if (equals) {
+            return strings.contains(value);
+        }
+        return strings.size() > (strings.contains(value) ? 1 : 0);
+    }
+
+    /**
+     * Returns the operator of a general or value comparison as the operator
+     * of the general comparison, or -1 if it is not a comparison operator.
+     */
+    private static int normalizeOperator(int op) {
+        switch (op) {
+        case Token.EQUALS:
+        case Token.FEQ:
+            return Token.EQUALS;
+        case Token.NE:
+        case Token.FNE:
+            return Token.NE;
+        case Token.LT:
+        case Token.FLT:
+            return Token.LT;
+        case Token.LE:
+        case Token.FLE:
+            return Token.LE;
+        case Token.GT:
+        case Token.FGT:
+            return Token.GT;
+        case Token.GE:
+        case Token.FGE:
+            return Token.GE;
+        default:
+            return -1;
+        }
+    }
+
+    private static boolean compare(long lhs, long rhs, int op) {
+        switch (op) {
+        case Token.EQUALS:
+            return lhs == rhs;
+        case Token.NE:
+            return lhs != rhs;
+        case Token.LT:
+            return lhs < rhs;
+        case Token.LE:
+            return lhs <= rhs;
+        case Token.GT:
+            return lhs > rhs;
+        case Token.GE:
+            return lhs >= rhs;
+        default:
+            throw new IllegalArgumentException("Not a comparison operator: " + op);
+        }
+    }
+
+    private static final class Path {
+
+        private final Function<Node, NodeStream<? extends Node>> nodes;
+        // whether this is a single axis step, which yields no duplicates
+        private final boolean singleStep;
+
+        Path(Function<Node, NodeStream<? extends Node>> nodes, boolean singleStep) {
+            this.nodes = nodes;
+            this.singleStep = singleStep;
+        }
+    }
+
+    /**
+     * Thrown by a compiled query when it meets a value that it doesn't
+     * handle. The expression should then be evaluated by Saxon.
+     */
+    static final class FallbackException extends RuntimeException {
+
+        static final FallbackException INSTANCE = new FallbackException();
+
+        private FallbackException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -6,22 +6,31 @@ package net.sourceforge.pmd.lang.rule.xpath.internal;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.exception.ContextedRuntimeException;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.impl.BatchLanguageProcessor;
+import net.sourceforge.pmd.lang.impl.Watchdog;
 import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException;
 import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException.Phase;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionDefinition;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.NodeStreamCompiler.FallbackException;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.util.DataMap;
 import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
@@ -29,7 +38,7 @@ import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.expr.Expression;
 import net.sf.saxon.expr.LocalVariableReference;
-import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.lib.ErrorReporter;
 import net.sf.saxon.om.AtomicSequence;
 import net.sf.saxon.om.Item;
 import net.sf.saxon.om.NamePool;
@@ -46,7 +55,10 @@ import net.sf.saxon.trans.XPathException;
 
 
 /**
- * This is a Saxon based XPathRule query.
+ * This is a Saxon based XPathRule query. The rule chain expressions
+ * that are simple enough are compiled by the {@link NodeStreamCompiler},
+ * and are only evaluated by Saxon when the compiled query can't handle
+ * a node.
  */
 public class SaxonXPathRuleQuery {
 
@@ -59,6 +71,20 @@ public class SaxonXPathRuleQuery {
 
     private static final NamePool NAME_POOL = new NamePool();
 
+    /**
+     * Saxon creates an error reporter for each dynamic context by default,
+     * which allocates a new print writer every time. This one has no state,
+     * so all the queries of a configuration share it, from any thread.
+     * The errors are also thrown as {@link XPathException}s.
+     */
+    private static final ErrorReporter ERROR_REPORTER = error -> {
+        if (error.isWarning()) {
+            LOG.warn("XPath warning: {}", error.getMessage());
+        } else {
+            LOG.debug("XPath error: {}", error.getMessage());
+        }
+    };
+
     /** Cache key for the wrapped tree for saxon. */
     private static final SimpleDataKey<AstTreeInfo> SAXON_TREE_CACHE_KEY = DataMap.simpleDataKey("saxon.tree");
 
@@ -68,13 +94,32 @@ public class SaxonXPathRuleQuery {
     private final Map<PropertyDescriptor<?>, Object> properties;
     private final XPathHandler xPathHandler;
     private final List<String> rulechainQueries = new ArrayList<>();
-    private Configuration configuration;
+    private final Configuration configuration;
 
     /**
      * Contains for each nodeName a sub expression, used for implementing rule chain.
      */
     Map<String, List<Expression>> nodeNameToXPaths = new HashMap<>();
 
+    /**
+     * The expressions of {@link #nodeNameToXPaths} that could be compiled
+     * to node streams, which are evaluated without Saxon.
+     */
+    Map<Expression, Function<Node, NodeStream<? extends Node>>> compiledXPaths = new IdentityHashMap<>();
+
+    /**
+     * For each nodeName, the names of the descendants that the compiled
+     * expressions look up from the context node. These are found by the
+     * {@link #batch} if this query is part of one.
+     */
+    final Map<String, Set<String>> contextDescendantNames = new HashMap<>();
+
+    /**
+     * The batch of queries that this query shares the walks of subtrees
+     * with. It is set before the query is used by several threads.
+     */
+    private @Nullable XPathBatch batch;
+
     /**
      * Representation of an XPath query, created at {@link #initialize()} using {@link #xpathExpr}.
      */
@@ -88,10 +133,26 @@ public class SaxonXPathRuleQuery {
                                Map<PropertyDescriptor<?>, Object> properties,
                                XPathHandler xPathHandler,
                                DeprecatedAttrLogger logger) throws PmdXPathException {
+        this(xpathExpr, version, properties, xPathHandler, newConfiguration(xPathHandler), logger);
+    }
+
+    /**
+     * Creates a query that uses the given configuration, which must have
+     * been created by {@link #newConfiguration(XPathHandler)} with the
+     * same handler. The configuration can be shared by several queries,
+     * like those of a {@linkplain net.sourceforge.pmd.lang.impl.BatchLanguageProcessor#getXPathConfiguration() language processor}.
+     */
+    public SaxonXPathRuleQuery(String xpathExpr,
+                               XPathVersion version,
+                               Map<PropertyDescriptor<?>, Object> properties,
+                               XPathHandler xPathHandler,
+                               Configuration configuration,
+                               DeprecatedAttrLogger logger) throws PmdXPathException {
         this.xpathExpr = xpathExpr;
         this.version = version;
         this.properties = properties;
         this.xPathHandler = xPathHandler;
+        this.configuration = configuration;
         this.attrCtx = logger;
         try {
             initialize();
@@ -112,17 +173,32 @@ public class SaxonXPathRuleQuery {
 
 
     public List<Node> evaluate(final Node node) {
-        final AstTreeInfo documentNode = getDocumentNodeForRootNode(node);
-        documentNode.setAttrCtx(attrCtx);
+        AstTreeInfo documentNode = null;
         try {
-
-            // Map AST Node -> Saxon Node
-            final XPathDynamicContext xpathDynamicContext = xpathExpression.createDynamicContext(documentNode.findWrapperFor(node));
+            XPathDynamicContext xpathDynamicContext = null;
 
             // XPath 2.0 sequences may contain duplicates
             final Set<Node> results = new LinkedHashSet<>();
             List<Expression> expressions = getExpressionsForLocalNameOrDefault(node.getXPathNodeName());
             for (Expression expression : expressions) {
+                Watchdog.checkpoint();
+                Function<Node, NodeStream<? extends Node>> compiled = compiledXPaths.get(expression);
+                if (compiled != null) {
+                    try {
+                        results.addAll(compiled.apply(node).toList());
+                        continue;
+                    } catch (FallbackException ignored) {
+                        // evaluate it with Saxon
+                    }
+                }
+
+                if (xpathDynamicContext == null) {
+                    documentNode = getDocumentNodeForRootNode(node);
+                    documentNode.setAttrCtx(attrCtx);
+                    // Map AST Node -> Saxon Node
+                    xpathDynamicContext = xpathExpression.createDynamicContext(documentNode.findWrapperFor(node));
+                }
+
                 @SuppressWarnings("PMD.CloseResource")
                 SequenceIterator iterator = expression.iterate(xpathDynamicContext.getXPathContextObject());
                 Item current = iterator.next();
@@ -132,6 +208,7 @@ public class SaxonXPathRuleQuery {
                     } else {
                         throw new XPathException("XPath rule expression returned a non-node (" + current.getClass() + "): " + current);
                     }
+                    Watchdog.checkpoint();
                     current = iterator.next();
                 }
             }
@@ -144,7 +221,9 @@ public class SaxonXPathRuleQuery {
         } catch (final UncheckedXPathException e) {
             throw wrapException(e.getXPathException(), Phase.EVALUATION);
         } finally {
-            documentNode.setAttrCtx(DeprecatedAttrLogger.noop());
+            if (documentNode != null) {
+                documentNode.setAttrCtx(DeprecatedAttrLogger.noop());
+            }
         }
     }
 
@@ -187,9 +266,6 @@ public class SaxonXPathRuleQuery {
     }
 
     private void initialize() throws XPathException {
-        this.configuration = Configuration.newConfiguration();
-        this.configuration.setNamePool(getNamePool());
-
         StaticContextWithProperties staticCtx = new StaticContextWithProperties(this.configuration);
         staticCtx.setXPathLanguageLevel(version == XPathVersion.XPATH_3_1 ? 31 : 20);
         staticCtx.declareNamespace("fn", NamespaceUri.FN);
@@ -202,10 +278,8 @@ public class SaxonXPathRuleQuery {
         }
 
         for (XPathFunctionDefinition xpathFun : xPathHandler.getRegisteredExtensionFunctions()) {
-            ExtensionFunctionDefinition fun = new SaxonExtensionFunctionDefinitionAdapter(xpathFun);
-            StructuredQName qname = fun.getFunctionQName();
+            StructuredQName qname = new SaxonExtensionFunctionDefinitionAdapter(xpathFun).getFunctionQName();
             staticCtx.declareNamespace(qname.getPrefix(), qname.getNamespaceUri());
-            this.configuration.registerExtensionFunction(fun);
         }
 
         final XPathEvaluator xpathEvaluator = new XPathEvaluator(configuration);
@@ -216,6 +290,32 @@ public class SaxonXPathRuleQuery {
 
     }
 
+    /**
+     * Returns the Saxon configuration shared by the queries of the given
+     * processor, which use its {@linkplain net.sourceforge.pmd.lang.LanguageVersionHandler#getXPathHandler() XPath handler}.
+     */
+    public static Configuration getConfiguration(LanguageProcessor processor) {
+        if (processor instanceof BatchLanguageProcessor) {
+            return ((BatchLanguageProcessor<?>) processor).getXPathConfiguration();
+        }
+        return newConfiguration(processor.services().getXPathHandler());
+    }
+
+    /**
+     * Creates a Saxon configuration for the queries that use the given
+     * handler, with its extension functions.
+     */
+    public static Configuration newConfiguration(XPathHandler xPathHandler) {
+        Configuration configuration = Configuration.newConfiguration();
+        configuration.setNamePool(getNamePool());
+        configuration.setErrorReporterFactory(config -> ERROR_REPORTER);
+
+        for (XPathFunctionDefinition xpathFun : xPathHandler.getRegisteredExtensionFunctions()) {
+            configuration.registerExtensionFunction(new SaxonExtensionFunctionDefinitionAdapter(xpathFun));
+        }
+        return configuration;
+    }
+
     private void analyzeXPathForRuleChain(final XPathEvaluator xpathEvaluator) {
         final Expression expr = xpathExpression.getInternalExpression();
 
@@ -245,6 +345,7 @@ public class SaxonXPathRuleQuery {
 
         if (useRuleChain) {
             rulechainQueries.addAll(nodeNameToXPaths.keySet());
+            compileToNodeStreams();
         } else {
             nodeNameToXPaths.clear();
             LOG.debug("Unable to use RuleChain for XPath: {}", xpathExpr);
@@ -254,6 +355,33 @@ public class SaxonXPathRuleQuery {
         addExpressionForNode(AST_ROOT, xpathExpression.getInternalExpression());
     }
 
+    private void compileToNodeStreams() {
+        NodeStreamCompiler compiler = new NodeStreamCompiler(xPathHandler, attrCtx, this::findContextDescendants);
+        for (Map.Entry<String, List<Expression>> entry : nodeNameToXPaths.entrySet()) {
+            for (Expression expression : entry.getValue()) {
+                Function<Node, NodeStream<? extends Node>> compiled = compiler.compile(expression);
+                if (compiled != null) {
+                    compiledXPaths.put(expression, compiled);
+                    if (!compiler.getContextDescendantNames().isEmpty()) {
+                        contextDescendantNames.computeIfAbsent(entry.getKey(), k -> new HashSet<>())
+                                              .addAll(compiler.getContextDescendantNames());
+                    }
+                }
+            }
+        }
+    }
+
+    private NodeStream<? extends Node> findContextDescendants(Node node, String name) {
+        if (batch != null) {
+            return batch.findDescendants(node, name);
+        }
+        return XPathBatch.walkDescendants(node, name);
+    }
+
+    void setBatch(XPathBatch batch) {
+        this.batch = batch;
+    }
+
     public static NamePool getNamePool() {
         return NAME_POOL;
     }
@@ -0,0 +1,164 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.NodeStream;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.xpath.InternalApiBridge;
+import net.sourceforge.pmd.util.DataMap;
+import net.sourceforge.pmd.util.DataMap.DataKey;
+import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
+
+/**
+ * A batch of XPath queries, usually those of all the XPath rules of a
+ * ruleset, that share the walks of the subtrees they look into.
+ *
+ * <p>Many queries look for descendants of the node they are evaluated on,
+ * eg {@code //ClassDeclaration//MethodCall}. These are compiled to
+ * a lookup of the descendants with a name. The batch merges these lookups
+ * by rule chain node name: the first query that looks for descendants of
+ * a node walks its subtree once, and collects the descendants that all
+ * the queries of the batch look for from the nodes with that name. The
+ * other queries then reuse them.
+ *
+ * <p>The descendants that were found are stored in the user map of the
+ * root of the tree, so they are dropped with the tree. The walks of nodes
+ * that are nested in a node with the same name, eg a local class, are not
+ * shared: this way each node of the tree is stored at most once for each
+ * name it is looked up with, instead of once per enclosing node.
+ */
+public final class XPathBatch {
+
+    private static final SimpleDataKey<Walks> WALKS_KEY = DataMap.simpleDataKey("xpath.batch.walks");
+
+    // For each rule chain node name, the names of the descendants that are
+    // collected by the walk of the subtree of a node with that name. Only
+    // the node names whose descendants are looked up several times are kept.
+    private final Map<String, Set<String>> descendantNames;
+
+    private XPathBatch(Map<String, Set<String>> descendantNames) {
+        this.descendantNames = descendantNames;
+    }
+
+    /**
+     * Makes the given queries share the walks of subtrees. This must be
+     * called before the queries are used by several threads.
+     */
+    public static void batch(Collection<SaxonXPathRuleQuery> queries) {
+        Map<String, Set<String>> descendantNames = new HashMap<>();
+        Map<String, Integer> numLookups = new HashMap<>();
+        for (SaxonXPathRuleQuery query : queries) {
+            query.contextDescendantNames.forEach((nodeName, names) -> {
+                descendantNames.computeIfAbsent(nodeName, k -> new HashSet<>()).addAll(names);
+                numLookups.merge(nodeName, names.size(), Integer::sum);
+            });
+        }
+        descendantNames.keySet().removeIf(nodeName -> numLookups.get(nodeName) < 2);
+
+        XPathBatch batch = new XPathBatch(descendantNames);
+        for (SaxonXPathRuleQuery query : queries) {
+            query.setBatch(batch);
+        }
+    }
+
+    /**
+     * Makes the queries of the given rules that are XPath rules share the
+     * walks of subtrees. The rules must be initialized.
+     *
+     * @see #batch(Collection)
+     */
+    public static void batchXPathRules(Iterable<? extends Rule> rules) {
+        List<SaxonXPathRuleQuery> queries = new ArrayList<>();
+        for (Rule rule : rules) {
+            SaxonXPathRuleQuery query = InternalApiBridge.getXPathRuleQuery(rule);
+            if (query != null) {
+                queries.add(query);
+            }
+        }
+        batch(queries);
+    }
+
+    /**
+     * Returns the descendants of the node that have the given name, in
+     * document order.
+     */
+    NodeStream<? extends Node> findDescendants(Node node, String name) {
+        String nodeName = node.getXPathNodeName();
+        Set<String> names = descendantNames.get(nodeName);
+        if (names == null || !names.contains(name)) {
+            return walkDescendants(node, name);
+        }
+
+        DataMap<DataKey<?, ?>> userMap = node.getRoot().getUserMap();
+        Walks walks = userMap.get(WALKS_KEY);
+        if (walks == null || walks.batch != this) { // NOPMD CompareObjectsWithEquals
+            // the tree was analysed by another batch before
+            walks = new Walks(this);
+            userMap.set(WALKS_KEY, walks);
+        }
+
+        Map<String, List<Node>> found = walks.descendantsByNode.get(node);
+        if (found == null) {
+            if (node.ancestors().any(it -> nodeName.equals(it.getXPathNodeName()))) {
+                // its descendants are already stored for the enclosing node
+                return walkDescendants(node, name);
+            }
+            found = new HashMap<>();
+            for (String descendantName : names) {
+                found.put(descendantName, new ArrayList<>());
+            }
+            collectDescendants(node, found);
+            walks.descendantsByNode.put(node, found);
+        }
+        return NodeStream.fromIterable(found.get(name));
+    }
+
+    private static void collectDescendants(Node node, Map<String, List<Node>> found) {
+        // don't use children(), which allocates a stream for each node
+        for (int i = 0, numChildren = node.getNumChildren(); i < numChildren; i++) {
+            Node child = node.getChild(i);
+            List<Node> nodes = found.get(child.getXPathNodeName());
+            if (nodes != null) {
+                nodes.add(child);
+            }
+            collectDescendants(child, found);
+        }
+    }
+
+    /**
+     * Returns the descendants of the node that have the given name,
+     * without sharing the walk.
+     */
+    static NodeStream<? extends Node> walkDescendants(Node node, String name) {
+        return node.descendants().crossFindBoundaries().filter(it -> name.equals(it.getXPathNodeName()));
+    }
+
+    // test only
+    static int countSharedWalks(Node node) {
+        Walks walks = node.getRoot().getUserMap().get(WALKS_KEY);
+        return walks == null ? 0 : walks.descendantsByNode.size();
+    }
+
+    private static final class Walks {
+
+        private final XPathBatch batch;
+        // the descendants found by the walk of the subtree of each node
+        private final Map<Node, Map<String, List<Node>>> descendantsByNode = new IdentityHashMap<>();
+
+        Walks(XPathBatch batch) {
+            this.batch = batch;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLogWriter;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Renders the same SARIF log as the {@link SarifRenderer}, but writes each
+ * result as soon as its file has been analysed, instead of building the whole
+ * log in memory. The rules are written after the results.
+ */
+public class StreamingSarifRenderer extends AbstractIncrementingRenderer {
+    public static final String NAME = "streamingsarif";
+    private static final String DEFAULT_DESCRIPTION = "Static Analysis Results Interchange Format (SARIF), written incrementally";
+    private static final String DEFAULT_FILE_EXTENSION = "sarif.json";
+
+    private SarifLogWriter sarifLogWriter;
+
+    public StreamingSarifRenderer() {
+        super(NAME, DEFAULT_DESCRIPTION);
+    }
+
+    @Override
+    public String defaultFileExtension() {
+        return DEFAULT_FILE_EXTENSION;
+    }
+
+    @Override
+    public void start() throws IOException {
+        sarifLogWriter = new SarifLogWriter(writer);
+        sarifLogWriter.start();
+    }
+
+    @Override
+    public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
+        while (violations.hasNext()) {
+            sarifLogWriter.add(violations.next());
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        for (Report.ProcessingError error : this.errors) {
+            sarifLogWriter.addRunTimeError(error);
+        }
+
+        for (Report.ConfigurationError error : this.configErrors) {
+            sarifLogWriter.addConfigurationError(error);
+        }
+
+        sarifLogWriter.end();
+        writer.println();
+    }
+
+    @Override
+    public void setReportFile(String reportFilename) {
+        this.setWriter(IOUtil.createWriter(StandardCharsets.UTF_8, reportFilename));
+    }
+}
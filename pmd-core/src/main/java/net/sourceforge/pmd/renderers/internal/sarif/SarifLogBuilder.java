@@ -7,10 +7,13 @@ package net.sourceforge.pmd.renderers.internal.sarif;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ArtifactLocation;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.AssociatedRule;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Component;
@@ -33,6 +36,7 @@ import net.sourceforge.pmd.reporting.RuleViolation;
 
 public class SarifLogBuilder {
     private final List<ReportingDescriptor> rules = new ArrayList<>();
+    private final Map<List<String>, Integer> ruleIndices = new HashMap<>();
     private final List<Result> results = new ArrayList<>();
     private final List<ToolConfigurationNotification> toolConfigurationNotifications = new ArrayList<>();
     private final List<ToolExecutionNotification> toolExecutionNotifications = new ArrayList<>();
@@ -42,21 +46,26 @@ public class SarifLogBuilder {
     }
 
     public SarifLogBuilder add(RuleViolation violation) {
-        final ReportingDescriptor ruleDescriptor = getReportingDescriptor(violation);
-        int ruleIndex = rules.indexOf(ruleDescriptor);
-        if (ruleIndex == -1) {
-            rules.add(ruleDescriptor);
-            ruleIndex = rules.size() - 1;
+        final List<String> ruleKey = ruleKey(violation.getRule());
+        Integer ruleIndex = ruleIndices.get(ruleKey);
+        if (ruleIndex == null) {
+            ruleIndex = rules.size();
+            rules.add(getReportingDescriptor(violation.getRule()));
+            ruleIndices.put(ruleKey, ruleIndex);
         }
 
-        final Location location = getRuleViolationLocation(violation);
-        final Result result = resultFrom(ruleDescriptor, ruleIndex, location);
-        results.add(result);
+        results.add(resultFrom(violation, ruleIndex));
 
         return this;
     }
 
     public SarifLogBuilder addRunTimeError(Report.ProcessingError error) {
+        toolExecutionNotifications.add(toolExecutionNotification(error));
+
+        return this;
+    }
+
+    static ToolExecutionNotification toolExecutionNotification(Report.ProcessingError error) {
         ArtifactLocation artifactLocation = ArtifactLocation.builder()
                 .uri(error.getFileId().getUriString())
                 .build();
@@ -78,46 +87,37 @@ public class SarifLogBuilder {
                 .message(error.getDetail())
                 .build();
 
-        ToolExecutionNotification toolExecutionNotification = ToolExecutionNotification.builder()
+        return ToolExecutionNotification.builder()
                 .locations(Collections.singletonList(location))
                 .message(message)
                 .exception(exception)
                 .build();
+    }
 
-        toolExecutionNotifications.add(toolExecutionNotification);
+    public SarifLogBuilder addConfigurationError(Report.ConfigurationError error) {
+        toolConfigurationNotifications.add(toolConfigurationNotification(error));
 
         return this;
     }
 
-    public SarifLogBuilder addConfigurationError(Report.ConfigurationError error) {
+    static ToolConfigurationNotification toolConfigurationNotification(Report.ConfigurationError error) {
         AssociatedRule associatedRule = AssociatedRule.builder()
                 .id(error.rule().getName())
                 .build();
 
         Message message = Message.builder().text(error.issue()).build();
 
-        ToolConfigurationNotification toolConfigurationNotification = ToolConfigurationNotification.builder()
+        return ToolConfigurationNotification.builder()
                 .associatedRule(associatedRule)
                 .message(message)
                 .build();
-
-        toolConfigurationNotifications.add(toolConfigurationNotification);
-
-        return this;
     }
 
     public SarifLog build() {
-        final Component driver = getDriverComponent().toBuilder().rules(rules).build();
-        final Tool tool = Tool.builder().driver(driver).build();
-        final Invocation invocation = Invocation.builder()
-                .toolExecutionNotifications(toolExecutionNotifications)
-                .toolConfigurationNotifications(toolConfigurationNotifications)
-                .executionSuccessful(isExecutionSuccessful())
-                .build();
         final Run run = Run.builder()
-                .tool(tool)
+                .tool(tool(rules))
                 .results(results)
-                .invocations(Collections.singletonList(invocation))
+                .invocations(invocations(toolExecutionNotifications, toolConfigurationNotifications))
                 .build();
 
         List<Run> runs = Collections.singletonList(run);
@@ -125,27 +125,38 @@ public class SarifLogBuilder {
         return SarifLog.builder().runs(runs).build();
     }
 
-    private boolean isExecutionSuccessful() {
-        return toolExecutionNotifications.isEmpty() && toolConfigurationNotifications.isEmpty();
+    static Tool tool(List<ReportingDescriptor> rules) {
+        final Component driver = getDriverComponent().toBuilder().rules(rules).build();
+        return Tool.builder().driver(driver).build();
+    }
+
+    static List<Invocation> invocations(List<ToolExecutionNotification> toolExecutionNotifications,
+                                        List<ToolConfigurationNotification> toolConfigurationNotifications) {
+        final Invocation invocation = Invocation.builder()
+                .toolExecutionNotifications(toolExecutionNotifications)
+                .toolConfigurationNotifications(toolConfigurationNotifications)
+                .executionSuccessful(toolExecutionNotifications.isEmpty() && toolConfigurationNotifications.isEmpty())
+                .build();
+        return Collections.singletonList(invocation);
     }
 
-    private Result resultFrom(ReportingDescriptor rule, Integer ruleIndex, Location location) {
+    static Result resultFrom(RuleViolation violation, Integer ruleIndex) {
         final Result result = Result.builder()
-                .ruleId(rule.getId())
+                .ruleId(violation.getRule().getName())
                 .ruleIndex(ruleIndex)
                 .build();
 
         final Message message = Message.builder()
-                .text(rule.getShortDescription().getText())
+                .text(violation.getDescription())
                 .build();
 
         result.setMessage(message);
-        result.setLocations(Collections.singletonList(location));
+        result.setLocations(Collections.singletonList(getRuleViolationLocation(violation)));
 
         return result;
     }
 
-    private Location getRuleViolationLocation(RuleViolation rv) {
+    private static Location getRuleViolationLocation(RuleViolation rv) {
         ArtifactLocation artifactLocation = ArtifactLocation.builder()
                 .uri(rv.getFileId().getUriString())
                 .build();
@@ -167,26 +178,34 @@ public class SarifLogBuilder {
             .build();
     }
 
-    private ReportingDescriptor getReportingDescriptor(RuleViolation rv) {
+    /**
+     * Identifies a rule, as rules are copied for each thread. Each rule
+     * is described once, whatever the messages of its violations.
+     */
+    static List<String> ruleKey(Rule rule) {
+        return Arrays.asList(rule.getLanguage().getId(), rule.getRuleSetName(), rule.getName());
+    }
+
+    static ReportingDescriptor getReportingDescriptor(Rule rule) {
         return ReportingDescriptor.builder()
-            .id(rv.getRule().getName())
-            .shortDescription(new MultiformatMessage(rv.getDescription()))
-            .fullDescription(new MultiformatMessage(rv.getRule().getDescription()))
-            .helpUri(rv.getRule().getExternalInfoUrl())
-            .help(new MultiformatMessage(rv.getRule().getDescription()))
-            .properties(getRuleProperties(rv))
+            .id(rule.getName())
+            .shortDescription(new MultiformatMessage(rule.getMessage()))
+            .fullDescription(new MultiformatMessage(rule.getDescription()))
+            .helpUri(rule.getExternalInfoUrl())
+            .help(new MultiformatMessage(rule.getDescription()))
+            .properties(getRuleProperties(rule))
             .build();
     }
 
-    private PropertyBag getRuleProperties(RuleViolation rv) {
+    private static PropertyBag getRuleProperties(Rule rule) {
         return PropertyBag.builder()
-                .ruleset(rv.getRule().getRuleSetName())
-                .priority(rv.getRule().getPriority().getPriority())
-                .tags(new HashSet<>(Arrays.asList(rv.getRule().getRuleSetName())))
+                .ruleset(rule.getRuleSetName())
+                .priority(rule.getPriority().getPriority())
+                .tags(new HashSet<>(Arrays.asList(rule.getRuleSetName())))
                 .build();
     }
 
-    private Component getDriverComponent() {
+    private static Component getDriverComponent() {
         return Component.builder()
                 .name("PMD")
                 .version(PMDVersion.VERSION)
@@ -0,0 +1,105 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers.internal.sarif;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Invocation;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ReportingDescriptor;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Result;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Tool;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ToolConfigurationNotification;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ToolExecutionNotification;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes a SARIF log incrementally, unlike {@link SarifLogBuilder}, which
+ * builds the whole log in memory. Each result is written as soon as it is
+ * added. The rules the results refer to are collected on the fly, and written
+ * after the results, with the notifications. The memory used depends on the
+ * number of rules and notifications, but not on the number of results.
+ *
+ * <p>Like in the {@link SarifLogBuilder}, each rule is described once, with
+ * its rule message as short description, so that both write the same log for
+ * the same violations. The message of each violation is in its result.
+ */
+public class SarifLogWriter {
+    private static final Type INVOCATIONS_TYPE = new TypeToken<List<Invocation>>() { }.getType();
+
+    private final Gson gson = new GsonBuilder()
+            .disableHtmlEscaping()
+            .create();
+    private final JsonWriter jsonWriter;
+
+    private final List<ReportingDescriptor> rules = new ArrayList<>();
+    private final Map<List<String>, Integer> ruleIndices = new HashMap<>();
+    private final List<ToolConfigurationNotification> toolConfigurationNotifications = new ArrayList<>();
+    private final List<ToolExecutionNotification> toolExecutionNotifications = new ArrayList<>();
+
+    public SarifLogWriter(Writer writer) {
+        this.jsonWriter = new JsonWriter(writer);
+        this.jsonWriter.setIndent("  ");
+    }
+
+    /**
+     * Writes the start of the log, up to the start of the results.
+     */
+    public void start() throws IOException {
+        final SarifLog header = SarifLog.builder().build();
+        jsonWriter.beginObject();
+        jsonWriter.name("$schema").value(header.getSchema());
+        jsonWriter.name("version").value(header.getVersion());
+        jsonWriter.name("runs").beginArray();
+        jsonWriter.beginObject();
+        jsonWriter.name("results").beginArray();
+    }
+
+    public void add(RuleViolation violation) throws IOException {
+        final List<String> ruleKey = SarifLogBuilder.ruleKey(violation.getRule());
+        Integer ruleIndex = ruleIndices.get(ruleKey);
+        if (ruleIndex == null) {
+            ruleIndex = rules.size();
+            rules.add(SarifLogBuilder.getReportingDescriptor(violation.getRule()));
+            ruleIndices.put(ruleKey, ruleIndex);
+        }
+        gson.toJson(SarifLogBuilder.resultFrom(violation, ruleIndex), Result.class, jsonWriter);
+    }
+
+    public void addRunTimeError(Report.ProcessingError error) {
+        toolExecutionNotifications.add(SarifLogBuilder.toolExecutionNotification(error));
+    }
+
+    public void addConfigurationError(Report.ConfigurationError error) {
+        toolConfigurationNotifications.add(SarifLogBuilder.toolConfigurationNotification(error));
+    }
+
+    /**
+     * Writes the rules and notifications, and the end of the log.
+     */
+    public void end() throws IOException {
+        jsonWriter.endArray(); // results
+        jsonWriter.name("tool");
+        gson.toJson(SarifLogBuilder.tool(rules), Tool.class, jsonWriter);
+        jsonWriter.name("invocations");
+        gson.toJson(SarifLogBuilder.invocations(toolExecutionNotifications, toolConfigurationNotifications),
+                    INVOCATIONS_TYPE, jsonWriter);
+        jsonWriter.endObject(); // run
+        jsonWriter.endArray(); // runs
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+}
@@ -12,6 +12,7 @@ import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.AstInfo;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.Rule;
@@ -68,11 +69,13 @@ public interface ViolationSuppressor {
             if (!xpath.isPresent()) {
                 return null;
             }
+            LanguageProcessor processor = node.getAstInfo().getLanguageProcessor();
             SaxonXPathRuleQuery rq = new SaxonXPathRuleQuery(
                 xpath.get(),
                 XPathVersion.DEFAULT,
                 rule.getPropertiesByPropertyDescriptor(),
-                node.getAstInfo().getLanguageProcessor().services().getXPathHandler(),
+                processor.services().getXPathHandler(),
+                SaxonXPathRuleQuery.getConfiguration(processor),
                 DeprecatedAttrLogger.createForSuppression(rv.getRule())
             );
             if (!rq.evaluate(node).isEmpty()) {
@@ -146,6 +146,17 @@ public final class AssertionUtil {
     }
 
 
+    /**
+     * @throws IllegalArgumentException If {@code value < 0}
+     */
+    public static long requireNonNegative(String name, long value) {
+        if (value < 0) {
+            throw mustBe(name, value, "non-negative");
+        }
+        return value;
+    }
+
+
     /**
      * @throws IndexOutOfBoundsException If {@code value < 0}
      */
@@ -0,0 +1,109 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+class JsonTimingReportRendererTest {
+
+    private static final int ALLOCATED = 10 * 1024 * 1024;
+
+    @Test
+    void testRulesAreSortedByCost() throws IOException {
+        TimeTracker.startGlobalTracking();
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.RULE, "Allocating")) {
+            assertEquals(ALLOCATED, new byte[ALLOCATED].length);
+            busyWait(20);
+        }
+        try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.RULE, "Cheap")) {
+            op.close(42);
+        }
+        TimingReport report = TimeTracker.stopGlobalTracking();
+
+        StringWriter out = new StringWriter();
+        new JsonTimingReportRenderer().render(report, out);
+        JsonObject json = JsonParser.parseString(out.toString()).getAsJsonObject();
+
+        assertTrue(json.get("wallClockMillis").getAsLong() >= 20);
+        JsonArray measurements = json.getAsJsonArray("measurements");
+        long previousSelfTime = Long.MAX_VALUE;
+        for (JsonElement measurement : measurements) {
+            long selfTime = measurement.getAsJsonObject().get("selfTimeNanos").getAsLong();
+            assertTrue(selfTime <= previousSelfTime, "sorted by descending self time");
+            previousSelfTime = selfTime;
+        }
+
+        JsonObject allocating = find(measurements, "Allocating");
+        assertEquals("RULE", allocating.get("category").getAsString());
+        assertEquals(1, allocating.get("calls").getAsInt());
+        assertTrue(allocating.get("totalTimeNanos").getAsLong() >= 20_000_000);
+        if (ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported()) {
+            assertTrue(allocating.get("selfCpuTimeNanos").getAsLong() > 0);
+        }
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            assertTrue(allocating.get("selfAllocatedBytes").getAsLong() >= ALLOCATED);
+        }
+
+        JsonObject cheap = find(measurements, "Cheap");
+        assertEquals(42, cheap.get("counter").getAsLong());
+    }
+
+    @Test
+    void testNestedResourcesAreExcluded() throws IOException {
+        TimeTracker.startGlobalTracking();
+        try (TimedOperation outerOp = TimeTracker.startOperation(TimedOperationCategory.RULE, "Outer")) {
+            try (TimedOperation innerOp = TimeTracker.startOperation(TimedOperationCategory.RULE, "Inner")) {
+                assertEquals(ALLOCATED, new byte[ALLOCATED].length);
+                busyWait(20);
+            }
+        }
+        TimingReport report = TimeTracker.stopGlobalTracking();
+
+        StringWriter out = new StringWriter();
+        new JsonTimingReportRenderer().render(report, out);
+        JsonArray measurements = JsonParser.parseString(out.toString()).getAsJsonObject().getAsJsonArray("measurements");
+
+        JsonObject outer = find(measurements, "Outer");
+        JsonObject inner = find(measurements, "Inner");
+        assertTrue(outer.get("selfTimeNanos").getAsLong() < 20_000_000);
+        if (ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported()) {
+            assertTrue(outer.get("selfCpuTimeNanos").getAsLong() < inner.get("selfCpuTimeNanos").getAsLong());
+        }
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            assertTrue(inner.get("selfAllocatedBytes").getAsLong() >= ALLOCATED);
+            assertTrue(outer.get("selfAllocatedBytes").getAsLong() < ALLOCATED);
+        }
+    }
+
+    private static JsonObject find(JsonArray measurements, String label) {
+        for (JsonElement measurement : measurements) {
+            JsonObject object = measurement.getAsJsonObject();
+            if (object.has("label") && label.equals(object.get("label").getAsString())) {
+                return object;
+            }
+        }
+        return fail("No measurement for " + label);
+    }
+
+    private static void busyWait(long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end) {
+            Thread.yield();
+        }
+    }
+}
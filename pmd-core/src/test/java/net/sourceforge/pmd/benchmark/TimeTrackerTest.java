@@ -0,0 +1,49 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.benchmark.TimeTracker.TimedResult;
+
+class TimeTrackerTest {
+
+    private static final long RECORDED_NANOS = 10_000_000_000L;
+
+    @Test
+    void testRecordedOperationIsNestedInCurrentOne() {
+        TimeTracker.startGlobalTracking();
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING)) {
+            TimeTracker.recordOperation(TimedOperationCategory.RULE, "Interleaved", System.nanoTime(), RECORDED_NANOS, 3);
+            TimeTracker.recordOperation(TimedOperationCategory.RULE, "Interleaved", System.nanoTime(), RECORDED_NANOS, 4);
+        }
+        TimingReport report = TimeTracker.stopGlobalTracking();
+
+        TimedResult rule = report.getLabeledMeasurements(TimedOperationCategory.RULE).get("Interleaved");
+        assertEquals(2, rule.callCount.get());
+        assertEquals(7, rule.extraDataCounter.get());
+        assertEquals(2 * RECORDED_NANOS, rule.totalTimeNanos.get());
+        assertEquals(2 * RECORDED_NANOS, rule.selfTimeNanos.get());
+
+        // the recorded time is more than the time of the file, its self time is negative
+        TimedResult file = report.getUnlabeledMeasurements(TimedOperationCategory.FILE_PROCESSING);
+        assertTrue(file.selfTimeNanos.get() < 0);
+    }
+
+    @Test
+    void testNothingIsRecordedWhenNotTracking() {
+        assertFalse(TimeTracker.isTracking());
+        TimeTracker.recordOperation(TimedOperationCategory.RULE, "Ignored", System.nanoTime(), RECORDED_NANOS, 0);
+
+        TimeTracker.startGlobalTracking();
+        assertTrue(TimeTracker.isTracking());
+        TimingReport report = TimeTracker.stopGlobalTracking();
+        assertTrue(report.getLabeledMeasurements(TimedOperationCategory.RULE).isEmpty());
+    }
+}
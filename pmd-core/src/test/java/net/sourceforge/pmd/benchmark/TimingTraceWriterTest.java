@@ -0,0 +1,86 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.document.FileId;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+class TimingTraceWriterTest {
+
+    @Test
+    void testOperationsAreWrittenWithTheirFile() throws IOException {
+        FileId file = FileId.fromPathLikeString("src/Foo.java");
+        StringWriter out = new StringWriter();
+        try (TimingTraceWriter trace = new TimingTraceWriter(out)) {
+            TimeTracker.startGlobalTracking(trace);
+            try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.COLLECT_FILES)) {
+                // not within a file
+            }
+            try (TimedOperation ignored = TimeTracker.startFileOperation(file)) {
+                TimeTracker.bench("Symbol resolution", () -> { });
+                try (TimedOperation rule = TimeTracker.startOperation(TimedOperationCategory.RULE, "MyRule")) {
+                    rule.close(3);
+                }
+            }
+            TimeTracker.stopGlobalTracking();
+        }
+
+        String[] lines = out.toString().split("\n");
+        // one event per line, between the brackets of the array
+        assertEquals("[", lines[0]);
+        assertEquals("]", lines[lines.length - 1]);
+        assertEquals(lines.length - 2, JsonParser.parseString(out.toString()).getAsJsonArray().size());
+
+        JsonArray events = JsonParser.parseString(out.toString()).getAsJsonArray();
+        JsonObject threadName = events.get(0).getAsJsonObject();
+        assertEquals("M", threadName.get("ph").getAsString());
+        assertEquals(Thread.currentThread().getName(), threadName.getAsJsonObject("args").get("name").getAsString());
+
+        assertEquals(5, events.size());
+        JsonObject collect = events.get(1).getAsJsonObject();
+        assertEquals("Collect Files", collect.get("name").getAsString());
+        assertFalse(collect.has("args"));
+
+        JsonObject symbols = events.get(2).getAsJsonObject();
+        assertEquals("Symbol resolution", symbols.get("name").getAsString());
+        assertEquals("Language Specific Processing", symbols.get("cat").getAsString());
+        assertEquals(file.getAbsolutePath(), symbols.getAsJsonObject("args").get("file").getAsString());
+
+        JsonObject rule = events.get(3).getAsJsonObject();
+        assertEquals("MyRule", rule.get("name").getAsString());
+        assertEquals("X", rule.get("ph").getAsString());
+        assertEquals(3, rule.getAsJsonObject("args").get("count").getAsInt());
+        assertEquals(file.getAbsolutePath(), rule.getAsJsonObject("args").get("file").getAsString());
+
+        JsonObject fileProcessing = events.get(4).getAsJsonObject();
+        assertEquals("File Processing", fileProcessing.get("name").getAsString());
+        assertEquals(file.getAbsolutePath(), fileProcessing.getAsJsonObject("args").get("file").getAsString());
+        // the rule ran while the file was processed
+        long start = fileProcessing.get("ts").getAsLong();
+        long end = start + fileProcessing.get("dur").getAsLong();
+        assertTrue(rule.get("ts").getAsLong() >= start);
+        // the durations are truncated to microseconds
+        assertTrue(rule.get("ts").getAsLong() + rule.get("dur").getAsLong() <= end + 1);
+    }
+
+    @Test
+    void testEmptyTrace() throws IOException {
+        StringWriter out = new StringWriter();
+        new TimingTraceWriter(out).close();
+        assertEquals(0, JsonParser.parseString(out.toString()).getAsJsonArray().size());
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.InternalApiBridge;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+class ContentAddressedAnalysisCacheTest {
+
+    @TempDir
+    private Path tempFolder;
+
+    private final MockRule rule = new MockRule("TheRule", "desc", "msg", "rulesetname");
+    private final RuleSets ruleSets = new RuleSets(RuleSet.forSingleRule(rule));
+
+    private ContentAddressedAnalysisCache newCache() {
+        final ContentAddressedAnalysisCache cache = new ContentAddressedAnalysisCache(new DirectoryAnalysisCacheStore(tempFolder));
+        cache.checkValidity(ruleSets, mock(ClassLoader.class), Collections.emptySet());
+        return cache;
+    }
+
+    private TextDocument newDocument(String path, String text) {
+        return TextDocument.readOnlyString(text, FileId.fromPathLikeString(path), PmdCoreTestUtils.dummyVersion());
+    }
+
+    private void analyse(ContentAddressedAnalysisCache cache, TextDocument document, int violationLine) throws Exception {
+        assertFalse(cache.isUpToDate(document));
+        try (FileAnalysisListener listener = cache.startFileAnalysis(document)) {
+            listener.onRuleViolation(InternalApiBridge.createRuleViolation(
+                rule, FileLocation.range(document.getFileId(), TextRange2d.range2d(violationLine, 1, violationLine, 5)),
+                "message", Collections.emptyMap()));
+        }
+    }
+
+    @Test
+    void testResultsAreSharedAcrossDirectories() throws Exception {
+        analyse(newCache(), newDocument("/checkout1/src/Foo.dummy", "some text"), 3);
+
+        final ContentAddressedAnalysisCache cache = newCache();
+        final TextDocument otherCheckout = newDocument("/checkout2/src/Foo.dummy", "some text");
+        assertTrue(cache.isUpToDate(otherCheckout));
+
+        final List<RuleViolation> violations = cache.getCachedViolations(otherCheckout);
+        assertEquals(1, violations.size());
+        assertEquals(otherCheckout.getFileId(), violations.get(0).getFileId());
+        assertEquals(3, violations.get(0).getBeginLine());
+        assertEquals("TheRule", violations.get(0).getRule().getName());
+    }
+
+    @Test
+    void testChangedTextIsNotUpToDate() throws Exception {
+        analyse(newCache(), newDocument("/src/Foo.dummy", "some text"), 3);
+
+        final ContentAddressedAnalysisCache cache = newCache();
+        assertFalse(cache.isUpToDate(newDocument("/src/Foo.dummy", "some other text")));
+        assertFalse(cache.isUpToDate(newDocument("/src/Bar.dummy", "some text")), "file name is part of the key");
+    }
+
+    @Test
+    void testChangedRuleIsNotUpToDate() throws Exception {
+        analyse(newCache(), newDocument("/src/Foo.dummy", "some text"), 3);
+
+        rule.setProperty(MockRule.PROP, 42);
+        assertFalse(newCache().isUpToDate(newDocument("/src/Foo.dummy", "some text")));
+    }
+
+    @Test
+    void testFailedAnalysisIsNotStored() throws Exception {
+        final ContentAddressedAnalysisCache cache = newCache();
+        final TextDocument document = newDocument("/src/Foo.dummy", "some text");
+        assertFalse(cache.isUpToDate(document));
+        try (FileAnalysisListener listener = cache.startFileAnalysis(document)) {
+            listener.onError(new Report.ProcessingError(new RuntimeException("error"), document.getFileId()));
+        }
+
+        assertFalse(newCache().isUpToDate(document));
+    }
+
+    @Test
+    void testStoreLoadsWhatWasStored() throws Exception {
+        final DirectoryAnalysisCacheStore store = new DirectoryAnalysisCacheStore(tempFolder.resolve("store"));
+        assertNull(store.load("0123abcd"));
+
+        store.store("0123abcd", "data".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals("data".getBytes(StandardCharsets.UTF_8), store.load("0123abcd"));
+    }
+
+    @Test
+    void testConcurrentStoresOfSameKey() throws Exception {
+        final DirectoryAnalysisCacheStore store = new DirectoryAnalysisCacheStore(tempFolder);
+        final byte[] data = new byte[100_000];
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    store.store("abcdef", data);
+                    // readers never see a partial entry
+                    assertArrayEquals(data, store.load("abcdef"));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // no temporary file is left behind
+        assertEquals(1, tempFolder.resolve("ab").toFile().list().length);
+    }
+}
@@ -10,12 +10,14 @@ import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -25,8 +27,12 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -35,6 +41,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.PmdCoreTestUtils;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
@@ -136,6 +143,8 @@ class FileAnalysisCacheTest {
         reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
         assertTrue(reloadedCache.isUpToDate(sourceFile),
                 "Cache believes unmodified file with violations is not up to date");
+        // the record is decoded once per file
+        assertSame(reloadedCache.getCachedResult(sourceFile), reloadedCache.getCachedResult(sourceFile));
 
         final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
         assertEquals(1, cachedViolations.size(), "Cached rule violations count mismatch");
@@ -147,6 +156,40 @@ class FileAnalysisCacheTest {
         assertEquals(textLocation.getEndColumn(), cachedViolation.getEndColumn());
     }
 
+    @Test
+    void testCachedResultIsReleasedWhenFileAnalysisIsFinished() throws Exception {
+        final Rule rule = newRule("Rule");
+        final RuleSets rs = mock(RuleSets.class);
+        when(rs.getRuleChecksums()).thenReturn(Collections.singletonMap(rule, 1L));
+        when(rs.getAllRules()).thenAnswer(invocation -> setOf(rule));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            listener.onRuleViolation(newViolation(sourceFile.getFileId(), rule));
+        }
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        final FileAnalysisListener listener = reloadedCache.startFileAnalysis(sourceFile);
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+        final AnalysisResult result = reloadedCache.getCachedResult(sourceFile);
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFile).size());
+
+        listener.close();
+        assertNotSame(result, reloadedCache.getCachedResult(sourceFile));
+        // the released violations are decoded again if needed
+        assertEquals(1, result.getViolations().size());
+
+        reloadedCache.persist();
+        final FileAnalysisCache cacheAfterRelease = new FileAnalysisCache(newCacheFile);
+        cacheAfterRelease.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(cacheAfterRelease.isUpToDate(sourceFile));
+        assertEquals(1, cacheAfterRelease.getCachedViolations(sourceFile).size());
+    }
+
     @Test
     void testStorePersistsFilesWithViolationsAndProcessingErrors() throws IOException {
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
@@ -263,12 +306,84 @@ class FileAnalysisCacheTest {
         setupCacheWithFiles(newCacheFile, rs, cl);
 
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
-        when(rs.getChecksum()).thenReturn(1L);
+        final Rule newRule = newRule("NewRule");
+        when(rs.getRuleChecksums()).thenReturn(Collections.singletonMap(newRule, 1L));
         reloadedCache.checkValidity(rs, cl, Collections.emptySet());
         assertFalse(reloadedCache.isUpToDate(sourceFile),
                 "Cache believes unmodified file is up to date after ruleset changed");
     }
 
+    @Test
+    void testRuleChangeOnlyInvalidatesThatRule() throws Exception {
+        final Rule unchangedRule = newRule("UnchangedRule");
+        final Rule changedRule = newRule("ChangedRule");
+        final RuleSets rs = mock(RuleSets.class);
+        final Map<Rule, Long> checksums = new LinkedHashMap<>();
+        checksums.put(unchangedRule, 1L);
+        checksums.put(changedRule, 2L);
+        when(rs.getRuleChecksums()).thenReturn(checksums);
+        when(rs.getAllRules()).thenAnswer(invocation -> checksums.keySet());
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            listener.onRuleViolation(newViolation(sourceFile.getFileId(), unchangedRule));
+            listener.onRuleViolation(newViolation(sourceFile.getFileId(), changedRule));
+        }
+        cache.persist();
+
+        checksums.put(changedRule, 3L);
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertFalse(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is up to date after a rule changed");
+
+        final Predicate<Rule> rulesToRun = reloadedCache.getRulesToRun(sourceFile);
+        assertFalse(rulesToRun.test(unchangedRule));
+        assertTrue(rulesToRun.test(changedRule));
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size());
+        assertEquals("UnchangedRule", cachedViolations.get(0).getRule().getName());
+    }
+
+    @Test
+    void testRuleRemovalKeepsCacheValid() throws Exception {
+        final Rule keptRule = newRule("KeptRule");
+        final Rule removedRule = newRule("RemovedRule");
+        final RuleSets rs = mock(RuleSets.class);
+        final Map<Rule, Long> checksums = new LinkedHashMap<>();
+        checksums.put(keptRule, 1L);
+        checksums.put(removedRule, 2L);
+        when(rs.getRuleChecksums()).thenReturn(checksums);
+        when(rs.getAllRules()).thenAnswer(invocation -> checksums.keySet());
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            listener.onRuleViolation(newViolation(sourceFile.getFileId(), keptRule));
+            listener.onRuleViolation(newViolation(sourceFile.getFileId(), removedRule));
+        }
+        cache.persist();
+
+        checksums.remove(removedRule);
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is not up to date after a rule was removed");
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFile).size());
+        reloadedCache.persist();
+
+        // the violations of the removed rule are dropped from the cache file
+        final FileAnalysisCache cacheWithRemovedRule = new FileAnalysisCache(newCacheFile);
+        checksums.put(removedRule, 2L);
+        cacheWithRemovedRule.checkValidity(rs, mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertFalse(cacheWithRemovedRule.isUpToDate(sourceFile));
+        assertEquals(1, cacheWithRemovedRule.getCachedViolations(sourceFile).size());
+    }
+
     @Test
     void testAuxClasspathNonExistingAuxclasspathEntriesIgnored() throws MalformedURLException, IOException {
         final RuleSets rs = mock(RuleSets.class);
@@ -484,6 +599,97 @@ class FileAnalysisCacheTest {
                 "Cache believes a known, changed file is up to date");
     }
 
+    @Test
+    void testUnchangedRecordIsCopiedWithItsViolations() throws Exception {
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            listener.onRuleViolation(newViolation(sourceFile.getFileId()));
+        }
+        cache.persist();
+
+        // the file is up to date, its violations are not decoded before the cache is persisted again
+        final FileAnalysisCache secondRun = new FileAnalysisCache(newCacheFile);
+        secondRun.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(secondRun.isUpToDate(sourceFile));
+        secondRun.persist();
+
+        final FileAnalysisCache thirdRun = new FileAnalysisCache(newCacheFile);
+        thirdRun.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(thirdRun.isUpToDate(sourceFile));
+        assertEquals(1, thirdRun.getCachedViolations(sourceFile).size());
+    }
+
+    @Test
+    void testRecordsAreFoundAmongManyFiles() throws Exception {
+        final List<TextDocument> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add(TextDocument.readOnlyString("text " + i, FileId.fromPathLikeString("dir/File" + i + ".java"), dummyVersion));
+        }
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), Collections.emptySet());
+        for (int i = 0; i < documents.size(); i++) {
+            final TextDocument doc = documents.get(i);
+            cache.isUpToDate(doc);
+            try (FileAnalysisListener listener = cache.startFileAnalysis(doc)) {
+                for (int j = 0; j < i % 3; j++) {
+                    listener.onRuleViolation(newViolation(doc.getFileId()));
+                }
+            }
+        }
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), Collections.emptySet());
+        for (int i = 0; i < documents.size(); i++) {
+            final TextDocument doc = documents.get(i);
+            assertTrue(reloadedCache.isUpToDate(doc), "File " + i + " should be up to date");
+            assertEquals(i % 3, reloadedCache.getCachedViolations(doc).size());
+        }
+        assertFalse(reloadedCache.isUpToDate(sourceFile));
+    }
+
+    @Test
+    void testCacheInUnknownFormatIsIgnored() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(newCacheFile.toPath()))) {
+            // the format of previous PMD versions
+            out.writeUTF(PMDVersion.VERSION);
+            out.writeLong(0);
+            out.writeLong(0);
+            out.writeLong(0);
+        }
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertFalse(cache.isUpToDate(sourceFile));
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+    }
+
+    private RuleViolation newViolation(FileId fileId) {
+        final Rule rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(mock(Language.class));
+        return newViolation(fileId, rule);
+    }
+
+    private RuleViolation newViolation(FileId fileId, Rule rule) {
+        return InternalApiBridge.createRuleViolation(rule, FileLocation.range(fileId, TextRange2d.range2d(1, 2, 3, 4)),
+                                                     "message", Collections.emptyMap());
+    }
+
+    private Rule newRule(String name) {
+        final Rule rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(dummyVersion.getLanguage());
+        when(rule.getRuleClass()).thenReturn("net.sourceforge.pmd.DummyRule");
+        when(rule.getName()).thenReturn(name);
+        return rule;
+    }
+
     private void setupCacheWithFiles(final File cacheFile,
                                      final RuleSets ruleSets,
                                      final ClassLoader classLoader) throws IOException {
@@ -14,11 +14,13 @@ import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -200,6 +202,34 @@ class CpdAnalysisTest {
         }
     }
 
+    @Test
+    void testParallelTokenizationProducesSameReport() throws Exception {
+        String sequential = renderReportWithThreads(1);
+        String parallel = renderReportWithThreads(4);
+        assertThat(sequential, containsString("dup1.txt"));
+        assertEquals(sequential, parallel);
+    }
+
+    private String renderReportWithThreads(int threads) throws IOException {
+        config.setReporter(mock(PmdReporter.class));
+        config.setThreads(threads);
+        StringWriter writer = new StringWriter();
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            assertTrue(cpd.files().addFile(Paths.get(BASE_TEST_RESOURCE_PATH, "dup1.txt")));
+            assertTrue(cpd.files().addFile(Paths.get(BASE_TEST_RESOURCE_PATH, "dup2.txt")));
+            assertTrue(cpd.files().addFile(Paths.get(BASE_TEST_RESOURCE_PATH, "real-file.txt")));
+            cpd.performAnalysis(report -> {
+                try {
+                    new XMLRenderer().render(report, writer);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            });
+        }
+        // the timestamp is the only thing that may differ
+        return writer.toString().replaceAll("timestamp=\"[^\"]*\"", "");
+    }
+
     @Test
     void testNoSkipLexicalErrors() throws IOException {
         PmdReporter reporter = mock(PmdReporter.class);
@@ -261,6 +291,47 @@ class CpdAnalysisTest {
         verifyNoMoreInteractions(reporter);
     }
 
+    @Test
+    void testSkipLexicalErrorsInParallel() throws IOException {
+        AtomicReference<CPDReport> report = new AtomicReference<>();
+        PmdReporter reporter = mock(PmdReporter.class);
+        config.setReporter(reporter);
+        config.setThreads(2);
+
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            assertTrue(cpd.files().addSourceFile(FileId.fromPathLikeString("foo.dummy"), DummyLanguageModule.CPD_THROW_LEX_EXCEPTION));
+            assertTrue(cpd.files().addSourceFile(FileId.fromPathLikeString("foo2.dummy"), DummyLanguageModule.CPD_THROW_MALFORMED_SOURCE_EXCEPTION));
+            cpd.performAnalysis(report::set);
+        }
+
+        assertNotNull(report.get(), "CPD aborted early without producing a report");
+        List<Report.ProcessingError> processingErrors = report.get().getProcessingErrors();
+        assertEquals(2, processingErrors.size());
+        assertEquals("foo.dummy", processingErrors.get(0).getFileId().getFileName());
+        assertEquals("foo2.dummy", processingErrors.get(1).getFileId().getFileName());
+
+        verify(reporter).errorEx(eq("Skipping file"), any(LexException.class));
+        verify(reporter).errorEx(eq("Skipping file"), any(MalformedSourceException.class));
+        verifyNoMoreInteractions(reporter);
+    }
+
+    @Test
+    void testInterruptionIsPreservedInParallel() throws IOException {
+        PmdReporter reporter = mock(PmdReporter.class);
+        config.setReporter(reporter);
+        config.setThreads(2);
+
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            assertTrue(cpd.files().addSourceFile(FileId.fromPathLikeString("foo.dummy"), "abc"));
+            Thread.currentThread().interrupt();
+            cpd.performAnalysis();
+        } finally {
+            // clears the flag for the next tests
+            assertTrue(Thread.interrupted(), "The interruption should not be swallowed");
+        }
+        verify(reporter, never()).errorEx(eq("Exception while running CPD"), any(InterruptedException.class));
+    }
+
     @Test
     void duplicatedFilesShouldBeSkipped() throws IOException {
         String filename = "file1.dummy";
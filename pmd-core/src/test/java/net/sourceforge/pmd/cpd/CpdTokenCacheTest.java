@@ -0,0 +1,186 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+class CpdTokenCacheTest {
+
+    private static final String BASE_TEST_RESOURCE_PATH = "src/test/resources/net/sourceforge/pmd/cpd/files/";
+
+    @TempDir
+    private Path tempDir;
+
+    private Path cacheFile;
+
+    @BeforeEach
+    void setup() {
+        cacheFile = tempDir.resolve("cpd.cache");
+    }
+
+    private CPDConfiguration newConfig(int threads) {
+        CPDConfiguration config = new CPDConfiguration();
+        config.setOnlyRecognizeLanguage(DummyLanguageModule.getInstance());
+        config.setMinimumTileSize(10);
+        config.setReporter(mock(PmdReporter.class));
+        config.setThreads(threads);
+        return config;
+    }
+
+    private String renderReport(CPDConfiguration config, Path... files) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            for (Path file : files) {
+                assertTrue(cpd.files().addFile(file));
+            }
+            cpd.performAnalysis(report -> {
+                try {
+                    new XMLRenderer().render(report, writer);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            });
+        }
+        // the timestamp is the only thing that may differ
+        return writer.toString().replaceAll("timestamp=\"[^\"]*\"", "");
+    }
+
+    private void testSameReportWithCache(int threads) throws IOException {
+        Path dup1 = Paths.get(BASE_TEST_RESOURCE_PATH, "dup1.txt");
+        Path dup2 = Paths.get(BASE_TEST_RESOURCE_PATH, "dup2.txt");
+        Path realFile = Paths.get(BASE_TEST_RESOURCE_PATH, "real-file.txt");
+
+        String expected = renderReport(newConfig(threads), dup1, dup2, realFile);
+        assertThat(expected, containsString("dup1.txt"));
+
+        CPDConfiguration config = newConfig(threads);
+        config.setCacheLocation(cacheFile);
+        assertEquals(expected, renderReport(config, dup1, dup2, realFile), "cold cache");
+        assertTrue(Files.isRegularFile(cacheFile));
+
+        config = newConfig(threads);
+        config.setCacheLocation(cacheFile);
+        assertEquals(expected, renderReport(config, dup1, dup2, realFile), "warm cache");
+    }
+
+    @Test
+    void testSameReportWithCache() throws IOException {
+        testSameReportWithCache(1);
+    }
+
+    @Test
+    void testSameReportWithCacheInParallel() throws IOException {
+        testSameReportWithCache(4);
+    }
+
+    @Test
+    void testChangedFileIsNotUpToDate() throws IOException {
+        Path file = tempDir.resolve("file.dummy");
+        Files.write(file, "a b c d e".getBytes(StandardCharsets.UTF_8));
+
+        CPDConfiguration config = newConfig(1);
+        config.setCacheLocation(cacheFile);
+        renderReport(config, file);
+        assertTrue(isUpToDate(config, file));
+
+        Files.write(file, "a b c d f".getBytes(StandardCharsets.UTF_8));
+        assertFalse(isUpToDate(config, file));
+    }
+
+    @Test
+    void testCacheIsInvalidatedWhenLanguagePropertiesChange() throws IOException {
+        Path file = Paths.get(BASE_TEST_RESOURCE_PATH, "dup1.txt");
+
+        CPDConfiguration config = newConfig(1);
+        config.setCacheLocation(cacheFile);
+        renderReport(config, file);
+        assertTrue(isUpToDate(config, file));
+
+        CPDConfiguration ignoreLiterals = newConfig(1);
+        ignoreLiterals.setIgnoreLiterals(true);
+        // sets the language properties
+        CpdAnalysis.create(ignoreLiterals).close();
+        assertFalse(isUpToDate(ignoreLiterals, file));
+    }
+
+    @Test
+    void testCacheIsInvalidatedWhenLanguageVersionChanges() throws IOException {
+        Path file = Paths.get(BASE_TEST_RESOURCE_PATH, "dup1.txt");
+
+        CPDConfiguration config = newConfig(1);
+        config.setCacheLocation(cacheFile);
+        renderReport(config, file);
+        assertTrue(isUpToDate(config, file));
+
+        LanguageVersion otherVersion = DummyLanguageModule.getInstance().getVersion("1.5");
+        assertFalse(isUpToDate(config, file, otherVersion));
+    }
+
+    @Test
+    void testCorruptCacheIsNotUsed() throws IOException {
+        Path dup1 = Paths.get(BASE_TEST_RESOURCE_PATH, "dup1.txt");
+        Path dup2 = Paths.get(BASE_TEST_RESOURCE_PATH, "dup2.txt");
+
+        CPDConfiguration config = newConfig(1);
+        config.setCacheLocation(cacheFile);
+        String expected = renderReport(config, dup1, dup2);
+        byte[] bytes = Files.readAllBytes(cacheFile);
+
+        // every length of the file replaced by a huge or negative one
+        for (int i = 0; i + Integer.BYTES <= bytes.length; i++) {
+            for (int length : new int[] {Integer.MAX_VALUE, -1}) {
+                byte[] corrupt = bytes.clone();
+                ByteBuffer.wrap(corrupt).putInt(i, length);
+                Files.write(cacheFile, corrupt);
+                new CpdTokenCache(cacheFile, config);
+            }
+        }
+
+        // truncated
+        Files.write(cacheFile, Arrays.copyOf(bytes, bytes.length / 2));
+        assertFalse(isUpToDate(config, dup1));
+
+        config = newConfig(1);
+        config.setCacheLocation(cacheFile);
+        assertEquals(expected, renderReport(config, dup1, dup2));
+    }
+
+    private boolean isUpToDate(CPDConfiguration config, Path file) throws IOException {
+        return isUpToDate(config, file, DummyLanguageModule.getInstance().getDefaultVersion());
+    }
+
+    private boolean isUpToDate(CPDConfiguration config, Path file, LanguageVersion languageVersion) throws IOException {
+        CpdTokenCache cache = new CpdTokenCache(cacheFile, config);
+        try (TextFile textFile = TextFile.forPath(file, StandardCharsets.UTF_8, languageVersion);
+             TextDocument document = TextDocument.create(textFile)) {
+            return cache.isUpToDate(document);
+        }
+    }
+}
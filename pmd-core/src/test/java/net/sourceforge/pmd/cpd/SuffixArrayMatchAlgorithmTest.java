@@ -0,0 +1,186 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+class SuffixArrayMatchAlgorithmTest {
+
+    private static final String LINE_1 = "public class Foo { ";
+    private static final String LINE_2 = " public void bar() {";
+    private static final String LINE_3 = "  System.out.println(\"hello\");";
+    private static final String LINE_4 = "  System.out.println(\"hello\");";
+    private static final String LINE_5 = "  int i = 5";
+    private static final String LINE_6 = "  System.out.print(\"hello\");";
+    private static final String LINE_7 = " }";
+    private static final String LINE_8 = "}";
+
+    private static String getSampleCode() {
+        return LINE_1 + "\n" + LINE_2 + "\n" + LINE_3 + "\n" + LINE_4 + "\n" + LINE_5 + "\n" + LINE_6
+                + "\n" + LINE_7 + "\n" + LINE_8;
+    }
+
+    private static String getMultipleRepetitionsCode() {
+        return "var x = [\n"
+                + "  1, 1, 1, 1, 1, 1, 1, 1,\n"
+                + "  0, 0, 0, 0, 0, 0, 0, 0,\n"
+                + "  2, 2, 2, 2, 2, 2, 2, 2,\n"
+                + "  0, 0, 0, 0, 0, 0, 0, 0,\n"
+                + "  3, 3, 3, 3, 3, 3, 3, 3,\n"
+                + "  0, 0, 0, 0, 0, 0, 0, 0,\n"
+                + "  4, 4, 4, 4, 4, 4, 4, 4\n"
+                + "];";
+    }
+
+    @Test
+    void testSimple() throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+        FileId fileName = FileId.fromPathLikeString("Foo.dummy");
+        TextFile textFile = TextFile.forCharSeq(getSampleCode(), fileName, dummy.getDefaultVersion());
+        SourceManager sourceManager = new SourceManager(listOf(textFile));
+        Tokens tokens = new Tokens();
+        TextDocument sourceCode = sourceManager.get(textFile);
+        CpdLexer.tokenize(cpdLexer, sourceCode, tokens);
+        assertEquals(44, tokens.size());
+
+        SuffixArrayMatchAlgorithm matchAlgorithm = new SuffixArrayMatchAlgorithm(tokens, 5);
+        List<Match> matches = matchAlgorithm.findMatches(new CPDNullListener(), sourceManager);
+        assertEquals(1, matches.size());
+        Match match = matches.get(0);
+
+        Iterator<Mark> marks = match.iterator();
+        Mark mark1 = marks.next();
+        Mark mark2 = marks.next();
+        assertFalse(marks.hasNext());
+
+        assertEquals(3, mark1.getLocation().getStartLine());
+        assertEquals(fileName, mark1.getLocation().getFileId());
+        assertEquals(LINE_3 + "\n", sourceManager.getSlice(mark1).toString());
+
+        assertEquals(4, mark2.getLocation().getStartLine());
+        assertEquals(fileName, mark2.getLocation().getFileId());
+        assertEquals(LINE_4 + "\n", sourceManager.getSlice(mark2).toString());
+    }
+
+    @Test
+    void testMultipleMatches() throws IOException {
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+        FileId fileName = FileId.fromPathLikeString("Foo.dummy");
+        TextFile textFile = TextFile.forCharSeq(getMultipleRepetitionsCode(), fileName, dummy.getDefaultVersion());
+        SourceManager sourceManager = new SourceManager(listOf(textFile));
+        Tokens tokens = new Tokens();
+        TextDocument sourceCode = sourceManager.get(textFile);
+        CpdLexer.tokenize(cpdLexer, sourceCode, tokens);
+
+        SuffixArrayMatchAlgorithm matchAlgorithm = new SuffixArrayMatchAlgorithm(tokens, 15);
+        List<Match> matches = matchAlgorithm.findMatches(new CPDNullListener(), sourceManager);
+        assertEquals(1, matches.size());
+        Match match = matches.get(0);
+
+        Iterator<Mark> marks = match.iterator();
+        Mark mark1 = marks.next();
+        Mark mark2 = marks.next();
+        assertTrue(marks.hasNext());
+        Mark mark3 = marks.next();
+
+        assertEquals(2, mark1.getLocation().getStartLine());
+        assertEquals(fileName, mark1.getLocation().getFileId());
+
+        assertEquals(4, mark2.getLocation().getStartLine());
+        assertEquals(fileName, mark2.getLocation().getFileId());
+
+        assertEquals(6, mark3.getLocation().getStartLine());
+        assertEquals(fileName, mark3.getLocation().getFileId());
+    }
+
+    @Test
+    void testSameMatchesAsHashOnCpdCorpora() throws Exception {
+        Path corpus = Paths.get("src/test/resources/net/sourceforge/pmd/cpd/files/");
+        DummyLanguageModule dummy = DummyLanguageModule.getInstance();
+        List<TextFile> files = listOf(
+            TextFile.forPath(corpus.resolve("dup1.txt"), StandardCharsets.UTF_8, dummy.getDefaultVersion()),
+            TextFile.forPath(corpus.resolve("dup2.txt"), StandardCharsets.UTF_8, dummy.getDefaultVersion()),
+            TextFile.forCharSeq(getSampleCode(), FileId.fromPathLikeString("Foo.dummy"), dummy.getDefaultVersion()),
+            TextFile.forCharSeq(getMultipleRepetitionsCode(), FileId.fromPathLikeString("Bar.dummy"), dummy.getDefaultVersion())
+        );
+        try (SourceManager sourceManager = new SourceManager(files)) {
+            Tokens tokens = new Tokens();
+            CpdLexer cpdLexer = dummy.createCpdLexer(dummy.newPropertyBundle());
+            for (TextFile file : files) {
+                CpdLexer.tokenize(cpdLexer, sourceManager.get(file), tokens);
+            }
+
+            for (int minTileSize = 2; minTileSize <= 40; minTileSize++) {
+                assertSameMatchesAsHash(tokens, minTileSize);
+            }
+        }
+    }
+
+    @Test
+    void testSameMatchesAsHashOnRepetitiveTokens() {
+        Random random = new Random(42);
+        Tokens tokens = new Tokens();
+        FileId[] files = { CpdTestUtils.FOO_FILE_ID, CpdTestUtils.BAR_FILE_ID };
+        for (FileId file : files) {
+            TextDocument doc = TextDocument.readOnlyString("", file, DummyLanguageModule.getInstance().getDefaultVersion());
+            try (TokenFactory tf = Tokens.factoryForFile(doc, tokens)) {
+                for (int i = 0; i < 3000; i++) {
+                    // few distinct images, and a repeated block, so that there are many overlapping duplicates
+                    String image = i % 500 < 100 ? "block" + i % 100 : "t" + random.nextInt(4);
+                    tf.recordToken(image, i + 1, 1, i + 1, 2);
+                }
+            }
+        }
+
+        for (int minTileSize : new int[] { 3, 8, 20, 100 }) {
+            assertSameMatchesAsHash(tokens, minTileSize);
+        }
+    }
+
+    private static void assertSameMatchesAsHash(Tokens tokens, int minTileSize) {
+        List<Match> hash = new MatchAlgorithm(tokens, minTileSize).findMatches(new CPDNullListener(), null);
+        List<Match> suffixArray = new SuffixArrayMatchAlgorithm(tokens, minTileSize).findMatches(new CPDNullListener(), null);
+        assertFalse(hash.isEmpty(), "No duplicates of " + minTileSize + " tokens");
+        assertEquals(describe(hash), describe(suffixArray), "Matches of " + minTileSize + " tokens");
+    }
+
+    /** The number of tokens of each match, and the begin indices of its marks. */
+    private static List<Map.Entry<Integer, Set<Integer>>> describe(List<Match> matches) {
+        return matches.stream().map(SuffixArrayMatchAlgorithmTest::describe).collect(Collectors.toList());
+    }
+
+    private static Map.Entry<Integer, Set<Integer>> describe(Match match) {
+        Set<Integer> marks = new TreeSet<>();
+        for (Mark mark : match) {
+            marks.add(mark.getBeginTokenIndex());
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(match.getTokenCount(), marks);
+    }
+}
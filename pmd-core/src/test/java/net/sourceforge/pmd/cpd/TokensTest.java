@@ -0,0 +1,71 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static net.sourceforge.pmd.cpd.CpdTestUtils.BAR_FILE_ID;
+import static net.sourceforge.pmd.cpd.CpdTestUtils.FOO_FILE_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TokensTest {
+
+    @Test
+    void testTokensOfSeveralFiles() {
+        Tokens tokens = new Tokens();
+        for (int i = 0; i < 2000; i++) {
+            tokens.addToken("t" + i % 10, i < 1500 ? FOO_FILE_ID : BAR_FILE_ID, i + 1, 1, i + 1, 3);
+        }
+        assertEquals(2000, tokens.size());
+        assertEquals(FOO_FILE_ID, tokens.getToken(0).getFileId());
+        assertEquals(FOO_FILE_ID, tokens.getToken(1499).getFileId());
+        assertEquals(BAR_FILE_ID, tokens.getToken(1500).getFileId());
+        assertEquals(BAR_FILE_ID, tokens.getToken(1999).getFileId());
+
+        TokenEntry token = tokens.getTokens().get(1234);
+        assertEquals(1234, token.getIndex());
+        assertEquals(1235, token.getBeginLine());
+        assertEquals("t4", token.getImage(tokens));
+        assertEquals(token, tokens.getToken(1234));
+    }
+
+    @Test
+    void testRestoreSavePoint() {
+        Tokens tokens = new Tokens();
+        tokens.addToken("a", FOO_FILE_ID, 1, 1, 1, 2);
+        Tokens.State state = tokens.savePoint();
+        tokens.addToken("b", FOO_FILE_ID, 1, 3, 1, 4);
+        tokens.addToken("c", BAR_FILE_ID, 1, 1, 1, 2);
+        state.restore(tokens);
+
+        assertEquals(1, tokens.size());
+        tokens.addToken("d", BAR_FILE_ID, 1, 1, 1, 2);
+        assertEquals(FOO_FILE_ID, tokens.getToken(0).getFileId());
+        assertEquals(BAR_FILE_ID, tokens.getToken(1).getFileId());
+        assertEquals("d", tokens.getToken(1).getImage(tokens));
+        assertEquals(2, tokens.getToken(1).getIdentifier());
+    }
+
+    @Test
+    void testAppendFileRemapsImages() {
+        Tokens tokens = new Tokens();
+        tokens.addToken("a", FOO_FILE_ID, 1, 1, 1, 2);
+        tokens.addToken("b", FOO_FILE_ID, 1, 3, 1, 4);
+
+        Tokens fileTokens = new Tokens();
+        fileTokens.addToken("c", BAR_FILE_ID, 1, 1, 1, 2);
+        fileTokens.addToken("a", BAR_FILE_ID, 1, 3, 1, 4);
+        tokens.appendFile(fileTokens);
+
+        assertEquals(4, tokens.size());
+        TokenEntry c = tokens.getToken(2);
+        assertEquals(BAR_FILE_ID, c.getFileId());
+        assertEquals("c", c.getImage(tokens));
+        assertEquals(3, c.getIdentifier());
+        assertEquals(tokens.getToken(0).getIdentifier(), tokens.getToken(3).getIdentifier());
+        assertTrue(tokens.getToken(3).compareTo(c) > 0);
+    }
+}
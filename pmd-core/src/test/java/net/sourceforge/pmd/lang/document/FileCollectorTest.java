@@ -54,6 +54,8 @@ class FileCollectorTest {
         assertFalse(collector.addFile(bar), "should be unknown language");
 
         assertCollected(collector, listOf(FileId.fromPath(foo)));
+        // the files are only read by the analysis
+        assertTrue(collector.getCollectedFiles().get(0).isReadOnly());
     }
 
     @Test
@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.io.FileOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.zip.ZipEntry;
@@ -18,12 +19,67 @@ import org.junit.jupiter.api.io.TempDir;
 
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
 
 class NioTextFileTest {
 
     @TempDir
     private Path tempDir;
 
+    @Test
+    void readLargeFile() throws Exception {
+        // large enough to be mapped into memory if it is read-only
+        StringBuilder text = new StringBuilder("\ufeff");
+        for (int i = 0; i < 30_000; i++) {
+            text.append("l\u00efne ").append(i).append("\r\n");
+        }
+        Path file = tempDir.resolve("large.dummy");
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        TextFileContent expected = TextFileContent.fromInputStream(Files.newInputStream(file), StandardCharsets.UTF_8);
+        for (boolean readOnly : new boolean[] {true, false}) {
+            TextFileBuilder builder = TextFile.builderForPath(file, StandardCharsets.UTF_8, DummyLanguageModule.getInstance().getDefaultVersion());
+            if (readOnly) {
+                builder.asReadOnly();
+            }
+            try (TextFile textFile = builder.build()) {
+                TextFileContent content = textFile.readContents();
+                assertEquals(expected.getNormalizedText(), content.getNormalizedText());
+                assertEquals("\r\n", content.getLineTerminator());
+                assertEquals(expected.getCheckSum(), content.getCheckSum());
+                assertEquals(30_001, content.getPositioner().getNumLines());
+            }
+        }
+    }
+
+    @Test
+    void writeLargeFileAfterReadingIt() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 30_000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        Path file = tempDir.resolve("large.dummy");
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (TextFile textFile = TextFile.forPath(file, StandardCharsets.UTF_8, DummyLanguageModule.getInstance().getDefaultVersion())) {
+            assertEquals(30_001, textFile.readContents().getPositioner().getNumLines());
+            // the file is not mapped, so it can be overwritten on every platform
+            textFile.writeContents(TextFileContent.fromCharSeq("short"));
+            assertEquals(Chars.wrap("short"), textFile.readContents().getNormalizedText());
+        }
+    }
+
+    @Test
+    void readMalformedFile() throws Exception {
+        Path file = tempDir.resolve("malformed.dummy");
+        Files.write(file, new byte[] {'a', (byte) 0xc3, '\n'});
+
+        try (TextFile textFile = TextFile.forPath(file, StandardCharsets.UTF_8, DummyLanguageModule.getInstance().getDefaultVersion())) {
+            // the JDK decoder replaces the malformed input
+            assertEquals(Chars.wrap("a\ufffd\n"), textFile.readContents().getNormalizedText());
+        }
+    }
+
     @Test
     void zipFileDisplayName() throws Exception {
         Path zipArchive = tempDir.resolve("sources.zip");
@@ -4,13 +4,17 @@
 
 package net.sourceforge.pmd.lang.document;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -62,6 +66,13 @@ class TextFileContentTest {
         assertSame(normalizedText.toString(), normalizedText.toString());
     }
 
+    @ParameterizedTest
+    @EnumSource
+    void testBomLineOffsets(TextContentOrigin origin) throws IOException {
+        TextFileContent content = origin.normalize("\ufeffa\nb");
+        assertArrayEquals(new int[] {0, 2, 3}, content.getPositioner().getLineOffsets());
+    }
+
     @ParameterizedTest
     @EnumSource
     void testNoExplicitLineMarkers(TextContentOrigin origin) throws IOException {
@@ -132,6 +143,52 @@ class TextFileContentTest {
         assertEquals("\r", content.getLineTerminator());
     }
 
+    @Test
+    void testBytesSameAsInputStream() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            longText.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+
+        for (String text : new String[] {
+            "", "\ufeff", "\ufeff\n", "\r", "a\r", "a\r\nb\r\n", "a\rb\r\n\n", "\ufeffa\nb",
+            "\u00e9t\u00e9\r\n\u20ac", "\ud83d\ude00 \ud83d\ude00\n", longText.toString(),
+        }) {
+            for (Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1}) {
+                byte[] bytes = text.getBytes(charset);
+                TextFileContent expected = TextFileContent.fromInputStream(new ByteArrayInputStream(bytes), charset, LINESEP_SENTINEL);
+
+                ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                direct.put(bytes).flip();
+                for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(bytes), direct}) {
+                    TextFileContent actual = TextFileContent.fromBytes(buffer, charset, LINESEP_SENTINEL);
+                    assertNotNull(actual);
+                    assertEquals(expected.getNormalizedText(), actual.getNormalizedText());
+                    assertEquals(expected.getLineTerminator(), actual.getLineTerminator());
+                    assertEquals(expected.getCheckSum(), actual.getCheckSum());
+                    assertArrayEquals(expected.getPositioner().getLineOffsets(), actual.getPositioner().getLineOffsets());
+                    assertEquals(expected.getPositioner().getLastLineColumn(), actual.getPositioner().getLastLineColumn());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBytesMalformedUtf8() {
+        byte[][] malformed = {
+            {'a', (byte) 0x80},                         // unexpected trailing byte
+            {'a', (byte) 0xc3},                         // truncated sequence
+            {(byte) 0xc3, 'a'},                         // missing trailing byte
+            {(byte) 0xc0, (byte) 0xaf},                 // overlong encoding of '/'
+            {(byte) 0xed, (byte) 0xa0, (byte) 0x80},    // encoded surrogate
+            {(byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80}, // above U+10FFFF
+            {(byte) 0xff},
+        };
+        for (byte[] bytes : malformed) {
+            assertNull(TextFileContent.fromBytes(ByteBuffer.wrap(bytes), StandardCharsets.UTF_8, LINESEP_SENTINEL));
+        }
+    }
+
     enum TextContentOrigin {
         INPUT_STREAM {
             @Override
@@ -145,6 +202,13 @@ class TextFileContentTest {
                 return content;
             }
         },
+        BYTES {
+            @Override
+            TextFileContent normalize(String text) {
+                Charset charset = StandardCharsets.UTF_8;
+                return TextFileContent.fromBytes(ByteBuffer.wrap(text.getBytes(charset)), charset, LINESEP_SENTINEL);
+            }
+        },
         READER {
             @Override
             TextFileContent normalize(String input) throws IOException {
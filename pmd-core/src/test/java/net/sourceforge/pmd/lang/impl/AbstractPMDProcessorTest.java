@@ -9,6 +9,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -19,11 +20,14 @@ import net.sourceforge.pmd.lang.DummyLanguageModule;
 import net.sourceforge.pmd.lang.InternalApiBridge;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.AnalysisTimeoutException;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.xpath.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
@@ -40,6 +44,18 @@ abstract class AbstractPMDProcessorTest {
 
     protected abstract Class<? extends AbstractPMDProcessor> getExpectedImplementation();
 
+    protected boolean isLargestFilesFirst() {
+        return false;
+    }
+
+    protected boolean isVirtualThreads() {
+        return false;
+    }
+
+    protected boolean isPipelined() {
+        return false;
+    }
+
     @Test
     void shouldUseCorrectProcessorImpl() {
         try (AbstractPMDProcessor processor = AbstractPMDProcessor.newFileProcessor(createTask(getThreads()))) {
@@ -48,7 +64,7 @@ abstract class AbstractPMDProcessorTest {
     }
 
     private LanguageProcessor.AnalysisTask createTask(int threads) {
-        return InternalApiBridge.createAnalysisTask(null, null, null, threads, null, null, null);
+        return InternalApiBridge.createAnalysisTask(null, null, null, threads, isLargestFilesFirst(), isVirtualThreads(), isPipelined(), 0, 0, 0, null, null, null);
     }
 
     @Test
@@ -64,10 +80,67 @@ abstract class AbstractPMDProcessorTest {
         Mockito.verifyNoInteractions(reporter);
     }
 
+    @Test
+    void fileTimeoutsShouldBeReportedAsProcessingErrors() {
+        try (PmdAnalysis pmd = createPmdAnalysis(config -> config.setFileTimeoutMillis(50))) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatNeverEnds()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(2, reportListener.files.get());
+        assertEquals(2, reportListener.errors.get());
+        Mockito.verifyNoInteractions(reporter);
+    }
+
+    @Test
+    void ruleTimeoutsShouldSkipTheRule() {
+        try (PmdAnalysis pmd = createPmdAnalysis(config -> config.setRuleTimeoutMillis(50))) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatNeverEnds()));
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatReportsViolations()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(2, reportListener.files.get());
+        // the other rule is applied
+        assertEquals(2, reportListener.violations.get());
+        assertEquals(2, reportListener.errors.get());
+        assertEquals(2, reportListener.timeouts.get());
+        Mockito.verifyNoInteractions(reporter);
+    }
+
+    @Test
+    void xpathRuleTimeoutsShouldSkipTheRule() {
+        // each iteration walks the tree, the XPath engine is interrupted while doing so
+        XPathRule neverEnds = new XPathRule(XPathVersion.DEFAULT,
+            "//*[some $i in 1 to 1000000000 satisfies exists(//*[@Image = string($i)])]");
+        neverEnds.setLanguage(DummyLanguageModule.getInstance());
+        neverEnds.setMessage("never reported");
+
+        try (PmdAnalysis pmd = createPmdAnalysis(config -> config.setRuleTimeoutMillis(50))) {
+            pmd.addRuleSet(RuleSet.forSingleRule(neverEnds));
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatReportsViolations()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(2, reportListener.files.get());
+        assertEquals(2, reportListener.violations.get());
+        assertEquals(2, reportListener.timeouts.get());
+        assertEquals(2, reportListener.errors.get());
+        Mockito.verifyNoInteractions(reporter);
+    }
+
     protected PmdAnalysis createPmdAnalysis() {
+        return createPmdAnalysis(config -> { });
+    }
+
+    protected PmdAnalysis createPmdAnalysis(Consumer<PMDConfiguration> configurer) {
         PMDConfiguration configuration = new PMDConfiguration();
         configuration.setThreads(getThreads());
+        configuration.setLargestFilesFirst(isLargestFilesFirst());
+        configuration.setVirtualThreads(isVirtualThreads());
+        configuration.setPipelined(isPipelined());
         configuration.setIgnoreIncrementalAnalysis(true);
+        configurer.accept(configuration);
         reporter = Mockito.spy(configuration.getReporter());
         configuration.setReporter(reporter);
 
@@ -109,11 +182,39 @@ abstract class AbstractPMDProcessorTest {
         }
     }
 
+    protected static class RuleThatNeverEnds extends AbstractRule {
+        RuleThatNeverEnds() {
+            setLanguage(DummyLanguageModule.getInstance().getDefaultVersion().getLanguage());
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            while (true) {
+                // this is how the rule gets cancelled
+                Watchdog.checkpoint();
+                Thread.yield();
+            }
+        }
+    }
+
+    protected static class RuleThatReportsViolations extends AbstractRule {
+        RuleThatReportsViolations() {
+            setLanguage(DummyLanguageModule.getInstance().getDefaultVersion().getLanguage());
+            setMessage("violation");
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            ctx.addViolation(target);
+        }
+    }
+
     protected static class SimpleReportListener implements GlobalAnalysisListener {
 
         public AtomicInteger violations = new AtomicInteger(0);
         public AtomicInteger files = new AtomicInteger(0);
         public AtomicInteger errors = new AtomicInteger(0);
+        public AtomicInteger timeouts = new AtomicInteger(0);
 
         @Override
         public FileAnalysisListener startFileAnalysis(TextFile file) {
@@ -128,6 +229,9 @@ abstract class AbstractPMDProcessorTest {
                 @Override
                 public void onError(Report.ProcessingError error) {
                     errors.incrementAndGet();
+                    if (error.getError() instanceof AnalysisTimeoutException) {
+                        timeouts.incrementAndGet();
+                    }
                 }
             };
         }
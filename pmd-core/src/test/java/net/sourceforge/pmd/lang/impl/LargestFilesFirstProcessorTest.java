@@ -0,0 +1,67 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+
+class LargestFilesFirstProcessorTest extends MultiThreadProcessorTest {
+
+    @Override
+    protected boolean isLargestFilesFirst() {
+        return true;
+    }
+
+    @Test
+    void testLargestFilesAreAnalyzedFirst() {
+        PMDConfiguration configuration = new PMDConfiguration();
+        // with a single thread, files are analyzed in the order they are scheduled
+        configuration.setThreads(1);
+        configuration.setLargestFilesFirst(true);
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        List<String> analyzedFiles = Collections.synchronizedList(new ArrayList<>());
+        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+            LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+            pmd.files().addFile(TextFile.forCharSeq("a", FileId.fromPathLikeString("file1.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq("abcdefghij", FileId.fromPathLikeString("file2.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("file3.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq("abcdefghijklmnopqrstuvwxyz", FileId.fromPathLikeString("file4.dummy"), lv));
+            pmd.addRuleSet(RuleSet.forSingleRule(new MockRule()));
+            pmd.addListener(new GlobalAnalysisListener() {
+                @Override
+                public FileAnalysisListener startFileAnalysis(TextFile file) {
+                    analyzedFiles.add(file.getFileId().getFileName());
+                    return FileAnalysisListener.noop();
+                }
+
+                @Override
+                public void close() {
+                    // nothing to do
+                }
+            });
+            pmd.performAnalysis();
+        }
+
+        assertEquals(listOf("file4.dummy", "file2.dummy", "file3.dummy", "file1.dummy"), analyzedFiles);
+    }
+}
@@ -6,12 +6,22 @@ package net.sourceforge.pmd.lang.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.RuleTargetSelector;
+import net.sourceforge.pmd.reporting.RuleContext;
+import net.sourceforge.pmd.util.CollectionUtil;
 
 class MonoThreadProcessorTest extends AbstractPMDProcessorTest {
 
@@ -40,4 +50,40 @@ class MonoThreadProcessorTest extends AbstractPMDProcessorTest {
         // in mono thread, the error just falls through, we don't additionally catch and log it.
         Mockito.verifyNoInteractions(reporter);
     }
+
+    @Test
+    void singlePassRuleTimeoutsAreBudgetedPerFile() {
+        try (PmdAnalysis pmd = createPmdAnalysis(config -> {
+            config.setSinglePassRuleDispatch(true);
+            config.setRuleTimeoutMillis(50);
+        })) {
+            // each node takes less than the timeout, but the whole file takes more
+            pmd.files().addFile(TextFile.forCharSeq("(a)(b)(c)(d)(e)(f)(g)(h)(i)(j)",
+                                                    FileId.fromPathLikeString("file3-nodes.dummy"),
+                                                    DummyLanguageModule.getInstance().getDefaultVersion()));
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatIsSlowOnEachNode()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(3, reportListener.files.get());
+        assertEquals(1, reportListener.timeouts.get());
+        assertTrue(reportListener.violations.get() < 10, "the rule should have been stopped");
+    }
+
+    private static class RuleThatIsSlowOnEachNode extends RuleThatReportsViolations {
+
+        @Override
+        protected RuleTargetSelector buildTargetSelector() {
+            return RuleTargetSelector.forXPathNames(CollectionUtil.setOf("dummyNode"));
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+            while (System.nanoTime() < end) {
+                Thread.yield();
+            }
+            super.apply(target, ctx);
+        }
+    }
 }
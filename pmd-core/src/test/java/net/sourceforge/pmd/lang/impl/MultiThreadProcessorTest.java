@@ -81,6 +81,8 @@ class MultiThreadProcessorTest extends AbstractPMDProcessorTest {
 
     @Test
     void testRulesThreadSafety() throws Exception {
+        // the counter is shared with subclasses of this test
+        NotThreadSafeRule.count.set(0);
         try (PmdAnalysis pmd = createPmdAnalysis("rulesets/MultiThreadProcessorTest/basic.xml")) {
             pmd.performAnalysis();
         }
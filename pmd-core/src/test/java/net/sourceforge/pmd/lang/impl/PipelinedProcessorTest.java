@@ -0,0 +1,134 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.benchmark.TimingReport;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+
+class PipelinedProcessorTest extends MultiThreadProcessorTest {
+
+    @Override
+    protected boolean isPipelined() {
+        return true;
+    }
+
+    @Override
+    protected Class<? extends AbstractPMDProcessor> getExpectedImplementation() {
+        return PipelinedProcessor.class;
+    }
+
+    @Test
+    void testFilesAreReportedByOneThread() {
+        Set<String> reportingThreads = ConcurrentHashMap.newKeySet();
+        AtomicInteger reportedFiles = new AtomicInteger();
+        TimingReport timingReport;
+
+        TimeTracker.startGlobalTracking();
+        try (PmdAnalysis pmd = createAnalysisOfManyFiles()) {
+            pmd.addListener(new GlobalAnalysisListener() {
+                @Override
+                public FileAnalysisListener startFileAnalysis(TextFile file) {
+                    reportingThreads.add(Thread.currentThread().getName());
+                    reportedFiles.incrementAndGet();
+                    return FileAnalysisListener.noop();
+                }
+
+                @Override
+                public void close() {
+                    // nothing to do
+                }
+            });
+            pmd.performAnalysis();
+        } finally {
+            timingReport = TimeTracker.stopGlobalTracking();
+        }
+
+        assertEquals(20, reportedFiles.get());
+        assertEquals(setOf("PmdThread report 1"), reportingThreads);
+        // the files went through the queue of each stage
+        assertEquals(setOf("parse", "rules", "report"),
+                     timingReport.getLabeledMeasurements(TimedOperationCategory.PIPELINE_QUEUE).keySet());
+    }
+
+    @Test
+    void testConcurrencyIsBoundedByThreadCount() {
+        VirtualThreadProcessorTest.ConcurrencyCountingRule.reset();
+        try (PmdAnalysis pmd = createAnalysisOfManyFiles()) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new VirtualThreadProcessorTest.ConcurrencyCountingRule()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(20, VirtualThreadProcessorTest.ConcurrencyCountingRule.APPLIED.get());
+        // with 4 threads, 2 are parsing and 2 are applying rules
+        assertTrue(VirtualThreadProcessorTest.ConcurrencyCountingRule.MAX_RUNNING.get() <= 2,
+                   "at most 2 files are checked at the same time");
+    }
+
+    @Test
+    void testThreadsAreSplitAsConfigured() {
+        VirtualThreadProcessorTest.ConcurrencyCountingRule.reset();
+        try (PmdAnalysis pmd = createAnalysisOfManyFiles(3)) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new VirtualThreadProcessorTest.ConcurrencyCountingRule()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(20, VirtualThreadProcessorTest.ConcurrencyCountingRule.APPLIED.get());
+        // with 4 threads, 3 are parsing and 1 is applying rules
+        assertEquals(1, VirtualThreadProcessorTest.ConcurrencyCountingRule.MAX_RUNNING.get());
+    }
+
+    @Test
+    void testParserThreads() {
+        // half of the threads by default
+        assertEquals(2, PipelinedProcessor.parserThreads(4, 0));
+        assertEquals(2, PipelinedProcessor.parserThreads(5, 0));
+        assertEquals(3, PipelinedProcessor.parserThreads(4, 3));
+        // at least one thread for each stage
+        assertEquals(1, PipelinedProcessor.parserThreads(1, 0));
+        assertEquals(1, PipelinedProcessor.parserThreads(1, 2));
+        assertEquals(3, PipelinedProcessor.parserThreads(4, 8));
+    }
+
+    private PmdAnalysis createAnalysisOfManyFiles() {
+        return createAnalysisOfManyFiles(0);
+    }
+
+    private PmdAnalysis createAnalysisOfManyFiles(int parserThreads) {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(4);
+        configuration.setPipelined(true);
+        configuration.setPipelineParserThreads(parserThreads);
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        PmdAnalysis pmd = PmdAnalysis.create(configuration);
+        LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+        for (int i = 0; i < 20; i++) {
+            pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("file" + i + ".dummy"), lv));
+        }
+        pmd.addRuleSet(RuleSet.forSingleRule(new MockRule()));
+        return pmd;
+    }
+}
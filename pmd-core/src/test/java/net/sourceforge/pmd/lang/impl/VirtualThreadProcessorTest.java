@@ -0,0 +1,175 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.RuleContext;
+
+class VirtualThreadProcessorTest extends MultiThreadProcessorTest {
+
+    @Override
+    protected boolean isVirtualThreads() {
+        return true;
+    }
+
+    @Test
+    void testConcurrencyIsBoundedByThreadCount() {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(2);
+        configuration.setVirtualThreads(true);
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        ConcurrencyCountingRule.reset();
+        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+            LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+            for (int i = 0; i < 20; i++) {
+                pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("file" + i + ".dummy"), lv));
+            }
+            pmd.addRuleSet(RuleSet.forSingleRule(new ConcurrencyCountingRule()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(20, ConcurrencyCountingRule.APPLIED.get());
+        assertTrue(ConcurrencyCountingRule.MAX_RUNNING.get() <= 2, "at most 2 files are checked at the same time");
+        // the original rule, and at most one copy per permit
+        assertTrue(ConcurrencyCountingRule.INSTANCES.get() <= 3, "rules are copied once per permit, not once per file");
+    }
+
+    @Test
+    void testFilesInProcessAreBoundedByThreadCount() {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(2);
+        configuration.setVirtualThreads(true);
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        CountingTextFile.reset();
+        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+            LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+            for (int i = 0; i < 50; i++) {
+                pmd.files().addFile(new CountingTextFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("file" + i + ".dummy"), lv)));
+            }
+            pmd.addRuleSet(RuleSet.forSingleRule(new ConcurrencyCountingRule()));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(50, CountingTextFile.READ.get());
+        assertEquals(0, CountingTextFile.OPEN.get());
+        int limit = MultiThreadProcessor.FILES_IN_PROCESS_PER_THREAD * 2;
+        assertTrue(CountingTextFile.MAX_OPEN.get() <= limit, "at most " + limit + " files are read at the same time");
+    }
+
+    /** Counts the files whose contents are read and that are not closed yet. */
+    private static final class CountingTextFile implements TextFile {
+        static final AtomicInteger READ = new AtomicInteger();
+        static final AtomicInteger OPEN = new AtomicInteger();
+        static final AtomicInteger MAX_OPEN = new AtomicInteger();
+
+        private final TextFile delegate;
+        private boolean open;
+
+        CountingTextFile(TextFile delegate) {
+            this.delegate = delegate;
+        }
+
+        static void reset() {
+            READ.set(0);
+            OPEN.set(0);
+            MAX_OPEN.set(0);
+        }
+
+        @Override
+        public LanguageVersion getLanguageVersion() {
+            return delegate.getLanguageVersion();
+        }
+
+        @Override
+        public FileId getFileId() {
+            return delegate.getFileId();
+        }
+
+        @Override
+        public synchronized TextFileContent readContents() throws IOException {
+            if (!open) {
+                open = true;
+                READ.incrementAndGet();
+                MAX_OPEN.accumulateAndGet(OPEN.incrementAndGet(), Math::max);
+            }
+            return delegate.readContents();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (open) {
+                open = false;
+                OPEN.decrementAndGet();
+            }
+            delegate.close();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CountingTextFile && delegate.equals(((CountingTextFile) o).delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    public static class ConcurrencyCountingRule extends AbstractRule {
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+        static final AtomicInteger APPLIED = new AtomicInteger();
+        static final AtomicInteger RUNNING = new AtomicInteger();
+        static final AtomicInteger MAX_RUNNING = new AtomicInteger();
+
+        ConcurrencyCountingRule() {
+            INSTANCES.incrementAndGet();
+            setLanguage(DummyLanguageModule.getInstance().getDefaultVersion().getLanguage());
+        }
+
+        static void reset() {
+            INSTANCES.set(0);
+            APPLIED.set(0);
+            RUNNING.set(0);
+            MAX_RUNNING.set(0);
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            MAX_RUNNING.accumulateAndGet(RUNNING.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                RUNNING.decrementAndGet();
+                APPLIED.incrementAndGet();
+            }
+        }
+    }
+}
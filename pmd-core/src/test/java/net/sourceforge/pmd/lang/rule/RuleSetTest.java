@@ -17,11 +17,14 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
@@ -42,6 +45,8 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
 import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
@@ -53,6 +58,7 @@ import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.Report.ProcessingError;
 import net.sourceforge.pmd.reporting.RuleContext;
 import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.util.log.PmdReporter;
 
 class RuleSetTest {
 
@@ -450,6 +456,74 @@ class RuleSetTest {
         assertEquals(1, report.getViolations().size(), "Violations");
     }
 
+    @Test
+    void testApplyWithRuleFilter() throws Exception {
+        Rule rule1 = new FooRule();
+        rule1.setName("FooRule1");
+        rule1.setLanguage(dummyLanguage());
+        Rule rule2 = new FooRule();
+        rule2.setName("FooRule2");
+        rule2.setLanguage(dummyLanguage());
+
+        RuleSets ruleSets = new RuleSets(createRuleSetBuilder("RuleSet").addRule(rule1).addRule(rule2).build());
+
+        Report report = Report.buildReport(ctx -> ruleSets.apply(makeCompilationUnits(), ctx, r -> "FooRule2".equals(r.getName())));
+        assertEquals(1, report.getViolations().size(), "Violations");
+        assertEquals("FooRule2", report.getViolations().get(0).getRule().getName());
+
+        report = Report.buildReport(ctx -> ruleSets.apply(makeCompilationUnits(), ctx, r -> false));
+        assertTrue(report.getViolations().isEmpty(), "Violations");
+    }
+
+    @Test
+    void testRuleChecksumsOnlyChangeForChangedRule() {
+        MockRule rule1 = new MockRule("name", "desc", "msg", "rulesetname");
+        MockRule rule2 = new MockRule("name2", "desc", "msg", "rulesetname");
+        RuleSets ruleSets = new RuleSets(createRuleSetBuilder("ruleset").addRule(rule1).addRule(rule2).build());
+
+        long checksum1 = ruleSets.getRuleChecksums().get(rule1);
+        long checksum2 = ruleSets.getRuleChecksums().get(rule2);
+        assertNotEquals(checksum1, checksum2);
+
+        rule2.setProperty(MockRule.PROP, 42);
+        assertEquals(checksum1, (long) ruleSets.getRuleChecksums().get(rule1));
+        assertNotEquals(checksum2, (long) ruleSets.getRuleChecksums().get(rule2));
+    }
+
+    @Test
+    void testCopyForThreadSharesThreadSafeRules() {
+        Rule notThreadSafe = new FooRule();
+        notThreadSafe.setName("NotThreadSafe");
+        ThreadSafeRule threadSafe = new ThreadSafeRule();
+        threadSafe.setName("ThreadSafe");
+        RuleSets ruleSets = new RuleSets(createRuleSetBuilder("RuleSet").addRule(notThreadSafe).addRule(threadSafe).build());
+
+        LanguageProcessorRegistry registry = mock(LanguageProcessorRegistry.class);
+        ruleSets.initializeRules(registry, PmdReporter.quiet());
+        assertEquals(1, threadSafe.initializations);
+
+        RuleSets copy = ruleSets.copyForThread();
+        copy.initializeRules(registry, PmdReporter.quiet());
+        assertNotSame(notThreadSafe, copy.getRuleByName("NotThreadSafe"));
+        assertSame(threadSafe, copy.getRuleByName("ThreadSafe"));
+        // the shared rule is not initialized again
+        assertEquals(1, threadSafe.initializations);
+    }
+
+    static class ThreadSafeRule extends FooRule {
+        int initializations;
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public void initialize(LanguageProcessor languageProcessor) {
+            initializations++;
+        }
+    }
+
     @Test
     void copyConstructorDeepCopies() {
         Rule rule = new FooRule();
@@ -0,0 +1,176 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.benchmark.TimingReport;
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyNodeTypeB;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleTargetSelector;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.RuleContext;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+class RuleApplicatorTest {
+
+    private final DummyRootNode root = new DummyRootNode();
+    private final DummyNode a1 = new DummyNode("a");
+    private final DummyNodeTypeB b = new DummyNodeTypeB();
+    private final DummyNode a2 = new DummyNode("a");
+    private final DummyNode c = new DummyNode("c");
+
+    // the events, in the order they happened
+    private final List<String> events = new ArrayList<>();
+    private final List<ProcessingError> errors = new ArrayList<>();
+
+    RuleApplicatorTest() {
+        // root(a1(b(a2)), c)
+        b.publicSetChildren(a2);
+        a1.publicSetChildren(b);
+        root.publicSetChildren(a1, c);
+    }
+
+    private List<Rule> makeRules() {
+        return listOf(
+            new RecordingRule("byName", RuleTargetSelector.forXPathNames(listOf("a", "c"))),
+            new RecordingRule("byClass", RuleTargetSelector.forTypes(DummyNodeTypeB.class, DummyNode.class)),
+            new RecordingRule("rootOnly", RuleTargetSelector.forRootOnly()),
+            new RecordingRule("throwing", RuleTargetSelector.forXPathNames(listOf("a"))) {
+                @Override
+                public void apply(Node target, RuleContext ctx) {
+                    super.apply(target, ctx);
+                    throw new IllegalStateException("oops");
+                }
+            }
+        );
+    }
+
+    private void apply(List<Rule> rules, boolean singlePass) {
+        RuleApplicator applicator = RuleApplicator.build(rules, singlePass);
+        applicator.index(root);
+        applicator.apply(rules, new FileAnalysisListener() {
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                // not used
+            }
+
+            @Override
+            public void onError(ProcessingError error) {
+                errors.add(error);
+            }
+        });
+    }
+
+    @Test
+    void testRulesAppliedOneAfterTheOther() {
+        apply(makeRules(), false);
+
+        assertEquals(listOf(
+            "start byName", "byName a", "byName a", "byName c", "end byName",
+            // the node b is visited twice, once as a DummyNodeTypeB, once as a DummyNode
+            "start byClass", "byClass b", "byClass root", "byClass a", "byClass b", "byClass a", "byClass c", "end byClass",
+            "start rootOnly", "rootOnly root", "end rootOnly",
+            "start throwing", "throwing a", "throwing a", "end throwing"
+        ), events);
+        assertEquals(2, errors.size());
+    }
+
+    @Test
+    void testSinglePassVisitsNodesInDocumentOrder() {
+        apply(makeRules(), true);
+
+        assertEquals(listOf(
+            "start byName", "start byClass", "start rootOnly", "start throwing",
+            "byClass root", "rootOnly root",
+            "byName a", "byClass a", "throwing a",
+            // the node b is only visited once
+            "byClass b",
+            "byName a", "byClass a", "throwing a",
+            "byName c", "byClass c",
+            "end byName", "end byClass", "end rootOnly", "end throwing"
+        ), events);
+        assertEquals(2, errors.size());
+    }
+
+    @Test
+    void testSinglePassOnlyAppliesGivenRules() {
+        List<Rule> rules = makeRules();
+        RuleApplicator applicator = RuleApplicator.build(rules, true);
+        applicator.index(root);
+        applicator.apply(listOf(rules.get(2)), FileAnalysisListener.noop());
+
+        assertEquals(listOf("start rootOnly", "rootOnly root", "end rootOnly"), events);
+    }
+
+    @Test
+    void testSinglePassAppliesDuplicateRulesSeparately() {
+        List<Rule> rules = makeRules();
+        RuleApplicator applicator = RuleApplicator.build(rules, true);
+        applicator.index(root);
+        applicator.apply(listOf(rules.get(0), rules.get(0)), FileAnalysisListener.noop());
+
+        assertEquals(listOf(
+            "start byName", "byName a", "byName a", "byName c", "end byName",
+            "start byName", "byName a", "byName a", "byName c", "end byName"
+        ), events);
+    }
+
+    @Test
+    void testSinglePassRecordsOneOperationPerRule() {
+        TimeTracker.startGlobalTracking();
+        apply(makeRules(), true);
+        TimingReport report = TimeTracker.stopGlobalTracking();
+
+        assertEquals(setOf("byName", "byClass", "rootOnly", "throwing"),
+                     report.getLabeledMeasurements(TimedOperationCategory.RULE).keySet());
+    }
+
+    private class RecordingRule extends AbstractRule {
+
+        private final RuleTargetSelector targetSelector;
+
+        RecordingRule(String name, RuleTargetSelector targetSelector) {
+            this.targetSelector = targetSelector;
+            setName(name);
+            setLanguage(root.getLanguageVersion().getLanguage());
+        }
+
+        @Override
+        protected RuleTargetSelector buildTargetSelector() {
+            return targetSelector;
+        }
+
+        @Override
+        public void start(RuleContext ctx) {
+            events.add("start " + getName());
+        }
+
+        @Override
+        public void end(RuleContext ctx) {
+            events.add("end " + getName());
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            String image = target == root ? "root" : target == b ? "b" : target.getXPathNodeName();
+            events.add(getName() + " " + image);
+        }
+    }
+}
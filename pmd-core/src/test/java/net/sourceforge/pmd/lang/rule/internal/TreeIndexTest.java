@@ -0,0 +1,84 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyNodeTypeB;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.util.IteratorUtil;
+
+class TreeIndexTest {
+
+    private final DummyRootNode root = new DummyRootNode();
+    private final DummyNode a1 = new DummyNode("a");
+    private final DummyNodeTypeB b = new DummyNodeTypeB();
+    private final DummyNode a2 = new DummyNode("a");
+    private final DummyNode c = new DummyNode("c");
+
+    TreeIndexTest() {
+        // root(a1(b(a2)), c)
+        b.publicSetChildren(a2);
+        a1.publicSetChildren(b);
+        root.publicSetChildren(a1, c);
+    }
+
+    private static void index(TreeIndex idx, Node node) {
+        idx.indexNode(node);
+        for (Node child : node.children()) {
+            index(idx, child);
+        }
+    }
+
+    private static List<Node> toList(Iterator<Node> it) {
+        return IteratorUtil.toList(it);
+    }
+
+    @Test
+    void testByNameInDocumentOrder() {
+        TreeIndex idx = new TreeIndex(setOf("a", "c"), Collections.emptySet());
+        index(idx, root);
+
+        assertEquals(listOf(a1, a2), toList(idx.getByName("a")));
+        assertEquals(listOf(c), toList(idx.getByName("c")));
+        assertFalse(idx.getByName("notIndexed").hasNext());
+        assertEquals(listOf(c, a1, a2), toList(idx.getByName(listOf("c", "notIndexed", "a"))));
+    }
+
+    @Test
+    void testByClassIncludesSubtypes() {
+        TreeIndex idx = new TreeIndex(Collections.emptySet(), setOf(DummyNode.class, DummyNodeTypeB.class));
+        index(idx, root);
+
+        assertEquals(listOf(root, a1, b, a2, c), toList(idx.getByClass(DummyNode.class)));
+        assertEquals(listOf(b), toList(idx.getByClass(DummyNodeTypeB.class)));
+        assertFalse(idx.getByClass(DummyRootNode.class).hasNext());
+    }
+
+    @Test
+    void testResetClearsIndex() {
+        TreeIndex idx = new TreeIndex(setOf("a"), setOf(DummyNodeTypeB.class));
+        index(idx, root);
+        idx.reset();
+
+        assertFalse(idx.getByName("a").hasNext());
+        assertFalse(idx.getByClass(DummyNodeTypeB.class).hasNext());
+
+        DummyNode other = new DummyNode("a");
+        index(idx, other);
+        assertEquals(listOf(other), toList(idx.getByName("a")));
+    }
+}
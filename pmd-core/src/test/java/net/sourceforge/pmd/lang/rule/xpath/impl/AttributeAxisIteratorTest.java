@@ -7,6 +7,9 @@ package net.sourceforge.pmd.lang.rule.xpath.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Arrays;
@@ -20,6 +23,8 @@ import org.junit.jupiter.api.Test;
 
 import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.impl.AbstractNode;
+import net.sourceforge.pmd.lang.document.TextRegion;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
 import net.sourceforge.pmd.lang.rule.xpath.impl.dummyast.ConcreteNode;
 import net.sourceforge.pmd.util.CollectionUtil;
@@ -83,6 +88,33 @@ class AttributeAxisIteratorTest {
         assertEquals("actual_value", attributes.get(ATTRIBUTE_NAME).getValue().toString());
     }
 
+    @Test
+    void testAccessorsAreIndexedByName() {
+        NodeWithDefaultAttributes node = new NodeWithDefaultAttributes();
+        AttributeAccessors accessors = AttributeAxisIterator.getAccessors(node);
+        assertNotNull(accessors);
+
+        int index = accessors.indexOf("Enum");
+        assertEquals("Enum", accessors.getName(index));
+        Attribute attribute = accessors.newAttribute(node, index);
+        assertEquals(DummyNodeWithEnum.MyEnum.BAR, attribute.getValue());
+        assertEquals("foo", accessors.newAttribute(node, accessors.indexOf("Name")).getStringValue());
+        assertEquals(-1, accessors.indexOf("NotAnAttribute"));
+
+        // the index is the position in the iteration order
+        AttributeAxisIterator it = new AttributeAxisIterator(node);
+        for (int i = 0; i < accessors.size(); i++) {
+            assertEquals(accessors.getName(i), it.next().getName());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    void testNoAccessorsForNodeWithCustomAttributes() {
+        // DummyNode overrides getXPathAttributesIterator
+        assertNull(AttributeAxisIterator.getAccessors(new DummyNodeWithEnum()));
+    }
+
     private Map<String, Attribute> toMap(AttributeAxisIterator it) {
         Map<String, Attribute> atts = new HashMap<>();
         while (it.hasNext()) {
@@ -103,6 +135,27 @@ class AttributeAxisIteratorTest {
         }
     }
 
+    public static class NodeWithDefaultAttributes extends AbstractNode<NodeWithDefaultAttributes, NodeWithDefaultAttributes> {
+
+        @Override
+        public TextRegion getTextRegion() {
+            return TextRegion.caretAt(0);
+        }
+
+        @Override
+        public String getXPathNodeName() {
+            return "NodeWithDefaultAttributes";
+        }
+
+        public String getName() {
+            return "foo";
+        }
+
+        public DummyNodeWithEnum.MyEnum getEnum() {
+            return DummyNodeWithEnum.MyEnum.BAR;
+        }
+    }
+
     public static class DummyNodeWithList extends DummyNode {
 
         public List<String> getList() {
@@ -10,12 +10,16 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
 import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.util.CollectionUtil;
 
 import net.sf.saxon.Configuration;
 import net.sf.saxon.type.Type;
@@ -64,6 +68,34 @@ class ElementNodeTest {
 
     }
 
+    @Test
+    void testCompareOrderOfLazyWrappers() {
+        DummyRootNode root = helper.parse("(a(b)(c(d)(e)))(f(g))");
+        List<DummyNode> nodes = root.descendants(DummyNode.class).toList();
+
+        AstTreeInfo treeInfo = new AstTreeInfo(root, Configuration.newConfiguration());
+        List<AstElementNode> wrappers = new ArrayList<>();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            wrappers.add(treeInfo.findWrapperFor(nodes.get(i)));
+        }
+        wrappers.sort(AstElementNode::compareOrder);
+
+        assertEquals(nodes, CollectionUtil.map(wrappers, AstElementNode::getUnderlyingNode));
+        assertTrue(treeInfo.getRootNode().getRootElement().compareOrder(wrappers.get(0)) < 0);
+    }
+
+    @Test
+    void testWrappersAreCreatedLazily() {
+        DummyRootNode root = helper.parse("(a(b)(c(d)(e)))(f(g))");
+
+        AstTreeInfo treeInfo = new AstTreeInfo(root, Configuration.newConfiguration());
+        DummyNode f = root.getChild(1);
+        treeInfo.findWrapperFor(f);
+
+        // the root element, a and f are wrapped, the rest of the tree is not
+        assertEquals(4, treeInfo.nextNodeId());
+    }
+
     @Test
     void verifyTextNodeType() {
         DummyRootNode root = helper.parse("(foo)(#text)");
@@ -0,0 +1,256 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.node;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.nodeB;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyCommentNode;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyTextNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.NodeStream;
+import net.sourceforge.pmd.lang.ast.impl.AbstractNode;
+import net.sourceforge.pmd.lang.document.TextRegion;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathFunctionDefinition;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.NodeStreamCompiler.FallbackException;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.properties.PropertyFactory;
+
+import net.sf.saxon.expr.Expression;
+
+class NodeStreamCompilerTest {
+
+    @Test
+    void testCompiledQueries() {
+        assertCompiled("//dummyNode[@Image = 'a']/dummyNode");
+        assertCompiled("//dummyNode[count(*) > 1 and not(dummyNodeB)]");
+        assertCompiled("//dummyNode[dummyNode//dummyNodeB or ancestor::dummyNodeB]");
+        assertCompiled("//dummyNode[starts-with(@Image, '1') or @Image = ('0', '10')]");
+        assertCompiled("//dummyNode[pmd-dummy:imageIs('0')]");
+        assertCompiled("//dummyNode[$checkAll and dummyNode]", booleanProperty());
+    }
+
+    @Test
+    void testUnsupportedQueries() {
+        assertNotCompiled("//dummyNode[1]");
+        assertNotCompiled("//dummyNode[matches(@Image, '1')]");
+        assertNotCompiled("//dummyNode[following-sibling::dummyNode]");
+        assertNotCompiled("//dummyNode[string-length(@Image) > 1]");
+        // no rule chain
+        assertNotCompiled("//dummyNode[//dummyNodeB]");
+    }
+
+    @Test
+    void testSameResultsAsSaxon() {
+        DummyRootNode tree = tree(() -> root(
+            node(
+                node(),
+                nodeB(
+                    node()
+                )
+            ),
+            nodeB(
+                node(
+                    nodeB()
+                )
+            ),
+            node(),
+            // text and comment nodes are not elements
+            node(
+                new DummyTextNode(),
+                new DummyCommentNode()
+            ),
+            node(
+                new DummyTextNode(),
+                node()
+            )
+        ));
+
+        for (String xpath : Arrays.asList(
+            "//dummyNode",
+            "//dummyNode/dummyNode",
+            "//dummyNode[dummyNodeB]",
+            "//dummyNode[not(dummyNodeB)]",
+            "//dummyNode[count(*) = 2]",
+            "//dummyNode[count(.//*) > 1]",
+            "//dummyNode[count(*//dummyNode) >= 1]",
+            "//dummyNode[empty(*)]",
+            "//dummyNode[*]",
+            "//dummyNode[count(*) = 0]",
+            "//dummyNode[count(element()) = 1]",
+            "//dummyNode[count(node()) = 2]",
+            "//dummyNode[ancestor::dummyNodeB]",
+            "//dummyNode[parent::dummyRootNode]",
+            "//dummyNodeB//dummyNode",
+            "//dummyNode[@Image = '10' or @Image != '0']",
+            "//dummyNode[starts-with(@Image, '1')]",
+            "//dummyNode[pmd-dummy:imageIs('10')]"
+        )) {
+            SaxonXPathRuleQuery compiled = createQuery(xpath);
+            SaxonXPathRuleQuery saxon = createQuery(xpath);
+            saxon.compiledXPaths.clear();
+            tree.descendantsOrSelf().forEach(n -> assertEquals(saxon.evaluate(n), compiled.evaluate(n), xpath + " on " + n));
+        }
+    }
+
+    @Test
+    void testAttributeComparisons() {
+        NodeWithAttributes node = new NodeWithAttributes();
+
+        assertMatches(true, "//NodeWithAttributes[@Name = 'foo']", node);
+        assertMatches(false, "//NodeWithAttributes[@Name != 'foo']", node);
+        assertMatches(true, "//NodeWithAttributes[@Name = ('bar', 'foo')]", node);
+        assertMatches(true, "//NodeWithAttributes[@Name != ('bar', 'foo')]", node);
+        assertMatches(true, "//NodeWithAttributes[@Enum = 'BAR']", node);
+        assertMatches(true, "//NodeWithAttributes[@Null = '']", node);
+        assertMatches(true, "//NodeWithAttributes[@Int > 1 and @Int <= 2]", node);
+        assertMatches(false, "//NodeWithAttributes[@Int != 2]", node);
+        assertMatches(true, "//NodeWithAttributes[@Bool = true()]", node);
+        assertMatches(true, "//NodeWithAttributes[contains(@Name, 'o') and ends-with(@Name, 'oo')]", node);
+        // an attribute that doesn't exist is the empty sequence
+        assertMatches(false, "//NodeWithAttributes[@Missing = 'foo']", node);
+        assertMatches(false, "//NodeWithAttributes[@Missing != 'foo']", node);
+        assertMatches(true, "//NodeWithAttributes[starts-with(@Missing, '')]", node);
+    }
+
+    @Test
+    void testFallbackOnValuesSaxonHandlesDifferently() {
+        NodeWithAttributes node = new NodeWithAttributes();
+
+        // type errors in Saxon
+        assertThrows(FallbackException.class, () -> compile("//NodeWithAttributes[@Name = 1]", node).apply(node).toList());
+        assertThrows(FallbackException.class, () -> compile("//NodeWithAttributes[@Null = true()]", node).apply(node).toList());
+        // sequences
+        assertThrows(FallbackException.class, () -> compile("//NodeWithAttributes[@List = 'A']", node).apply(node).toList());
+
+        // the fallback gives the results of Saxon
+        DummyRootNode tree = tree(() -> root(node()));
+        assertEquals(Collections.singletonList(tree.getChild(0)), createQuery("//dummyNode[@Image = '0']").evaluate(tree.getChild(0)));
+    }
+
+    private static void assertMatches(boolean matches, String xpath, Node node) {
+        List<? extends Node> results = compile(xpath, node).apply(node).toList();
+        assertEquals(matches ? Collections.singletonList(node) : Collections.emptyList(), results, xpath);
+    }
+
+    private static Function<Node, NodeStream<? extends Node>> compile(String xpath, Node node) {
+        SaxonXPathRuleQuery query = createQuery(xpath);
+        Expression expression = query.getExpressionsForLocalNameOrDefault(node.getXPathNodeName()).get(0);
+        Function<Node, NodeStream<? extends Node>> compiled = query.compiledXPaths.get(expression);
+        assertNotNull(compiled, "Not compiled: " + xpath);
+        return compiled;
+    }
+
+    private static void assertCompiled(String xpath, PropertyDescriptor<?>... properties) {
+        SaxonXPathRuleQuery query = createQuery(xpath, properties);
+        query.nodeNameToXPaths.forEach((name, expressions) -> {
+            if (!SaxonXPathRuleQuery.AST_ROOT.equals(name)) {
+                expressions.forEach(e -> assertTrue(query.compiledXPaths.containsKey(e), "Not compiled: " + e));
+            }
+        });
+    }
+
+    private static void assertNotCompiled(String xpath, PropertyDescriptor<?>... properties) {
+        assertTrue(createQuery(xpath, properties).compiledXPaths.isEmpty(), "Compiled: " + xpath);
+    }
+
+    private static PropertyDescriptor<Boolean> booleanProperty() {
+        return PropertyFactory.booleanProperty("checkAll").desc("test").defaultValue(true).build();
+    }
+
+    private static SaxonXPathRuleQuery createQuery(String xpath, PropertyDescriptor<?>... properties) {
+        Map<PropertyDescriptor<?>, Object> props = new HashMap<>();
+        for (PropertyDescriptor<?> prop : properties) {
+            props.put(prop, prop.defaultValue());
+        }
+        return new SaxonXPathRuleQuery(xpath, XPathVersion.DEFAULT, props,
+                                       XPathHandler.getHandlerForFunctionDefs(imageIsFunction()),
+                                       DeprecatedAttrLogger.noop());
+    }
+
+    private static XPathFunctionDefinition imageIsFunction() {
+        return new XPathFunctionDefinition("imageIs", DummyLanguageModule.getInstance()) {
+            @Override
+            public Type[] getArgumentTypes() {
+                return new Type[] {Type.SINGLE_STRING};
+            }
+
+            @Override
+            public Type getResultType() {
+                return Type.SINGLE_BOOLEAN;
+            }
+
+            @Override
+            public boolean dependsOnContext() {
+                return true;
+            }
+
+            @Override
+            public FunctionCall makeCallExpression() {
+                return (contextNode, arguments) -> arguments[0].equals(contextNode.getImage());
+            }
+        };
+    }
+
+    public static class NodeWithAttributes extends AbstractNode<NodeWithAttributes, NodeWithAttributes> {
+
+        public enum MyEnum {
+            FOO, BAR
+        }
+
+        @Override
+        public TextRegion getTextRegion() {
+            return TextRegion.caretAt(0);
+        }
+
+        @Override
+        public String getXPathNodeName() {
+            return "NodeWithAttributes";
+        }
+
+        public String getName() {
+            return "foo";
+        }
+
+        public MyEnum getEnum() {
+            return MyEnum.BAR;
+        }
+
+        public String getNull() {
+            return null;
+        }
+
+        public int getInt() {
+            return 2;
+        }
+
+        public boolean isBool() {
+            return true;
+        }
+
+        public List<String> getList() {
+            return Arrays.asList("A", "B");
+        }
+    }
+}
@@ -11,6 +11,8 @@ import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -26,6 +28,7 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
 import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
 import net.sourceforge.pmd.lang.ast.DummyNodeWithListAndEnum;
 import net.sourceforge.pmd.lang.ast.Node;
@@ -401,6 +404,16 @@ class SaxonXPathRuleQueryTest {
                    .replaceAll("\\$zz:zz-?\\d+", "\\$zz:zz000");
     }
 
+    @Test
+    void testConfigurationIsSharedByTheQueriesOfAProcessor() throws Exception {
+        DummyLanguageModule lang = DummyLanguageModule.getInstance();
+        try (LanguageProcessor processor = lang.createProcessor(lang.newPropertyBundle());
+             LanguageProcessor otherProcessor = lang.createProcessor(lang.newPropertyBundle())) {
+            assertSame(SaxonXPathRuleQuery.getConfiguration(processor), SaxonXPathRuleQuery.getConfiguration(processor));
+            assertNotSame(SaxonXPathRuleQuery.getConfiguration(processor), SaxonXPathRuleQuery.getConfiguration(otherProcessor));
+        }
+    }
+
     private static List<Node> assertQuery(int resultSize, String xpath, Node node, PropertyDescriptor<?>... descriptors) {
         SaxonXPathRuleQuery query = createQuery(xpath, descriptors);
         List<Node> result = query.evaluate(node);
@@ -0,0 +1,108 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.xpath.internal;
+
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.node;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.nodeB;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+
+class XPathBatchTest {
+
+    private static final List<String> XPATHS = Arrays.asList(
+        "//dummyNode//dummyNodeB",
+        "//dummyNode[@Image != '0']//dummyNode",
+        "//dummyNode[.//dummyNodeB and not(.//dummyNode)]",
+        "//dummyNodeB//dummyNode[dummyNodeB]"
+    );
+
+    @Test
+    void testDescendantLookupsAreRecorded() {
+        SaxonXPathRuleQuery query = createQuery("//dummyNode[.//dummyNodeB]//dummyNode[not(.//dummyNodeB)]");
+        assertEquals(Collections.singletonMap("dummyNode", new HashSet<>(Arrays.asList("dummyNode", "dummyNodeB"))),
+                     query.contextDescendantNames);
+
+        // not compiled
+        assertEquals(Collections.emptyMap(), createQuery("//dummyNode[1]//dummyNodeB").contextDescendantNames);
+    }
+
+    @Test
+    void testSameResultsAsSeparateQueries() {
+        DummyRootNode tree = makeTree();
+
+        List<SaxonXPathRuleQuery> batched = batchQueries();
+        for (int i = 0; i < XPATHS.size(); i++) {
+            SaxonXPathRuleQuery separate = createQuery(XPATHS.get(i));
+            SaxonXPathRuleQuery query = batched.get(i);
+            for (Node node : tree.descendantsOrSelf()) {
+                assertEquals(separate.evaluate(node), query.evaluate(node), XPATHS.get(i) + " on " + node);
+            }
+        }
+    }
+
+    @Test
+    void testNestedNodesDontShareWalks() {
+        DummyRootNode tree = makeTree();
+
+        for (SaxonXPathRuleQuery query : batchQueries()) {
+            for (Node node : tree.descendantsOrSelf()) {
+                query.evaluate(node);
+            }
+        }
+        // only the dummyNode nodes that are not in another dummyNode
+        assertEquals(4, XPathBatch.countSharedWalks(tree));
+    }
+
+    private static DummyRootNode makeTree() {
+        return tree(() -> root(
+            node(
+                node(
+                    nodeB(),
+                    node(
+                        nodeB(
+                            node()
+                        )
+                    )
+                ),
+                nodeB()
+            ),
+            nodeB(
+                node(
+                    nodeB()
+                ),
+                node()
+            ),
+            node()
+        ));
+    }
+
+    private static List<SaxonXPathRuleQuery> batchQueries() {
+        List<SaxonXPathRuleQuery> batched = new ArrayList<>();
+        for (String xpath : XPATHS) {
+            batched.add(createQuery(xpath));
+        }
+        XPathBatch.batch(batched);
+        return batched;
+    }
+
+    private static SaxonXPathRuleQuery createQuery(String xpath) {
+        return new SaxonXPathRuleQuery(xpath, XPathVersion.DEFAULT, Collections.emptyMap(),
+                                       XPathHandler.noFunctionDefinitions(), DeprecatedAttrLogger.noop());
+    }
+}
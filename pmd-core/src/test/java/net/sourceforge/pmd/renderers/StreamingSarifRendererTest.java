@@ -0,0 +1,103 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.Report;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The streaming renderer writes the same log as the {@link SarifRenderer},
+ * except for the order of the properties.
+ */
+class StreamingSarifRendererTest extends SarifRendererTest {
+
+    @Override
+    Renderer getRenderer() {
+        return new StreamingSarifRenderer();
+    }
+
+    @Override
+    String filter(String expected) {
+        return sortProperties(JsonParser.parseString(super.filter(expected)));
+    }
+
+    private static String sortProperties(JsonElement json) {
+        return new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create().toJson(sorted(json));
+    }
+
+    private static JsonElement sorted(JsonElement json) {
+        if (json.isJsonObject()) {
+            Map<String, JsonElement> properties = new TreeMap<>(json.getAsJsonObject().asMap());
+            JsonObject result = new JsonObject();
+            properties.forEach((name, value) -> result.add(name, sorted(value)));
+            return result;
+        } else if (json.isJsonArray()) {
+            JsonArray result = new JsonArray();
+            json.getAsJsonArray().forEach(element -> result.add(sorted(element)));
+            return result;
+        }
+        return json;
+    }
+
+    @Test
+    void testResultsAreWrittenBeforeTheEnd() throws Exception {
+        StringWriter writer = new StringWriter();
+        Renderer renderer = getRenderer();
+        renderer.setWriter(writer);
+        renderer.start();
+        renderer.renderFileReport(Report.buildReport(reportOneViolation()));
+
+        String written = writer.toString();
+        assertTrue(written.contains("\"ruleId\": \"Foo\""), "the result is written");
+        assertFalse(written.contains("\"rules\""), "the rules are written at the end");
+
+        renderer.end();
+        renderer.flush();
+        assertTrue(writer.toString().contains("\"rules\""));
+    }
+
+    @Test
+    void testSameLogAsSarifRendererWithSeveralMessagesPerRule() throws Exception {
+        Rule fooRule = createFooRule();
+        Rule booRule = createBooRule();
+        Consumer<FileAnalysisListener> violations = it -> {
+            it.onRuleViolation(newRuleViolation(fooRule, createLocation(1, 1, 1, 10), "first message"));
+            it.onRuleViolation(newRuleViolation(booRule, createLocation(2, 1, 2, 10), "boo message"));
+            it.onRuleViolation(newRuleViolation(fooRule, createLocation(5, 1, 5, 10), "second message"));
+            it.onRuleViolation(newRuleViolation(fooRule, createLocation(7, 1, 7, 10), "first message"));
+        };
+
+        String expected = renderReport(new SarifRenderer(), violations);
+        String actual = renderReport(getRenderer(), violations);
+
+        JsonObject run = JsonParser.parseString(actual).getAsJsonObject().getAsJsonArray("runs").get(0).getAsJsonObject();
+        JsonArray rules = run.getAsJsonObject("tool").getAsJsonObject("driver").getAsJsonArray("rules");
+        // each rule is described once, the messages are in the results
+        assertEquals(2, rules.size());
+        assertEquals("blah", rules.get(0).getAsJsonObject().getAsJsonObject("shortDescription").get("text").getAsString());
+        JsonArray results = run.getAsJsonArray("results");
+        assertEquals(0, results.get(2).getAsJsonObject().get("ruleIndex").getAsInt());
+        assertEquals("second message", results.get(2).getAsJsonObject().getAsJsonObject("message").get("text").getAsString());
+        assertEquals(sortProperties(JsonParser.parseString(expected)), sortProperties(JsonParser.parseString(actual)));
+    }
+}
@@ -10,7 +10,12 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -25,6 +30,7 @@ import net.sourceforge.pmd.lang.rule.MockRule;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.renderers.XMLRenderer;
+import net.sourceforge.pmd.reporting.Report.GlobalReportBuilderListener;
 
 class ReportTest {
 
@@ -102,6 +108,44 @@ class ReportTest {
         assertEquals(2, union.getViolations().size());
     }
 
+    @Test
+    void testGlobalReportMergesTheFilesOfAllThreads() throws Exception {
+        Rule rule = new MockRule("name", "desc", "msg", "rulesetname");
+        LanguageVersion dummyVersion = DummyLanguageModule.getInstance().getDefaultVersion();
+        GlobalReportBuilderListener reportBuilder = new GlobalReportBuilderListener();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String filename = "file" + (char) ('a' + i);
+                futures.add(executor.submit(() -> {
+                    TextFile file = TextFile.forCharSeq("dummyText", FileId.fromPathLikeString(filename), dummyVersion);
+                    try (FileAnalysisListener listener = reportBuilder.startFileAnalysis(file)) {
+                        // in reverse order
+                        for (int line = 50; line > 0; line--) {
+                            listener.onRuleViolation(violation(rule, getNode(line, 1, filename)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        reportBuilder.close();
+
+        List<RuleViolation> violations = reportBuilder.getResult().getViolations();
+        assertEquals(1000, violations.size());
+        List<RuleViolation> sorted = new ArrayList<>(violations);
+        sorted.sort(RuleViolation.DEFAULT_COMPARATOR);
+        assertEquals(sorted, violations);
+        assertEquals("filea", violations.get(0).getFileId().getOriginalPath());
+        assertEquals(1, violations.get(0).getBeginLine());
+    }
+
     public static @NonNull RuleViolation violation(Rule rule, FileLocation loc2) {
         return violation(rule, loc2, rule.getMessage());
     }
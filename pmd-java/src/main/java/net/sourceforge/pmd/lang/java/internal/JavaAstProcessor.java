@@ -12,6 +12,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.impl.Watchdog;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.InternalApiBridge;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
@@ -116,11 +117,13 @@ public final class JavaAstProcessor {
     }
 
     /**
-     * Performs semantic analysis on the given source file.
+     * Performs semantic analysis on the given source file. The analysis
+     * stops with an exception if the file runs out of time, see {@link Watchdog}.
      */
     public void process() {
 
         SymbolResolver knownSyms = TimeTracker.bench("Symbol resolution", () -> SymbolResolutionPass.traverse(this, acu));
+        Watchdog.checkpoint();
 
         // Now symbols are on the relevant nodes
         this.symResolver = SymbolResolver.layer(knownSyms, this.symResolver);
@@ -130,12 +133,16 @@ public final class JavaAstProcessor {
         InternalApiBridge.initTypeResolver(acu, this, typeInferenceLogger);
 
         TimeTracker.bench("Symbol table resolution", () -> SymbolTableResolver.traverse(this, acu));
+        Watchdog.checkpoint();
         TimeTracker.bench("AST disambiguation", () -> InternalApiBridge.disambigWithCtx(NodeStream.of(acu), ReferenceCtx.root(this, acu)));
+        Watchdog.checkpoint();
         if (globalProc.getProperties().getProperty(JavaLanguageProperties.INTERNAL_DO_STRICT_TYPERES)) {
             TimeTracker.bench("Force type resolution", () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
+            Watchdog.checkpoint();
         }
         TimeTracker.bench("Comment assignment", () -> InternalApiBridge.assignComments(acu));
         TimeTracker.bench("Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
+        Watchdog.checkpoint();
         TimeTracker.bench("Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
     }
 
@@ -24,6 +24,7 @@ import java.util.function.Supplier;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import net.sourceforge.pmd.lang.ast.AnalysisTimeoutException;
 import net.sourceforge.pmd.lang.java.types.JClassType;
 import net.sourceforge.pmd.lang.java.types.JMethodSig;
 import net.sourceforge.pmd.lang.java.types.JTypeMirror;
@@ -405,6 +406,8 @@ final class InferenceContext {
                     // for more inference to happen
 
                     // TODO investigate
+                } catch (AnalysisTimeoutException e) {
+                    throw e;
                 } catch (Exception e) {
                     e.printStackTrace();
                 } finally {